@@ -55,6 +55,9 @@ public final class Constant {
    public static final String HTTP_BASIC_AUTH_HEADER_VALUE_PREFIX= "Basic ";
    
    public static final String ACCOUNT_RESOURCE_ZIP_NAME= "openremote.zip";
+
+   /** Manifest of account resources, with a content hash per file. */
+   public static final String ACCOUNT_RESOURCE_MANIFEST_NAME = "openremote.manifest";
    
 
    public final static String PANEL_XSD_PATH = "/panel-2.0-M7.xsd";
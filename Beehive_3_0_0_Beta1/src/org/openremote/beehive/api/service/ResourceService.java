@@ -34,6 +34,16 @@ public interface ResourceService {
     * @param input
     */
    boolean saveResource(long accountOid,InputStream input);
+
+   /**
+    * save resources changed since the last save for an account whose oid is accountOid
+    * @param accountOid The oid for an account
+    * @param input zip archive with the changed resources and a manifest of all resources
+    * @return true if the changes were applied
+    * @throws org.openremote.beehive.exception.ResourceConflictException if the stored resources do not match
+    *         the manifest, all resources should then be saved with {@link #saveResource(long, InputStream)}
+    */
+   boolean saveResourceChanges(long accountOid, InputStream input);
    
    /**
     * get openremote.zip
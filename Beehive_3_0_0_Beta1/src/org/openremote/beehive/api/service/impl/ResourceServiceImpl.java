@@ -19,18 +19,28 @@
 */
 package org.openremote.beehive.api.service.impl;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.jdom.Document;
 import org.jdom.Element;
@@ -49,7 +59,9 @@ import org.openremote.beehive.exception.InvalidPanelXMLException;
 import org.openremote.beehive.exception.NoSuchAccountException;
 import org.openremote.beehive.exception.NoSuchPanelException;
 import org.openremote.beehive.exception.PanelXMLNotFoundException;
+import org.openremote.beehive.exception.ResourceConflictException;
 import org.openremote.beehive.utils.PathUtil;
+import org.openremote.beehive.utils.ResourceManifest;
 import org.openremote.beehive.utils.ZipUtil;
 
 /**
@@ -70,10 +82,19 @@ public class ResourceServiceImpl implements ResourceService {
    
    private static final String TABBAR_ELEMENT_NAME = "tabbar";
 
+   /** Locks serializing the resource updates of each account, keyed by account oid. */
+   private static final ConcurrentMap<Long, Object> accountLocks = new ConcurrentHashMap<Long, Object>();
+
    @Override
    public boolean saveResource(long accountOid, InputStream input) {
       logger.debug("save resource from modeler to beehive");
 
+      synchronized (getAccountLock(accountOid)) {
+         return writeResource(accountOid, input);
+      }
+   }
+
+   private boolean writeResource(long accountOid, InputStream input) {
       File dir = makeSureDir(accountOid);
       File zipFile = new File(dir, Constant.ACCOUNT_RESOURCE_ZIP_NAME);
       FileOutputStream fos = null;
@@ -94,7 +115,6 @@ public class ResourceServiceImpl implements ResourceService {
       } catch (IOException e) {
          logger.error("failed to save resource from modeler to beehive", e);
       } finally {
-         ZipUtil.unzip(zipFile, dir.getAbsolutePath());
          if (fos != null) {
             try {
                fos.close();
@@ -103,9 +123,218 @@ public class ResourceServiceImpl implements ResourceService {
                      + ioException.getMessage(), ioException);
             }
          }
+         ZipUtil.unzip(zipFile, dir.getAbsolutePath());
+         updateStoredManifest(dir);
+      }
+      return false;
+   }
+
+   /**
+    * Applies resource changes uploaded by Designer. The archive contains the changed resources and a
+    * {@link ResourceManifest} of all account resources as its {@link Constant#ACCOUNT_RESOURCE_MANIFEST_NAME} entry.
+    * Resources listed in the manifest but not included in the archive must match the stored resources, resources
+    * not listed are removed.
+    * <p>
+    * The changes are extracted and verified in a staging directory, and the new openremote.zip is built there,
+    * before any of the stored resources are replaced. Updates of the same account are serialized.
+    */
+   @Override
+   public boolean saveResourceChanges(long accountOid, InputStream input) {
+      logger.debug("save resource changes from modeler to beehive");
+
+      File dir = makeSureDir(accountOid);
+      File stagingDir = new File(dir.getParentFile(), accountOid + ".staging");
+      File stagedFiles = new File(stagingDir, "files");
+      File stagedZip = new File(stagingDir, Constant.ACCOUNT_RESOURCE_ZIP_NAME);
+
+      synchronized (getAccountLock(accountOid)) {
+         try {
+            FileUtils.deleteDirectory(stagingDir);
+            stagedFiles.mkdirs();
+
+            ResourceManifest manifest = extractChanges(input, stagedFiles);
+            verifyChanges(manifest, getStoredManifest(dir), dir, stagedFiles);
+            writeArchive(stagedZip, manifest, dir, stagedFiles);
+            commitChanges(manifest, dir, stagedFiles, stagedZip);
+
+            logger.info("save resource changes success!");
+            return true;
+         } catch (IOException e) {
+            logger.error("failed to save resource changes from modeler to beehive", e);
+         } finally {
+            FileUtils.deleteQuietly(stagingDir);
+         }
       }
       return false;
    }
+
+   private static Object getAccountLock(long accountOid) {
+      Object lock = accountLocks.get(accountOid);
+      if (lock == null) {
+         Object newLock = new Object();
+         lock = accountLocks.putIfAbsent(accountOid, newLock);
+         if (lock == null) {
+            lock = newLock;
+         }
+      }
+      return lock;
+   }
+
+   /**
+    * Extracts the changed resources to the staging directory and returns the manifest included in the archive.
+    */
+   private ResourceManifest extractChanges(InputStream input, File stagedFiles) throws IOException {
+      ResourceManifest manifest = null;
+      ZipInputStream zipInput = new ZipInputStream(new BufferedInputStream(input));
+      ZipEntry entry;
+
+      while ((entry = zipInput.getNextEntry()) != null) {
+         if (entry.isDirectory()) {
+            continue;
+         }
+         String name = entry.getName();
+         if (name.equals(Constant.ACCOUNT_RESOURCE_MANIFEST_NAME)) {
+            manifest = ResourceManifest.read(zipInput);
+            continue;
+         }
+         if (!ResourceManifest.isSafePath(name)) {
+            throw new IOException("Invalid resource path '" + name + "'");
+         }
+         File file = new File(stagedFiles, name);
+         file.getParentFile().mkdirs();
+         OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+         try {
+            IOUtils.copy(zipInput, out);
+         } finally {
+            out.close();
+         }
+      }
+
+      if (manifest == null) {
+         throw new IOException("Resource changes do not include " + Constant.ACCOUNT_RESOURCE_MANIFEST_NAME);
+      }
+      return manifest;
+   }
+
+   /**
+    * Checks that the staged resources match the manifest and that the resources not included in the changes are
+    * stored with the content listed in the manifest.
+    * 
+    * @throws ResourceConflictException if the stored resources do not match the manifest
+    */
+   private void verifyChanges(ResourceManifest manifest, ResourceManifest stored, File dir, File stagedFiles)
+         throws IOException {
+      for (String path : manifest.getPaths()) {
+         if (!ResourceManifest.isSafePath(path)) {
+            throw new IOException("Invalid resource path '" + path + "'");
+         }
+         File staged = new File(stagedFiles, path);
+         if (staged.exists()) {
+            if (!manifest.getHash(path).equals(ResourceManifest.hash(staged))) {
+               throw new ResourceConflictException("Uploaded content of '" + path + "' does not match the manifest");
+            }
+         } else if (!manifest.getHash(path).equals(stored.getHash(path)) || !new File(dir, path).exists()) {
+            throw new ResourceConflictException("Stored resource '" + path + "' does not match the manifest");
+         }
+      }
+   }
+
+   /**
+    * Builds the openremote.zip of the resources listed in the manifest, taking changed resources from the staging
+    * directory and unchanged resources from the account directory.
+    */
+   private void writeArchive(File target, ResourceManifest manifest, File dir, File stagedFiles) throws IOException {
+      ZipOutputStream zipOutput = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
+      try {
+         for (String path : manifest.getPaths()) {
+            File source = new File(stagedFiles, path);
+            if (!source.exists()) {
+               source = new File(dir, path);
+            }
+            ZipEntry entry = new ZipEntry(path);
+            entry.setTime(source.lastModified());
+            zipOutput.putNextEntry(entry);
+            InputStream in = new BufferedInputStream(new FileInputStream(source));
+            try {
+               IOUtils.copy(in, zipOutput);
+            } finally {
+               in.close();
+            }
+            zipOutput.closeEntry();
+         }
+      } finally {
+         zipOutput.close();
+      }
+   }
+
+   /**
+    * Moves the staged resources and archive to the account directory and removes resources no longer listed in the
+    * manifest. The stored manifest is removed first so that an interrupted commit is detected by the next update.
+    */
+   private void commitChanges(ResourceManifest manifest, File dir, File stagedFiles, File stagedZip)
+         throws IOException {
+      File manifestFile = new File(dir, Constant.ACCOUNT_RESOURCE_MANIFEST_NAME);
+      FileUtils.deleteQuietly(manifestFile);
+
+      for (String path : manifest.getPaths()) {
+         File staged = new File(stagedFiles, path);
+         if (staged.exists()) {
+            moveFile(staged, new File(dir, path));
+         }
+      }
+      removeUnlistedFiles(dir, "", manifest);
+      moveFile(stagedZip, new File(dir, Constant.ACCOUNT_RESOURCE_ZIP_NAME));
+
+      manifest.save(manifestFile);
+   }
+
+   private void moveFile(File source, File target) throws IOException {
+      if (target.exists() && !target.delete()) {
+         throw new IOException("Unable to replace '" + target.getAbsolutePath() + "'");
+      }
+      target.getParentFile().mkdirs();
+      FileUtils.moveFile(source, target);
+   }
+
+   private void removeUnlistedFiles(File dir, String prefix, ResourceManifest manifest) {
+      File[] files = dir.listFiles();
+      if (files == null) {
+         return;
+      }
+      for (File file : files) {
+         String path = prefix + file.getName();
+         if (file.isDirectory()) {
+            removeUnlistedFiles(file, path + "/", manifest);
+         } else if (manifest.getHash(path) == null && !path.equals(Constant.ACCOUNT_RESOURCE_ZIP_NAME)
+               && !path.equals(Constant.ACCOUNT_RESOURCE_MANIFEST_NAME)) {
+            FileUtils.deleteQuietly(file);
+         }
+      }
+   }
+
+   /**
+    * Returns the manifest of the stored account resources. Accounts saved before manifests were introduced have no
+    * stored manifest, it is then created from the resource files.
+    */
+   private ResourceManifest getStoredManifest(File dir) throws IOException {
+      ResourceManifest manifest = ResourceManifest.load(new File(dir, Constant.ACCOUNT_RESOURCE_MANIFEST_NAME));
+      if (manifest == null) {
+         manifest = ResourceManifest.create(dir, Constant.ACCOUNT_RESOURCE_ZIP_NAME,
+               Constant.ACCOUNT_RESOURCE_MANIFEST_NAME);
+      }
+      return manifest;
+   }
+
+   private void updateStoredManifest(File dir) {
+      File manifestFile = new File(dir, Constant.ACCOUNT_RESOURCE_MANIFEST_NAME);
+      try {
+         ResourceManifest.create(dir, Constant.ACCOUNT_RESOURCE_ZIP_NAME, Constant.ACCOUNT_RESOURCE_MANIFEST_NAME)
+               .save(manifestFile);
+      } catch (IOException e) {
+         logger.warn("Unable to write resource manifest '" + manifestFile.getAbsolutePath() + "'", e);
+         FileUtils.deleteQuietly(manifestFile);
+      }
+   }
    
    public File getResourceZip(String username) {
       
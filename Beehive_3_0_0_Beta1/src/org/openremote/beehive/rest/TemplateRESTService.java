@@ -47,6 +47,7 @@ import org.openremote.beehive.api.service.ResourceService;
 import org.openremote.beehive.api.service.TemplateService;
 import org.openremote.beehive.domain.Account;
 import org.openremote.beehive.domain.Template;
+import org.openremote.beehive.exception.ResourceConflictException;
 /**
  * Panel UI Template restful service.
  * 
@@ -325,6 +326,52 @@ public class TemplateRESTService extends RESTBaseService {
    
    
    
+   /**
+    * Save account resources changed since the last save.
+    * 
+    * @param accountId
+    *           account id.
+    * @param input
+    *           Multipart Form Data Input, a zip archive with the changed resources and a manifest of all resources
+    * @param credentials
+    *           HTTP basic header credentials : "Basic base64(username:md5(password,username))"
+    * @return 200 if the changes were applied, 409 if the stored resources do not match the manifest in which case
+    *         all resources should be saved to openremote.zip instead.
+    */
+   @Path(Constant.ACCOUNT_RESOURCE_ZIP_NAME + "/changes")
+   @POST
+   @Consumes(MediaType.MULTIPART_FORM_DATA)
+   public Response saveResourceChanges(@PathParam("account_id") long accountId, 
+         MultipartFormDataInput input,
+         @HeaderParam(Constant.HTTP_AUTH_HEADER_NAME) String credentials) {
+      
+      if (!authorize(accountId, credentials)) return unAuthorizedResponse();
+      List<InputPart> parts = input.getParts();
+      InputStream in = null;
+      try {
+         if (parts.size() == 0) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+         }
+         in = parts.get(0).getBody(new GenericType<InputStream>() {});
+         if (!getResourceService().saveResourceChanges(accountId, in)) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+         }
+         return buildResponse(true);
+      } catch (ResourceConflictException e) {
+         return Response.status(Response.Status.CONFLICT).build();
+      } catch (IOException e) {
+         throw new WebApplicationException(e,Response.Status.INTERNAL_SERVER_ERROR);
+      } finally {
+         if (in != null) {
+            try {
+               in.close();
+            } catch (Exception e) {
+               throw new WebApplicationException(e,Response.Status.INTERNAL_SERVER_ERROR);
+            }
+         }
+      }
+   }
+   
    protected ResourceService getResourceService() {
       return (ResourceService) getSpringContextInstance().getBean("resourceService");
    }
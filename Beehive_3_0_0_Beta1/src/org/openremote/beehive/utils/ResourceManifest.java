@@ -0,0 +1,246 @@
+/* OpenRemote, the Home of the Digital Home.
+* Copyright 2008-2009, OpenRemote Inc.
+*
+* See the contributors.txt file in the distribution for a
+* full listing of individual contributors.
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Affero General Public License as
+* published by the Free Software Foundation, either version 3 of the
+* License, or (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Affero General Public License for more details.
+*
+* You should have received a copy of the GNU Affero General Public License
+* along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.openremote.beehive.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Lists the files of an account's resources together with a SHA-1 hash of their content.
+ * <p>
+ * Designer uploads a manifest of all account resources along with the resources that have changed since its last
+ * save. The manifest of the stored resources is kept in the account directory so that the unchanged resources can
+ * be verified without reading them.
+ * <p>
+ * The serialized format is one UTF-8 encoded line per file, containing the hexadecimal hash and the relative path
+ * (using '/' as separator) separated by a single space.
+ */
+public class ResourceManifest {
+
+   private static final String ENCODING = "UTF-8";
+
+   /** Content hashes keyed by relative path. */
+   private Map<String, String> entries = new TreeMap<String, String>();
+
+   /**
+    * Creates a manifest of all files in a directory and its subdirectories.
+    * 
+    * @param dir the directory
+    * @param excludes relative paths of files not to include
+    * 
+    * @return the manifest
+    * 
+    * @throws IOException if reading any of the files fails
+    */
+   public static ResourceManifest create(File dir, String... excludes) throws IOException {
+      ResourceManifest manifest = new ResourceManifest();
+      manifest.addFiles(dir, "", excludes);
+      return manifest;
+   }
+
+   /**
+    * Loads a manifest stored with {@link #save(File)}.
+    * 
+    * @param file the manifest file
+    * 
+    * @return the manifest, or null if the file does not exist
+    * 
+    * @throws IOException if reading the file fails
+    */
+   public static ResourceManifest load(File file) throws IOException {
+      if (!file.exists()) {
+         return null;
+      }
+      InputStream in = new BufferedInputStream(new FileInputStream(file));
+      try {
+         return read(in);
+      } finally {
+         in.close();
+      }
+   }
+
+   /**
+    * Reads a serialized manifest. The stream is not closed.
+    * 
+    * @param in the stream
+    * 
+    * @return the manifest
+    * 
+    * @throws IOException if reading fails or the stream does not contain a valid manifest
+    */
+   public static ResourceManifest read(InputStream in) throws IOException {
+      ResourceManifest manifest = new ResourceManifest();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, ENCODING));
+      String line;
+      while ((line = reader.readLine()) != null) {
+         if (line.length() == 0) {
+            continue;
+         }
+         int separator = line.indexOf(' ');
+         if (separator <= 0 || separator == line.length() - 1) {
+            throw new IOException("Invalid manifest entry : '" + line + "'");
+         }
+         manifest.entries.put(line.substring(separator + 1), line.substring(0, separator));
+      }
+      return manifest;
+   }
+
+   /**
+    * Returns a hexadecimal SHA-1 hash of a file's content.
+    * 
+    * @param file the file
+    * 
+    * @return the hash
+    * 
+    * @throws IOException if reading the file fails
+    */
+   public static String hash(File file) throws IOException {
+      MessageDigest digest;
+      try {
+         digest = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+         throw new Error("SHA-1 is a required message digest algorithm on all Java platforms.", e);
+      }
+      InputStream in = new FileInputStream(file);
+      try {
+         byte[] buffer = new byte[8192];
+         int length;
+         while ((length = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, length);
+         }
+      } finally {
+         in.close();
+      }
+      StringBuilder hex = new StringBuilder(40);
+      for (byte b : digest.digest()) {
+         hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+         hex.append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+   }
+
+   /**
+    * Checks that a relative path from a manifest or an uploaded archive stays within the directory it is resolved
+    * against.
+    * 
+    * @param path the relative path
+    * 
+    * @return true if the path is relative and does not refer to a parent directory
+    */
+   public static boolean isSafePath(String path) {
+      if (path.length() == 0 || path.startsWith("/") || path.startsWith("\\") || path.indexOf(':') != -1) {
+         return false;
+      }
+      for (String segment : path.split("[/\\\\]")) {
+         if (segment.equals("..")) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public String getHash(String path) {
+      return entries.get(path);
+   }
+
+   public Set<String> getPaths() {
+      return Collections.unmodifiableSet(entries.keySet());
+   }
+
+   /**
+    * Serializes this manifest. The stream is flushed but not closed.
+    * 
+    * @param out the stream
+    * 
+    * @throws IOException if writing fails
+    */
+   public void write(OutputStream out) throws IOException {
+      Writer writer = new OutputStreamWriter(out, ENCODING);
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+         writer.write(entry.getValue());
+         writer.write(' ');
+         writer.write(entry.getKey());
+         writer.write('\n');
+      }
+      writer.flush();
+   }
+
+   /**
+    * Stores this manifest. It is written to a temporary file first which then replaces the target file.
+    * 
+    * @param file the target file
+    * 
+    * @throws IOException if writing fails
+    */
+   public void save(File file) throws IOException {
+      File temp = new File(file.getPath() + ".tmp");
+      OutputStream out = new FileOutputStream(temp);
+      try {
+         write(out);
+      } finally {
+         out.close();
+      }
+      if (file.exists() && !file.delete()) {
+         throw new IOException("Unable to replace manifest '" + file.getAbsolutePath() + "'.");
+      }
+      if (!temp.renameTo(file)) {
+         throw new IOException("Unable to move '" + temp.getAbsolutePath() + "' to '" + file.getAbsolutePath() + "'.");
+      }
+   }
+
+   private void addFiles(File dir, String prefix, String... excludes) throws IOException {
+      File[] files = dir.listFiles();
+      if (files == null) {
+         return;
+      }
+      for (File file : files) {
+         String path = prefix + file.getName();
+         if (file.isDirectory()) {
+            addFiles(file, path + "/", excludes);
+         } else if (!isExcluded(path, excludes)) {
+            entries.put(path, hash(file));
+         }
+      }
+   }
+
+   private boolean isExcluded(String path, String... excludes) {
+      for (String exclude : excludes) {
+         if (exclude.equals(path)) {
+            return true;
+         }
+      }
+      return false;
+   }
+}
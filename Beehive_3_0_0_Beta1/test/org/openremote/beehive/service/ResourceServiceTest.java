@@ -0,0 +1,187 @@
+/* OpenRemote, the Home of the Digital Home.
+* Copyright 2008-2009, OpenRemote Inc.
+*
+* See the contributors.txt file in the distribution for a
+* full listing of individual contributors.
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Affero General Public License as
+* published by the Free Software Foundation, either version 3 of the
+* License, or (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Affero General Public License for more details.
+*
+* You should have received a copy of the GNU Affero General Public License
+* along with this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.openremote.beehive.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.openremote.beehive.Configuration;
+import org.openremote.beehive.Constant;
+import org.openremote.beehive.api.service.impl.ResourceServiceImpl;
+import org.openremote.beehive.exception.ResourceConflictException;
+import org.openremote.beehive.utils.ResourceManifest;
+
+/**
+ * Tests saving account resources incrementally with {@link ResourceServiceImpl#saveResourceChanges}.
+ */
+public class ResourceServiceTest extends TestCase {
+
+   private static final long ACCOUNT = 1;
+
+   private File workDir;
+   private File accountDir;
+   private ResourceServiceImpl service;
+
+   @Override
+   protected void setUp() throws Exception {
+      workDir = File.createTempFile("beehive", "");
+      workDir.delete();
+      workDir.mkdirs();
+
+      Configuration configuration = new Configuration();
+      configuration.setWorkDir(workDir.getAbsolutePath());
+
+      service = new ResourceServiceImpl();
+      service.setConfiguration(configuration);
+
+      accountDir = new File(configuration.getModelerResourcesDir(), "" + ACCOUNT);
+
+      Map<String, String> files = new LinkedHashMap<String, String>();
+      files.put("panel.xml", "<panels/>");
+      files.put("controller.xml", "<controller/>");
+      files.put("image.png", "image");
+      files.put("rules/modeler_rules.drl", "rules");
+      assertTrue(service.saveResource(ACCOUNT, new ByteArrayInputStream(zip(files, null))));
+   }
+
+   @Override
+   protected void tearDown() throws Exception {
+      FileUtils.deleteDirectory(workDir);
+   }
+
+   public void testSaveChanges() throws Exception {
+      Map<String, String> changes = new LinkedHashMap<String, String>();
+      changes.put("panel.xml", "<panels><panel/></panels>");
+      changes.put("image2.png", "image2");
+
+      Map<String, String> manifest = new LinkedHashMap<String, String>();
+      manifest.put("panel.xml", "<panels><panel/></panels>");
+      manifest.put("controller.xml", "<controller/>");
+      manifest.put("image2.png", "image2");
+      manifest.put("rules/modeler_rules.drl", "rules");
+
+      assertTrue(service.saveResourceChanges(ACCOUNT, new ByteArrayInputStream(zip(changes, manifest))));
+
+      assertEquals("<panels><panel/></panels>", read("panel.xml"));
+      assertEquals("<controller/>", read("controller.xml"));
+      assertEquals("image2", read("image2.png"));
+      assertEquals("rules", read("rules/modeler_rules.drl"));
+      assertFalse("Resources not in the manifest should be removed.", new File(accountDir, "image.png").exists());
+      assertFalse(new File(accountDir.getParentFile(), ACCOUNT + ".staging").exists());
+
+      ZipFile archive = new ZipFile(new File(accountDir, Constant.ACCOUNT_RESOURCE_ZIP_NAME));
+      try {
+         assertEquals(4, archive.size());
+         assertNotNull(archive.getEntry("image2.png"));
+         assertNull(archive.getEntry("image.png"));
+         assertNull(archive.getEntry(Constant.ACCOUNT_RESOURCE_MANIFEST_NAME));
+      } finally {
+         archive.close();
+      }
+   }
+
+   public void testConflict() throws Exception {
+      Map<String, String> changes = new LinkedHashMap<String, String>();
+      changes.put("panel.xml", "<panels><panel/></panels>");
+
+      Map<String, String> manifest = new LinkedHashMap<String, String>();
+      manifest.put("panel.xml", "<panels><panel/></panels>");
+      manifest.put("controller.xml", "<controller>changed elsewhere</controller>");
+
+      try {
+         service.saveResourceChanges(ACCOUNT, new ByteArrayInputStream(zip(changes, manifest)));
+         fail("Expected a conflict.");
+      } catch (ResourceConflictException e) {
+         // expected
+      }
+
+      assertEquals("Stored resources should not change on conflict.", "<panels/>", read("panel.xml"));
+      assertEquals("image", read("image.png"));
+   }
+
+   public void testLegacyAccountWithoutManifest() throws Exception {
+      new File(accountDir, Constant.ACCOUNT_RESOURCE_MANIFEST_NAME).delete();
+
+      Map<String, String> changes = new LinkedHashMap<String, String>();
+      changes.put("controller.xml", "<controller><config/></controller>");
+
+      Map<String, String> manifest = new LinkedHashMap<String, String>();
+      manifest.put("panel.xml", "<panels/>");
+      manifest.put("controller.xml", "<controller><config/></controller>");
+      manifest.put("image.png", "image");
+      manifest.put("rules/modeler_rules.drl", "rules");
+
+      assertTrue(service.saveResourceChanges(ACCOUNT, new ByteArrayInputStream(zip(changes, manifest))));
+      assertEquals("<controller><config/></controller>", read("controller.xml"));
+      assertTrue(new File(accountDir, Constant.ACCOUNT_RESOURCE_MANIFEST_NAME).exists());
+   }
+
+   public void testUnsafePath() throws Exception {
+      Map<String, String> changes = new LinkedHashMap<String, String>();
+      changes.put("../evil.txt", "evil");
+
+      assertFalse(service.saveResourceChanges(ACCOUNT, new ByteArrayInputStream(zip(changes, changes))));
+      assertFalse(new File(accountDir.getParentFile(), "evil.txt").exists());
+   }
+
+   private String read(String path) throws IOException {
+      return FileUtils.readFileToString(new File(accountDir, path), "UTF-8");
+   }
+
+   /**
+    * Creates a resource archive with the given files, adding a manifest of the given content if not null.
+    */
+   private byte[] zip(Map<String, String> files, Map<String, String> manifest) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ZipOutputStream zip = new ZipOutputStream(bytes);
+      for (Map.Entry<String, String> file : files.entrySet()) {
+         zip.putNextEntry(new ZipEntry(file.getKey()));
+         zip.write(file.getValue().getBytes("UTF-8"));
+         zip.closeEntry();
+      }
+      if (manifest != null) {
+         File temp = File.createTempFile("manifest", "");
+         try {
+            StringBuilder content = new StringBuilder();
+            for (Map.Entry<String, String> file : manifest.entrySet()) {
+               FileUtils.writeStringToFile(temp, file.getValue(), "UTF-8");
+               content.append(ResourceManifest.hash(temp)).append(' ').append(file.getKey()).append('\n');
+            }
+            zip.putNextEntry(new ZipEntry(Constant.ACCOUNT_RESOURCE_MANIFEST_NAME));
+            zip.write(content.toString().getBytes("UTF-8"));
+            zip.closeEntry();
+         } finally {
+            temp.delete();
+         }
+      }
+      zip.close();
+      return bytes.toByteArray();
+   }
+}
@@ -28,11 +28,8 @@ import java.net.URISyntaxException;
 import java.net.HttpURLConnection;
 import java.text.DecimalFormat;
 
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpRequest;
@@ -59,6 +56,21 @@ public class Beehive30API implements BeehiveService
 {
 
 
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Endpoint name of account archive downloads in {@link BeehiveHttpClient} statistics.
+   */
+  public final static String DOWNLOAD_ENDPOINT = "GET user/{username}/openremote.zip";
+
+  /**
+   * Endpoint name of account archive uploads in {@link BeehiveHttpClient} statistics.
+   * Incremental uploads append their path to this name.
+   */
+  public final static String UPLOAD_ENDPOINT = "POST account/{oid}/openremote.zip";
+
+
+
   // Class Members --------------------------------------------------------------------------------
 
   /**
@@ -135,8 +147,6 @@ public class Beehive30API implements BeehiveService
 
     // Construct the request...
 
-    HttpClient httpClient = new DefaultHttpClient();
-
     URI beehiveArchiveURI;
 
     try
@@ -169,11 +179,11 @@ public class Beehive30API implements BeehiveService
 
     // HTTP GET to Beehive...
 
-    HttpResponse response;
+    BeehiveHttpClient.Response response;
 
     try
     {
-      response = httpClient.execute(httpGet);
+      response = BeehiveHttpClient.getInstance().execute(DOWNLOAD_ENDPOINT, httpGet);
     }
 
     catch (IOException e)
@@ -187,188 +197,205 @@ public class Beehive30API implements BeehiveService
     }
 
 
-    // Make sure we got a response and a proper HTTP return code...
+    // Always release the connection back to the pool...
 
-    if (response == null)
-    {
-      throw new NetworkException(
-          NetworkException.Severity.SEVERE,
-          "Beehive did not respond to HTTP GET request, URL : {0} {1}",
-          beehiveArchiveURI, printUser(currentUser)
-      );
-    }
-
-    StatusLine statusLine = response.getStatusLine();
-
-    if (statusLine == null)
+    try
     {
-      throw new NetworkException(
-          NetworkException.Severity.SEVERE,
-          "There was no status from Beehive to HTTP GET request, URL : {0} {1}",
-          beehiveArchiveURI, printUser(currentUser)
-      );
-    }
-
-    int httpResponseCode = statusLine.getStatusCode();
+      // Make sure we got a proper HTTP return code...
 
+      StatusLine statusLine = response.getHttpResponse().getStatusLine();
 
-    // Deal with the HTTP OK (200) case.
-
-    if (httpResponseCode == HttpURLConnection.HTTP_OK)
-    {
-      HttpEntity httpEntity = response.getEntity();
-
-      if (httpEntity == null)
+      if (statusLine == null)
       {
         throw new NetworkException(
             NetworkException.Severity.SEVERE,
-            "No content received from Beehive to HTTP GET request, URL : {0} {1}",
+            "There was no status from Beehive to HTTP GET request, URL : {0} {1}",
             beehiveArchiveURI, printUser(currentUser)
         );
       }
 
+      int httpResponseCode = statusLine.getStatusCode();
 
-      // Download to cache...
 
-      BufferedInputStream httpInput;
+      // Deal with the HTTP OK (200) case.
 
-      try
+      if (httpResponseCode == HttpURLConnection.HTTP_OK)
       {
-        CacheWriteStream cacheStream = cache.openWriteStream();
+        HttpEntity httpEntity = response.getEntity();
 
-        httpInput = new BufferedInputStream(httpEntity.getContent());
+        if (httpEntity == null)
+        {
+          throw new NetworkException(
+              NetworkException.Severity.SEVERE,
+              "No content received from Beehive to HTTP GET request, URL : {0} {1}",
+              beehiveArchiveURI, printUser(currentUser)
+          );
+        }
 
-        byte[] buffer = new byte[4096];
-        int bytecount = 0, len;
-        long contentLength = httpEntity.getContentLength();
 
-        try
-        {
-          while ((len = httpInput.read(buffer)) != -1)
-          {
-            try
-            {
-              cacheStream.write(buffer, 0, len);
-            }
+        // Download to cache...
 
-            catch (IOException e)
-            {
-              throw new CacheOperationException(
-                  "Writing archive to cache failed : {0}", e, e.getMessage()
-              );
-            }
+        BufferedInputStream httpInput;
 
-            bytecount += len;
-          }
+        try
+        {
+          CacheWriteStream cacheStream = cache.openWriteStream();
 
-          // MUST mark complete for cache to accept the incoming archive...
+          httpInput = new BufferedInputStream(httpEntity.getContent());
 
-          cacheStream.markCompleted();
-        }
+          byte[] buffer = new byte[4096];
+          int bytecount = 0, len;
+          long contentLength = httpEntity.getContentLength();
 
-        finally
-        {
           try
           {
-            cacheStream.close();
-          }
+            while ((len = httpInput.read(buffer)) != -1)
+            {
+              try
+              {
+                cacheStream.write(buffer, 0, len);
+              }
+
+              catch (IOException e)
+              {
+                throw new CacheOperationException(
+                    "Writing archive to cache failed : {0}", e, e.getMessage()
+                );
+              }
+
+              bytecount += len;
+            }
 
-          catch (Throwable t)
-          {
-            serviceLog.warn(
-                "Unable to close resource archive cache stream : {0}",
-                t, t.getMessage()
-            );
+            // MUST mark complete for cache to accept the incoming archive...
+
+            cacheStream.markCompleted();
           }
 
-          if (httpInput != null)
+          finally
           {
             try
             {
-              httpInput.close();
+              cacheStream.close();
             }
 
             catch (Throwable t)
             {
               serviceLog.warn(
-                  "Unable to close HTTP input stream from Beehive URL ''{0}'' : {1}",
-                  t, beehiveArchiveURI, t.getMessage()
+                  "Unable to close resource archive cache stream : {0}",
+                  t, t.getMessage()
               );
             }
+
+            if (httpInput != null)
+            {
+              try
+              {
+                httpInput.close();
+              }
+
+              catch (Throwable t)
+              {
+                serviceLog.warn(
+                    "Unable to close HTTP input stream from Beehive URL ''{0}'' : {1}",
+                    t, beehiveArchiveURI, t.getMessage()
+                );
+              }
+            }
           }
-        }
 
-        if (contentLength >= 0)
-        {
-          if (bytecount != contentLength)
+          if (contentLength >= 0)
           {
-            serviceLog.warn(
-                "Expected content length was {0} bytes but wrote {1} bytes to cache stream ''{2}''.",
-                contentLength, bytecount, cacheStream
-            );
+            if (bytecount != contentLength)
+            {
+              serviceLog.warn(
+                  "Expected content length was {0} bytes but wrote {1} bytes to cache stream ''{2}''.",
+                  contentLength, bytecount, cacheStream
+              );
+            }
           }
-        }
         
 
-        // Record network performance stats...
+          // Record network performance stats...
 
-        long endtime = System.currentTimeMillis();
+          long endtime = System.currentTimeMillis();
 
-        float kbytes  = ((float)bytecount) / 1000;
-        float seconds = ((float)(endtime - starttime)) / 1000;
-        float kbpersec = kbytes / seconds;
+          float kbytes  = ((float)bytecount) / 1000;
+          float seconds = ((float)(endtime - starttime)) / 1000;
+          float kbpersec = kbytes / seconds;
 
-        String kilobytes  = new DecimalFormat("###########0.00").format(kbytes);
-        String nettime    = new DecimalFormat("##########0.000").format(seconds);
-        String persectime = new DecimalFormat("##########0.000").format(kbpersec);
+          String kilobytes  = new DecimalFormat("###########0.00").format(kbytes);
+          String nettime    = new DecimalFormat("##########0.000").format(seconds);
+          String persectime = new DecimalFormat("##########0.000").format(kbpersec);
 
-        downloadPerfLog.info(
-            "Downloaded " + kilobytes + " kilobytes in " + nettime + " seconds (" +
-            persectime + "kb/s)"
-        );
+          downloadPerfLog.info(
+              "Downloaded " + kilobytes + " kilobytes in " + nettime + " seconds (" +
+              persectime + "kb/s)"
+          );
+        }
+
+        catch (IOException e)
+        {
+          // HTTP request I/O error...
+
+          throw new NetworkException(
+              "Download of Beehive archive failed : {0}", e, e.getMessage()
+          );
+        }
+      }
+
+
+      // Assuming 404 indicates a new user... quietly return, nothing to download...
+
+      // TODO : MODELER-286
+
+      else if (httpResponseCode == HttpURLConnection.HTTP_NOT_FOUND)
+      {
+        serviceLog.info("No user data found. Return code 404. Assuming new user account...");
+
+        return;
       }
 
-      catch (IOException e)
+      else
       {
-        // HTTP request I/O error...
+        // TODO :
+        //
+        //   Currently assumes any other HTTP return code is a standard network error.
+        //   This could be improved by handling more specific error codes (some are
+        //   fatal, some are recoverable) such as 500 Internal Error (permanent) or
+        //   307 Temporary Redirect
+        //
+        // TODO :
+        //
+        //   Should handle authentication errors in their own branch, not in this generic block
 
         throw new NetworkException(
-            "Download of Beehive archive failed : {0}", e, e.getMessage()
+            "Failed to download Beehive archive from URL ''{0}'' {1}, " +
+            "HTTP Response code: {2}",
+
+            beehiveArchiveURI, printUser(currentUser), httpResponseCode
         );
       }
     }
 
+    catch (CacheOperationException e)
+    {
+      // Don't read the rest of the archive just to keep the connection alive...
 
-    // Assuming 404 indicates a new user... quietly return, nothing to download...
+      response.abort();
 
-    // TODO : MODELER-286
+      throw e;
+    }
 
-    else if (httpResponseCode == HttpURLConnection.HTTP_NOT_FOUND)
+    catch (NetworkException e)
     {
-      serviceLog.info("No user data found. Return code 404. Assuming new user account...");
+      response.abort();
 
-      return;
+      throw e;
     }
 
-    else
+    finally
     {
-      // TODO :
-      //
-      //   Currently assumes any other HTTP return code is a standard network error.
-      //   This could be improved by handling more specific error codes (some are
-      //   fatal, some are recoverable) such as 500 Internal Error (permanent) or
-      //   307 Temporary Redirect
-      //
-      // TODO :
-      //
-      //   Should handle authentication errors in their own branch, not in this generic block
-
-      throw new NetworkException(
-          "Failed to download Beehive archive from URL ''{0}'' {1}, " +
-          "HTTP Response code: {2}",
-
-          beehiveArchiveURI, printUser(currentUser), httpResponseCode
-      );
+      response.close();
     }
   }
 
@@ -396,6 +423,105 @@ public class Beehive30API implements BeehiveService
    */
   @Override public void uploadResources(InputStream archive, User currentUser)
       throws ConfigurationException, NetworkException
+  {
+    int status = postArchive(archive, "", currentUser);
+
+    if (status != HttpURLConnection.HTTP_OK)
+    {
+       throw new NetworkException(
+           "Failed to save resources to Beehive, status code: {0}", status
+       );
+    }
+
+    // TODO :
+    //   - should probably check other return codes explicitly here too, such as
+    //     authentication errors (which is most likely not recoverable whereas
+    //     a regular network connection glitch might well be)...
+  }
+
+
+  /**
+   * Uploads the resources that have changed since the last synchronization to Beehive server.
+   * The input stream must be a zip compressed archive containing the changed resources and a
+   * {@link org.openremote.modeler.cache.ResourceManifest} of all resources, as created by
+   * {@link ResourceCache#openChangesReadStream()}. <p>
+   *
+   * Beehive applies the changes only if the resources missing from the archive match its
+   * current state. Otherwise, or if the Beehive server does not support incremental uploads,
+   * this method returns false and the caller should fall back to
+   * {@link #uploadResources uploading} all resources.
+   *
+   * @param changes       zip compressed byte stream containing the changed resources and the
+   *                      resource manifest
+   * @param currentUser   user to authenticate in Beehive
+   *
+   * @return  true if the changes were applied, false if all resources should be uploaded
+   *          instead
+   *
+   * @throws ConfigurationException
+   *            If the Beehive REST URL has been incorrectly configured. Will require
+   *            reconfiguration and re-deployment of the application.
+   *
+   * @throws NetworkException
+   *            If there's an I/O error on the upload stream or the Beehive server
+   *            returns an error status
+   */
+  @Override public boolean uploadResourceChanges(InputStream changes, User currentUser)
+      throws ConfigurationException, NetworkException
+  {
+    int status = postArchive(changes, "/changes", currentUser);
+
+    if (status == HttpURLConnection.HTTP_OK)
+    {
+      return true;
+    }
+
+    else if (status == HttpURLConnection.HTTP_CONFLICT)
+    {
+      serviceLog.info(
+          "Beehive resources differ from the last synchronized state, uploading all resources {0}",
+          printUser(currentUser)
+      );
+
+      return false;
+    }
+
+    else if (status == HttpURLConnection.HTTP_NOT_FOUND ||
+             status == HttpURLConnection.HTTP_BAD_METHOD)
+    {
+      serviceLog.info("Beehive does not support incremental resource upload, uploading all resources.");
+
+      return false;
+    }
+
+    throw new NetworkException(
+        "Failed to save resource changes to Beehive, status code: {0}", status
+    );
+  }
+
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+
+
+  /**
+   * Posts a resource archive to the account's resource archive URL in Beehive.
+   *
+   * @param archive       zip compressed resource archive
+   * @param path          path to append to the account's resource archive URL
+   * @param currentUser   user to authenticate in Beehive
+   *
+   * @return  HTTP status code of the response
+   *
+   * @throws ConfigurationException
+   *            If the Beehive REST URL has been incorrectly configured.
+   *
+   * @throws NetworkException
+   *            If there's an I/O error on the upload stream
+   */
+  private int postArchive(InputStream archive, String path, User currentUser)
+      throws ConfigurationException, NetworkException
   {
     final String ARCHIVE_NAME = "openremote.zip";
 
@@ -403,13 +529,12 @@ public class Beehive30API implements BeehiveService
 
     Account acct = currentUser.getAccount();
 
-    HttpClient httpClient = new DefaultHttpClient();
     HttpPost httpPost = new HttpPost();
 
     addHTTPAuthenticationHeader(httpPost, currentUser.getUsername(), currentUser.getPassword());
 
     String beehiveRootRestURL = config.getBeehiveRESTRootUrl();
-    String url = beehiveRootRestURL + "account/" + acct.getOid() + "/" + ARCHIVE_NAME;
+    String url = beehiveRootRestURL + "account/" + acct.getOid() + "/" + ARCHIVE_NAME + path;
 
     try
     {
@@ -430,11 +555,13 @@ public class Beehive30API implements BeehiveService
     entity.addPart("resource", resource);
     httpPost.setEntity(entity);
 
-    HttpResponse response;
+    BeehiveHttpClient.Response response;
 
     try
     {
-      response = httpClient.execute(httpPost);
+      response = BeehiveHttpClient.getInstance().execute(
+          path.length() == 0 ? UPLOAD_ENDPOINT : UPLOAD_ENDPOINT + path, httpPost
+      );
     }
 
     catch (IOException e)
@@ -445,24 +572,29 @@ public class Beehive30API implements BeehiveService
       );
     }
 
-    if (response.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK)
+    finally
     {
-       throw new NetworkException(
-           "Failed to save resources to Beehive, status code: {0}",
-           response.getStatusLine().getStatusCode()
-       );
-    }
-
-    // TODO :
-    //   - should probably check other return codes explicitly here too, such as
-    //     authentication errors (which is most likely not recoverable whereas
-    //     a regular network connection glitch might well be)...
-  }
-
+      try
+      {
+        archive.close();
+      }
 
+      catch (Throwable t)
+      {
+        serviceLog.warn("Unable to close resource archive stream : {0}", t, t.getMessage());
+      }
+    }
 
-  // Private Instance Methods ---------------------------------------------------------------------
+    try
+    {
+      return response.getStatusCode();
+    }
 
+    finally
+    {
+      response.close();
+    }
+  }
 
 
   /**
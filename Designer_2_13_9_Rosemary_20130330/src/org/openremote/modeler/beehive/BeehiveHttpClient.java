@@ -0,0 +1,506 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.beehive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.openremote.modeler.logging.LogFacade;
+
+/**
+ * Application-wide HTTP client for Beehive REST calls. <p>
+ *
+ * All requests share a single pool of persistent (keep-alive) connections so that consecutive
+ * calls to Beehive, such as those made when a user logs in or browses templates, do not each
+ * pay for a new TCP (and TLS) handshake. <p>
+ *
+ * Request and response bodies are streamed : callers read the response content through
+ * {@link Response#getContent()} and <b>must</b> {@link Response#close() close} each response
+ * to return its connection to the pool. The time from sending a request until its response
+ * is closed is recorded per endpoint, see {@link #getStatistics()}.
+ */
+public class BeehiveHttpClient
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Maximum number of pooled connections. Beehive is usually the only route so this is
+   * also the per route limit.
+   */
+  public final static int MAX_CONNECTIONS = 20;
+
+  /**
+   * Timeout for establishing a connection to Beehive, in milliseconds.
+   */
+  public final static int CONNECT_TIMEOUT = 10000;
+
+  /**
+   * Timeout for waiting data on an established connection, in milliseconds.
+   */
+  public final static int SOCKET_TIMEOUT = 60000;
+
+  /**
+   * Timeout for obtaining a connection from the pool, in milliseconds.
+   */
+  public final static long POOL_TIMEOUT = 30000;
+
+  /**
+   * Pooled connections that have been idle longer than this (in milliseconds) are closed
+   * rather than reused, in case the server side has already dropped them.
+   */
+  public final static long MAX_IDLE_TIME = 30000;
+
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * Logger for per request network performance.
+   */
+  private final static LogFacade perfLog =
+      LogFacade.getInstance(LogFacade.Category.BEEHIVE_NETWORK_PERFORMANCE);
+
+  /**
+   * The shared instance, created on first use.
+   */
+  private static BeehiveHttpClient instance = null;
+
+
+  /**
+   * Returns the application-wide Beehive HTTP client.
+   *
+   * @return  shared client instance
+   */
+  public static synchronized BeehiveHttpClient getInstance()
+  {
+    if (instance == null)
+    {
+      instance = new BeehiveHttpClient();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Closes all connections of the shared client, if it has been created. A subsequent call to
+   * {@link #getInstance()} creates a new client.
+   */
+  public static synchronized void shutdownInstance()
+  {
+    if (instance != null)
+    {
+      instance.shutdown();
+
+      instance = null;
+    }
+  }
+
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * Pooling connection manager shared by all requests of this client.
+   */
+  private ThreadSafeClientConnManager connectionManager;
+
+  /**
+   * The underlying HTTP client. DefaultHttpClient is thread-safe when used with a thread-safe
+   * connection manager.
+   */
+  private DefaultHttpClient httpClient;
+
+  /**
+   * Request statistics keyed by endpoint name.
+   */
+  private ConcurrentMap<String, EndpointStatistics> statistics =
+      new ConcurrentHashMap<String, EndpointStatistics>();
+
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Creates a new client with its own connection pool. Use {@link #getInstance()} to access
+   * the shared client.
+   */
+  BeehiveHttpClient()
+  {
+    HttpParams params = new BasicHttpParams();
+
+    HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+    HttpProtocolParams.setContentCharset(params, "UTF-8");
+
+    HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT);
+    HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT);
+
+    ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+    ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS));
+    ConnManagerParams.setTimeout(params, POOL_TIMEOUT);
+
+    SchemeRegistry schemes = new SchemeRegistry();
+    schemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+    schemes.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+    connectionManager = new ThreadSafeClientConnManager(params, schemes);
+    httpClient = new DefaultHttpClient(connectionManager, params);
+  }
+
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Executes a request using a pooled connection. The returned response must be closed once
+   * its content has been processed.
+   *
+   * @param endpoint    name of the Beehive REST endpoint the request is sent to, used to
+   *                    collect request statistics (for example "GET user/{name}/openremote.zip")
+   * @param request     the request to execute
+   *
+   * @return  the response
+   *
+   * @throws IOException
+   *            if the request fails
+   */
+  public Response execute(String endpoint, HttpUriRequest request) throws IOException
+  {
+    connectionManager.closeIdleConnections(MAX_IDLE_TIME, TimeUnit.MILLISECONDS);
+
+    long start = System.nanoTime();
+
+    try
+    {
+      return new Response(endpoint, request, httpClient.execute(request), start);
+    }
+
+    catch (IOException e)
+    {
+      record(endpoint, start, false);
+
+      throw e;
+    }
+
+    catch (RuntimeException e)
+    {
+      request.abort();
+
+      record(endpoint, start, false);
+
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the request statistics of one endpoint.
+   *
+   * @param endpoint    endpoint name as given to {@link #execute}
+   *
+   * @return  statistics, or null if no requests have been made to the endpoint
+   */
+  public EndpointStatistics getStatistics(String endpoint)
+  {
+    return statistics.get(endpoint);
+  }
+
+  /**
+   * @return  request statistics of all endpoints, keyed and sorted by endpoint name
+   */
+  public Map<String, EndpointStatistics> getStatistics()
+  {
+    return Collections.unmodifiableMap(new TreeMap<String, EndpointStatistics>(statistics));
+  }
+
+  /**
+   * @return  number of connections currently held in the pool, idle or in use
+   */
+  public int getConnectionsInPool()
+  {
+    return connectionManager.getConnectionsInPool();
+  }
+
+  /**
+   * Closes all pooled connections. This client can not be used after shutdown.
+   */
+  public void shutdown()
+  {
+    connectionManager.shutdown();
+  }
+
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  /**
+   * Records a completed request and logs it to the network performance log.
+   *
+   * @param endpoint    endpoint name
+   * @param start       request start time, as returned by {@link System#nanoTime()}
+   * @param success     false if the request failed with an I/O error or was aborted
+   */
+  private void record(String endpoint, long start, boolean success)
+  {
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    EndpointStatistics stats = statistics.get(endpoint);
+
+    if (stats == null)
+    {
+      EndpointStatistics created = new EndpointStatistics();
+
+      stats = statistics.putIfAbsent(endpoint, created);
+
+      if (stats == null)
+      {
+        stats = created;
+      }
+    }
+
+    stats.add(millis, success);
+
+    perfLog.debug(
+        "{0} : {1} in {2} ms (average {3} ms over {4} requests)",
+        endpoint, success ? "completed" : "failed", millis,
+        stats.getAverageTime(), stats.getRequestCount()
+    );
+  }
+
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * Response to a request executed with {@link BeehiveHttpClient#execute}. Holds a pooled
+   * connection until {@link #close() closed}.
+   */
+  public class Response
+  {
+    private String endpoint;
+    private HttpUriRequest request;
+    private HttpResponse response;
+    private long start;
+    private boolean closed = false;
+
+    private Response(String endpoint, HttpUriRequest request, HttpResponse response, long start)
+    {
+      this.endpoint = endpoint;
+      this.request = request;
+      this.response = response;
+      this.start = start;
+    }
+
+    /**
+     * @return  the underlying HTTP response
+     */
+    public HttpResponse getHttpResponse()
+    {
+      return response;
+    }
+
+    /**
+     * @return  HTTP status code of the response
+     */
+    public int getStatusCode()
+    {
+      return response.getStatusLine().getStatusCode();
+    }
+
+    /**
+     * @return  the response entity, or null if the response has no content
+     */
+    public HttpEntity getEntity()
+    {
+      return response.getEntity();
+    }
+
+    /**
+     * Returns a stream to the response content. The content is not buffered, it is read from
+     * the connection as the stream is consumed.
+     *
+     * @return  response content stream, or null if the response has no content
+     *
+     * @throws IOException
+     *            if the stream can not be opened
+     */
+    public InputStream getContent() throws IOException
+    {
+      HttpEntity entity = response.getEntity();
+
+      return (entity == null) ? null : entity.getContent();
+    }
+
+    /**
+     * Consumes any remaining response content and returns the connection to the pool. If the
+     * remaining content can not be read the connection is closed instead. Closing a response
+     * more than once has no effect.
+     */
+    public void close()
+    {
+      if (closed)
+      {
+        return;
+      }
+
+      closed = true;
+
+      boolean success = true;
+
+      try
+      {
+        HttpEntity entity = response.getEntity();
+
+        if (entity != null)
+        {
+          entity.consumeContent();
+        }
+      }
+
+      catch (IOException e)
+      {
+        request.abort();
+
+        success = false;
+      }
+
+      record(endpoint, start, success);
+    }
+
+    /**
+     * Discards the response without reading the remaining content. The connection is closed
+     * rather than returned to the pool.
+     */
+    public void abort()
+    {
+      if (closed)
+      {
+        return;
+      }
+
+      closed = true;
+
+      request.abort();
+
+      record(endpoint, start, false);
+    }
+  }
+
+
+  /**
+   * Request count and timing of a single Beehive REST endpoint.
+   */
+  public static class EndpointStatistics
+  {
+    private AtomicLong requests = new AtomicLong(0);
+    private AtomicLong failures = new AtomicLong(0);
+    private AtomicLong totalTime = new AtomicLong(0);
+    private AtomicLong maxTime = new AtomicLong(0);
+
+    private void add(long millis, boolean success)
+    {
+      requests.incrementAndGet();
+      totalTime.addAndGet(millis);
+
+      if (!success)
+      {
+        failures.incrementAndGet();
+      }
+
+      long max = maxTime.get();
+
+      while (millis > max && !maxTime.compareAndSet(max, millis))
+      {
+        max = maxTime.get();
+      }
+    }
+
+    /**
+     * @return  number of requests made to the endpoint
+     */
+    public long getRequestCount()
+    {
+      return requests.get();
+    }
+
+    /**
+     * @return  number of requests that failed with an I/O error or were aborted
+     */
+    public long getFailureCount()
+    {
+      return failures.get();
+    }
+
+    /**
+     * @return  total time of all requests in milliseconds
+     */
+    public long getTotalTime()
+    {
+      return totalTime.get();
+    }
+
+    /**
+     * @return  average request time in milliseconds
+     */
+    public long getAverageTime()
+    {
+      long count = requests.get();
+
+      return (count == 0) ? 0 : totalTime.get() / count;
+    }
+
+    /**
+     * @return  longest request time in milliseconds
+     */
+    public long getMaxTime()
+    {
+      return maxTime.get();
+    }
+
+    @Override public String toString()
+    {
+      return "requests: " + getRequestCount() + ", failures: " + getFailureCount() +
+             ", average: " + getAverageTime() + " ms, max: " + getMaxTime() + " ms";
+    }
+  }
+}
@@ -105,6 +105,32 @@ public interface BeehiveService
       throws ConfigurationException, NetworkException;
 
 
+  /**
+   * Uploads only the resources that have changed since the last synchronization to user's
+   * account in Beehive.
+   *
+   * @param   input      Input stream used for reading the changed resources. The concrete
+   *                     implementations of this method must specify the requirements
+   *                     for the data stream.
+   *
+   * @param currentUser  The user to authenticate in Beehive.
+   *
+   * @return  true if Beehive applied the changes, false if the changes could not be applied
+   *          to the account's current state in Beehive, in which case all resources should
+   *          be uploaded with {@link #uploadResources}
+   *
+   * @throws ConfigurationException
+   *                  If designer configuration error prevents the service from executing
+   *                  normally.
+   *
+   * @throws NetworkException
+   *                  If (possibly recoverable) network errors occured during the service
+   *                  operation.
+   */
+  boolean uploadResourceChanges(InputStream input, User currentUser)
+      throws ConfigurationException, NetworkException;
+
+
   // Nested Classes -------------------------------------------------------------------------------
 
 
@@ -0,0 +1,1559 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.openremote.modeler.domain.Absolute;
+import org.openremote.modeler.domain.Background;
+import org.openremote.modeler.domain.BusinessEntity;
+import org.openremote.modeler.domain.Cell;
+import org.openremote.modeler.domain.Group;
+import org.openremote.modeler.domain.GroupRef;
+import org.openremote.modeler.domain.Panel;
+import org.openremote.modeler.domain.RefedEntity;
+import org.openremote.modeler.domain.Screen;
+import org.openremote.modeler.domain.ScreenPair;
+import org.openremote.modeler.domain.ScreenPairRef;
+import org.openremote.modeler.domain.component.Gesture;
+import org.openremote.modeler.domain.component.ImageSource;
+import org.openremote.modeler.domain.component.UIComponent;
+import org.openremote.modeler.domain.component.UIGrid;
+import org.openremote.modeler.domain.component.UITabbar;
+import org.openremote.modeler.domain.component.UITabbarItem;
+import org.openremote.modeler.touchpanel.TouchPanelDefinition;
+
+/**
+ * Versioned file format for the designer UI state (the panel, group, screen and layout tree of
+ * an account), replacing the Java serialization of the complete panel collection in the legacy
+ * panels.obj file. <p>
+ *
+ * The file starts with a header containing the schema version, the max OID value and an index
+ * of the panels in the file. Each panel is stored as its own deflate compressed record which
+ * can be loaded independently of the others, so the panel list of an account is available
+ * without decoding any of the designs. <p>
+ *
+ * The panel tree down to screen layout (groups, screens, absolute positions, grids and cells)
+ * is written field by field by this implementation and versioned with {@link #SCHEMA_VERSION}.
+ * <p>
+ *
+ * <b>Limitation:</b> the objects placed in that tree -- UI components and gestures, touch panel
+ * definitions, tab bars, tab bar items and background image sources -- are still stored with
+ * Java serialization, in a single stream per panel record. They reference the device commands,
+ * macros, sensors, switches and sliders of the account either as entities or as DTOs, depending
+ * on the caller, and are written as they are. An incompatible change to one of these classes,
+ * such as a removed field or a changed serialVersionUID in UIButton or UISwitch, therefore
+ * still makes every panel containing such an object unreadable, and the legacy panels.obj file
+ * fails in the same way. This format only isolates changes to the panel, group, screen and
+ * layout classes. Incompatible changes to the serialized classes must come with a schema
+ * version increment and a reader that migrates the old class descriptors. <p>
+ *
+ * Object identity within a panel is preserved. Groups and screens appearing in more than one
+ * panel are matched by their OID when loaded through the same archive instance. <p>
+ *
+ * Instances are not thread-safe.
+ */
+public class DesignerStateArchive
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Name of the designer state file in the account's resource directory and archive.
+   */
+  public final static String FILE_NAME = "panels.state";
+
+  /**
+   * The schema version written by this implementation. Files with an older schema version
+   * must remain readable by later implementations.
+   */
+  public final static int SCHEMA_VERSION = 1;
+
+  /**
+   * Identifies the file format : 'ORDS' (OpenRemote Designer State).
+   */
+  private final static int MAGIC = 0x4F524453;
+
+  /**
+   * Character encoding of strings.
+   */
+  private final static String ENCODING = "UTF-8";
+
+  /**
+   * Written in place of an object handle for null references.
+   */
+  private final static int NULL_REFERENCE = -1;
+
+  /**
+   * Written in place of an object handle when the object definition follows in the stream.
+   */
+  private final static int DEFINITION = -2;
+
+  /**
+   * Written in place of an object handle for references to objects not stored in the same
+   * panel record. Followed by the OID of the referenced object.
+   */
+  private final static int EXTERNAL_REFERENCE = -3;
+
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * Writes the given panels to a designer state file. The file is written to a temporary
+   * file first and then moved in place of a previous state file.
+   *
+   * @param file      designer state file
+   * @param panels    panels to store
+   * @param maxOID    the max OID value of the designer state
+   *
+   * @throws IOException
+   *            if writing the file fails
+   */
+  public static void write(File file, Collection<Panel> panels, long maxOID) throws IOException
+  {
+    List<Record> records = new ArrayList<Record>(panels.size());
+
+    for (Panel panel : panels)
+    {
+      records.add(new RecordWriter().write(panel));
+    }
+
+    File temp = new File(file.getPath() + ".tmp");
+
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temp))
+    );
+
+    try
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(SCHEMA_VERSION);
+      out.writeLong(maxOID);
+      out.writeInt(panels.size());
+
+      Iterator<Record> recordIterator = records.iterator();
+
+      for (Panel panel : panels)
+      {
+        Record record = recordIterator.next();
+
+        out.writeLong(panel.getOid());
+        writeString(out, panel.getName());
+        out.writeInt(record.compressed.length);
+        out.writeInt(record.length);
+      }
+
+      for (Record record : records)
+      {
+        out.write(record.compressed);
+      }
+    }
+
+    finally
+    {
+      out.close();
+    }
+
+    if (file.exists() && !file.delete())
+    {
+      throw new IOException("Unable to replace designer state '" + file.getAbsolutePath() + "'.");
+    }
+
+    if (!temp.renameTo(file))
+    {
+      throw new IOException(
+          "Unable to move '" + temp.getAbsolutePath() + "' to '" + file.getAbsolutePath() + "'."
+      );
+    }
+  }
+
+  /**
+   * Opens a designer state file. Only the header and panel index are read, panels are loaded
+   * with {@link #loadPanel(int)} or {@link #loadPanels()}.
+   *
+   * @param file    designer state file
+   *
+   * @return  archive for loading the panels in the file
+   *
+   * @throws IOException
+   *            if the file cannot be read, is not a designer state file or has been written
+   *            with a newer schema version than this implementation supports
+   */
+  public static DesignerStateArchive open(File file) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+    try
+    {
+      if (raf.readInt() != MAGIC)
+      {
+        throw new IOException("'" + file.getAbsolutePath() + "' is not a designer state file.");
+      }
+
+      int version = raf.readInt();
+
+      if (version < 1 || version > SCHEMA_VERSION)
+      {
+        throw new IOException(
+            "Unsupported designer state schema version " + version + " in '" +
+            file.getAbsolutePath() + "' (supported up to version " + SCHEMA_VERSION + ")."
+        );
+      }
+
+      long maxOID = raf.readLong();
+      int count = raf.readInt();
+
+      if (count < 0)
+      {
+        throw new IOException("Corrupt designer state index in '" + file.getAbsolutePath() + "'.");
+      }
+
+      long[] oids = new long[count];
+      String[] names = new String[count];
+      int[] lengths = new int[count];
+      int[] uncompressedLengths = new int[count];
+
+      for (int index = 0; index < count; index++)
+      {
+        oids[index] = raf.readLong();
+        names[index] = readString(raf);
+        lengths[index] = raf.readInt();
+        uncompressedLengths[index] = raf.readInt();
+
+        if (lengths[index] < 0 || uncompressedLengths[index] < 0)
+        {
+          throw new IOException("Corrupt designer state index in '" + file.getAbsolutePath() + "'.");
+        }
+      }
+
+      long[] offsets = new long[count];
+      long offset = raf.getFilePointer();
+
+      for (int index = 0; index < count; index++)
+      {
+        offsets[index] = offset;
+        offset += lengths[index];
+      }
+
+      if (offset != raf.length())
+      {
+        throw new IOException(
+            "Designer state file '" + file.getAbsolutePath() + "' is truncated or corrupt."
+        );
+      }
+
+      return new DesignerStateArchive(
+          file, version, maxOID, oids, names, offsets, lengths, uncompressedLengths
+      );
+    }
+
+    finally
+    {
+      raf.close();
+    }
+  }
+
+
+  private static void writeString(DataOutputStream out, String value) throws IOException
+  {
+    if (value == null)
+    {
+      out.writeInt(NULL_REFERENCE);
+
+      return;
+    }
+
+    byte[] bytes = value.getBytes(ENCODING);
+
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInput in) throws IOException
+  {
+    int length = in.readInt();
+
+    if (length == NULL_REFERENCE)
+    {
+      return null;
+    }
+
+    if (length < 0)
+    {
+      throw new IOException("Corrupt designer state, negative string length.");
+    }
+
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+
+    return new String(bytes, ENCODING);
+  }
+
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private File file;
+
+  private int version;
+
+  private long maxOID;
+
+  private long[] panelOIDs;
+
+  private String[] panelNames;
+
+  private long[] offsets;
+
+  private int[] lengths;
+
+  private int[] uncompressedLengths;
+
+  /**
+   * Panels loaded so far, by index.
+   */
+  private Panel[] panels;
+
+  /**
+   * Panels, groups, screen pairs and screens loaded so far, by OID. Used to resolve references
+   * between panel records.
+   */
+  private Map<Long, BusinessEntity> entities = new HashMap<Long, BusinessEntity>();
+
+  /**
+   * References to objects in panel records that have not been loaded yet.
+   */
+  private List<Reference<?>> unresolvedReferences = new ArrayList<Reference<?>>();
+
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  private DesignerStateArchive(File file, int version, long maxOID, long[] panelOIDs,
+                               String[] panelNames, long[] offsets, int[] lengths,
+                               int[] uncompressedLengths)
+  {
+    this.file = file;
+    this.version = version;
+    this.maxOID = maxOID;
+    this.panelOIDs = panelOIDs;
+    this.panelNames = panelNames;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    this.uncompressedLengths = uncompressedLengths;
+    this.panels = new Panel[panelOIDs.length];
+  }
+
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * @return  schema version of the file
+   */
+  public int getSchemaVersion()
+  {
+    return version;
+  }
+
+  /**
+   * @return  the max OID value stored with the designer state
+   */
+  public long getMaxOID()
+  {
+    return maxOID;
+  }
+
+  /**
+   * @return  number of panels in the file
+   */
+  public int getPanelCount()
+  {
+    return panelOIDs.length;
+  }
+
+  /**
+   * @param index   panel index in the file
+   *
+   * @return  OID of the panel, available without loading the panel
+   */
+  public long getPanelOID(int index)
+  {
+    return panelOIDs[index];
+  }
+
+  /**
+   * @param index   panel index in the file
+   *
+   * @return  name of the panel, available without loading the panel
+   */
+  public String getPanelName(int index)
+  {
+    return panelNames[index];
+  }
+
+  /**
+   * Loads a single panel. Repeated calls with the same index return the same instance.
+   *
+   * @param index   panel index in the file
+   *
+   * @return  the panel with its groups, screens and components
+   *
+   * @throws IOException
+   *            if reading or decoding the panel record fails
+   */
+  public Panel loadPanel(int index) throws IOException
+  {
+    if (panels[index] != null)
+    {
+      return panels[index];
+    }
+
+    byte[] record = new byte[lengths[index]];
+
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+    try
+    {
+      raf.seek(offsets[index]);
+      raf.readFully(record);
+    }
+
+    finally
+    {
+      raf.close();
+    }
+
+    try
+    {
+      panels[index] = new RecordReader(this).read(inflate(record, uncompressedLengths[index]));
+    }
+
+    catch (IOException e)
+    {
+      throw new IOException(
+          "Failed to load panel '" + panelNames[index] + "' from designer state file '" +
+          file.getAbsolutePath() + "' : " + e.getMessage(), e
+      );
+    }
+
+    resolveReferences();
+
+    return panels[index];
+  }
+
+  /**
+   * Loads all panels in the file.
+   *
+   * @return  list of panels, in the order they were written
+   *
+   * @throws IOException
+   *            if reading or decoding any of the panel records fails, or references between
+   *            panels cannot be resolved
+   */
+  public List<Panel> loadPanels() throws IOException
+  {
+    List<Panel> list = new ArrayList<Panel>(panels.length);
+
+    for (int index = 0; index < panels.length; index++)
+    {
+      list.add(loadPanel(index));
+    }
+
+    if (!unresolvedReferences.isEmpty())
+    {
+      throw new IOException(
+          unresolvedReferences.size() + " object references in designer state file '" +
+          file.getAbsolutePath() + "' point to objects not stored in any panel."
+      );
+    }
+
+    return list;
+  }
+
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private byte[] inflate(byte[] record, int length) throws IOException
+  {
+    byte[] data = new byte[length];
+    Inflater inflater = new Inflater();
+
+    try
+    {
+      inflater.setInput(record);
+
+      int inflated = 0;
+
+      while (inflated < length && !inflater.finished())
+      {
+        int count = inflater.inflate(data, inflated, length - inflated);
+
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+        {
+          break;
+        }
+
+        inflated += count;
+      }
+
+      if (inflated != length || !inflater.finished())
+      {
+        throw new IOException("Corrupt panel record, length does not match the index.");
+      }
+
+      return data;
+    }
+
+    catch (DataFormatException e)
+    {
+      throw new IOException("Corrupt panel record : " + e.getMessage(), e);
+    }
+
+    finally
+    {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Returns a previously loaded object with the given OID, if it has the expected type.
+   */
+  private <T extends BusinessEntity> T lookup(long oid, Class<T> type)
+  {
+    if (oid == 0)
+    {
+      return null;
+    }
+
+    BusinessEntity entity = entities.get(oid);
+
+    return type.isInstance(entity) ? type.cast(entity) : null;
+  }
+
+  private void register(BusinessEntity entity)
+  {
+    if (entity.getOid() != 0 && !entities.containsKey(entity.getOid()))
+    {
+      entities.put(entity.getOid(), entity);
+    }
+  }
+
+  private void resolveReferences() throws IOException
+  {
+    Iterator<Reference<?>> iterator = unresolvedReferences.iterator();
+
+    while (iterator.hasNext())
+    {
+      Reference<?> reference = iterator.next();
+      BusinessEntity target = lookup(reference.oid, reference.type);
+
+      if (target != null)
+      {
+        reference.set(target);
+        iterator.remove();
+      }
+    }
+  }
+
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * Back-reference (parent panel, parent group, screen pair) of an object in the panel tree,
+   * set once all objects of the panel record have been decoded.
+   */
+  private abstract static class Reference<T extends BusinessEntity>
+  {
+    private Class<T> type;
+    private int handle;
+    private long oid;
+
+    private Reference(Class<T> type)
+    {
+      this.type = type;
+    }
+
+    private void set(BusinessEntity target)
+    {
+      resolve(type.cast(target));
+    }
+
+    abstract void resolve(T target);
+  }
+
+
+  /**
+   * Encoded panel record.
+   */
+  private static class Record
+  {
+    private byte[] compressed;
+    private int length;
+  }
+
+
+  /**
+   * Encodes a single panel record.
+   */
+  private static class RecordWriter
+  {
+    /**
+     * Handles of panel, group, screen pair and screen objects in this record.
+     */
+    private Map<Object, Integer> handles = new IdentityHashMap<Object, Integer>();
+
+    /**
+     * Objects whose definition has already been written.
+     */
+    private Set<Object> defined = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    /**
+     * Java serialized objects of this record, referred to by their index.
+     */
+    private List<Object> serializedObjects = new ArrayList<Object>();
+
+    private DataOutputStream out;
+
+
+    private Record write(Panel panel) throws IOException
+    {
+      assignHandles(panel);
+
+      ByteArrayOutputStream structure = new ByteArrayOutputStream(1024);
+      out = new DataOutputStream(structure);
+
+      out.writeInt(handles.size());
+      writePanel(panel);
+      out.flush();
+
+      ByteArrayOutputStream data = new ByteArrayOutputStream(structure.size() * 4);
+      DataOutputStream dataOut = new DataOutputStream(data);
+
+      dataOut.writeInt(structure.size());
+      structure.writeTo(dataOut);
+
+      ObjectOutputStream oos = new ObjectOutputStream(dataOut);
+      oos.writeObject(serializedObjects.toArray());
+      oos.close();
+
+      Record record = new Record();
+      record.length = data.size();
+      record.compressed = deflate(data.toByteArray());
+
+      return record;
+    }
+
+    private byte[] deflate(byte[] data)
+    {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+      byte[] buffer = new byte[4096];
+      Deflater deflater = new Deflater();
+
+      try
+      {
+        deflater.setInput(data);
+        deflater.finish();
+
+        while (!deflater.finished())
+        {
+          compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        return compressed.toByteArray();
+      }
+
+      finally
+      {
+        deflater.end();
+      }
+    }
+
+
+    private void assignHandles(Panel panel)
+    {
+      assignHandle(panel);
+
+      for (GroupRef groupRef : panel.getGroupRefs())
+      {
+        Group group = groupRef.getGroup();
+
+        if (group == null || !assignHandle(group))
+        {
+          continue;
+        }
+
+        for (ScreenPairRef screenRef : group.getScreenRefs())
+        {
+          ScreenPair screenPair = screenRef.getScreen();
+
+          if (screenPair != null && assignHandle(screenPair))
+          {
+            if (screenPair.getPortraitScreen() != null)
+            {
+              assignHandle(screenPair.getPortraitScreen());
+            }
+
+            if (screenPair.getLandscapeScreen() != null)
+            {
+              assignHandle(screenPair.getLandscapeScreen());
+            }
+          }
+        }
+      }
+    }
+
+    private boolean assignHandle(Object object)
+    {
+      if (handles.containsKey(object))
+      {
+        return false;
+      }
+
+      handles.put(object, handles.size());
+
+      return true;
+    }
+
+
+    private void writePanel(Panel panel) throws IOException
+    {
+      out.writeLong(panel.getOid());
+      writeString(out, panel.getName());
+      writeSerialized(panel.getTouchPanelDefinition());
+      writeSerialized(panel.getTabbar());
+      writeSerialized(panel.getTabbarItems());
+
+      out.writeInt(panel.getGroupRefs().size());
+
+      for (GroupRef groupRef : panel.getGroupRefs())
+      {
+        out.writeLong(groupRef.getOid());
+        writeGroup(groupRef.getGroup());
+        writeReference(groupRef.getPanel());
+      }
+    }
+
+    private void writeGroup(Group group) throws IOException
+    {
+      if (!beginDefinition(group))
+      {
+        return;
+      }
+
+      out.writeLong(group.getOid());
+      out.writeInt(group.getRefCount());
+      writeString(out, group.getName());
+      writeSerialized(group.getTabbar());
+      writeSerialized(group.getTabbarItems());
+      writeReference(group.getParentPanel());
+
+      out.writeInt(group.getScreenRefs().size());
+
+      for (ScreenPairRef screenRef : group.getScreenRefs())
+      {
+        out.writeLong(screenRef.getOid());
+        writeSerialized(screenRef.getTouchPanelDefinition());
+        writeScreenPair(screenRef.getScreen());
+        writeReference(screenRef.getGroup());
+      }
+    }
+
+    private void writeScreenPair(ScreenPair screenPair) throws IOException
+    {
+      if (!beginDefinition(screenPair))
+      {
+        return;
+      }
+
+      out.writeLong(screenPair.getOid());
+      out.writeInt(screenPair.getRefCount());
+      writeString(out, screenPair.getOrientation() == null ? null : screenPair.getOrientation().name());
+      writeSerialized(screenPair.getTouchPanelDefinition());
+      writeScreen(screenPair.getPortraitScreen());
+      writeScreen(screenPair.getLandscapeScreen());
+      writeReference(screenPair.getParentGroup());
+    }
+
+    private void writeScreen(Screen screen) throws IOException
+    {
+      if (!beginDefinition(screen))
+      {
+        return;
+      }
+
+      out.writeLong(screen.getOid());
+      writeString(out, screen.getName());
+      writeSerialized(screen.getTouchPanelDefinition());
+      writeBackground(screen.getBackground());
+
+      out.writeInt(screen.getAbsolutes().size());
+
+      for (Absolute absolute : screen.getAbsolutes())
+      {
+        out.writeLong(absolute.getOid());
+        out.writeInt(absolute.getLeft());
+        out.writeInt(absolute.getTop());
+        out.writeInt(absolute.getWidth());
+        out.writeInt(absolute.getHeight());
+        writeSerialized(absolute.getUiComponent());
+      }
+
+      out.writeInt(screen.getGrids().size());
+
+      for (UIGrid grid : screen.getGrids())
+      {
+        out.writeLong(grid.getOid());
+        out.writeInt(grid.getLeft());
+        out.writeInt(grid.getTop());
+        out.writeInt(grid.getWidth());
+        out.writeInt(grid.getHeight());
+        out.writeInt(grid.getRowCount());
+        out.writeInt(grid.getColumnCount());
+
+        out.writeInt(grid.getCells().size());
+
+        for (Cell cell : grid.getCells())
+        {
+          out.writeLong(cell.getOid());
+          out.writeInt(cell.getPosX());
+          out.writeInt(cell.getPosY());
+          out.writeInt(cell.getRowspan());
+          out.writeInt(cell.getColspan());
+          writeSerialized(cell.getUiComponent());
+        }
+      }
+
+      writeSerialized(screen.getGestures());
+      out.writeBoolean(screen.isHasTabbar());
+      out.writeBoolean(screen.isLandscape());
+      out.writeLong(screen.getInverseScreenId());
+      writeReference(screen.getScreenPair());
+    }
+
+    private void writeBackground(Background background) throws IOException
+    {
+      out.writeBoolean(background != null);
+
+      if (background == null)
+      {
+        return;
+      }
+
+      out.writeLong(background.getOid());
+      writeSerialized(background.getImageSource());
+      out.writeBoolean(background.isFillScreen());
+      out.writeBoolean(background.isAbsolute());
+      out.writeInt(background.getLeft());
+      out.writeInt(background.getTop());
+      out.writeInt(background.getWidth());
+      out.writeInt(background.getHeight());
+      writeString(out, background.getRelatedType() == null ? null : background.getRelatedType().name());
+    }
+
+
+    /**
+     * Writes a null marker, a handle for an object whose definition has already been written,
+     * or a definition marker and handle in which case the caller must write the definition.
+     *
+     * @return  true if the object definition must follow, false otherwise
+     */
+    private boolean beginDefinition(Object object) throws IOException
+    {
+      if (object == null)
+      {
+        out.writeInt(NULL_REFERENCE);
+
+        return false;
+      }
+
+      Integer handle = handles.get(object);
+
+      if (handle == null)
+      {
+        throw new IllegalStateException("No handle assigned to " + object);
+      }
+
+      if (!defined.add(object))
+      {
+        out.writeInt(handle);
+
+        return false;
+      }
+
+      out.writeInt(DEFINITION);
+      out.writeInt(handle);
+
+      return true;
+    }
+
+    private void writeReference(BusinessEntity entity) throws IOException
+    {
+      if (entity == null)
+      {
+        out.writeInt(NULL_REFERENCE);
+
+        return;
+      }
+
+      Integer handle = handles.get(entity);
+
+      if (handle != null)
+      {
+        out.writeInt(handle);
+      }
+
+      else
+      {
+        out.writeInt(EXTERNAL_REFERENCE);
+        out.writeLong(entity.getOid());
+      }
+    }
+
+    private void writeSerialized(Object object) throws IOException
+    {
+      if (object == null)
+      {
+        out.writeInt(NULL_REFERENCE);
+      }
+
+      else
+      {
+        out.writeInt(serializedObjects.size());
+        serializedObjects.add(object);
+      }
+    }
+  }
+
+
+  /**
+   * Decodes a single panel record.
+   */
+  private static class RecordReader
+  {
+    private DesignerStateArchive archive;
+
+    private ByteBuffer in;
+
+    private Object[] objects;
+
+    private Object[] serializedObjects;
+
+    private List<Reference<?>> references = new ArrayList<Reference<?>>();
+
+    private Map<RefedEntity, Integer> refCounts = new IdentityHashMap<RefedEntity, Integer>();
+
+
+    private RecordReader(DesignerStateArchive archive)
+    {
+      this.archive = archive;
+    }
+
+
+    private Panel read(byte[] data) throws IOException
+    {
+      in = ByteBuffer.wrap(data);
+
+      int structureLength = in.getInt();
+
+      if (structureLength < 0 || structureLength > data.length - 4)
+      {
+        throw new IOException("Corrupt panel record.");
+      }
+
+      in.limit(4 + structureLength);
+
+      try
+      {
+        ObjectInputStream ois = new ObjectInputStream(
+            new ByteArrayInputStream(data, 4 + structureLength, data.length - 4 - structureLength)
+        );
+
+        serializedObjects = (Object[])ois.readObject();
+      }
+
+      catch (ClassNotFoundException e)
+      {
+        throw new IOException("Class not found : " + e.getMessage(), e);
+      }
+
+      catch (InvalidClassException e)
+      {
+        throw new IOException(
+            "Stored " + e.classname + " objects are incompatible with the current class : " +
+            e.getMessage(), e
+        );
+      }
+
+      catch (ClassCastException e)
+      {
+        throw new IOException("Corrupt panel record : " + e.getMessage(), e);
+      }
+
+      int handleCount = in.getInt();
+
+      if (handleCount < 1)
+      {
+        throw new IOException("Corrupt panel record.");
+      }
+
+      objects = new Object[handleCount];
+
+      Panel panel;
+
+      try
+      {
+        panel = readPanel();
+      }
+
+      catch (BufferUnderflowException e)
+      {
+        throw new IOException("Corrupt panel record, unexpected end of structure data.", e);
+      }
+
+      for (Reference<?> reference : references)
+      {
+        resolve(reference);
+      }
+
+      for (Map.Entry<RefedEntity, Integer> entry : refCounts.entrySet())
+      {
+        restoreRefCount(entry.getKey(), entry.getValue());
+      }
+
+      return panel;
+    }
+
+
+    private Panel readPanel() throws IOException
+    {
+      Panel panel = new Panel();
+      objects[0] = panel;
+
+      panel.setOid(in.getLong());
+      panel.setName(readString());
+      panel.setTouchPanelDefinition(readSerialized(TouchPanelDefinition.class));
+      panel.setTabbar(readSerialized(UITabbar.class));
+      panel.setTabbarItems(readSerializedList(UITabbarItem.class));
+
+      int count = readCount();
+
+      for (int index = 0; index < count; index++)
+      {
+        final GroupRef groupRef = new GroupRef();
+
+        groupRef.setOid(in.getLong());
+
+        Group group = readGroup();
+
+        if (group != null)
+        {
+          groupRef.setGroup(group);
+        }
+
+        readReference(new Reference<Panel>(Panel.class)
+        {
+          @Override void resolve(Panel target)
+          {
+            groupRef.setPanel(target);
+          }
+        });
+
+        panel.getGroupRefs().add(groupRef);
+      }
+
+      archive.register(panel);
+
+      return panel;
+    }
+
+    private Group readGroup() throws IOException
+    {
+      int handle = in.getInt();
+
+      if (handle != DEFINITION)
+      {
+        return defined(handle, Group.class);
+      }
+
+      handle = readHandle();
+
+      final Group group = new Group();
+      objects[handle] = group;
+
+      group.setOid(in.getLong());
+      int refCount = in.getInt();
+      group.setName(readString());
+      group.setTabbar(readSerialized(UITabbar.class));
+      group.setTabbarItems(readSerializedList(UITabbarItem.class));
+
+      readReference(new Reference<Panel>(Panel.class)
+      {
+        @Override void resolve(Panel target)
+        {
+          group.setParentPanel(target);
+        }
+      });
+
+      int count = readCount();
+
+      for (int index = 0; index < count; index++)
+      {
+        final ScreenPairRef screenRef = new ScreenPairRef();
+
+        screenRef.setOid(in.getLong());
+        screenRef.setTouchPanelDefinition(readSerialized(TouchPanelDefinition.class));
+
+        ScreenPair screenPair = readScreenPair();
+
+        if (screenPair != null)
+        {
+          screenRef.setScreen(screenPair);
+        }
+
+        readReference(new Reference<Group>(Group.class)
+        {
+          @Override void resolve(Group target)
+          {
+            screenRef.setGroup(target);
+          }
+        });
+
+        group.getScreenRefs().add(screenRef);
+      }
+
+      return share(handle, group, Group.class, refCount);
+    }
+
+    private ScreenPair readScreenPair() throws IOException
+    {
+      int handle = in.getInt();
+
+      if (handle != DEFINITION)
+      {
+        return defined(handle, ScreenPair.class);
+      }
+
+      handle = readHandle();
+
+      final ScreenPair screenPair = new ScreenPair();
+      objects[handle] = screenPair;
+
+      screenPair.setOid(in.getLong());
+      int refCount = in.getInt();
+
+      String orientation = readString();
+      screenPair.setOrientation(orientation == null ? null : readEnum(ScreenPair.OrientationType.class, orientation));
+
+      // set before the screens, the setter would otherwise override the screen definitions...
+
+      screenPair.setTouchPanelDefinition(readSerialized(TouchPanelDefinition.class));
+
+      Screen portrait = readScreen();
+      Screen landscape = readScreen();
+
+      if (portrait != null)
+      {
+        screenPair.setPortraitScreen(portrait);
+      }
+
+      if (landscape != null)
+      {
+        screenPair.setLandscapeScreen(landscape);
+      }
+
+      readReference(new Reference<Group>(Group.class)
+      {
+        @Override void resolve(Group target)
+        {
+          screenPair.setParentGroup(target);
+        }
+      });
+
+      return share(handle, screenPair, ScreenPair.class, refCount);
+    }
+
+    private Screen readScreen() throws IOException
+    {
+      int handle = in.getInt();
+
+      if (handle != DEFINITION)
+      {
+        return defined(handle, Screen.class);
+      }
+
+      handle = readHandle();
+
+      final Screen screen = new Screen();
+      objects[handle] = screen;
+
+      screen.setOid(in.getLong());
+      screen.setName(readString());
+      screen.setTouchPanelDefinition(readSerialized(TouchPanelDefinition.class));
+      screen.setBackground(readBackground());
+
+      int count = readCount();
+
+      for (int index = 0; index < count; index++)
+      {
+        Absolute absolute = new Absolute(in.getLong());
+
+        absolute.setLeft(in.getInt());
+        absolute.setTop(in.getInt());
+        absolute.setWidth(in.getInt());
+        absolute.setHeight(in.getInt());
+        absolute.setUiComponent(readSerialized(UIComponent.class));
+
+        screen.getAbsolutes().add(absolute);
+      }
+
+      count = readCount();
+
+      for (int index = 0; index < count; index++)
+      {
+        UIGrid grid = new UIGrid();
+
+        grid.setOid(in.getLong());
+        grid.setLeft(in.getInt());
+        grid.setTop(in.getInt());
+        grid.setWidth(in.getInt());
+        grid.setHeight(in.getInt());
+        grid.setRowCount(in.getInt());
+        grid.setColumnCount(in.getInt());
+
+        int cellCount = readCount();
+
+        for (int cellIndex = 0; cellIndex < cellCount; cellIndex++)
+        {
+          Cell cell = new Cell(in.getLong());
+
+          cell.setPosX(in.getInt());
+          cell.setPosY(in.getInt());
+          cell.setRowspan(in.getInt());
+          cell.setColspan(in.getInt());
+          cell.setUiComponent(readSerialized(UIComponent.class));
+
+          grid.getCells().add(cell);
+        }
+
+        screen.getGrids().add(grid);
+      }
+
+      screen.setGestures(readSerializedList(Gesture.class));
+      screen.setHasTabbar(readBoolean());
+      screen.setLandscape(readBoolean());
+      screen.setInverseScreenId(in.getLong());
+
+      readReference(new Reference<ScreenPair>(ScreenPair.class)
+      {
+        @Override void resolve(ScreenPair target)
+        {
+          screen.setScreenPair(target);
+        }
+      });
+
+      return share(handle, screen, Screen.class, -1);
+    }
+
+    private Background readBackground() throws IOException
+    {
+      if (!readBoolean())
+      {
+        return null;
+      }
+
+      Background background = new Background();
+
+      background.setOid(in.getLong());
+      background.setImageSource(readSerialized(ImageSource.class));
+      background.setFillScreen(readBoolean());
+      background.setAbsolute(readBoolean());
+      background.setLeft(in.getInt());
+      background.setTop(in.getInt());
+      background.setWidth(in.getInt());
+      background.setHeight(in.getInt());
+
+      String relatedType = readString();
+
+      background.setRelatedType(
+          relatedType == null ? null : readEnum(Background.RelativeType.class, relatedType)
+      );
+
+      return background;
+    }
+
+
+    /**
+     * Replaces a decoded object with an instance of the same OID already loaded from another
+     * panel record, otherwise registers it for the following records.
+     */
+    private <T extends BusinessEntity> T share(int handle, T entity, Class<T> type, int refCount)
+    {
+      T existing = archive.lookup(entity.getOid(), type);
+
+      if (existing != null)
+      {
+        entity = existing;
+        objects[handle] = existing;
+      }
+
+      else
+      {
+        archive.register(entity);
+      }
+
+      if (entity instanceof RefedEntity)
+      {
+        refCounts.put((RefedEntity)entity, refCount);
+      }
+
+      return entity;
+    }
+
+    private <T> T defined(int handle, Class<T> type) throws IOException
+    {
+      if (handle == NULL_REFERENCE)
+      {
+        return null;
+      }
+
+      if (handle < 0 || handle >= objects.length || !type.isInstance(objects[handle]))
+      {
+        throw new IOException("Invalid " + type.getSimpleName() + " reference " + handle + ".");
+      }
+
+      return type.cast(objects[handle]);
+    }
+
+    private int readHandle() throws IOException
+    {
+      int handle = in.getInt();
+
+      if (handle < 0 || handle >= objects.length || objects[handle] != null)
+      {
+        throw new IOException("Invalid object handle " + handle + ".");
+      }
+
+      return handle;
+    }
+
+    private boolean readBoolean()
+    {
+      return in.get() != 0;
+    }
+
+    private String readString() throws IOException
+    {
+      int length = in.getInt();
+
+      if (length == NULL_REFERENCE)
+      {
+        return null;
+      }
+
+      if (length < 0 || length > in.remaining())
+      {
+        throw new IOException("Corrupt panel record, invalid string length " + length + ".");
+      }
+
+      String value = new String(in.array(), in.arrayOffset() + in.position(), length, ENCODING);
+      in.position(in.position() + length);
+
+      return value;
+    }
+
+    private int readCount() throws IOException
+    {
+      int count = in.getInt();
+
+      if (count < 0)
+      {
+        throw new IOException("Corrupt panel record, negative element count.");
+      }
+
+      return count;
+    }
+
+    private void readReference(Reference<?> reference) throws IOException
+    {
+      int handle = in.getInt();
+
+      if (handle == NULL_REFERENCE)
+      {
+        return;
+      }
+
+      if (handle == EXTERNAL_REFERENCE)
+      {
+        reference.handle = EXTERNAL_REFERENCE;
+        reference.oid = in.getLong();
+      }
+
+      else if (handle < 0 || handle >= objects.length)
+      {
+        throw new IOException("Invalid object reference " + handle + ".");
+      }
+
+      else
+      {
+        reference.handle = handle;
+      }
+
+      references.add(reference);
+    }
+
+    private void resolve(Reference<?> reference) throws IOException
+    {
+      if (reference.handle == EXTERNAL_REFERENCE)
+      {
+        BusinessEntity target = archive.lookup(reference.oid, reference.type);
+
+        if (target == null)
+        {
+          archive.unresolvedReferences.add(reference);
+        }
+
+        else
+        {
+          reference.set(target);
+        }
+
+        return;
+      }
+
+      Object target = objects[reference.handle];
+
+      if (!reference.type.isInstance(target))
+      {
+        throw new IOException(
+            "Invalid " + reference.type.getSimpleName() + " reference " + reference.handle + "."
+        );
+      }
+
+      reference.set((BusinessEntity)target);
+    }
+
+    private void restoreRefCount(RefedEntity entity, int refCount)
+    {
+      // setting group and screen pair references increments the counts, match the stored value...
+
+      while (entity.getRefCount() < refCount)
+      {
+        entity.ref();
+      }
+
+      while (entity.getRefCount() > refCount)
+      {
+        entity.releaseRef();
+      }
+    }
+
+    private <T> T readSerialized(Class<T> type) throws IOException
+    {
+      int index = in.getInt();
+
+      if (index == NULL_REFERENCE)
+      {
+        return null;
+      }
+
+      if (index < 0 || index >= serializedObjects.length)
+      {
+        throw new IOException("Invalid serialized object index " + index + ".");
+      }
+
+      Object object = serializedObjects[index];
+
+      if (!type.isInstance(object))
+      {
+        throw new IOException(
+            "Expected " + type.getName() + ", found " + object.getClass().getName() + "."
+        );
+      }
+
+      return type.cast(object);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> readSerializedList(Class<T> elementType) throws IOException
+    {
+      List<T> list = readSerialized(List.class);
+
+      if (list == null)
+      {
+        return null;
+      }
+
+      for (Object element : list)
+      {
+        if (element != null && !elementType.isInstance(element))
+        {
+          throw new IOException(
+              "Expected " + elementType.getName() + ", found " + element.getClass().getName() + "."
+          );
+        }
+      }
+
+      return list;
+    }
+
+    private <T extends Enum<T>> T readEnum(Class<T> type, String name) throws IOException
+    {
+      try
+      {
+        return Enum.valueOf(type, name);
+      }
+
+      catch (IllegalArgumentException e)
+      {
+        throw new IOException("Unknown " + type.getSimpleName() + " value '" + name + "'.", e);
+      }
+    }
+  }
+}
@@ -22,6 +22,7 @@ package org.openremote.modeler.cache;
 
 import java.io.File;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
@@ -29,13 +30,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.zip.ZipOutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
-import java.util.zip.ZipInputStream;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
 
@@ -50,7 +49,6 @@ import org.openremote.modeler.exception.NetworkException;
 import org.openremote.modeler.beehive.BeehiveService;
 import org.openremote.modeler.beehive.Beehive30API;
 import org.openremote.modeler.beehive.BeehiveServiceException;
-import org.openremote.modeler.utils.FileUtilsExt;
 
 /**
  * Resource cache based on local file system access. This class provides an API for handling
@@ -85,6 +83,23 @@ public class LocalFileCache implements ResourceCache<File>
    */
   private final static String DAILY_BACKUP_PREFIX = BEEHIVE_ARCHIVE_NAME + ".daily";
 
+  /**
+   * Name of the cache subdirectory where archives for upload and export are created.
+   */
+  private final static String EXPORT_DIR_NAME = "export";
+
+  /**
+   * The archive file name used in the export directory for resources that have changed
+   * since the last synchronization with Beehive.
+   */
+  private final static String CHANGES_ARCHIVE_NAME = "changes.zip";
+
+  /**
+   * The file name used in the export directory to store the manifest of the resources as
+   * they were last synchronized with Beehive.
+   */
+  private final static String SYNCED_MANIFEST_NAME = "beehive.manifest";
+
   /**
    * Convenience constant to indicate a hour granularity on system time (which is in milliseconds)
    */
@@ -149,6 +164,12 @@ public class LocalFileCache implements ResourceCache<File>
    */
   private File cacheFolder;
 
+  /**
+   * Manifest of the most recently created export or changes archive. Stored as the
+   * synchronized state once the archive has been successfully uploaded to Beehive.
+   */
+  private ResourceManifest exportManifest;
+
 
 
   // Constructors ---------------------------------------------------------------------------------
@@ -264,6 +285,93 @@ public class LocalFileCache implements ResourceCache<File>
   }
 
 
+  /**
+   * Creates a zip compressed file in this account's cache directory containing only the
+   * resources that are new or have changed since the last synchronization with Beehive, and
+   * returns a readable input stream from it. <p>
+   *
+   * The archive also includes a {@link ResourceManifest} of the complete current resource set
+   * as its {@link ResourceManifest#ARCHIVE_ENTRY_NAME} entry. Resources included in the manifest
+   * but not in the archive are expected to be unchanged on the Beehive side. If the last
+   * synchronized state is not known, all resources are included.
+   *
+   * @see #markSynchronized()
+   *
+   * @return  an input stream from a zip archive in the local filesystem cache containing
+   *          the changed account artifacts and the manifest of all artifacts
+   *
+   * @throws CacheOperationException
+   *            if any of the local file system operations fail
+   *
+   * @throws ConfigurationException
+   *            if there are security restrictions on any of the file access
+   */
+  @Override public InputStream openChangesReadStream()
+      throws CacheOperationException, ConfigurationException
+  {
+    Set<File> exportFiles = getExportFiles();
+
+    ResourceManifest manifest = createManifest(exportFiles);
+    Set<String> changedPaths = manifest.getChangedPaths(loadSyncedManifest());
+
+    Set<File> changedFiles = new HashSet<File>();
+
+    for (File file : exportFiles)
+    {
+      if (changedPaths.contains(ResourceManifest.toArchivePath(file)))
+      {
+        changedFiles.add(file);
+      }
+    }
+
+    File changesArchiveFile = createExportFile(CHANGES_ARCHIVE_NAME);
+
+    compress(changesArchiveFile, changedFiles, manifest);
+
+    exportManifest = manifest;
+
+    cacheLog.info(
+        "Created changes archive with {0} out of {1} resources (Account : {2}).",
+        changedFiles.size(), exportFiles.size(), account.getOid()
+    );
+
+    try
+    {
+      return new BufferedInputStream(new FileInputStream(changesArchiveFile));
+    }
+
+    catch (Throwable t)
+    {
+      throw new CacheOperationException(
+          "Failed to create input stream to changes archive ''{0}'' : {1}",
+          t, changesArchiveFile, t.getMessage()
+      );
+    }
+  }
+
+
+  /**
+   * Records the resources of the most recently created export or changes archive as the state
+   * synchronized with Beehive. Subsequent changes archives only include resources that differ
+   * from this state.
+   *
+   * @throws CacheOperationException
+   *            if storing the synchronized state fails
+   *
+   * @throws ConfigurationException
+   *            if there are security restrictions on any of the file access
+   */
+  @Override public void markSynchronized() throws CacheOperationException, ConfigurationException
+  {
+    if (exportManifest == null)
+    {
+      return;
+    }
+
+    saveSyncedManifest(exportManifest);
+  }
+
+
   /**
    * Synchronizes the local cached Beehive archive with the Beehive server. If there are
    * existing previous cached copies of the Beehive archive on the local system, those are backed
@@ -338,6 +446,10 @@ public class LocalFileCache implements ResourceCache<File>
     BeehiveService beehive = new Beehive30API(configuration);
 
 
+    // Cached state is about to be replaced, the previously synchronized state no longer applies...
+
+    deleteSyncedManifest();
+
     try
     {
       beehive.downloadResources(currentUser, this);
@@ -366,12 +478,17 @@ public class LocalFileCache implements ResourceCache<File>
 
     // If we made through all the error checking, we're ready to go. Unzip the archive and finish.
 
-    extract(getCachedArchive(), cacheFolder);
+    Set<File> extractedFiles = extract(getCachedArchive(), cacheFolder);
 
     cacheLog.info(
         "Extracted ''{0}'' to ''{1}''.",
         getCachedArchive().getAbsolutePath(), cacheFolder.getAbsolutePath()
     );
+
+
+    // Record what Beehive has, later saves can then upload only the resources that changed...
+
+    saveSyncedManifest(createManifest(extractedFiles));
   }
 
 
@@ -482,6 +599,7 @@ public class LocalFileCache implements ResourceCache<File>
    *   <li>panel.xml</li>
    *   <li>controller.xml</li>
    *   <li>panels.obj</li>
+   *   <li>panels.state</li>
    *   <li>lircd.conf</li>
    *   <li>image resources</li>
    * </ul>
@@ -498,11 +616,47 @@ public class LocalFileCache implements ResourceCache<File>
    */
   public File createExportArchive() throws CacheOperationException, ConfigurationException
   {
+    Set<File> exportFiles = getExportFiles();
+
+
+    // Create export archive file (do not overwrite the existing beehive archive)...
 
+    File targetFile = createExportFile(BEEHIVE_ARCHIVE_NAME);
+
+
+    // Zip it up...
+
+    exportManifest = createManifest(exportFiles);
+
+    compress(targetFile, exportFiles, null);
+
+
+    // Done.
+
+    return targetFile;
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+
+
+  /**
+   * Collects the relative paths of the files included in export and upload archives. See
+   * {@link #createExportArchive()} for the list of artifacts.
+   *
+   * @return  set of file paths relative to this account's cache folder
+   *
+   * @throws  ConfigurationException
+   *              if there are any security restrictions on file access
+   */
+  private Set<File> getExportFiles() throws ConfigurationException
+  {
     // File paths to add to export/upload archive...
     //   - panel.xml
     //   - controller.xml
     //   - panels.obj
+    //   - panels.state
     //   - lircd.conf
     //   - image resources
     //   - rules
@@ -510,6 +664,7 @@ public class LocalFileCache implements ResourceCache<File>
     File panelXMLFile = new File("panel.xml");
     File controllerXMLFile = new File("controller.xml");
     File panelsObjFile = new File("panels.obj");
+    File stateFile = new File(DesignerStateArchive.FILE_NAME);
     File lircdFile = new File("lircd.conf");
     File rulesFile = new File("rules", "modeler_rules.drl");
 
@@ -537,6 +692,22 @@ public class LocalFileCache implements ResourceCache<File>
       );
     }
 
+    try
+    {
+      if (new File(cacheFolder, stateFile.getPath()).exists())
+      {
+        exportFiles.add(stateFile);
+      }
+    }
+
+    catch (SecurityException e)
+    {
+      throw new ConfigurationException(
+          "Security manager denied read access to file ''{0}'' (Account : {1}) : {2}",
+          e, stateFile.getAbsolutePath(), account.getOid(), e.getMessage()
+      );
+    }
+
     try
     {
       if (new File(cacheFolder, rulesFile.getPath()).exists())
@@ -569,11 +740,29 @@ public class LocalFileCache implements ResourceCache<File>
       );
     }
 
+    return exportFiles;
+  }
 
-    // Create export archive file (do not overwrite the existing beehive archive)...
 
-    File exportDir = new File(cacheFolder, "export");
-    File targetFile = new File(exportDir, BEEHIVE_ARCHIVE_NAME);
+  /**
+   * Prepares a file in this account's export directory for writing an archive to, creating
+   * the directory if necessary. A previous file with the same name is left in place so that
+   * its entries can be reused when the new archive is compressed, see {@link #compress}.
+   *
+   * @param name    archive file name
+   *
+   * @return  reference to the archive file in the account's export directory
+   *
+   * @throws  CacheOperationException
+   *              if the directory cannot be created
+   *
+   * @throws  ConfigurationException
+   *              if there are any security restrictions on file access
+   */
+  private File createExportFile(String name) throws CacheOperationException, ConfigurationException
+  {
+    File exportDir = new File(cacheFolder, EXPORT_DIR_NAME);
+    File targetFile = new File(exportDir, name);
 
     try
     {
@@ -590,19 +779,6 @@ public class LocalFileCache implements ResourceCache<File>
           );
         }
       }
-
-      if (targetFile.exists())
-      {
-        boolean success = targetFile.delete();
-
-        if (!success)
-        {
-          throw new CacheOperationException(
-              "Cannot complete export archive operation. Unable to delete pre-existing " +
-              "file ''{0}'' (Account ID = {1})", targetFile.getAbsolutePath(), account.getOid()
-          );
-        }
-      }
     }
 
     catch (SecurityException e)
@@ -613,20 +789,170 @@ public class LocalFileCache implements ResourceCache<File>
       );
     }
 
+    return targetFile;
+  }
 
-    // Zip it up...
 
-    compress(targetFile, exportFiles);
+  /**
+   * Creates a manifest of the given cached files.
+   *
+   * @param files   file paths relative to this account's cache folder
+   *
+   * @return  manifest with the content hashes of the files
+   *
+   * @throws  CacheOperationException
+   *              if reading any of the files fails
+   *
+   * @throws  ConfigurationException
+   *              if there are any security restrictions on file access
+   */
+  private ResourceManifest createManifest(Set<File> files)
+      throws CacheOperationException, ConfigurationException
+  {
+    try
+    {
+      return ResourceManifest.create(cacheFolder, files);
+    }
 
+    catch (SecurityException e)
+    {
+      throw new ConfigurationException(
+          "Security manager denied read access to cached resources (Account : {0}) : {1}",
+          e, account.getOid(), e.getMessage()
+      );
+    }
 
-    // Done.
+    catch (IOException e)
+    {
+      throw new CacheOperationException(
+          "Unable to create resource manifest (Account : {0}) : {1}",
+          e, account.getOid(), e.getMessage()
+      );
+    }
+  }
 
-    return targetFile;
+  /**
+   * Returns the local filesystem path of the manifest describing the resources as they were
+   * last synchronized with Beehive.
+   *
+   * @return  manifest file path in this account's export directory
+   */
+  private File getSyncedManifestFile()
+  {
+    return new File(new File(cacheFolder, EXPORT_DIR_NAME), SYNCED_MANIFEST_NAME);
   }
 
+  /**
+   * Loads the manifest of the resources as they were last synchronized with Beehive.
+   *
+   * @return  the synchronized state, or an empty manifest if it is not known
+   *
+   * @throws  ConfigurationException
+   *              if there are any security restrictions on file access
+   */
+  private ResourceManifest loadSyncedManifest() throws ConfigurationException
+  {
+    File file = getSyncedManifestFile();
 
-  // Private Instance Methods ---------------------------------------------------------------------
+    try
+    {
+      return ResourceManifest.load(file);
+    }
+
+    catch (SecurityException e)
+    {
+      throw new ConfigurationException(
+          "Security manager denied read access to ''{0}'' : {1}",
+          e, file.getAbsolutePath(), e.getMessage()
+      );
+    }
+
+    catch (IOException e)
+    {
+      // Not fatal, all resources will be uploaded...
 
+      cacheLog.warn(
+          "Unable to read synchronized resource manifest ''{0}'', uploading all resources : {1}",
+          e, file.getAbsolutePath(), e.getMessage()
+      );
+
+      return new ResourceManifest();
+    }
+  }
+
+  /**
+   * Stores the manifest of the resources as they were last synchronized with Beehive.
+   *
+   * @param manifest    synchronized resource manifest
+   *
+   * @throws  CacheOperationException
+   *              if writing the manifest fails
+   *
+   * @throws  ConfigurationException
+   *              if there are any security restrictions on file access
+   */
+  private void saveSyncedManifest(ResourceManifest manifest)
+      throws CacheOperationException, ConfigurationException
+  {
+    File file = getSyncedManifestFile();
+
+    try
+    {
+      if (!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+      {
+        throw new CacheOperationException(
+            "Unable to create directory ''{0}'' (Account : {1}).",
+            file.getParent(), account.getOid()
+        );
+      }
+
+      manifest.save(file);
+    }
+
+    catch (SecurityException e)
+    {
+      throw new ConfigurationException(
+          "Security manager denied write access to ''{0}'' : {1}",
+          e, file.getAbsolutePath(), e.getMessage()
+      );
+    }
+
+    catch (IOException e)
+    {
+      throw new CacheOperationException(
+          "Unable to store synchronized resource manifest ''{0}'' : {1}",
+          e, file.getAbsolutePath(), e.getMessage()
+      );
+    }
+  }
+
+  /**
+   * Removes the manifest of the last synchronized state, causing the next changes archive
+   * to include all resources.
+   *
+   * @throws  ConfigurationException
+   *              if there are any security restrictions on file access
+   */
+  private void deleteSyncedManifest() throws ConfigurationException
+  {
+    File file = getSyncedManifestFile();
+
+    try
+    {
+      if (file.exists() && !file.delete())
+      {
+        cacheLog.warn("Unable to delete synchronized resource manifest ''{0}''.", file.getAbsolutePath());
+      }
+    }
+
+    catch (SecurityException e)
+    {
+      throw new ConfigurationException(
+          "Security manager denied write access to ''{0}'' : {1}",
+          e, file.getAbsolutePath(), e.getMessage()
+      );
+    }
+  }
 
 
   private void validateArchive(File tempArchive)
@@ -952,31 +1278,15 @@ public class LocalFileCache implements ResourceCache<File>
 
 
     // Now make the actual copy of existing Beehive archive into cache backups. Copy to a
-    // temp file first in case of errors (such as out-of-disk-space) might occur.
+    // temp file first in case of errors (such as out-of-disk-space) might occur. The copy
+    // is made with file channel transfers so the archive is not passed through Java buffers.
 
     File beehiveArchive = getCachedArchive();
     File tempBackupArchive = new File(cacheFolder, BEEHIVE_ARCHIVE_NAME + ".tmp");
 
-    BufferedInputStream archiveReader = null;
-    BufferedOutputStream tempBackupWriter = null;
-
     try
     {
-      archiveReader = new BufferedInputStream(new FileInputStream(beehiveArchive));
-      tempBackupWriter = new BufferedOutputStream(new FileOutputStream(tempBackupArchive));
-
-      int len, bytecount = 0;
-      final int BUFFER_SIZE = 4096;
-      byte[] buffer = new byte[BUFFER_SIZE];
-
-      while ((len = archiveReader.read(buffer, 0, BUFFER_SIZE )) != -1)
-      {
-        tempBackupWriter.write(buffer, 0, len);
-
-        bytecount += len;
-      }
-
-      tempBackupWriter.flush();
+      long bytecount = ZipArchiver.copy(beehiveArchive, tempBackupArchive);
 
       long originalFileSize = beehiveArchive.length();
 
@@ -1001,7 +1311,7 @@ public class LocalFileCache implements ResourceCache<File>
     {
       throw new CacheOperationException(
           "Files required for copying a backup of Beehive archive could not be found, opened " +
-          "or created : {1}", e, e.getMessage()
+          "or created : {0}", e, e.getMessage()
       );
     }
 
@@ -1012,41 +1322,6 @@ public class LocalFileCache implements ResourceCache<File>
       );
     }
 
-    finally
-    {
-      if (archiveReader != null)
-      {
-        try
-        {
-          archiveReader.close();
-        }
-
-        catch (Throwable t)
-        {
-          cacheLog.warn(
-              "Failed to close stream to ''{0}'' : {1}",
-              t, beehiveArchive.getAbsolutePath(), t.getMessage()
-          );
-        }
-      }
-
-      if (tempBackupWriter != null)
-      {
-        try
-        {
-          tempBackupWriter.close();
-        }
-
-        catch (Throwable t)
-        {
-          cacheLog.warn(
-              "Failed to close stream to ''{0}'' : {1}",
-              t, tempBackupArchive.getAbsolutePath(), t.getMessage()
-          );
-        }
-      }
-    }
-
 
     validateArchive(tempBackupArchive);
 
@@ -1237,6 +1512,8 @@ public class LocalFileCache implements ResourceCache<File>
    * @param sourceArchive     file path to source archive in the local filesystem.
    * @param targetDirectory   file path to target directory where to extract the archive
    *
+   * @return  relative paths of the extracted files
+   *
    * @throws CacheOperationException
    *            if any file I/O errors occured during the extract operation
    *
@@ -1244,134 +1521,12 @@ public class LocalFileCache implements ResourceCache<File>
    *            if security manager has imposed access restrictions to the required files or
    *            directories
    */
-  private void extract(File sourceArchive, File targetDirectory) throws CacheOperationException,
-                                                                        ConfigurationException
+  private Set<File> extract(File sourceArchive, File targetDirectory)
+      throws CacheOperationException, ConfigurationException
   {
-    ZipInputStream archiveInput = null;
-    ZipEntry zipEntry;
-
     try
     {
-      archiveInput = new ZipInputStream(new BufferedInputStream(new FileInputStream(sourceArchive)));
-
-      while ((zipEntry = archiveInput.getNextEntry()) != null)
-      {
-        if (zipEntry.isDirectory())
-        {
-          // Do nothing -- relevant subdirectories will be created when handling the node files...
-
-          continue;
-        }
-
-        File extractFile = new File(targetDirectory, zipEntry.getName());
-        BufferedOutputStream extractOutput = null;
-
-        try
-        {
-          FileUtilsExt.deleteQuietly(extractFile); // TODO : don't be quiet
-
-          // create parent directories if necessary...
-
-          if (!extractFile.getParentFile().exists())
-          {
-            boolean success = extractFile.getParentFile().mkdirs();
-
-            if (!success)
-            {
-              throw new CacheOperationException(
-                  "Unable to create cache folder directories ''{0}''. Reason unknown.",
-                  extractFile.getParent()
-              );
-            }
-          }
-
-          extractOutput = new BufferedOutputStream(new FileOutputStream(extractFile));
-
-          int len, bytecount = 0;
-          byte[] buffer = new byte[4096];
-
-          while ((len = archiveInput.read(buffer)) != -1)
-          {
-            try
-            {
-              extractOutput.write(buffer, 0, len);
-
-              bytecount += len;
-            }
-
-            catch (IOException e)
-            {
-              throw new CacheOperationException(
-                  "Error writing to ''{0}'' : {1}",
-                  e, extractFile.getAbsolutePath(), e.getMessage()
-              );
-            }
-          }
-
-          cacheLog.debug(
-              "Wrote {0} bytes to ''{1}''...", bytecount, extractFile.getAbsolutePath()
-          );
-        }
-
-        catch (SecurityException e)
-        {
-          throw new ConfigurationException(
-              "Security manager has denied access to ''{0}'' : {1}",
-              e, extractFile.getAbsolutePath(), e.getMessage()
-          );
-        }
-
-        catch (FileNotFoundException e)
-        {
-          throw new CacheOperationException(
-              "Could not create file ''{0}'' : {1}",
-              e, extractFile.getAbsolutePath(), e.getMessage()
-          );
-        }
-
-        catch (IOException e)
-        {
-          throw new CacheOperationException(
-              "Error reading zip entry ''{0}'' from ''{1}'' : {2}",
-              e, zipEntry.getName(), sourceArchive.getAbsolutePath(), e.getMessage()
-          );
-        }
-
-        finally
-        {
-          if (extractOutput != null)
-          {
-            try
-            {
-              extractOutput.close();
-            }
-
-            catch (Throwable t)
-            {
-              cacheLog.error(
-                  "Could not close extracted file ''{0}'' : {1}",
-                  t, extractFile.getAbsolutePath(), t.getMessage()
-              );
-            }
-          }
-
-          if (archiveInput != null)
-          {
-            try
-            {
-              archiveInput.closeEntry();
-            }
-
-            catch (Throwable t)
-            {
-              cacheLog.warn(
-                  "Could not close zip entry ''{0}'' in archive ''{1}'' : {2}",
-                  t, zipEntry.getName(), t.getMessage()
-              );
-            }
-          }
-        }
-      }
+      return ZipArchiver.extract(sourceArchive, targetDirectory);
     }
 
     catch (SecurityException e)
@@ -1382,53 +1537,33 @@ public class LocalFileCache implements ResourceCache<File>
       );
     }
 
-    catch (FileNotFoundException e)
-    {
-      throw new CacheOperationException(
-          "Archive ''{0}'' cannot be opened for reading : {1}",
-          e, sourceArchive.getAbsolutePath(), e.getMessage()
-      );
-    }
-
     catch (IOException e)
     {
       throw new CacheOperationException(
-          "Error reading archive ''{0}'' : {1}",
-          e, sourceArchive.getAbsolutePath(), e.getMessage()
+          "Error extracting archive ''{0}'' to ''{1}'' : {2}",
+          e, sourceArchive.getAbsolutePath(), targetDirectory.getAbsolutePath(), e.getMessage()
       );
     }
-
-    finally
-    {
-      try
-      {
-        if (archiveInput != null)
-        {
-          archiveInput.close();
-        }
-      }
-
-      catch (Throwable t)
-      {
-        cacheLog.error(
-            "Error closing input stream to archive ''{0}'' : {1}",
-            t, sourceArchive.getAbsolutePath(), t.getMessage()
-        );
-      }
-    }
   }
 
 
   /**
    * Compresses a set of files into a target zip archive. The file instances should be relative
    * paths used to structure the archive into directories. The relative paths will be resolved
-   * to actual file paths in the current account's file cache.
+   * to actual file paths in the current account's file cache. <p>
+   *
+   * The archive is written to a temporary file first, which then replaces the target. Entries
+   * are compressed in parallel by {@link ZipArchiver}, and files that are unchanged compared to
+   * the previous target archive or the cached Beehive archive are copied from those archives
+   * without compressing them again.
    *
    * @param target    Target file path where the zip archive will be stored.
    * @param files     Set of <b>relative</b> file paths to include in the zip archive. The file
    *                  paths should be set to match the expected directory structure in the final
    *                  archive (therefore should not reflect the absolute file paths expected to
    *                  be included in the archive).
+   * @param manifest  Resource manifest to add as {@link ResourceManifest#ARCHIVE_ENTRY_NAME}
+   *                  entry, or null to not include a manifest.
    *
    * @throws CacheOperationException
    *            if any of the zip file operations fail
@@ -1437,189 +1572,105 @@ public class LocalFileCache implements ResourceCache<File>
    *            if there are any security restrictions about reading the set of included files
    *            or writing the target zip archive file
    */
-  private void compress(File target, Set<File> files) throws CacheOperationException,
-                                                             ConfigurationException
+  private void compress(File target, Set<File> files, ResourceManifest manifest)
+      throws CacheOperationException, ConfigurationException
   {
-    ZipOutputStream zipOutput = null;
+    File tempTarget = new File(target.getPath() + ".tmp");
 
     try
     {
-      zipOutput = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
-
       for (File file : files)
       {
-        BufferedInputStream fileInput = null;
-
         // translate the relative zip archive directory path to existing user cache absolute path...
 
         File cachePathName = new File(cacheFolder, file.getPath());
 
-        try
+        if (!cachePathName.exists())
         {
-          if (!cachePathName.exists())
-          {
-            throw new CacheOperationException(
-                "Expected to add file ''{0}'' to export archive ''{1}'' (Account : {2}) but it " +
-                "has gone missing (cause unknown). This can indicate implementation or deployment " +
-                "error. Aborting export operation as a safety precaution.",
-                cachePathName.getPath(), target.getAbsolutePath(), account.getOid()
-            );
-          }
-
-          fileInput = new BufferedInputStream(new FileInputStream(cachePathName));
-
-          ZipEntry entry = new ZipEntry(file.getPath());
-
-          entry.setSize(cachePathName.length());
-          entry.setTime(cachePathName.lastModified());
-
-          zipOutput.putNextEntry(entry);
-
-          cacheLog.debug("Added new export zip entry ''{0}''.", file.getPath());
-
-          int count, total = 0;
-          final int BUFFER_SIZE = 2048;
-          byte[] data = new byte[BUFFER_SIZE];
-
-          while ((count = fileInput.read(data, 0, BUFFER_SIZE)) != -1)
-          {
-            zipOutput.write(data, 0, count);
-
-            total += count;
-          }
-
-          zipOutput.flush();
-
-          // Sanity check...
-
-          if (total != cachePathName.length())
-          {
-            throw new CacheOperationException(
-                "Only wrote {0} out of {1} bytes when archiving file ''{2}'' (Account : {3}). " +
-                "This could have occured either due implementation error or file I/O error. " +
-                "Aborting archive operation to prevent a potentially corrupt export archive to " +
-                "be created.", total, cachePathName.length(), cachePathName.getPath(), account.getOid()
-            );
-          }
-
-          else
-          {
-            cacheLog.debug(
-                "Wrote {0} out of {1} bytes to zip entry ''{2}''",
-                total, cachePathName.length(), file.getPath()
-            );
-          }
+          throw new CacheOperationException(
+              "Expected to add file ''{0}'' to export archive ''{1}'' (Account : {2}) but it " +
+              "has gone missing (cause unknown). This can indicate implementation or deployment " +
+              "error. Aborting export operation as a safety precaution.",
+              cachePathName.getPath(), target.getAbsolutePath(), account.getOid()
+          );
         }
+      }
 
-        catch (SecurityException e)
-        {
-          // we've messed up deployment... quite likely unrecoverable...
+      Map<String, byte[]> extraEntries = new LinkedHashMap<String, byte[]>();
 
-          throw new ConfigurationException(
-              "Security manager has denied r/w access when attempting to read file ''{0}'' and " +
-              "write it to archive ''{1}'' (Account : {2}) : {3}",
-              e, cachePathName.getPath(), target, account.getOid(), e.getMessage()
-          );
-        }
+      if (manifest != null)
+      {
+        ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+        manifest.write(manifestBytes);
 
-        catch (IllegalArgumentException e)
-        {
-          // This may occur if we overrun some fixed size limits in ZIP format...
+        extraEntries.put(ResourceManifest.ARCHIVE_ENTRY_NAME, manifestBytes.toByteArray());
+      }
 
-          throw new CacheOperationException(
-              "Error creating ZIP archive for account ID = {0} : {1}",
-              e, account.getOid(), e.getMessage()
-          );
-        }
 
-        catch (FileNotFoundException e)
-        {
-          throw new CacheOperationException(
-              "Attempted to include file ''{0}'' in export archive but it has gone missing " +
-              "(Account : {1}). Possible implementation error in local file cache. Aborting  " +
-              "export operation as a precaution ({2})",
-              e, cachePathName.getPath(), account.getOid(), e.getMessage()
-          );
-        }
+      // Unchanged files don't need to be compressed again if they are found in the previous
+      // archive with the same name, the export archive or the archive downloaded from Beehive...
 
-        catch (ZipException e)
-        {
-          throw new CacheOperationException(
-              "Error writing export archive for account ID = {0} : {1}",
-              e, account.getOid(), e.getMessage()
-          );
-        }
+      ZipArchiver archiver = new ZipArchiver(cacheFolder);
+      File exportArchive = new File(target.getParentFile(), BEEHIVE_ARCHIVE_NAME);
 
-        catch (IOException e)
-        {
-          throw new CacheOperationException(
-              "I/O error while creating export archive for account ID = {0}. " +
-              "Operation aborted ({1})", e, account.getOid(), e.getMessage()
-          );
-        }
+      archiver.reuseEntriesFrom(target);
 
-        finally
-        {
-          if (zipOutput != null)
-          {
-            try
-            {
-              zipOutput.closeEntry();
-            }
-
-            catch (Throwable t)
-            {
-              cacheLog.warn(
-                  "Unable to close zip entry for file ''{0}'' in export archive ''{1}'' " +
-                  "(Account : {2}) : {3}.",
-                  t, file.getPath(), target.getAbsolutePath(), account.getOid(), t.getMessage()
-              );
-            }
-          }
-
-          if (fileInput != null)
-          {
-            try
-            {
-              fileInput.close();
-            }
-
-            catch (Throwable t)
-            {
-              cacheLog.warn(
-                  "Failed to close input stream from file ''{0}'' being added " +
-                  "to export archive (Account : {1}) : {2}", t, cachePathName.getPath(), account.getOid(), t.getMessage()
-              );
-            }
-          }
-        }
+      if (!exportArchive.equals(target))
+      {
+        archiver.reuseEntriesFrom(exportArchive);
+      }
+
+      archiver.reuseEntriesFrom(getCachedArchive());
+
+      archiver.compress(tempTarget, files, extraEntries);
+
+      cacheLog.debug(
+          "Created archive ''{0}'' with {1} compressed and {2} reused entries (Account : {3}).",
+          target.getAbsolutePath(), archiver.getCompressedEntryCount(),
+          archiver.getReusedEntryCount(), account.getOid()
+      );
+
+      if (target.exists() && !target.delete())
+      {
+        throw new CacheOperationException(
+            "Cannot complete export archive operation. Unable to delete pre-existing " +
+            "file ''{0}'' (Account ID = {1})", target.getAbsolutePath(), account.getOid()
+        );
+      }
+
+      if (!tempTarget.renameTo(target))
+      {
+        throw new CacheOperationException(
+            "Cannot complete export archive operation. Unable to move ''{0}'' to ''{1}'' " +
+            "(Account ID = {2})", tempTarget.getAbsolutePath(), target.getAbsolutePath(),
+            account.getOid()
+        );
       }
     }
 
-    catch (FileNotFoundException e)
+    catch (SecurityException e)
+    {
+      // we've messed up deployment... quite likely unrecoverable...
+
+      throw new ConfigurationException(
+          "Security manager has denied r/w access when creating archive ''{0}'' " +
+          "(Account : {1}) : {2}", e, target, account.getOid(), e.getMessage()
+      );
+    }
+
+    catch (IOException e)
     {
       throw new CacheOperationException(
-          "Unable to create target export archive ''{0}'' for account {1) : {2}",
-          e, target, account.getOid(), e.getMessage()
+          "I/O error while creating export archive for account ID = {0}. " +
+          "Operation aborted ({1})", e, account.getOid(), e.getMessage()
       );
     }
 
     finally
     {
-      try
-      {
-        if (zipOutput != null)
-        {
-          zipOutput.close();
-        }
-      }
-
-      catch (Throwable t)
+      if (tempTarget.exists() && !tempTarget.delete())
       {
-        cacheLog.warn(
-            "Failed to close the stream to export archive ''{0}'' : {1}.", 
-            t, target, t.getMessage()
-        );
+        cacheLog.warn("Unable to delete temporary archive ''{0}''.", tempTarget.getAbsolutePath());
       }
     }
   }
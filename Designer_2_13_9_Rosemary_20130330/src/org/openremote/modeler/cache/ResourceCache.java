@@ -64,6 +64,43 @@ public interface ResourceCache<T>
    */
   InputStream openReadStream() throws CacheOperationException, ConfigurationException;
 
+  /**
+   * Returns an open stream from cache for reading a zip compressed archive that contains only
+   * the account artifacts which have changed since the cache state was last synchronized with
+   * Beehive, together with a manifest of all current artifacts. <p>
+   *
+   * Once the archive has been successfully uploaded, the caller should invoke
+   * {@link #markSynchronized()} so that later archives are computed against the new state.
+   *
+   * @see ResourceManifest
+   *
+   * @return    an open, ready-to-be-read, input stream from cache in zip compressed format
+   *            containing the changed artifacts and the manifest of all artifacts
+   *
+   * @throws CacheOperationException
+   *            If there's an error that is specific to the particular resource cache
+   *            implementation.
+   *
+   * @throws ConfigurationException
+   *            If there's a misconfiguration of the designer that prevents the cache
+   *            from operating correctly.
+   */
+  InputStream openChangesReadStream() throws CacheOperationException, ConfigurationException;
+
+  /**
+   * Records the artifacts of the archive most recently opened with {@link #openReadStream()}
+   * or {@link #openChangesReadStream()} as the state that has been synchronized with Beehive.
+   *
+   * @throws CacheOperationException
+   *            If there's an error that is specific to the particular resource cache
+   *            implementation.
+   *
+   * @throws ConfigurationException
+   *            If there's a misconfiguration of the designer that prevents the cache
+   *            from operating correctly.
+   */
+  void markSynchronized() throws CacheOperationException, ConfigurationException;
+
   /**
    * Opens a stream for writing a zip compressed archive into the cache containing
    * account resource files. <p>
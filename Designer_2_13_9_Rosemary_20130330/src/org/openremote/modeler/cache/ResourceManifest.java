@@ -0,0 +1,344 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Lists the files of an account's resource archive together with a SHA-1 hash of their
+ * content. <p>
+ *
+ * Manifests are used to upload only the resources that have changed since the last save to
+ * Beehive. The changes archive includes the manifest of the complete resource set as its
+ * {@link #ARCHIVE_ENTRY_NAME} entry, which lets Beehive verify that its own state matches the
+ * one the changes were computed against before applying them. <p>
+ *
+ * The serialized format is one UTF-8 encoded line per file, containing the hexadecimal hash
+ * and the archive path separated by a single space.
+ */
+public class ResourceManifest
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Name of the manifest entry in a changes archive uploaded to Beehive.
+   */
+  public final static String ARCHIVE_ENTRY_NAME = "openremote.manifest";
+
+  /**
+   * Character encoding of serialized manifests.
+   */
+  private final static String ENCODING = "UTF-8";
+
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * Creates a manifest of the given files.
+   *
+   * @param baseDir   directory the file paths are relative to
+   * @param files     <b>relative</b> file paths, matching the paths used in the resource archive
+   *
+   * @return  new manifest
+   *
+   * @throws IOException
+   *            if reading any of the files fails
+   */
+  public static ResourceManifest create(File baseDir, Set<File> files) throws IOException
+  {
+    ResourceManifest manifest = new ResourceManifest();
+
+    for (File file : files)
+    {
+      manifest.entries.put(toArchivePath(file), hash(new File(baseDir, file.getPath())));
+    }
+
+    return manifest;
+  }
+
+  /**
+   * Loads a manifest previously stored with {@link #save}.
+   *
+   * @param file    manifest file
+   *
+   * @return  the stored manifest, or an empty manifest if the file does not exist
+   *
+   * @throws IOException
+   *            if reading the file fails
+   */
+  public static ResourceManifest load(File file) throws IOException
+  {
+    if (!file.exists())
+    {
+      return new ResourceManifest();
+    }
+
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+    try
+    {
+      return read(in);
+    }
+
+    finally
+    {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads a serialized manifest from the given stream. The stream is not closed.
+   *
+   * @param in    stream to read from
+   *
+   * @return  manifest
+   *
+   * @throws IOException
+   *            if reading the stream fails or it does not contain a valid manifest
+   */
+  public static ResourceManifest read(InputStream in) throws IOException
+  {
+    ResourceManifest manifest = new ResourceManifest();
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, ENCODING));
+    String line;
+
+    while ((line = reader.readLine()) != null)
+    {
+      if (line.length() == 0)
+      {
+        continue;
+      }
+
+      int separator = line.indexOf(' ');
+
+      if (separator <= 0 || separator == line.length() - 1)
+      {
+        throw new IOException("Invalid manifest entry : '" + line + "'");
+      }
+
+      manifest.entries.put(line.substring(separator + 1), line.substring(0, separator));
+    }
+
+    return manifest;
+  }
+
+  /**
+   * Returns a hexadecimal SHA-1 hash of a file's content.
+   *
+   * @param file    file to hash
+   *
+   * @return  hash string
+   *
+   * @throws IOException
+   *            if reading the file fails
+   */
+  public static String hash(File file) throws IOException
+  {
+    MessageDigest digest;
+
+    try
+    {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new Error("SHA-1 is a required message digest algorithm on all Java platforms.", e);
+    }
+
+    InputStream in = new FileInputStream(file);
+
+    try
+    {
+      byte[] buffer = new byte[8192];
+      int len;
+
+      while ((len = in.read(buffer)) != -1)
+      {
+        digest.update(buffer, 0, len);
+      }
+    }
+
+    finally
+    {
+      in.close();
+    }
+
+    StringBuilder hex = new StringBuilder(40);
+
+    for (byte b : digest.digest())
+    {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+      hex.append(Character.forDigit(b & 0xF, 16));
+    }
+
+    return hex.toString();
+  }
+
+  /**
+   * Translates a relative file path to the entry name used in resource archives.
+   *
+   * @param file    relative file path
+   *
+   * @return  archive entry name, using '/' as path separator
+   */
+  public static String toArchivePath(File file)
+  {
+    return file.getPath().replace(File.separatorChar, '/');
+  }
+
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * Content hashes keyed by archive path.
+   */
+  private Map<String, String> entries = new TreeMap<String, String>();
+
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Returns the content hash of an archive entry.
+   *
+   * @param path    archive path
+   *
+   * @return  hash string, or null if the path is not included in this manifest
+   */
+  public String getHash(String path)
+  {
+    return entries.get(path);
+  }
+
+  /**
+   * @return  archive paths of all entries in this manifest
+   */
+  public Set<String> getPaths()
+  {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  /**
+   * Returns the archive paths of the entries that are new or have different content compared
+   * to the given earlier manifest.
+   *
+   * @param base    manifest of the state the changes are computed against
+   *
+   * @return  archive paths of changed entries
+   */
+  public Set<String> getChangedPaths(ResourceManifest base)
+  {
+    Set<String> changed = new HashSet<String>();
+
+    for (Map.Entry<String, String> entry : entries.entrySet())
+    {
+      if (!entry.getValue().equals(base.getHash(entry.getKey())))
+      {
+        changed.add(entry.getKey());
+      }
+    }
+
+    return changed;
+  }
+
+  /**
+   * Serializes this manifest to the given stream. The stream is flushed but not closed.
+   *
+   * @param out   stream to write to
+   *
+   * @throws IOException
+   *            if writing to the stream fails
+   */
+  public void write(OutputStream out) throws IOException
+  {
+    Writer writer = new OutputStreamWriter(out, ENCODING);
+
+    for (Map.Entry<String, String> entry : entries.entrySet())
+    {
+      writer.write(entry.getValue());
+      writer.write(' ');
+      writer.write(entry.getKey());
+      writer.write('\n');
+    }
+
+    writer.flush();
+  }
+
+  /**
+   * Stores this manifest to a file. The manifest is written to a temporary file first which
+   * then replaces the target file.
+   *
+   * @param file    target file
+   *
+   * @throws IOException
+   *            if writing the file fails
+   */
+  public void save(File file) throws IOException
+  {
+    File temp = new File(file.getPath() + ".tmp");
+
+    OutputStream out = new FileOutputStream(temp);
+
+    try
+    {
+      write(out);
+    }
+
+    finally
+    {
+      out.close();
+    }
+
+    if (file.exists() && !file.delete())
+    {
+      throw new IOException("Unable to replace manifest '" + file.getAbsolutePath() + "'.");
+    }
+
+    if (!temp.renameTo(file))
+    {
+      throw new IOException(
+          "Unable to move '" + temp.getAbsolutePath() + "' to '" + file.getAbsolutePath() + "'."
+      );
+    }
+  }
+}
@@ -0,0 +1,1270 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.openremote.modeler.logging.LogFacade;
+
+/**
+ * Creates and extracts the zip archives of the local file cache using all available processors
+ * with bounded memory use. <p>
+ *
+ * Archive entries are compressed by a shared pool of worker threads while the calling thread
+ * writes the completed entries to the target archive in order. Only a limited number of entries
+ * are processed ahead of the writer, and compressed entries larger than
+ * {@link #MAX_BUFFERED_ENTRY_SIZE} are spooled to temporary files instead of being held in
+ * memory. <p>
+ *
+ * Entries of existing archives can be registered with {@link #reuseEntriesFrom(File)}. A file
+ * whose size and CRC-32 checksum match an entry with the same name is copied to the target
+ * archive as the already compressed data of that entry, without deflating it again. <p>
+ *
+ * Entries whose content does not compress are stored uncompressed. The archive format is
+ * limited to the classic (non-Zip64) format, i.e. to 65535 entries and 4GB in size.
+ */
+public class ZipArchiver
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Largest compressed entry that is buffered in memory. Larger entries are spooled to temporary
+   * files in the directory of the target archive.
+   */
+  public final static int MAX_BUFFERED_ENTRY_SIZE = 256 * 1024;
+
+  /**
+   * Number of worker threads used for compressing and extracting archive entries.
+   */
+  public final static int WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Number of entries that are compressed ahead of the thread writing the archive. Together with
+   * {@link #MAX_BUFFERED_ENTRY_SIZE} this bounds the memory used per archive operation.
+   */
+  private final static int COMPRESS_AHEAD = WORKER_COUNT * 2;
+
+  /**
+   * Buffer size for file I/O.
+   */
+  private final static int BUFFER_SIZE = 64 * 1024;
+
+  private final static int LOCAL_HEADER_SIGNATURE   = 0x04034b50;
+  private final static int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private final static int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+  private final static int LOCAL_HEADER_SIZE = 30;
+  private final static int CENTRAL_HEADER_SIZE = 46;
+  private final static int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+  /**
+   * Zip specification version 2.0, required for deflate compression.
+   */
+  private final static int ZIP_VERSION = 20;
+
+  /**
+   * General purpose flag indicating UTF-8 encoded entry names.
+   */
+  private final static int FLAG_UTF8 = 0x0800;
+
+  /**
+   * General purpose flag indicating an encrypted entry.
+   */
+  private final static int FLAG_ENCRYPTED = 0x0001;
+
+  private final static long MAX_ZIP_VALUE = 0xFFFFFFFFL;
+  private final static int MAX_ENTRIES = 0xFFFF;
+
+  private final static String NAME_ENCODING = "UTF-8";
+
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * Log category for the cache implementation.
+   */
+  private final static LogFacade cacheLog =
+      LogFacade.getInstance(LogFacade.Category.CACHE);
+
+  /**
+   * Worker threads shared by all archive operations, created on first use.
+   */
+  private static ExecutorService workers = null;
+
+  /**
+   * Deflater instance of each worker thread, reset between entries.
+   */
+  private final static ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>()
+  {
+    @Override protected Deflater initialValue()
+    {
+      return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+  };
+
+
+  /**
+   * Stops the shared worker threads, if they have been started. Archive operations still in
+   * progress fail. A subsequent archive operation starts new worker threads.
+   */
+  public static synchronized void shutdownWorkers()
+  {
+    if (workers != null)
+    {
+      workers.shutdownNow();
+
+      workers = null;
+    }
+  }
+
+  /**
+   * Extracts all file entries of an archive to a target directory, using the shared worker
+   * threads to write several entries concurrently. Necessary subdirectories are created
+   * according to the archive structure. Existing files matching the archive entries are
+   * replaced.
+   *
+   * @param source            archive to extract
+   * @param targetDirectory   directory to extract the archive to
+   *
+   * @return  relative paths of the extracted files
+   *
+   * @throws IOException
+   *            if reading the archive or writing any of the files fails
+   */
+  public static Set<File> extract(File source, final File targetDirectory) throws IOException
+  {
+    final ZipFile zip = new ZipFile(source);
+
+    try
+    {
+      List<Future<File>> tasks = new ArrayList<Future<File>>();
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+
+      while (entries.hasMoreElements())
+      {
+        final ZipEntry entry = entries.nextElement();
+
+        if (entry.isDirectory())
+        {
+          // relevant subdirectories will be created when handling the files...
+
+          continue;
+        }
+
+        tasks.add(getWorkers().submit(new Callable<File>()
+        {
+          public File call() throws IOException
+          {
+            File extractFile = new File(targetDirectory, entry.getName());
+
+            createParentDirectory(extractFile);
+
+            InputStream in = zip.getInputStream(entry);
+
+            try
+            {
+              OutputStream out = new FileOutputStream(extractFile);
+
+              try
+              {
+                long bytecount = copy(in, out, new byte[BUFFER_SIZE]);
+
+                cacheLog.debug(
+                    "Wrote {0} bytes to ''{1}''...", bytecount, extractFile.getAbsolutePath()
+                );
+              }
+
+              finally
+              {
+                out.close();
+              }
+            }
+
+            finally
+            {
+              in.close();
+            }
+
+            return new File(entry.getName());
+          }
+        }));
+      }
+
+      Set<File> extractedFiles = new HashSet<File>();
+
+      for (File file : getAll(tasks))
+      {
+        extractedFiles.add(file);
+      }
+
+      return extractedFiles;
+    }
+
+    finally
+    {
+      zip.close();
+    }
+  }
+
+  /**
+   * Copies a file using file channel transfers, which lets the operating system copy the data
+   * without passing it through Java buffers.
+   *
+   * @param source    file to copy
+   * @param target    file to copy to, created or truncated
+   *
+   * @return  number of bytes copied
+   *
+   * @throws IOException
+   *            if the copy fails
+   */
+  public static long copy(File source, File target) throws IOException
+  {
+    FileInputStream in = new FileInputStream(source);
+
+    try
+    {
+      FileOutputStream out = new FileOutputStream(target);
+
+      try
+      {
+        FileChannel sourceChannel = in.getChannel();
+
+        return transfer(sourceChannel, 0, sourceChannel.size(), out.getChannel());
+      }
+
+      finally
+      {
+        out.close();
+      }
+    }
+
+    finally
+    {
+      in.close();
+    }
+  }
+
+
+  /**
+   * Returns the shared worker threads, starting them if necessary.
+   */
+  private static synchronized ExecutorService getWorkers()
+  {
+    if (workers == null)
+    {
+      workers = Executors.newFixedThreadPool(WORKER_COUNT, new WorkerThreadFactory());
+    }
+
+    return workers;
+  }
+
+  private static long transfer(FileChannel source, long position, long count, FileChannel target)
+      throws IOException
+  {
+    long total = 0;
+
+    while (total < count)
+    {
+      long transferred = source.transferTo(position + total, count - total, target);
+
+      if (transferred <= 0)
+      {
+        throw new IOException(
+            "Unexpected end of file after " + total + " out of " + count + " bytes."
+        );
+      }
+
+      total += transferred;
+    }
+
+    return total;
+  }
+
+  private static long copy(InputStream in, OutputStream out, byte[] buffer) throws IOException
+  {
+    long total = 0;
+    int len;
+
+    while ((len = in.read(buffer)) != -1)
+    {
+      out.write(buffer, 0, len);
+
+      total += len;
+    }
+
+    return total;
+  }
+
+  private static synchronized void createParentDirectory(File file) throws IOException
+  {
+    File parent = file.getParentFile();
+
+    if (!parent.exists() && !parent.mkdirs())
+    {
+      throw new IOException(
+          "Unable to create directories ''" + parent.getAbsolutePath() + "''. Reason unknown."
+      );
+    }
+  }
+
+  /**
+   * Waits for the given tasks to complete and returns their results. If any of the tasks
+   * fails, the remaining ones are still waited for before the error is thrown.
+   */
+  private static <T> List<T> getAll(List<Future<T>> tasks) throws IOException
+  {
+    List<T> results = new ArrayList<T>(tasks.size());
+    IOException error = null;
+
+    for (Future<T> task : tasks)
+    {
+      try
+      {
+        results.add(getResult(task));
+      }
+
+      catch (IOException e)
+      {
+        if (error == null)
+        {
+          error = e;
+        }
+      }
+    }
+
+    if (error != null)
+    {
+      throw error;
+    }
+
+    return results;
+  }
+
+  private static <T> T getResult(Future<T> task) throws IOException
+  {
+    boolean interrupted = false;
+
+    try
+    {
+      while (true)
+      {
+        try
+        {
+          return task.get();
+        }
+
+        catch (InterruptedException e)
+        {
+          interrupted = true;
+        }
+      }
+    }
+
+    catch (ExecutionException e)
+    {
+      Throwable cause = e.getCause();
+
+      if (cause instanceof IOException)
+      {
+        throw (IOException)cause;
+      }
+
+      if (cause instanceof RuntimeException)
+      {
+        throw (RuntimeException)cause;
+      }
+
+      if (cause instanceof Error)
+      {
+        throw (Error)cause;
+      }
+
+      IOException ioe = new IOException("Archive operation failed : " + cause.getMessage());
+      ioe.initCause(cause);
+
+      throw ioe;
+    }
+
+    finally
+    {
+      if (interrupted)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static long toDosTime(long time)
+  {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+
+    int year = calendar.get(Calendar.YEAR);
+
+    if (year < 1980)
+    {
+      return (1 << 21) | (1 << 16);
+    }
+
+    return (year - 1980) << 25
+         | (calendar.get(Calendar.MONTH) + 1) << 21
+         | calendar.get(Calendar.DAY_OF_MONTH) << 16
+         | calendar.get(Calendar.HOUR_OF_DAY) << 11
+         | calendar.get(Calendar.MINUTE) << 5
+         | calendar.get(Calendar.SECOND) >> 1;
+  }
+
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * Directory the relative paths of the archived files are resolved against.
+   */
+  private File baseDirectory;
+
+  /**
+   * Entries of existing archives that may be copied to new archives, keyed by entry name.
+   */
+  private Map<String, ReusableEntry> reusableEntries = new HashMap<String, ReusableEntry>();
+
+  private int reusedEntryCount = 0;
+
+  private int compressedEntryCount = 0;
+
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Constructs an archiver for files in the given directory.
+   *
+   * @param baseDirectory   directory the relative file paths passed to
+   *                        {@link #compress(File, Collection, Map)} are resolved against
+   */
+  public ZipArchiver(File baseDirectory)
+  {
+    this.baseDirectory = baseDirectory;
+  }
+
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Registers the entries of an existing archive for reuse. If several archives contain an entry
+   * with the same name, the entry of the archive registered first is used. Archives that do not
+   * exist or cannot be read are ignored.
+   *
+   * @param archive   existing zip archive
+   */
+  public void reuseEntriesFrom(File archive)
+  {
+    if (!archive.exists())
+    {
+      return;
+    }
+
+    try
+    {
+      for (ReusableEntry entry : readCentralDirectory(archive))
+      {
+        if (!reusableEntries.containsKey(entry.name))
+        {
+          reusableEntries.put(entry.name, entry);
+        }
+      }
+    }
+
+    catch (IOException e)
+    {
+      cacheLog.warn(
+          "Entries of archive ''{0}'' cannot be reused : {1}", e, archive.getAbsolutePath(), e.getMessage()
+      );
+    }
+  }
+
+  /**
+   * Creates a zip archive of the given files.
+   *
+   * @param target          archive to create, replaced if it exists
+   * @param files           <b>relative</b> file paths to include in the archive, resolved against
+   *                        the base directory of this archiver
+   * @param extraEntries    additional entries to add after the files, keyed by entry name,
+   *                        or null
+   *
+   * @throws IOException
+   *            if reading any of the files or writing the archive fails
+   */
+  public void compress(File target, Collection<File> files, Map<String, byte[]> extraEntries)
+      throws IOException
+  {
+    int entryCount = files.size() + (extraEntries == null ? 0 : extraEntries.size());
+
+    if (entryCount > MAX_ENTRIES)
+    {
+      throw new IOException("Too many archive entries : " + entryCount);
+    }
+
+    reusedEntryCount = 0;
+    compressedEntryCount = 0;
+
+    ArchiveWriter writer = new ArchiveWriter(target);
+    LinkedList<Future<CompressedEntry>> pending = new LinkedList<Future<CompressedEntry>>();
+
+    try
+    {
+      for (final File file : files)
+      {
+        if (pending.size() >= COMPRESS_AHEAD)
+        {
+          writer.write(getResult(pending.removeFirst()));
+        }
+
+        final File spoolDirectory = target.getAbsoluteFile().getParentFile();
+
+        pending.add(getWorkers().submit(new Callable<CompressedEntry>()
+        {
+          public CompressedEntry call() throws IOException
+          {
+            return createEntry(file, spoolDirectory);
+          }
+        }));
+      }
+
+      while (!pending.isEmpty())
+      {
+        writer.write(getResult(pending.removeFirst()));
+      }
+
+      if (extraEntries != null)
+      {
+        for (Map.Entry<String, byte[]> extra : extraEntries.entrySet())
+        {
+          writer.write(createEntry(extra.getKey(), extra.getValue(), System.currentTimeMillis()));
+        }
+      }
+
+      writer.finish();
+    }
+
+    finally
+    {
+      // Wait for all the remaining tasks so no temporary spool files are left behind...
+
+      for (Future<CompressedEntry> task : pending)
+      {
+        try
+        {
+          getResult(task).dispose();
+        }
+
+        catch (Throwable t)
+        {
+          // already failing, the error of the first task is propagated...
+        }
+      }
+
+      writer.close();
+    }
+  }
+
+  /**
+   * @return  number of entries copied from existing archives by the last
+   *          {@link #compress(File, Collection, Map)} call
+   */
+  public int getReusedEntryCount()
+  {
+    return reusedEntryCount;
+  }
+
+  /**
+   * @return  number of entries compressed by the last {@link #compress(File, Collection, Map)} call
+   */
+  public int getCompressedEntryCount()
+  {
+    return compressedEntryCount;
+  }
+
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  /**
+   * Creates the archive entry of a file. Executed by worker threads.
+   */
+  private CompressedEntry createEntry(File file, File spoolDirectory) throws IOException
+  {
+    String name = ResourceManifest.toArchivePath(file);
+    File source = new File(baseDirectory, file.getPath());
+    long size = source.length();
+
+    if (size > MAX_ZIP_VALUE)
+    {
+      throw new IOException("File ''" + source.getPath() + "'' is too large for a zip archive.");
+    }
+
+    if (size <= MAX_BUFFERED_ENTRY_SIZE)
+    {
+      byte[] content = readFully(source, (int)size);
+
+      return createEntry(name, content, source.lastModified());
+    }
+
+    CompressedEntry entry = new CompressedEntry(name, source.lastModified());
+    entry.size = size;
+    entry.crc = checksum(source);
+
+    if (reuse(entry))
+    {
+      return entry;
+    }
+
+    entry.spool = File.createTempFile("archive", ".entry", spoolDirectory);
+
+    try
+    {
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(entry.spool), BUFFER_SIZE);
+
+      try
+      {
+        InputStream in = new FileInputStream(source);
+
+        try
+        {
+          entry.compressedSize = deflate(in, out);
+        }
+
+        finally
+        {
+          in.close();
+        }
+      }
+
+      finally
+      {
+        out.close();
+      }
+
+      entry.method = ZipEntry.DEFLATED;
+
+      if (entry.compressedSize >= entry.size)
+      {
+        // didn't compress, spool was wasted effort, copy the file as is...
+
+        entry.dispose();
+        entry.spool = source;
+        entry.spoolIsSource = true;
+        entry.method = ZipEntry.STORED;
+        entry.compressedSize = entry.size;
+      }
+    }
+
+    catch (IOException e)
+    {
+      entry.dispose();
+
+      throw e;
+    }
+
+    return entry;
+  }
+
+  /**
+   * Creates an archive entry of in-memory content.
+   */
+  private CompressedEntry createEntry(String name, byte[] content, long time) throws IOException
+  {
+    CompressedEntry entry = new CompressedEntry(name, time);
+    entry.size = content.length;
+
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    entry.crc = crc.getValue();
+
+    if (reuse(entry))
+    {
+      return entry;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+    entry.compressedSize = deflate(content, out);
+
+    if (entry.compressedSize < entry.size)
+    {
+      entry.method = ZipEntry.DEFLATED;
+      entry.data = out.toByteArray();
+    }
+
+    else
+    {
+      entry.method = ZipEntry.STORED;
+      entry.data = content;
+      entry.compressedSize = content.length;
+    }
+
+    return entry;
+  }
+
+  private boolean reuse(CompressedEntry entry)
+  {
+    ReusableEntry candidate = reusableEntries.get(entry.name);
+
+    if (candidate == null || candidate.size != entry.size || candidate.crc != entry.crc)
+    {
+      return false;
+    }
+
+    entry.reused = candidate;
+    entry.method = candidate.method;
+    entry.compressedSize = candidate.compressedSize;
+
+    return true;
+  }
+
+  private long deflate(byte[] content, OutputStream out) throws IOException
+  {
+    Deflater deflater = deflaters.get();
+    deflater.reset();
+    deflater.setInput(content);
+    deflater.finish();
+
+    return drain(deflater, out, new byte[BUFFER_SIZE]);
+  }
+
+  private long deflate(InputStream in, OutputStream out) throws IOException
+  {
+    Deflater deflater = deflaters.get();
+    deflater.reset();
+
+    byte[] input = new byte[BUFFER_SIZE];
+    byte[] output = new byte[BUFFER_SIZE];
+    long total = 0;
+    int len;
+
+    while ((len = in.read(input)) != -1)
+    {
+      deflater.setInput(input, 0, len);
+
+      while (!deflater.needsInput())
+      {
+        int count = deflater.deflate(output);
+
+        out.write(output, 0, count);
+
+        total += count;
+      }
+    }
+
+    deflater.finish();
+
+    return total + drain(deflater, out, output);
+  }
+
+  private long drain(Deflater deflater, OutputStream out, byte[] buffer) throws IOException
+  {
+    long total = 0;
+
+    while (!deflater.finished())
+    {
+      int count = deflater.deflate(buffer);
+
+      out.write(buffer, 0, count);
+
+      total += count;
+    }
+
+    return total;
+  }
+
+  private byte[] readFully(File file, int size) throws IOException
+  {
+    byte[] content = new byte[size];
+    InputStream in = new FileInputStream(file);
+
+    try
+    {
+      int offset = 0;
+
+      while (offset < size)
+      {
+        int len = in.read(content, offset, size - offset);
+
+        if (len == -1)
+        {
+          throw new IOException(
+              "Only read " + offset + " out of " + size + " bytes from ''" + file.getPath() + "''."
+          );
+        }
+
+        offset += len;
+      }
+    }
+
+    finally
+    {
+      in.close();
+    }
+
+    return content;
+  }
+
+  private long checksum(File file) throws IOException
+  {
+    CRC32 crc = new CRC32();
+    InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+
+    try
+    {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int len;
+
+      while ((len = in.read(buffer)) != -1)
+      {
+        crc.update(buffer, 0, len);
+      }
+    }
+
+    finally
+    {
+      in.close();
+    }
+
+    return crc.getValue();
+  }
+
+  /**
+   * Reads the entries of an archive's central directory.
+   */
+  private List<ReusableEntry> readCentralDirectory(File archive) throws IOException
+  {
+    RandomAccessFile file = new RandomAccessFile(archive, "r");
+
+    try
+    {
+      FileChannel channel = file.getChannel();
+      long length = channel.size();
+
+      // The end of central directory record is followed by a comment of at most 64k...
+
+      int tailLength = (int)Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+      ByteBuffer tail = read(channel, length - tailLength, tailLength);
+
+      int end = -1;
+
+      for (int index = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; index >= 0; index--)
+      {
+        if (tail.getInt(index) == END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+        {
+          end = index;
+
+          break;
+        }
+      }
+
+      if (end == -1)
+      {
+        throw new IOException("End of central directory not found.");
+      }
+
+      int entryCount = tail.getShort(end + 10) & 0xFFFF;
+      long directorySize = tail.getInt(end + 12) & MAX_ZIP_VALUE;
+      long directoryOffset = tail.getInt(end + 16) & MAX_ZIP_VALUE;
+
+      if (directoryOffset + directorySize > length)
+      {
+        throw new IOException("Invalid central directory location.");
+      }
+
+      ByteBuffer directory = read(channel, directoryOffset, (int)directorySize);
+      List<ReusableEntry> entries = new ArrayList<ReusableEntry>(entryCount);
+
+      for (int count = 0; count < entryCount; count++)
+      {
+        int position = directory.position();
+
+        if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE)
+        {
+          throw new IOException("Invalid central directory entry.");
+        }
+
+        int flags = directory.getShort(position + 8) & 0xFFFF;
+        int method = directory.getShort(position + 10) & 0xFFFF;
+
+        ReusableEntry entry = new ReusableEntry();
+        entry.archive = archive;
+        entry.method = method;
+        entry.crc = directory.getInt(position + 16) & MAX_ZIP_VALUE;
+        entry.compressedSize = directory.getInt(position + 20) & MAX_ZIP_VALUE;
+        entry.size = directory.getInt(position + 24) & MAX_ZIP_VALUE;
+        entry.localHeaderOffset = directory.getInt(position + 42) & MAX_ZIP_VALUE;
+
+        int nameLength = directory.getShort(position + 28) & 0xFFFF;
+        int extraLength = directory.getShort(position + 30) & 0xFFFF;
+        int commentLength = directory.getShort(position + 32) & 0xFFFF;
+
+        byte[] name = new byte[nameLength];
+        directory.position(position + CENTRAL_HEADER_SIZE);
+        directory.get(name);
+        directory.position(position + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength);
+
+        entry.name = new String(name, NAME_ENCODING);
+
+        boolean supported = (flags & FLAG_ENCRYPTED) == 0 &&
+            (method == ZipEntry.DEFLATED || method == ZipEntry.STORED) &&
+            entry.compressedSize < MAX_ZIP_VALUE && entry.size < MAX_ZIP_VALUE;
+
+        if (supported && !entry.name.endsWith("/"))
+        {
+          entries.add(entry);
+        }
+      }
+
+      return entries;
+    }
+
+    finally
+    {
+      file.close();
+    }
+  }
+
+  private ByteBuffer read(FileChannel channel, long position, int length) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+    while (buffer.hasRemaining())
+    {
+      if (channel.read(buffer, position + buffer.position()) == -1)
+      {
+        throw new IOException("Unexpected end of archive.");
+      }
+    }
+
+    buffer.flip();
+
+    return buffer;
+  }
+
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * Entry of an existing archive whose compressed data can be copied to a new archive.
+   */
+  private static class ReusableEntry
+  {
+    private File archive;
+    private String name;
+    private int method;
+    private long crc;
+    private long size;
+    private long compressedSize;
+    private long localHeaderOffset;
+  }
+
+  /**
+   * Archive entry ready to be written. The compressed data is either held in memory, in a spool
+   * file, or refers to an entry of an existing archive.
+   */
+  private static class CompressedEntry
+  {
+    private String name;
+    private long time;
+    private int method;
+    private long crc;
+    private long size;
+    private long compressedSize;
+
+    private byte[] data;
+    private File spool;
+    private boolean spoolIsSource = false;
+    private ReusableEntry reused;
+
+    private CompressedEntry(String name, long time)
+    {
+      this.name = name;
+      this.time = time;
+    }
+
+    private void dispose()
+    {
+      if (spool != null && !spoolIsSource && !spool.delete())
+      {
+        cacheLog.warn("Unable to delete temporary archive file ''{0}''.", spool.getAbsolutePath());
+      }
+
+      spool = null;
+    }
+  }
+
+  /**
+   * Writes entries to an archive file. Used by a single thread.
+   */
+  private class ArchiveWriter
+  {
+    private File target;
+    private FileOutputStream file;
+    private OutputStream out;
+    private long offset = 0;
+
+    private ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private int entryCount = 0;
+
+    private Map<File, RandomAccessFile> reuseSources = new HashMap<File, RandomAccessFile>();
+
+    private ArchiveWriter(File target) throws IOException
+    {
+      this.target = target;
+      this.file = new FileOutputStream(target);
+      this.out = new BufferedOutputStream(file, BUFFER_SIZE);
+    }
+
+    private void write(CompressedEntry entry) throws IOException
+    {
+      try
+      {
+        byte[] name = entry.name.getBytes(NAME_ENCODING);
+        long headerOffset = offset;
+
+        if (headerOffset > MAX_ZIP_VALUE)
+        {
+          throw new IOException("Archive ''" + target.getPath() + "'' exceeds the zip size limit.");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        putEntryFields(header, entry, name);
+        header.putShort((short)0);    // extra field length
+
+        out.write(header.array());
+        out.write(name);
+        offset += LOCAL_HEADER_SIZE + name.length;
+
+        if (entry.data != null)
+        {
+          out.write(entry.data);
+        }
+
+        else if (entry.spool != null)
+        {
+          copyRange(entry.spool, 0, entry.compressedSize);
+        }
+
+        else
+        {
+          copyReused(entry.reused);
+        }
+
+        offset += entry.compressedSize;
+
+        ByteBuffer central = ByteBuffer.allocate(CENTRAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        central.putInt(CENTRAL_HEADER_SIGNATURE);
+        central.putShort((short)ZIP_VERSION);     // version made by
+        putEntryFields(central, entry, name);
+        central.putShort((short)0);               // extra field length
+        central.putShort((short)0);               // comment length
+        central.putShort((short)0);               // disk number
+        central.putShort((short)0);               // internal attributes
+        central.putInt(0);                        // external attributes
+        central.putInt((int)headerOffset);
+
+        centralDirectory.write(central.array());
+        centralDirectory.write(name);
+
+        entryCount++;
+
+        if (entry.reused != null)
+        {
+          reusedEntryCount++;
+        }
+
+        else
+        {
+          compressedEntryCount++;
+        }
+
+        cacheLog.debug(
+            "Added zip entry ''{0}'' ({1} bytes, {2} compressed{3}).",
+            entry.name, entry.size, entry.compressedSize, entry.reused != null ? ", reused" : ""
+        );
+      }
+
+      finally
+      {
+        entry.dispose();
+      }
+    }
+
+    private void putEntryFields(ByteBuffer buffer, CompressedEntry entry, byte[] name)
+    {
+      buffer.putShort((short)ZIP_VERSION);        // version needed to extract
+      buffer.putShort((short)FLAG_UTF8);
+      buffer.putShort((short)entry.method);
+      buffer.putInt((int)toDosTime(entry.time));
+      buffer.putInt((int)entry.crc);
+      buffer.putInt((int)entry.compressedSize);
+      buffer.putInt((int)entry.size);
+      buffer.putShort((short)name.length);
+    }
+
+    private void copyReused(ReusableEntry entry) throws IOException
+    {
+      RandomAccessFile source = reuseSources.get(entry.archive);
+
+      if (source == null)
+      {
+        source = new RandomAccessFile(entry.archive, "r");
+
+        reuseSources.put(entry.archive, source);
+      }
+
+      ByteBuffer header = read(source.getChannel(), entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+
+      if (header.getInt(0) != LOCAL_HEADER_SIGNATURE)
+      {
+        throw new IOException(
+            "Invalid local header for entry ''" + entry.name + "'' in ''" + entry.archive.getPath() + "''."
+        );
+      }
+
+      long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE +
+                        (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+
+      out.flush();
+
+      transfer(source.getChannel(), dataOffset, entry.compressedSize, file.getChannel());
+    }
+
+    private void copyRange(File source, long position, long count) throws IOException
+    {
+      FileInputStream in = new FileInputStream(source);
+
+      try
+      {
+        out.flush();
+
+        transfer(in.getChannel(), position, count, file.getChannel());
+      }
+
+      finally
+      {
+        in.close();
+      }
+    }
+
+    private void finish() throws IOException
+    {
+      long directoryOffset = offset;
+
+      if (directoryOffset + centralDirectory.size() > MAX_ZIP_VALUE)
+      {
+        throw new IOException("Archive ''" + target.getPath() + "'' exceeds the zip size limit.");
+      }
+
+      centralDirectory.writeTo(out);
+
+      ByteBuffer end = ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+      end.putShort((short)0);                     // number of this disk
+      end.putShort((short)0);                     // disk with the central directory
+      end.putShort((short)entryCount);
+      end.putShort((short)entryCount);
+      end.putInt(centralDirectory.size());
+      end.putInt((int)directoryOffset);
+      end.putShort((short)0);                     // comment length
+
+      out.write(end.array());
+      out.flush();
+    }
+
+    private void close() throws IOException
+    {
+      for (RandomAccessFile source : reuseSources.values())
+      {
+        try
+        {
+          source.close();
+        }
+
+        catch (IOException e)
+        {
+          cacheLog.warn("Failed to close archive : {0}", e, e.getMessage());
+        }
+      }
+
+      out.close();
+    }
+  }
+
+  /**
+   * Creates daemon threads for the archive worker pool.
+   */
+  private static class WorkerThreadFactory implements ThreadFactory
+  {
+    private AtomicInteger count = new AtomicInteger(0);
+
+    public Thread newThread(Runnable runnable)
+    {
+      Thread thread = new Thread(runnable, "Designer Archive Worker #" + count.incrementAndGet());
+      thread.setDaemon(true);
+
+      return thread;
+    }
+  }
+}
@@ -25,6 +25,7 @@ import java.io.File;
 import java.util.UUID;
 
 import org.apache.log4j.Logger;
+import org.openremote.modeler.cache.DesignerStateArchive;
 import org.openremote.modeler.client.Configuration;
 import org.openremote.modeler.client.Constants;
 import org.openremote.modeler.domain.Account;
@@ -267,6 +268,10 @@ public class PathConfig {
    @Deprecated public String getSerializedPanelsFile(Account account){
       return userFolder(account)+"panels.obj";
    }
+
+   public String getDesignerStateFile(Account account){
+      return userFolder(account) + DesignerStateArchive.FILE_NAME;
+   }
    
 //   public String getControllerConfigPath(){
 //      return configuration.getControllerConfigPath();
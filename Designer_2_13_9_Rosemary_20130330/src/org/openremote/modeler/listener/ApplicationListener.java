@@ -25,6 +25,8 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
 import org.openremote.modeler.SpringContext;
+import org.openremote.modeler.beehive.BeehiveHttpClient;
+import org.openremote.modeler.cache.ZipArchiver;
 import org.openremote.modeler.configuration.PathConfig;
 import org.openremote.modeler.service.UserService;
 import org.springframework.context.ApplicationEvent;
@@ -42,7 +44,8 @@ public class ApplicationListener implements ServletContextListener {
    private UserService userService = (UserService) SpringContext.getInstance().getBean("userService");
 
    public void contextDestroyed(ServletContextEvent event) {
-      ;//do nothing
+      BeehiveHttpClient.shutdownInstance();
+      ZipArchiver.shutdownWorkers();
    }
 
    public void contextInitialized(ServletContextEvent event) {
@@ -49,6 +49,7 @@ import org.openremote.modeler.exception.NetworkException;
 import org.openremote.modeler.exception.ConfigurationException;
 import org.openremote.modeler.beehive.Beehive30API;
 import org.openremote.modeler.beehive.BeehiveService;
+import org.openremote.modeler.cache.DesignerStateArchive;
 import org.openremote.modeler.cache.LocalFileCache;
 import org.openremote.modeler.cache.ResourceCache;
 import org.openremote.modeler.cache.CacheOperationException;
@@ -377,17 +378,19 @@ class DesignerState
 
       PathConfig pathConfig = PathConfig.getInstance(configuration);
       File legacyPanelsObjFile = new File(pathConfig.getSerializedPanelsFile(user.getAccount())); // TODO : should go through ResourceCache interface
+      File stateFile = new File(pathConfig.getDesignerStateFile(user.getAccount()));             // TODO : should go through ResourceCache interface
 
-      boolean hasLegacyDesignerUIState = hasLegacyDesignerUIState(pathConfig, legacyPanelsObjFile);
+      boolean hasDesignerState = hasStateFile(pathConfig, stateFile);
+      boolean hasLegacyDesignerUIState = hasStateFile(pathConfig, legacyPanelsObjFile);
       boolean hasCachedState = cache.hasState();
       boolean hasXMLUIState = hasXMLUIState();
 
 
-      // If we can't find any serialization binary (panels.obj), XML serialization file and
-      // no backups, we must assume it was a new account (hopefully, otherwise there are more
-      // serious issues if all these files have been wiped out).
+      // If we can't find any state file (panels.state), serialization binary (panels.obj),
+      // XML serialization file and no backups, we must assume it was a new account (hopefully,
+      // otherwise there are more serious issues if all these files have been wiped out).
 
-      if (!hasLegacyDesignerUIState && !hasXMLUIState && !hasCachedState)
+      if (!hasDesignerState && !hasLegacyDesignerUIState && !hasXMLUIState && !hasCachedState)
       {
         restoreLog.info(
             "There was no serialized panels.obj file, no serialized XML stream and no local " +
@@ -402,10 +405,29 @@ class DesignerState
         return;
       }
 
-      // Migrate conservately and make as little waves as possible... therefore attempt
-      // to restore from the legacy binary serialization format first (even if better
-      // options are available). This restore order can be modified once we are more
-      // confident in the implementation.
+      // Restore from the versioned state file first. The legacy binary serialization
+      // format is still written on save and is used if the state file is missing (accounts
+      // not saved since the format was added) or cannot be restored.
+
+      if (hasDesignerState)
+      {
+        try
+        {
+          restoreDesignerState(stateFile);
+
+          restoreLog.info("Restored UI state : {0}", this);
+
+          return;
+        }
+
+        catch (RestoreFailureException e)
+        {
+          admin.alert(
+              "There was a state restoration error from panels.state file in account {0} ({1}) : {2}",
+              e, user.getAccount().getOid(), printUserAccountLog(user), e.getMessage()
+          );
+        }
+      }
 
       if (hasLegacyDesignerUIState)
       {
@@ -415,6 +437,8 @@ class DesignerState
 
           restoreLog.info("Restored UI state : {0}", this);
 
+          migrateLegacyDesignerUIState(stateFile);
+
           return;
         }
 
@@ -604,9 +628,16 @@ class DesignerState
 
         fileCache.markInUseImages(imageFiles);
 
-        // Upload ZIP to Beehive server...
+        // Upload the resources changed since the last save to Beehive server. If Beehive's
+        // state does not match the state the changes were computed against, upload the
+        // complete ZIP instead...
+
+        if (!beehive.uploadResourceChanges(fileCache.openChangesReadStream(), user))
+        {
+          beehive.uploadResources(fileCache.openReadStream(), user);
+        }
 
-        beehive.uploadResources(fileCache.openReadStream(), user);
+        fileCache.markSynchronized();
 
         saveLog.info("Saved resources for {0}", printUserAccountLog(user));
       }
@@ -691,6 +722,68 @@ class DesignerState
   // Private Instance Methods ---------------------------------------------------------------------
 
 
+  /**
+   * Attempts to restore the designer UI state from a versioned panels.state file.
+   *
+   * @param stateFile   file path to the panels.state file
+   *
+   * @throws RestoreFailureException
+   *            if reading the file fails for any reason
+   */
+  private void restoreDesignerState(File stateFile) throws RestoreFailureException
+  {
+    try
+    {
+      DesignerStateArchive archive = DesignerStateArchive.open(stateFile);
+
+      this.panels = archive.loadPanels();
+
+      this.maxOID = archive.getMaxOID();
+    }
+
+    catch (IOException e)
+    {
+      throw new RestoreFailureException(
+          "Cannot restore designer state from " + stateFile.getAbsolutePath() +
+          " : " + e.getMessage(), e
+      );
+    }
+  }
+
+
+  /**
+   * Writes the designer UI state restored from a legacy panels.obj file to the versioned
+   * panels.state file in the local cache. The state file is included in the next save
+   * to Beehive. Failures are logged but not fatal, the legacy file remains in place.
+   *
+   * @param stateFile   file path to the panels.state file
+   */
+  private void migrateLegacyDesignerUIState(File stateFile)
+  {
+    if (panels.isEmpty())
+    {
+      return;
+    }
+
+    try
+    {
+      DesignerStateArchive.write(stateFile, panels, maxOID);
+
+      restoreLog.info("Migrated legacy panels.obj state to {0}", stateFile.getAbsolutePath());
+    }
+
+    catch (IOException e)
+    {
+      stateFile.delete();
+
+      restoreLog.warn(
+          "Failed to migrate legacy panels.obj state to " + stateFile.getAbsolutePath() +
+          " : " + e.getMessage(), e
+      );
+    }
+  }
+
+
   /**
    * Attempts to deserialize a legacy binary panels.obj designer UI state serialization file.
    *
@@ -931,23 +1024,24 @@ class DesignerState
   /**
    * TODO : should be part of cache implementation
    *
-   * Detects the presence of legacy binary panels.obj designer UI state serialization file.
+   * Detects the presence of a designer UI state file (the panels.state file or the legacy
+   * binary panels.obj serialization file).
    *
    * @param pathConfig      Designer path configuration
-   * @param panelsObjFile   file path to the legacy binary panels.objs UI state serialization file
+   * @param stateFile       file path to the UI state file
    *
-   * @return      true if the panels.obj file is present in local beehive archive cache folder,
+   * @return      true if the file is present in local beehive archive cache folder,
    *              false otherwise
    *
    * @throws ConfigurationException
    *              if read access to the file system is denied for any reason
    */
-  private boolean hasLegacyDesignerUIState(PathConfig pathConfig, File panelsObjFile)
+  private boolean hasStateFile(PathConfig pathConfig, File stateFile)
       throws ConfigurationException
   {
     try
     {
-      return panelsObjFile.exists();
+      return stateFile.exists();
     }
 
     catch (SecurityException e)
@@ -955,7 +1049,7 @@ class DesignerState
       // convert the potential security exception to a checked exception...
 
       throw new ConfigurationException(
-          "Security manager denied access to " + panelsObjFile.getAbsoluteFile() +
+          "Security manager denied access to " + stateFile.getAbsoluteFile() +
           ". File read/write access must be enabled to " + pathConfig.tempFolder() + ".", e
       );
     }
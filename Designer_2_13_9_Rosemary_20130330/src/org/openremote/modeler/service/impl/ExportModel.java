@@ -0,0 +1,280 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openremote.modeler.domain.Absolute;
+import org.openremote.modeler.domain.Cell;
+import org.openremote.modeler.domain.Group;
+import org.openremote.modeler.domain.GroupRef;
+import org.openremote.modeler.domain.Panel;
+import org.openremote.modeler.domain.Screen;
+import org.openremote.modeler.domain.ScreenPair;
+import org.openremote.modeler.domain.ScreenPair.OrientationType;
+import org.openremote.modeler.domain.ScreenPairRef;
+import org.openremote.modeler.domain.Sensor;
+import org.openremote.modeler.domain.UICommand;
+import org.openremote.modeler.domain.component.Gesture;
+import org.openremote.modeler.domain.component.SensorOwner;
+import org.openremote.modeler.domain.component.UIComponent;
+import org.openremote.modeler.domain.component.UIControl;
+import org.openremote.modeler.domain.component.UIGrid;
+import org.openremote.modeler.utils.UIComponentBox;
+
+/**
+ * Collects the parts of a designer UI model that are needed to generate the panel.xml and
+ * controller.xml documents of an export. <p>
+ *
+ * The screens of the model are walked only once, gathering the UI components by type, the
+ * sensors referenced by the components and the commands of the controls. Previously each
+ * of these was collected with a separate iteration over the complete model.
+ */
+class ExportModel
+{
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * Collects the export model of the given screens without panel and group information.
+   *
+   * @param screens   screens to export
+   *
+   * @return  export model
+   */
+  static ExportModel forScreens(Collection<Screen> screens)
+  {
+    ExportModel model = new ExportModel();
+
+    model.panels = Collections.emptyList();
+    model.screens.addAll(screens);
+    model.collectScreens();
+
+    return model;
+  }
+
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * The panels of the export, empty if the model was created from screens only.
+   */
+  private Collection<Panel> panels;
+
+  /**
+   * Groups of all panels, in panel order.
+   */
+  private Set<Group> groups = new LinkedHashSet<Group>();
+
+  /**
+   * Screens of all groups, in group order.
+   */
+  private Set<Screen> screens = new LinkedHashSet<Screen>();
+
+  /**
+   * UI components of all screens, including gestures, grouped by their type.
+   */
+  private UIComponentBox components = new UIComponentBox();
+
+  /**
+   * Sensors referenced by the UI components. Each key is the first sensor instance found
+   * for a set of equal sensors and maps to all the instances equal to it.
+   */
+  private Map<Sensor, List<Sensor>> sensors = new LinkedHashMap<Sensor, List<Sensor>>();
+
+  /**
+   * Commands of the controls in absolute and grid layouts.
+   */
+  private List<UICommand> controlCommands = new ArrayList<UICommand>();
+
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Collects the export model of the given panels.
+   *
+   * @param panels    panels to export
+   */
+  ExportModel(Collection<Panel> panels)
+  {
+    this.panels = panels;
+
+    for (Panel panel : panels)
+    {
+      for (GroupRef groupRef : panel.getGroupRefs())
+      {
+        groups.add(groupRef.getGroup());
+      }
+    }
+
+    for (Group group : groups)
+    {
+      for (ScreenPairRef screenRef : group.getScreenRefs())
+      {
+        ScreenPair screenPair = screenRef.getScreen();
+
+        if (OrientationType.PORTRAIT.equals(screenPair.getOrientation()))
+        {
+          screens.add(screenPair.getPortraitScreen());
+        }
+
+        else if (OrientationType.LANDSCAPE.equals(screenPair.getOrientation()))
+        {
+          screens.add(screenPair.getLandscapeScreen());
+        }
+
+        else if (OrientationType.BOTH.equals(screenPair.getOrientation()))
+        {
+          screenPair.setInverseScreenIds();
+
+          screens.add(screenPair.getPortraitScreen());
+          screens.add(screenPair.getLandscapeScreen());
+        }
+      }
+    }
+
+    collectScreens();
+  }
+
+  private ExportModel()
+  {
+
+  }
+
+  // Instance Methods -----------------------------------------------------------------------------
+
+  /**
+   * @return  panels of this export
+   */
+  Collection<Panel> getPanels()
+  {
+    return panels;
+  }
+
+  /**
+   * @return  groups of this export
+   */
+  Set<Group> getGroups()
+  {
+    return groups;
+  }
+
+  /**
+   * @return  screens of this export
+   */
+  Set<Screen> getScreens()
+  {
+    return screens;
+  }
+
+  /**
+   * @return  UI components of this export grouped by their type
+   */
+  UIComponentBox getComponents()
+  {
+    return components;
+  }
+
+  /**
+   * Returns the sensors referenced by the UI components, grouped by equality. Each key is one
+   * representative of a set of equal sensor instances that should be exported as a single
+   * sensor.
+   *
+   * @return  sensor instances grouped by equality
+   */
+  Map<Sensor, List<Sensor>> getSensors()
+  {
+    return sensors;
+  }
+
+  /**
+   * @return  commands of the controls in absolute and grid layouts
+   */
+  List<UICommand> getControlCommands()
+  {
+    return controlCommands;
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private void collectScreens()
+  {
+    for (Screen screen : screens)
+    {
+      for (Absolute absolute : screen.getAbsolutes())
+      {
+        collectComponent(absolute.getUiComponent());
+      }
+
+      for (UIGrid grid : screen.getGrids())
+      {
+        for (Cell cell : grid.getCells())
+        {
+          collectComponent(cell.getUiComponent());
+        }
+      }
+
+      for (Gesture gesture : screen.getGestures())
+      {
+        components.add(gesture);
+      }
+    }
+  }
+
+  private void collectComponent(UIComponent component)
+  {
+    components.add(component);
+
+    if (component instanceof UIControl)
+    {
+      controlCommands.addAll(((UIControl)component).getCommands());
+    }
+
+    if (component instanceof SensorOwner)
+    {
+      Sensor sensor = ((SensorOwner)component).getSensor();
+
+      if (sensor != null)
+      {
+        List<Sensor> equalSensors = sensors.get(sensor);
+
+        if (equalSensors == null)
+        {
+          equalSensors = new ArrayList<Sensor>();
+          sensors.put(sensor, equalSensors);
+        }
+
+        equalSensors.add(sensor);
+      }
+    }
+  }
+}
+
@@ -20,6 +20,7 @@
  */
 package org.openremote.modeler.service.impl;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -27,7 +28,9 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -45,19 +48,18 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.FileBody;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.AbstractHttpMessage;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.app.event.EventCartridge;
 import org.apache.velocity.app.event.implement.EscapeXmlReference;
 import org.hibernate.ObjectNotFoundException;
+import org.openremote.modeler.beehive.BeehiveHttpClient;
+import org.openremote.modeler.cache.DesignerStateArchive;
 import org.openremote.modeler.cache.LocalFileCache;
 import org.openremote.modeler.client.Configuration;
 import org.openremote.modeler.client.Constants;
@@ -81,7 +83,6 @@ import org.openremote.modeler.domain.Panel;
 import org.openremote.modeler.domain.ProtocolAttr;
 import org.openremote.modeler.domain.Screen;
 import org.openremote.modeler.domain.ScreenPair;
-import org.openremote.modeler.domain.ScreenPair.OrientationType;
 import org.openremote.modeler.domain.ScreenPairRef;
 import org.openremote.modeler.domain.Sensor;
 import org.openremote.modeler.domain.Slider;
@@ -94,7 +95,6 @@ import org.openremote.modeler.domain.component.SensorLinkOwner;
 import org.openremote.modeler.domain.component.SensorOwner;
 import org.openremote.modeler.domain.component.UIButton;
 import org.openremote.modeler.domain.component.UIComponent;
-import org.openremote.modeler.domain.component.UIControl;
 import org.openremote.modeler.domain.component.UIGrid;
 import org.openremote.modeler.domain.component.UIImage;
 import org.openremote.modeler.domain.component.UILabel;
@@ -106,6 +106,7 @@ import org.openremote.modeler.exception.IllegalRestUrlException;
 import org.openremote.modeler.exception.NetworkException;
 import org.openremote.modeler.exception.UIRestoreException;
 import org.openremote.modeler.exception.XmlExportException;
+import org.openremote.modeler.exception.XmlParserException;
 import org.openremote.modeler.logging.AdministratorAlert;
 import org.openremote.modeler.logging.LogFacade;
 import org.openremote.modeler.protocol.ProtocolContainer;
@@ -485,30 +486,15 @@ public class ResourceServiceImpl implements ResourceService
    /**
     * Gets the section ids.
     * 
-    * @param screenList
-    *           the activity list
+    * @param model
+    *           the export model
     * 
     * @return the section ids
     */
-   private String getSectionIds(Collection<Screen> screenList) {
+   private String getSectionIds(ExportModel model) {
       Set<String> sectionIds = new HashSet<String>();
-      for (Screen screen : screenList) {
-         for (Absolute absolute : screen.getAbsolutes()) {
-            if (absolute.getUiComponent() instanceof UIControl) {
-               for (UICommand command : ((UIControl) absolute.getUiComponent()).getCommands()) {
-                  addSectionIds(sectionIds, command);
-               }
-            }
-         }
-         for (UIGrid grid : screen.getGrids()) {
-            for (Cell cell : grid.getCells()) {
-               if (cell.getUiComponent() instanceof UIControl) {
-                  for (UICommand command : ((UIControl) cell.getUiComponent()).getCommands()) {
-                     addSectionIds(sectionIds, command);
-                  }
-               }
-            }
-         }
+      for (UICommand command : model.getControlCommands()) {
+         addSectionIds(sectionIds, command);
       }
 
       StringBuffer sectionIdsSB = new StringBuffer();
@@ -648,24 +634,21 @@ public class ResourceServiceImpl implements ResourceService
    }
 
    public String getPanelXML(Collection<Panel> panels) {
-      /*
-       * init groups and screens.
-       */
-      Set<Group> groups = new LinkedHashSet<Group>();
-      Set<Screen> screens = new LinkedHashSet<Screen>();
-      initGroupsAndScreens(panels, groups, screens);
-
-      Map<String, Object> context = new HashMap<String, Object>();
-      context.put("panels", panels);
-      context.put("groups", groups);
-      context.put("screens", screens);
       try {
-        return mergeXMLTemplateIntoString(PANEL_XML_TEMPLATE, context);
+        return mergeXMLTemplateIntoString(PANEL_XML_TEMPLATE, createPanelXMLContext(new ExportModel(panels)));
       } catch (Exception e) {
          throw new XmlExportException("Failed to read panel.xml", e);
       }
    }
 
+   private Map<String, Object> createPanelXMLContext(ExportModel model) {
+      Map<String, Object> context = new HashMap<String, Object>();
+      context.put("panels", model.getPanels());
+      context.put("groups", model.getGroups());
+      context.put("screens", model.getScreens());
+      return context;
+   }
+
    public VelocityEngine getVelocity() {
       return velocity;
    }
@@ -678,8 +661,19 @@ public class ResourceServiceImpl implements ResourceService
       this.userService = userService;
    }
 
-   @SuppressWarnings("unchecked")
    public String getControllerXML(Collection<Screen> screens, long maxOid)
+   {
+      Map<String, Object> context = createControllerXMLContext(ExportModel.forScreens(screens), maxOid);
+
+      try {
+        return mergeXMLTemplateIntoString(CONTROLLER_XML_TEMPLATE, context);
+      } catch (Exception e) {
+        throw new XmlExportException("Failed to read panel.xml", e);
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private Map<String, Object> createControllerXMLContext(ExportModel model, long maxOid)
    {
 
      // PATCH R3181 BEGIN ---8<-----
@@ -702,18 +696,14 @@ public class ResourceServiceImpl implements ResourceService
        */
       MaxId maxId = new MaxId(maxOid + 1);
 
-      /*
-       * initialize UI component box.
-       */
-      UIComponentBox uiComponentBox = new UIComponentBox();
-      initUIComponentBox(screens, uiComponentBox);
+      UIComponentBox uiComponentBox = model.getComponents();
       Map<String, Object> context = new HashMap<String, Object>();
       ProtocolCommandContainer eventContainer = new ProtocolCommandContainer();
       eventContainer.setAllDBDeviceCommands(allDBDeviceCommands);
       addDataBaseCommands(eventContainer, maxId);
       ProtocolContainer protocolContainer = ProtocolContainer.getInstance();
 
-      Collection<Sensor> sensors = getAllSensorWithoutDuplicate(screens, maxId, dbSensors);
+      Collection<Sensor> sensors = getAllSensorWithoutDuplicate(model, maxId, dbSensors);
 
       Collection<UISwitch> switchs = (Collection<UISwitch>) uiComponentBox.getUIComponentsByType(UISwitch.class);
       Collection<UIComponent> buttons = (Collection<UIComponent>) uiComponentBox.getUIComponentsByType(UIButton.class);
@@ -748,7 +738,7 @@ public class ResourceServiceImpl implements ResourceService
 
       context.put("switchs", switchs);
       context.put("buttons", buttons);
-      context.put("screens", screens);
+      context.put("screens", model.getScreens());
       context.put("eventContainer", eventContainer);
       context.put("resouceServiceImpl", this);
       context.put("protocolContainer", protocolContainer);
@@ -760,12 +750,8 @@ public class ResourceServiceImpl implements ResourceService
       context.put("images", uiImages);
       context.put("maxId", maxId);
       context.put("configs", configs);
-      
-      try {
-        return mergeXMLTemplateIntoString(CONTROLLER_XML_TEMPLATE, context);
-      } catch (Exception e) {
-        throw new XmlExportException("Failed to read panel.xml", e);
-      }
+
+      return context;
    }
 
   //
@@ -796,70 +782,28 @@ public class ResourceServiceImpl implements ResourceService
   }
 
 
-   //
-   //  TODO :
-   //
-   //   - should be internalized as part of MODELER-287
-   //
-   private void initGroupsAndScreens(Collection<Panel> panels, Set<Group> groups, Set<Screen> screens) {
-      for (Panel panel : panels) {
-         List<GroupRef> groupRefs = panel.getGroupRefs();
-         for (GroupRef groupRef : groupRefs) {
-            groups.add(groupRef.getGroup());
-         }
-      }
-
-      for (Group group : groups) {
-         List<ScreenPairRef> screenRefs = group.getScreenRefs();
-         for (ScreenPairRef screenRef : screenRefs) {
-            ScreenPair screenPair = screenRef.getScreen();
-            if (OrientationType.PORTRAIT.equals(screenPair.getOrientation())) {
-               screens.add(screenPair.getPortraitScreen());
-            } else if (OrientationType.LANDSCAPE.equals(screenPair.getOrientation())) {
-               screens.add(screenPair.getLandscapeScreen());
-            } else if (OrientationType.BOTH.equals(screenPair.getOrientation())) {
-               screenPair.setInverseScreenIds();
-               screens.add(screenPair.getPortraitScreen());
-               screens.add(screenPair.getLandscapeScreen());
-            }
-         }
-      }
-   }
-
-
-   private Set<Sensor> getAllSensorWithoutDuplicate(Collection<Screen> screens, MaxId maxId,
-                                                    List<Sensor> dbSensors)
+   private Set<Sensor> getAllSensorWithoutDuplicate(ExportModel model, MaxId maxId, List<Sensor> dbSensors)
    {
-      Set<Sensor> sensorWithoutDuplicate = new HashSet<Sensor>();
-      Collection<Sensor> allSensors = new ArrayList<Sensor>();
+      Map<Sensor, List<Sensor>> clientSensors = model.getSensors();
 
-      for (Screen screen : screens) {
-         for (Absolute absolute : screen.getAbsolutes()) {
-            UIComponent component = absolute.getUiComponent();
-            initSensors(allSensors, sensorWithoutDuplicate, component);
-         }
 
-         for (UIGrid grid : screen.getGrids()) {
-            for (Cell cell : grid.getCells()) {
-               initSensors(allSensors, sensorWithoutDuplicate, cell.getUiComponent());
-            }
-         }
-      }
+      // PATCH R3181 BEGIN ---8<------
+      Set<Long> clientSensorOids = new HashSet<Long>();
 
+      for (Sensor clientSensor : clientSensors.keySet())
+      {
+        clientSensorOids.add(clientSensor.getOid());
+      }
 
-      // PATCH R3181 BEGIN ---8<------
       List<Sensor> duplicateDBSensors = new ArrayList<Sensor>();
 
       try
       {
         for (Sensor dbSensor : dbSensors)
         {
-          for (Sensor clientSensor : sensorWithoutDuplicate)
+          if (clientSensorOids.contains(dbSensor.getOid()))
           {
-            if (dbSensor.getOid() == clientSensor.getOid())
-            {
-              duplicateDBSensors.add(dbSensor);
-            }
+            duplicateDBSensors.add(dbSensor);
           }
         }
       }
@@ -894,50 +838,16 @@ public class ResourceServiceImpl implements ResourceService
        * reset sensor oid, avoid duplicated id in export xml. make sure same sensors have same oid.
        */
 
-      for (Sensor sensor : sensorWithoutDuplicate) {
+      for (Map.Entry<Sensor, List<Sensor>> sensorsWithSameOid : clientSensors.entrySet()) {
          long currentSensorId = maxId.maxId();
-         Collection<Sensor> sensorsWithSameOid = new ArrayList<Sensor>();
-         sensorsWithSameOid.add(sensor);
-         for (Sensor s : allSensors) {
-            if (s.equals(sensor)) {
-               sensorsWithSameOid.add(s);
-            }
-         }
-         for (Sensor s : sensorsWithSameOid) {
+         for (Sensor s : sensorsWithSameOid.getValue()) {
             s.setOid(currentSensorId);
          }
       }
-      return sensorWithoutDuplicate;
-   }
-
-   private void initSensors(Collection<Sensor> allSensors, Set<Sensor> sensorsWithoutDuplicate, UIComponent component) {
-      if (component instanceof SensorOwner) {
-         SensorOwner sensorOwner = (SensorOwner) component;
-         if (sensorOwner.getSensor() != null) {
-            allSensors.add(sensorOwner.getSensor());
-            sensorsWithoutDuplicate.add(sensorOwner.getSensor());
-         }
-      }
-   }
-
-   private void initUIComponentBox(Collection<Screen> screens, UIComponentBox uiComponentBox) {
-      uiComponentBox.clear();
-      for (Screen screen : screens) {
-         for (Absolute absolute : screen.getAbsolutes()) {
-            UIComponent component = absolute.getUiComponent();
-            uiComponentBox.add(component);
-         }
 
-         for (UIGrid grid : screen.getGrids()) {
-            for (Cell cell : grid.getCells()) {
-               uiComponentBox.add(cell.getUiComponent());
-            }
-         }
+      // hash codes of the sensors changed with their oids, collect them into a new set
 
-         for (Gesture gesture : screen.getGestures()) {
-            uiComponentBox.add(gesture);
-         }
-      }
+      return new LinkedHashSet<Sensor>(clientSensors.keySet());
    }
 
    /**
@@ -1232,16 +1142,13 @@ public class ResourceServiceImpl implements ResourceService
       // sensors will have different oid, if so, when we export controller.xml we my find that there are two (or more
       // sensors) with all the same property except oid.
       serializePanelsAndMaxOid(panels, maxOid);
-      Set<Group> groups = new LinkedHashSet<Group>();
-      Set<Screen> screens = new LinkedHashSet<Screen>();
+
       /*
-       * initialize groups and screens.
+       * collect groups, screens, components, sensors and commands in a single pass.
        */
-      initGroupsAndScreens(panels, groups, screens);
+      ExportModel model = new ExportModel(panels);
 
-      String controllerXmlContent = getControllerXML(screens, maxOid);
-      String panelXmlContent = getPanelXML(panels);
-      String sectionIds = getSectionIds(screens);
+      String sectionIds = getSectionIds(model);
       String rulesFileContent = getRulesFileContent();
      
       // replaceUrl(screens, sessionId);
@@ -1272,23 +1179,24 @@ public class ResourceServiceImpl implements ResourceService
       File rulesFile = new File(rulesDir, "modeler_rules.drl");
      
       /*
-       * validate and output panel.xml.
-       */
-      String newIphoneXML = XmlParser.validateAndOutputXML(new File(getClass().getResource(
-            configuration.getPanelXsdPath()).getPath()), panelXmlContent, userFolder);
-      controllerXmlContent = XmlParser.validateAndOutputXML(new File(getClass().getResource(
-            configuration.getControllerXsdPath()).getPath()), controllerXmlContent);
-      /*
-       * validate and output controller.xml
+       * generate and validate controller.xml and panel.xml. The controller.xml context must be
+       * created first since it assigns the sensor ids panel.xml refers to.
        */
+      File newControllerXMLFile = generateXMLFile(CONTROLLER_XML_TEMPLATE,
+            createControllerXMLContext(model, maxOid), configuration.getControllerXsdPath(), controllerXMLFile);
+      File newPanelXMLFile = null;
+
       try {
+         newPanelXMLFile = generateXMLFile(PANEL_XML_TEMPLATE, createPanelXMLContext(model),
+               configuration.getPanelXsdPath(), panelXMLFile);
+
          FileUtilsExt.deleteQuietly(panelXMLFile);
          FileUtilsExt.deleteQuietly(controllerXMLFile);
          FileUtilsExt.deleteQuietly(lircdFile);
          FileUtilsExt.deleteQuietly(rulesFile);
 
-         FileUtilsExt.writeStringToFile(panelXMLFile, newIphoneXML);
-         FileUtilsExt.writeStringToFile(controllerXMLFile, controllerXmlContent);
+         moveFile(newPanelXMLFile, panelXMLFile);
+         moveFile(newControllerXMLFile, controllerXMLFile);
          FileUtilsExt.writeStringToFile(rulesFile, rulesFileContent);
         
          if (sectionIds != null && !sectionIds.equals("")) {
@@ -1306,6 +1214,62 @@ public class ResourceServiceImpl implements ResourceService
 
       } catch (IOException e) {
          throw new FileOperationException("Failed to write resource: " + e.getMessage(), e);
+      } finally {
+         FileUtilsExt.deleteQuietly(newControllerXMLFile);
+         FileUtilsExt.deleteQuietly(newPanelXMLFile);
+      }
+   }
+
+   /**
+    * Merges an XML template directly into a file and validates it against the given schema. The validated and
+    * formatted document is written to a temporary file next to the target, which the caller moves in place once
+    * all documents of the export have been generated.
+    * 
+    * @param templateLocation
+    *           the velocity template
+    * @param context
+    *           the template context
+    * @param xsdPath
+    *           class path location of the schema
+    * @param target
+    *           the file the document will be stored to
+    * 
+    * @return the temporary file containing the validated document
+    */
+   private File generateXMLFile(String templateLocation, Map<String, Object> context, String xsdPath, File target) {
+      File mergedFile = new File(target.getPath() + ".merged");
+      File validatedFile = new File(target.getPath() + ".tmp");
+      boolean success = false;
+
+      try {
+         Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mergedFile), "UTF-8"));
+         try {
+            mergeXMLTemplate(templateLocation, context, writer);
+         } finally {
+            writer.close();
+         }
+
+         XmlParser.validateAndOutputXML(new File(getClass().getResource(xsdPath).getPath()), mergedFile,
+               validatedFile);
+
+         success = true;
+         return validatedFile;
+      } catch (XmlParserException e) {
+         throw e;
+      } catch (Exception e) {
+         throw new XmlExportException("Failed to generate " + target.getName(), e);
+      } finally {
+         FileUtilsExt.deleteQuietly(mergedFile);
+
+         if (!success) {
+            FileUtilsExt.deleteQuietly(validatedFile);
+         }
+      }
+   }
+
+   private void moveFile(File source, File target) throws IOException {
+      if (!source.renameTo(target)) {
+         throw new IOException("Unable to move '" + source + "' to '" + target + "'.");
       }
    }
 
@@ -1318,9 +1282,11 @@ public class ResourceServiceImpl implements ResourceService
    private void serializePanelsAndMaxOid(Collection<Panel> panels, long maxOid) {
       PathConfig pathConfig = PathConfig.getInstance(configuration);
       File panelsObjFile = new File(pathConfig.getSerializedPanelsFile(userService.getAccount()));
+      File stateFile = new File(pathConfig.getDesignerStateFile(userService.getAccount()));
       ObjectOutputStream oos = null;
       try {
          FileUtilsExt.deleteQuietly(panelsObjFile);
+         FileUtilsExt.deleteQuietly(stateFile);
          if (panels == null || panels.size() < 1) {
             return;
          }
@@ -1340,6 +1306,14 @@ public class ResourceServiceImpl implements ResourceService
             serviceLog.warn("Unable to close output stream to '" + panelsObjFile + "'.");
          }
       }
+      // the versioned state file is restored in preference to panels.obj, which is still written
+      // for Designer versions that do not read the new format
+      try {
+         DesignerStateArchive.write(stateFile, panels, maxOid);
+      } catch (IOException e) {
+         FileUtilsExt.deleteQuietly(stateFile);
+         serviceLog.error("Unable to write designer state to ''{0}'' : {1}", e, stateFile, e.getMessage());
+      }
    }
 
 
@@ -1444,7 +1418,6 @@ public class ResourceServiceImpl implements ResourceService
    //
    public void saveTemplateResourcesToBeehive(Template template) {
       boolean share = template.getShareTo() == Template.PUBLIC;
-      HttpClient httpClient = new DefaultHttpClient();
       HttpPost httpPost = new HttpPost();
       String beehiveRootRestURL = configuration.getBeehiveRESTRootUrl();
       String url = "";
@@ -1469,11 +1442,16 @@ public class ResourceServiceImpl implements ResourceService
          this.addAuthentication(httpPost);
          httpPost.setEntity(entity);
 
-         HttpResponse response = httpClient.execute(httpPost);
+         BeehiveHttpClient.Response response = BeehiveHttpClient.getInstance().execute(
+               "POST account/{oid}/template/{oid}/resource", httpPost);
 
-         if (200 != response.getStatusLine().getStatusCode()) {
-            throw new BeehiveNotAvailableException("Failed to save template to Beehive, status code: "
-                  + response.getStatusLine().getStatusCode());
+         try {
+            if (200 != response.getStatusCode()) {
+               throw new BeehiveNotAvailableException("Failed to save template to Beehive, status code: "
+                     + response.getStatusCode());
+            }
+         } finally {
+            response.close();
          }
       } catch (NullPointerException e) {
          serviceLog.warn("There are no template resources for template \"" + template.getName() + "\"to save to beehive!");
@@ -1494,8 +1472,9 @@ public class ResourceServiceImpl implements ResourceService
   {
     PathConfig pathConfig = PathConfig.getInstance(configuration);
     File panelsObjFile = new File(pathConfig.getSerializedPanelsFile(userService.getAccount()));
+    File stateFile = new File(pathConfig.getDesignerStateFile(userService.getAccount()));
 
-    return panelsObjFile.exists();
+    return panelsObjFile.exists() || stateFile.exists();
   }
 
    //
@@ -1505,18 +1484,18 @@ public class ResourceServiceImpl implements ResourceService
    //
    @Override public void downloadResourcesForTemplate(long templateOid) {
       PathConfig pathConfig = PathConfig.getInstance(configuration);
-      HttpClient httpClient = new DefaultHttpClient();
       HttpGet httpGet = new HttpGet(configuration.getBeehiveRESTRootUrl() + "account/"
             + userService.getAccount().getOid() + "/template/" + templateOid + "/resource");
       InputStream inputStream = null;
       FileOutputStream fos = null;
+      BeehiveHttpClient.Response response = null;
       this.addAuthentication(httpGet);
 
       try {
-         HttpResponse response = httpClient.execute(httpGet);
+         response = BeehiveHttpClient.getInstance().execute("GET account/{oid}/template/{oid}/resource", httpGet);
 
-         if (200 == response.getStatusLine().getStatusCode()) {
-            inputStream = response.getEntity().getContent();
+         if (200 == response.getStatusCode()) {
+            inputStream = response.getContent();
             File userFolder = new File(pathConfig.userFolder(userService.getAccount()));
             if (!userFolder.exists()) {
                boolean success = userFolder.mkdirs();
@@ -1537,12 +1516,12 @@ public class ResourceServiceImpl implements ResourceService
             fos.flush();
             ZipUtils.unzip(outPut, pathConfig.userFolder(userService.getAccount()));
             FileUtilsExt.deleteQuietly(outPut);
-         } else if (404 == response.getStatusLine().getStatusCode()) {
+         } else if (404 == response.getStatusCode()) {
             serviceLog.warn("There are no resources for this template, ID:" + templateOid);
             return;
          } else {
             throw new BeehiveNotAvailableException("Failed to download resources for template, status code: "
-                  + response.getStatusLine().getStatusCode());
+                  + response.getStatusCode());
          }
       } catch (IOException ioException) {
          throw new BeehiveNotAvailableException("I/O exception in handling user's template.zip file: "
@@ -1565,6 +1544,10 @@ public class ResourceServiceImpl implements ResourceService
                      + ioException.getMessage(), ioException);
             }
          }
+
+         if (response != null) {
+            response.close();
+         }
       }
    }
 
@@ -1751,6 +1734,25 @@ public class ResourceServiceImpl implements ResourceService
    */
   public String mergeXMLTemplateIntoString(String templateLocation, Map model) throws Exception {
     StringWriter result = new StringWriter();
+    mergeXMLTemplate(templateLocation, model, result);
+    return result.toString();
+  }
+
+  /**
+   * Executes merge on template, performing appropriate XML escaping, and streams the result to
+   * the given writer. The writer is not closed.
+   *
+   * Templates are looked up through the velocity engine's resource manager, which is configured
+   * to cache parsed templates so they are only parsed once.
+   *
+   * @see #mergeXMLTemplateIntoString(String, Map)
+   *
+   * @param templateLocation
+   * @param model
+   * @param writer
+   * @throws Exception
+   */
+  public void mergeXMLTemplate(String templateLocation, Map model, Writer writer) throws Exception {
     VelocityContext velocityContext = new VelocityContext(model);
     EventCartridge ec = new EventCartridge();
     ec.addEventHandler(new EscapeXmlReference() {
@@ -1766,7 +1768,6 @@ public class ResourceServiceImpl implements ResourceService
       }
     });
     ec.attachToContext(velocityContext);
-    velocity.mergeTemplate(templateLocation, "UTF8", velocityContext, result);
-    return result.toString();
+    velocity.mergeTemplate(templateLocation, "UTF8", velocityContext, writer);
   }
 }
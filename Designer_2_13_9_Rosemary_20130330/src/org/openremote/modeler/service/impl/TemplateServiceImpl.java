@@ -34,20 +34,16 @@ import java.util.Set;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.AbstractHttpMessage;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.log4j.Logger;
+import org.openremote.modeler.beehive.BeehiveHttpClient;
 import org.openremote.modeler.client.Configuration;
 import org.openremote.modeler.client.Constants;
 import org.openremote.modeler.client.utils.ScreenFromTemplate;
@@ -154,27 +150,16 @@ public class TemplateServiceImpl implements TemplateService
          addAuthentication(httpPost);
          UrlEncodedFormEntity formEntity = new UrlEncodedFormEntity(params, "UTF-8");
          httpPost.setEntity(formEntity);
-         HttpClient httpClient = new DefaultHttpClient();
 
-         String result = httpClient.execute(httpPost, new ResponseHandler<String>() {
+         BeehiveHttpClient.Response response = BeehiveHttpClient.getInstance().execute(
+               "POST account/{oid}/template", httpPost);
+         String result;
 
-            @Override
-            public String handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
-
-               InputStreamReader reader = new InputStreamReader(response.getEntity().getContent());
-               BufferedReader buffReader = new BufferedReader(reader);
-               StringBuilder sb = new StringBuilder();
-               String line = "";
-
-               while ((line = buffReader.readLine()) != null) {
-                  sb.append(line);
-                  sb.append("\n");
-               }
-
-               return sb.toString();
-            }
-
-         });
+         try {
+            result = readContent(response);
+         } finally {
+            response.close();
+         }
 
          if (result.indexOf("<id>") != -1 && result.indexOf("</id>") != -1) {
             long templateOid = Long.parseLong(result.substring(result.indexOf("<id>") + "<id>".length(), result
@@ -317,13 +302,17 @@ public class TemplateServiceImpl implements TemplateService
 
       try {
          httpDelete.setURI(new URI(deleteRestUrl));
-         HttpClient httpClient = new DefaultHttpClient();
-         HttpResponse response = httpClient.execute(httpDelete);
+         BeehiveHttpClient.Response response = BeehiveHttpClient.getInstance().execute(
+               "DELETE account/{oid}/template/{oid}", httpDelete);
 
-         if (200 == response.getStatusLine().getStatusCode()) {
-            return true;
-         } else {
-            throw new BeehiveNotAvailableException("Failed to delete template");
+         try {
+            if (200 == response.getStatusCode()) {
+               return true;
+            } else {
+               throw new BeehiveNotAvailableException("Failed to delete template");
+            }
+         } finally {
+            response.close();
          }
       } catch (Exception e) {
          throw new BeehiveNotAvailableException("Failed to delete template: " + e.getMessage(), e);
@@ -339,29 +328,25 @@ public class TemplateServiceImpl implements TemplateService
       HttpGet httpGet = new HttpGet(restURL);
       httpGet.setHeader("Accept", "application/json");
       this.addAuthentication(httpGet);
-      HttpClient httpClient = new DefaultHttpClient();
 
       try {
-         HttpResponse response = httpClient.execute(httpGet);
-
-         if (response.getStatusLine().getStatusCode() != HttpServletResponse.SC_OK) {
-            if (response.getStatusLine().getStatusCode() == HttpServletResponse.SC_UNAUTHORIZED) {
-               throw new NotAuthenticatedException("User "+userService.getCurrentUser().getUsername() + " not authenticated! ");
+         BeehiveHttpClient.Response response = BeehiveHttpClient.getInstance().execute(
+               "GET account/{oid}/templates/{shared}", httpGet);
+         String result;
+
+         try {
+            if (response.getStatusCode() != HttpServletResponse.SC_OK) {
+               if (response.getStatusCode() == HttpServletResponse.SC_UNAUTHORIZED) {
+                  throw new NotAuthenticatedException("User "+userService.getCurrentUser().getUsername() + " not authenticated! ");
+               }
+               throw new BeehiveNotAvailableException("Beehive is not available right now! ");
             }
-            throw new BeehiveNotAvailableException("Beehive is not available right now! ");
-         }
-
-         InputStreamReader reader = new InputStreamReader(response.getEntity().getContent());
-         BufferedReader buffReader = new BufferedReader(reader);
-         StringBuilder sb = new StringBuilder();
-         String line = "";
 
-         while ((line = buffReader.readLine()) != null) {
-            sb.append(line);
-            sb.append("\n");
+            result = readContent(response);
+         } finally {
+            response.close();
          }
 
-         String result = sb.toString();
          TemplateList templateList = buildTemplateListFromJson(result);
          List<TemplateDTO> dtoes = templateList.getTemplates();
 
@@ -387,29 +372,25 @@ public class TemplateServiceImpl implements TemplateService
       HttpGet httpGet = new HttpGet(restURL);
       httpGet.setHeader("Accept", "application/json");
       this.addAuthentication(httpGet);
-      HttpClient httpClient = new DefaultHttpClient();
 
       try {
-         HttpResponse response = httpClient.execute(httpGet);
-
-         if (response.getStatusLine().getStatusCode() != HttpServletResponse.SC_OK) {
-            if (response.getStatusLine().getStatusCode() == HttpServletResponse.SC_UNAUTHORIZED) {
-               throw new NotAuthenticatedException("User "+userService.getCurrentUser().getUsername() + " not authenticated! ");
+         BeehiveHttpClient.Response response = BeehiveHttpClient.getInstance().execute(
+               "GET templates/keywords/{keywords}/page/{page}", httpGet);
+         String result;
+
+         try {
+            if (response.getStatusCode() != HttpServletResponse.SC_OK) {
+               if (response.getStatusCode() == HttpServletResponse.SC_UNAUTHORIZED) {
+                  throw new NotAuthenticatedException("User "+userService.getCurrentUser().getUsername() + " not authenticated! ");
+               }
+               throw new BeehiveNotAvailableException("Beehive is not available right now! ");
             }
-            throw new BeehiveNotAvailableException("Beehive is not available right now! ");
-         }
 
-         InputStreamReader reader = new InputStreamReader(response.getEntity().getContent());
-         BufferedReader buffReader = new BufferedReader(reader);
-         StringBuilder sb = new StringBuilder();
-         String line = "";
-
-         while ((line = buffReader.readLine()) != null) {
-            sb.append(line);
-            sb.append("\n");
+            result = readContent(response);
+         } finally {
+            response.close();
          }
 
-         String result = sb.toString();
          TemplateList templateList = buildTemplateListFromJson(result);
          List<TemplateDTO> dtoes = templateList.getTemplates();
 
@@ -1073,6 +1054,24 @@ public class TemplateServiceImpl implements TemplateService
             + encode(userService.getCurrentUser().getUsername() + ":"
                   + userService.getCurrentUser().getPassword()));
    }
+
+   private String readContent(BeehiveHttpClient.Response response) throws IOException {
+      StringBuilder sb = new StringBuilder();
+
+      if (response.getEntity() == null) {
+         return sb.toString();
+      }
+
+      BufferedReader buffReader = new BufferedReader(new InputStreamReader(response.getContent()));
+      String line = "";
+
+      while ((line = buffReader.readLine()) != null) {
+         sb.append(line);
+         sb.append("\n");
+      }
+
+      return sb.toString();
+   }
    
    private TemplateList buildTemplateListFromJson(String templatesJson) {
       TemplateList result = new TemplateList();
@@ -1251,14 +1250,22 @@ public class TemplateServiceImpl implements TemplateService
          UrlEncodedFormEntity formEntity = new UrlEncodedFormEntity(params, "UTF-8");
          httpPut.setEntity(formEntity);
 
-         HttpClient httpClient = new DefaultHttpClient();
-         HttpResponse response = httpClient.execute(httpPut);
-         if (HttpServletResponse.SC_OK == response.getStatusLine().getStatusCode()) {
+         BeehiveHttpClient.Response response = BeehiveHttpClient.getInstance().execute(
+               "PUT account/{oid}/template/{oid}", httpPut);
+         int status;
+
+         try {
+            status = response.getStatusCode();
+         } finally {
+            response.close();
+         }
+
+         if (HttpServletResponse.SC_OK == status) {
             resourceService.saveTemplateResourcesToBeehive(template);
-         } else if (HttpServletResponse.SC_NOT_FOUND == response.getStatusLine().getStatusCode()) {
+         } else if (HttpServletResponse.SC_NOT_FOUND == status) {
             return null;
          } else {
-            throw new BeehiveNotAvailableException("Failed to update template:"+template.getName()+", Status code: "+response.getStatusLine().getStatusCode());
+            throw new BeehiveNotAvailableException("Failed to update template:"+template.getName()+", Status code: "+status);
          }
       } catch (Exception e) {
          throw new BeehiveNotAvailableException("Failed to save screen as a template: "
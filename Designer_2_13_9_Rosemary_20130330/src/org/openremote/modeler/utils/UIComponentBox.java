@@ -32,6 +32,12 @@ import org.openremote.modeler.domain.component.UIComponent;
 public class UIComponentBox {
    private Map<Class<UIComponent>, Set<UIComponent>> uiComponentsMap = new HashMap<Class<UIComponent>, Set<UIComponent>>();
 
+   /**
+    * Components of each type indexed by their oid, used to find the component to replace in constant time instead of
+    * scanning the whole set on every add.
+    */
+   private Map<Class<UIComponent>, Map<Long, UIComponent>> oidIndex = new HashMap<Class<UIComponent>, Map<Long, UIComponent>>();
+
    /**
     * add the UIComponent to the box. Different UIComponent will be stored in different set. The same kind of
     * UIComponent will be stored in the same set.
@@ -41,21 +47,19 @@ public class UIComponentBox {
     */
    @SuppressWarnings("unchecked")
    public void add(UIComponent component) {
-      if (null == uiComponentsMap.get(component.getClass())) {
-         Set<UIComponent> components = new HashSet<UIComponent>();
-         uiComponentsMap.put((Class<UIComponent>) component.getClass(), components);
+      Class<UIComponent> type = (Class<UIComponent>) component.getClass();
+      Set<UIComponent> components = uiComponentsMap.get(type);
+      Map<Long, UIComponent> componentsByOid = oidIndex.get(type);
+      if (null == components) {
+         components = new HashSet<UIComponent>();
+         componentsByOid = new HashMap<Long, UIComponent>();
+         uiComponentsMap.put(type, components);
+         oidIndex.put(type, componentsByOid);
       }
-      Set<UIComponent> components = uiComponentsMap.get(component.getClass());
       /*
        * save or update
        */
-      UIComponent oldComponent = null;
-      for (UIComponent uiComponent : components) {
-         if (uiComponent.getOid() == component.getOid()) {
-            oldComponent = uiComponent;
-            break;
-         }
-      }
+      UIComponent oldComponent = componentsByOid.put(component.getOid(), component);
       if (oldComponent != null) {
          components.remove(oldComponent);
       }
@@ -81,5 +85,6 @@ public class UIComponentBox {
    
    public synchronized void clear(){
       uiComponentsMap.clear();
+      oidIndex.clear();
    }
 }
@@ -21,9 +21,11 @@
 package org.openremote.modeler.utils;
 
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.util.Collection;
 import java.util.List;
@@ -32,6 +34,7 @@ import java.util.Set;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.log4j.Logger;
 import org.jdom.Attribute;
@@ -131,6 +134,40 @@ public class XmlParser {
       }
       return result;
    }
+
+   /**
+    * Validates an XML file against the given schema and writes it, pretty printed and UTF-8 encoded, to another
+    * file. The document is streamed from and to disk without creating intermediate strings of its content.
+    * 
+    * @param xsdfile the xsd file
+    * @param xmlFile the xml file to validate
+    * @param outputFile the file to write the formatted document to
+    */
+   public static void validateAndOutputXML(File xsdfile, File xmlFile, File outputFile) {
+      SAXBuilder sb = new SAXBuilder(true);
+      sb.setValidation(true);
+
+      sb.setProperty(SCHEMA_LANGUAGE, XML_SCHEMA);
+      sb.setProperty(SCHEMA_SOURCE, xsdfile);
+      OutputStream out = null;
+      try {
+         Document doc = sb.build(xmlFile);
+         Format format = Format.getPrettyFormat();
+         format.setIndent("  ");
+         format.setEncoding("UTF-8");
+         XMLOutputter outp = new XMLOutputter(format);
+         out = new BufferedOutputStream(new FileOutputStream(outputFile));
+         outp.output(doc, out);
+         out.flush();
+      } catch (JDOMException e) {
+         throw new XmlParserException("Parser XML occur JDOMException", e);
+      } catch (IOException e) {
+         throw new XmlParserException("Parser XML occur IOException", e);
+      } finally {
+         IOUtils.closeQuietly(out);
+      }
+   }
+
    @SuppressWarnings({ "unchecked", "unused" })
    private static void xpathParseImage(File folder, Document doc, String xpathExpression, String attrName) throws JDOMException, IOException {
       XPath xpath = XPath.newInstance(xpathExpression);
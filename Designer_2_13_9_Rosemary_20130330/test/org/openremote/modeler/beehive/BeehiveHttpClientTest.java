@@ -0,0 +1,275 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.beehive;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.InputStreamEntity;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link BeehiveHttpClient} class, run against a local stub Beehive server.
+ */
+public class BeehiveHttpClientTest
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  private final static int ARCHIVE_SIZE = 1024 * 1024;
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private HttpServer server;
+
+  private String rootURL;
+
+  private BeehiveHttpClient client;
+
+  private Set<Integer> clientPorts;
+
+  private volatile long uploadedBytes;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @BeforeMethod public void setUp() throws Exception
+  {
+    clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    uploadedBytes = -1;
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new StubBeehive());
+    server.start();
+
+    rootURL = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+
+    client = new BeehiveHttpClient();
+  }
+
+  @AfterMethod public void tearDown()
+  {
+    client.shutdown();
+    server.stop(0);
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that consecutive requests reuse a single keep-alive connection and are counted
+   * per endpoint.
+   */
+  @Test public void testConnectionReuse() throws Exception
+  {
+    for (int i = 0; i < 5; i++)
+    {
+      BeehiveHttpClient.Response response = client.execute("GET templates", new HttpGet(rootURL + "templates"));
+
+      try
+      {
+        Assert.assertEquals(response.getStatusCode(), 200);
+      }
+
+      finally
+      {
+        response.close();
+      }
+    }
+
+    BeehiveHttpClient.Response response = client.execute("GET missing", new HttpGet(rootURL + "missing"));
+    response.close();
+
+    Assert.assertEquals(clientPorts.size(), 1, "Expected all requests on one connection: " + clientPorts);
+    Assert.assertEquals(client.getConnectionsInPool(), 1);
+
+    Assert.assertEquals(client.getStatistics("GET templates").getRequestCount(), 5);
+    Assert.assertEquals(client.getStatistics("GET templates").getFailureCount(), 0);
+    Assert.assertEquals(client.getStatistics("GET missing").getRequestCount(), 1);
+    Assert.assertEquals(client.getStatistics().size(), 2);
+    Assert.assertNull(client.getStatistics("POST templates"));
+  }
+
+  /**
+   * Tests streaming a resource archive download and upload through the pooled connection.
+   */
+  @Test public void testStreamingTransfer() throws Exception
+  {
+    BeehiveHttpClient.Response response = client.execute("GET archive", new HttpGet(rootURL + "archive"));
+    long downloaded = 0;
+
+    try
+    {
+      Assert.assertEquals(response.getStatusCode(), 200);
+      Assert.assertEquals(response.getEntity().getContentLength(), ARCHIVE_SIZE);
+
+      InputStream in = response.getContent();
+      byte[] buffer = new byte[4096];
+      int len;
+
+      while ((len = in.read(buffer)) != -1)
+      {
+        downloaded += len;
+      }
+    }
+
+    finally
+    {
+      response.close();
+    }
+
+    Assert.assertEquals(downloaded, ARCHIVE_SIZE);
+
+    HttpPost post = new HttpPost(rootURL + "archive");
+    post.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[ARCHIVE_SIZE]), -1));
+
+    response = client.execute("POST archive", post);
+
+    try
+    {
+      Assert.assertEquals(response.getStatusCode(), 200);
+    }
+
+    finally
+    {
+      response.close();
+    }
+
+    Assert.assertEquals(uploadedBytes, ARCHIVE_SIZE);
+    Assert.assertEquals(clientPorts.size(), 1);
+  }
+
+  /**
+   * Tests that aborted responses are recorded as failures and their connection is not reused.
+   */
+  @Test public void testAbort() throws Exception
+  {
+    BeehiveHttpClient.Response response = client.execute("GET archive", new HttpGet(rootURL + "archive"));
+
+    response.getContent().read();
+    response.abort();
+    response.close();
+
+    BeehiveHttpClient.EndpointStatistics stats = client.getStatistics("GET archive");
+
+    Assert.assertEquals(stats.getRequestCount(), 1);
+    Assert.assertEquals(stats.getFailureCount(), 1);
+
+    response = client.execute("GET templates", new HttpGet(rootURL + "templates"));
+    response.close();
+
+    Assert.assertEquals(clientPorts.size(), 2);
+  }
+
+  /**
+   * Tests that connection errors are recorded as failures.
+   */
+  @Test public void testConnectionFailure() throws Exception
+  {
+    server.stop(0);
+
+    try
+    {
+      client.execute("GET templates", new HttpGet(rootURL + "templates"));
+
+      Assert.fail("should not get here...");
+    }
+
+    catch (IOException e)
+    {
+      // expected...
+    }
+
+    Assert.assertEquals(client.getStatistics("GET templates").getFailureCount(), 1);
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private class StubBeehive implements HttpHandler
+  {
+    public void handle(HttpExchange exchange) throws IOException
+    {
+      clientPorts.add(exchange.getRemoteAddress().getPort());
+
+      String path = exchange.getRequestURI().getPath();
+      InputStream in = exchange.getRequestBody();
+      byte[] buffer = new byte[4096];
+      long received = 0;
+      int len;
+
+      while ((len = in.read(buffer)) != -1)
+      {
+        received += len;
+      }
+
+      if (path.equals("/templates"))
+      {
+        byte[] body = "{\"templates\":{}}".getBytes("UTF-8");
+
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+      }
+
+      else if (path.equals("/archive") && exchange.getRequestMethod().equals("GET"))
+      {
+        exchange.sendResponseHeaders(200, ARCHIVE_SIZE);
+
+        OutputStream out = exchange.getResponseBody();
+
+        for (int i = 0; i < ARCHIVE_SIZE / buffer.length; i++)
+        {
+          out.write(buffer);
+        }
+      }
+
+      else if (path.equals("/archive"))
+      {
+        uploadedBytes = received;
+
+        exchange.sendResponseHeaders(200, -1);
+      }
+
+      else
+      {
+        exchange.sendResponseHeaders(404, -1);
+      }
+
+      exchange.close();
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openremote.modeler.domain.Panel;
+
+/**
+ * Compares restore time, heap allocation and retained heap of the designer state file against
+ * the legacy Java serialized panels.obj file. Not part of the test suites, run with
+ * <tt>java org.openremote.modeler.cache.DesignerStateArchiveBenchmark [panels] [groups]</tt>
+ * on a HotSpot JVM (allocation is measured with <tt>com.sun.management.ThreadMXBean</tt>).
+ */
+public class DesignerStateArchiveBenchmark
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  private final static int WARMUP_ITERATIONS = 20;
+
+  private final static int MEASURED_ITERATIONS = 50;
+
+  private final static int RETAINED_COPIES = 10;
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  private static volatile Object sink;
+
+
+  public static void main(String[] args) throws Exception
+  {
+    int panelCount = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    int groupCount = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    final List<Panel> panels = new ArrayList<Panel>();
+
+    for (int index = 0; index < panelCount; index++)
+    {
+      panels.add(DesignerStateArchiveTest.createPanel((index + 1) * 100000L, "Panel " + index, groupCount));
+    }
+
+    final File legacyFile = File.createTempFile("panels", ".obj");
+    final File stateFile = File.createTempFile("panels", ".state");
+
+    legacyFile.deleteOnExit();
+    stateFile.deleteOnExit();
+
+    ObjectOutputStream oos = new ObjectOutputStream(
+        new BufferedOutputStream(new FileOutputStream(legacyFile))
+    );
+
+    try
+    {
+      oos.writeObject(panels);
+      oos.writeLong(panelCount * 100000L);
+    }
+
+    finally
+    {
+      oos.close();
+    }
+
+    DesignerStateArchive.write(stateFile, panels, panelCount * 100000L);
+
+    panels.clear();
+
+    System.out.println(
+        "Designer state restore, " + panelCount + " panels with " + groupCount + " groups each:"
+    );
+    System.out.println("  panels.obj   : " + legacyFile.length() + " bytes");
+    System.out.println("  panels.state : " + stateFile.length() + " bytes");
+
+    Restore[] restores = new Restore[]
+    {
+      new Restore("panels.obj (Java serialization)")
+      {
+        @Override Object run() throws Exception
+        {
+          ObjectInputStream ois = new ObjectInputStream(
+              new BufferedInputStream(new FileInputStream(legacyFile))
+          );
+
+          try
+          {
+            Object result = ois.readObject();
+            ois.readLong();
+
+            return result;
+          }
+
+          finally
+          {
+            ois.close();
+          }
+        }
+      },
+
+      new Restore("panels.state, all panels")
+      {
+        @Override Object run() throws Exception
+        {
+          return DesignerStateArchive.open(stateFile).loadPanels();
+        }
+      },
+
+      new Restore("panels.state, single panel")
+      {
+        @Override Object run() throws Exception
+        {
+          return DesignerStateArchive.open(stateFile).loadPanel(0);
+        }
+      },
+
+      new Restore("panels.state, panel index only")
+      {
+        @Override Object run() throws Exception
+        {
+          return DesignerStateArchive.open(stateFile);
+        }
+      }
+    };
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    long threadID = Thread.currentThread().getId();
+
+    for (Restore restore : restores)
+    {
+      for (int i = 0; i < WARMUP_ITERATIONS; ++i)
+      {
+        sink = restore.run();
+      }
+
+      long allocated = threads.getThreadAllocatedBytes(threadID);
+      long start = System.nanoTime();
+
+      for (int i = 0; i < MEASURED_ITERATIONS; ++i)
+      {
+        sink = restore.run();
+      }
+
+      long elapsed = System.nanoTime() - start;
+
+      allocated = threads.getThreadAllocatedBytes(threadID) - allocated;
+
+      sink = null;
+      long baseline = usedHeap();
+
+      Object[] restored = new Object[RETAINED_COPIES];
+
+      for (int i = 0; i < RETAINED_COPIES; ++i)
+      {
+        restored[i] = restore.run();
+      }
+
+      sink = restored;
+
+      long retained = (usedHeap() - baseline) / RETAINED_COPIES;
+
+      sink = null;
+
+      System.out.println(
+          "  " + restore.name + " : " + (elapsed / MEASURED_ITERATIONS) / 1000 + " us/restore, " +
+          allocated / MEASURED_ITERATIONS / 1024 + " KB allocated/restore, " +
+          retained / 1024 + " KB retained"
+      );
+    }
+  }
+
+  private static long usedHeap() throws InterruptedException
+  {
+    Runtime runtime = Runtime.getRuntime();
+
+    for (int i = 0; i < 3; ++i)
+    {
+      System.gc();
+      Thread.sleep(50);
+    }
+
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private abstract static class Restore
+  {
+    private String name;
+
+    private Restore(String name)
+    {
+      this.name = name;
+    }
+
+    abstract Object run() throws Exception;
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openremote.modeler.domain.Absolute;
+import org.openremote.modeler.domain.Cell;
+import org.openremote.modeler.domain.Group;
+import org.openremote.modeler.domain.GroupRef;
+import org.openremote.modeler.domain.Panel;
+import org.openremote.modeler.domain.Screen;
+import org.openremote.modeler.domain.ScreenPair;
+import org.openremote.modeler.domain.ScreenPairRef;
+import org.openremote.modeler.domain.component.Gesture;
+import org.openremote.modeler.domain.component.ImageSource;
+import org.openremote.modeler.domain.component.Navigate;
+import org.openremote.modeler.domain.component.UIButton;
+import org.openremote.modeler.domain.component.UIGrid;
+import org.openremote.modeler.domain.component.UILabel;
+import org.openremote.modeler.touchpanel.TouchPanelCanvasDefinition;
+import org.openremote.modeler.touchpanel.TouchPanelDefinition;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link DesignerStateArchive} class.
+ */
+public class DesignerStateArchiveTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private File file;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @BeforeMethod public void setUp() throws Exception
+  {
+    file = File.createTempFile("designer", ".state");
+  }
+
+  @AfterMethod public void tearDown()
+  {
+    file.delete();
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that the panel tree, its back-references and the components are restored.
+   */
+  @Test public void testRoundTrip() throws Exception
+  {
+    Panel original = createPanel(10, "iPhone", 2);
+
+    DesignerStateArchive.write(file, list(original), 1234);
+
+    DesignerStateArchive archive = DesignerStateArchive.open(file);
+
+    Assert.assertEquals(archive.getSchemaVersion(), DesignerStateArchive.SCHEMA_VERSION);
+    Assert.assertEquals(archive.getMaxOID(), 1234);
+    Assert.assertEquals(archive.getPanelCount(), 1);
+
+    Panel panel = archive.loadPanels().get(0);
+
+    Assert.assertEquals(panel.getOid(), 10);
+    Assert.assertEquals(panel.getName(), "iPhone");
+    Assert.assertEquals(panel.getTouchPanelDefinition().getName(), "iPhone");
+    Assert.assertEquals(panel.getGroupRefs().size(), 2);
+
+    GroupRef groupRef = panel.getGroupRefs().get(0);
+    Group group = groupRef.getGroup();
+
+    Assert.assertSame(groupRef.getPanel(), panel);
+    Assert.assertSame(group.getParentPanel(), panel);
+    Assert.assertEquals(group.getName(), "Group 11");
+    Assert.assertEquals(group.getRefCount(), 1);
+
+    ScreenPair screenPair = group.getScreenRefs().get(0).getScreen();
+
+    Assert.assertSame(group.getScreenRefs().get(0).getGroup(), group);
+    Assert.assertSame(screenPair.getParentGroup(), group);
+    Assert.assertEquals(screenPair.getOrientation(), ScreenPair.OrientationType.BOTH);
+    Assert.assertSame(screenPair.getTouchPanelDefinition(), panel.getTouchPanelDefinition());
+
+    Screen screen = screenPair.getPortraitScreen();
+
+    Assert.assertSame(screen.getScreenPair(), screenPair);
+    Assert.assertSame(screenPair.getLandscapeScreen().getScreenPair(), screenPair);
+    Assert.assertTrue(screenPair.getLandscapeScreen().isLandscape());
+    Assert.assertEquals(screen.getInverseScreenId(), screenPair.getLandscapeScreen().getOid());
+    Assert.assertEquals(screen.getBackground().getImageSource().getSrc(), "background.png");
+
+    Absolute absolute = screen.getAbsolutes().get(0);
+    UIButton button = (UIButton)absolute.getUiComponent();
+
+    Assert.assertEquals(absolute.getLeft(), 10);
+    Assert.assertEquals(absolute.getWidth(), 50);
+    Assert.assertEquals(button.getName(), "Button 0");
+    Assert.assertEquals(button.getImage().getSrc(), "button.png");
+    Assert.assertEquals(button.getNavigate().getToGroup(), group.getOid());
+
+    UIGrid grid = screen.getGrids().get(0);
+    Cell cell = grid.getCells().get(0);
+
+    Assert.assertEquals(grid.getRowCount(), 2);
+    Assert.assertEquals(cell.getColspan(), 2);
+    Assert.assertEquals(((UILabel)cell.getUiComponent()).getText(), "Label 0");
+
+    Assert.assertEquals(screen.getGestures().size(), 1);
+    Assert.assertEquals(screen.getGestures().get(0).getType(), Gesture.GestureType.swipe_left_to_right);
+  }
+
+  /**
+   * Tests that a screen pair shared by two groups of a panel is restored as a single instance
+   * with its reference count intact.
+   */
+  @Test public void testSharedScreenPair() throws Exception
+  {
+    Panel original = createPanel(10, "iPhone", 2);
+
+    Group first = original.getGroupRefs().get(0).getGroup();
+    Group second = original.getGroupRefs().get(1).getGroup();
+
+    ScreenPairRef sharedRef = new ScreenPairRef(first.getScreenRefs().get(0).getScreen());
+    sharedRef.setOid(999);
+    sharedRef.setGroup(second);
+    second.addScreenRef(sharedRef);
+
+    DesignerStateArchive.write(file, list(original), 1000);
+
+    Panel panel = DesignerStateArchive.open(file).loadPanel(0);
+
+    ScreenPair screenPair = panel.getGroupRefs().get(0).getGroup().getScreenRefs().get(0).getScreen();
+    Group restoredSecond = panel.getGroupRefs().get(1).getGroup();
+
+    Assert.assertSame(restoredSecond.getScreenRefs().get(1).getScreen(), screenPair);
+    Assert.assertSame(restoredSecond.getScreenRefs().get(1).getGroup(), restoredSecond);
+    Assert.assertEquals(screenPair.getRefCount(), 2);
+  }
+
+  /**
+   * Tests that the panel index is available without loading panels, and that panels can be
+   * loaded individually.
+   */
+  @Test public void testLazyLoad() throws Exception
+  {
+    DesignerStateArchive.write(
+        file, list(createPanel(100, "One", 1), createPanel(200, "Two", 1), createPanel(300, "Three", 1)), 400
+    );
+
+    DesignerStateArchive archive = DesignerStateArchive.open(file);
+
+    Assert.assertEquals(archive.getPanelCount(), 3);
+    Assert.assertEquals(archive.getPanelName(1), "Two");
+    Assert.assertEquals(archive.getPanelOID(2), 300);
+
+    Panel panel = archive.loadPanel(2);
+
+    Assert.assertEquals(panel.getName(), "Three");
+    Assert.assertEquals(panel.getGroupRefs().get(0).getGroup().getOid(), 301);
+    Assert.assertSame(archive.loadPanel(2), panel);
+  }
+
+  /**
+   * Tests that a group referenced from two panels is restored as a single instance.
+   */
+  @Test public void testGroupSharedBetweenPanels() throws Exception
+  {
+    Panel first = createPanel(100, "One", 1);
+    Panel second = createPanel(200, "Two", 1);
+
+    Group shared = first.getGroupRefs().get(0).getGroup();
+    GroupRef ref = new GroupRef(shared);
+    ref.setOid(250);
+    ref.setPanel(second);
+    second.addGroupRef(ref);
+
+    DesignerStateArchive.write(file, list(first, second), 300);
+
+    List<Panel> panels = DesignerStateArchive.open(file).loadPanels();
+
+    Group group = panels.get(0).getGroupRefs().get(0).getGroup();
+
+    Assert.assertSame(panels.get(1).getGroupRefs().get(1).getGroup(), group);
+    Assert.assertSame(group.getParentPanel(), panels.get(0));
+    Assert.assertEquals(group.getRefCount(), 2);
+  }
+
+  /**
+   * Tests that files which are not designer state files are rejected.
+   */
+  @Test public void testInvalidFile() throws Exception
+  {
+    FileOutputStream out = new FileOutputStream(file);
+
+    try
+    {
+      out.write("panels".getBytes("UTF-8"));
+    }
+
+    finally
+    {
+      out.close();
+    }
+
+    try
+    {
+      DesignerStateArchive.open(file);
+
+      Assert.fail("should not get here...");
+    }
+
+    catch (IOException e)
+    {
+      // expected
+    }
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private List<Panel> list(Panel... panels)
+  {
+    List<Panel> list = new ArrayList<Panel>();
+
+    for (Panel panel : panels)
+    {
+      list.add(panel);
+    }
+
+    return list;
+  }
+
+  /**
+   * Creates a panel with the given number of groups, each with one screen pair. OIDs of groups
+   * and screens are derived from the panel OID.
+   */
+  static Panel createPanel(long oid, String name, int groups)
+  {
+    TouchPanelDefinition definition = new TouchPanelDefinition();
+    definition.setName(name);
+    definition.setType("iphone");
+    definition.setCanvas(new TouchPanelCanvasDefinition(320, 460));
+
+    Panel panel = new Panel();
+    panel.setOid(oid);
+    panel.setName(name);
+    panel.setTouchPanelDefinition(definition);
+
+    for (int index = 0; index < groups; index++)
+    {
+      long groupOID = oid + 1 + index * 10;
+
+      Group group = new Group();
+      group.setOid(groupOID);
+      group.setName("Group " + groupOID);
+      group.setParentPanel(panel);
+
+      Screen portrait = createScreen(groupOID + 2, groupOID, false);
+      Screen landscape = createScreen(groupOID + 3, groupOID, true);
+
+      ScreenPair screenPair = new ScreenPair();
+      screenPair.setOid(groupOID + 1);
+      screenPair.setOrientation(ScreenPair.OrientationType.BOTH);
+      screenPair.setPortraitScreen(portrait);
+      screenPair.setLandscapeScreen(landscape);
+      screenPair.setTouchPanelDefinition(definition);
+      screenPair.setInverseScreenIds();
+      screenPair.setParentGroup(group);
+
+      ScreenPairRef screenRef = new ScreenPairRef(screenPair);
+      screenRef.setOid(groupOID + 4);
+      screenRef.setGroup(group);
+      group.addScreenRef(screenRef);
+
+      GroupRef groupRef = new GroupRef(group);
+      groupRef.setOid(groupOID + 5);
+      groupRef.setPanel(panel);
+      panel.addGroupRef(groupRef);
+    }
+
+    return panel;
+  }
+
+  private static Screen createScreen(long oid, long groupOID, boolean landscape)
+  {
+    Screen screen = new Screen();
+    screen.setOid(oid);
+    screen.setName("Screen " + oid);
+    screen.setLandscape(landscape);
+    screen.getBackground().setImageSource(new ImageSource("background.png"));
+
+    for (int index = 0; index < 4; index++)
+    {
+      Navigate navigate = new Navigate();
+      navigate.setToGroup(groupOID);
+
+      UIButton button = new UIButton(oid * 100 + index);
+      button.setName("Button " + index);
+      button.setImage(new ImageSource("button.png"));
+      button.setNavigate(navigate);
+
+      Absolute absolute = new Absolute(oid * 100 + 50 + index);
+      absolute.setPosition(10 + index * 60, 10);
+      absolute.setSize(50, 50);
+      absolute.setUiComponent(button);
+
+      screen.addAbsolute(absolute);
+    }
+
+    UIGrid grid = new UIGrid(0, 300, 320, 100, 2, 2);
+    grid.setOid(oid * 100 + 90);
+
+    Cell cell = new Cell(oid * 100 + 91);
+    cell.setColspan(2);
+    cell.setRowspan(1);
+
+    UILabel label = new UILabel(oid * 100 + 92);
+    label.setText("Label 0");
+    cell.setUiComponent(label);
+
+    grid.addCell(cell);
+    screen.addGrid(grid);
+
+    screen.addGesture(new Gesture(Gesture.GestureType.swipe_left_to_right));
+
+    return screen;
+  }
+}
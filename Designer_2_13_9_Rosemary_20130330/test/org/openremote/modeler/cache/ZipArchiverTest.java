@@ -0,0 +1,330 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link ZipArchiver} class.
+ */
+public class ZipArchiverTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private File directory;
+
+  private Map<String, byte[]> contents;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @BeforeMethod public void setUp() throws Exception
+  {
+    directory = File.createTempFile("archiver", "");
+    directory.delete();
+    directory.mkdirs();
+
+    Random random = new Random(42);
+
+    byte[] incompressible = new byte[ZipArchiver.MAX_BUFFERED_ENTRY_SIZE * 2];
+    random.nextBytes(incompressible);
+
+    StringBuilder text = new StringBuilder();
+
+    while (text.length() < ZipArchiver.MAX_BUFFERED_ENTRY_SIZE * 3)
+    {
+      text.append("<absolute left=\"").append(random.nextInt(320)).append("\" top=\"0\"/>\n");
+    }
+
+    contents = new LinkedHashMap<String, byte[]>();
+    contents.put("panel.xml", "<openremote><panels/></openremote>".getBytes("UTF-8"));
+    contents.put("controller.xml", text.toString().getBytes("UTF-8"));
+    contents.put("image.png", incompressible);
+    contents.put("rules/modeler_rules.drl", "rule \"r\" when then end".getBytes("UTF-8"));
+    contents.put("empty.conf", new byte[0]);
+
+    for (int index = 0; index < 50; index++)
+    {
+      byte[] image = new byte[random.nextInt(2000)];
+      random.nextBytes(image);
+
+      contents.put("image" + index + ".gif", image);
+    }
+
+    for (Map.Entry<String, byte[]> entry : contents.entrySet())
+    {
+      write(new File(directory, entry.getKey()), entry.getValue());
+    }
+  }
+
+  @AfterMethod public void tearDown()
+  {
+    delete(directory);
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that created archives can be read with the standard zip streams and extracted back.
+   */
+  @Test public void testCompressAndExtract() throws Exception
+  {
+    File archive = new File(directory, "export/test.zip");
+    archive.getParentFile().mkdirs();
+
+    Map<String, byte[]> extra = new HashMap<String, byte[]>();
+    extra.put("openremote.manifest", "abc panel.xml\n".getBytes("UTF-8"));
+
+    ZipArchiver archiver = new ZipArchiver(directory);
+    archiver.compress(archive, files(), extra);
+
+    Assert.assertEquals(archiver.getCompressedEntryCount(), contents.size() + 1);
+    Assert.assertEquals(archiver.getReusedEntryCount(), 0);
+
+    Map<String, byte[]> read = readZip(archive);
+
+    Assert.assertEquals(read.size(), contents.size() + 1);
+    Assert.assertEquals(read.get("openremote.manifest"), extra.get("openremote.manifest"));
+
+    for (Map.Entry<String, byte[]> entry : contents.entrySet())
+    {
+      Assert.assertEquals(read.get(entry.getKey()), entry.getValue(), entry.getKey());
+    }
+
+    File target = new File(directory, "extracted");
+    Set<File> extracted = ZipArchiver.extract(archive, target);
+
+    Assert.assertEquals(extracted.size(), contents.size() + 1);
+    Assert.assertTrue(extracted.contains(new File("rules", "modeler_rules.drl")));
+
+    for (Map.Entry<String, byte[]> entry : contents.entrySet())
+    {
+      Assert.assertEquals(read(new File(target, entry.getKey())), entry.getValue(), entry.getKey());
+    }
+  }
+
+  /**
+   * Tests that unchanged files are copied from a previous archive and changed ones are
+   * compressed again.
+   */
+  @Test public void testReuseUnchangedEntries() throws Exception
+  {
+    File previous = new File(directory, "previous.zip");
+
+    new ZipArchiver(directory).compress(previous, files(), null);
+
+    byte[] changed = "<openremote><panels><panel/></panels></openremote>".getBytes("UTF-8");
+    contents.put("panel.xml", changed);
+    write(new File(directory, "panel.xml"), changed);
+
+    byte[] changedLarge = contents.get("controller.xml").clone();
+    changedLarge[changedLarge.length / 2] = '!';
+    contents.put("controller.xml", changedLarge);
+    write(new File(directory, "controller.xml"), changedLarge);
+
+    File archive = new File(directory, "current.zip");
+
+    ZipArchiver archiver = new ZipArchiver(directory);
+    archiver.reuseEntriesFrom(previous);
+    archiver.reuseEntriesFrom(new File(directory, "does-not-exist.zip"));
+    archiver.compress(archive, files(), null);
+
+    Assert.assertEquals(archiver.getCompressedEntryCount(), 2);
+    Assert.assertEquals(archiver.getReusedEntryCount(), contents.size() - 2);
+
+    Map<String, byte[]> read = readZip(archive);
+
+    Assert.assertEquals(read.size(), contents.size());
+
+    for (Map.Entry<String, byte[]> entry : contents.entrySet())
+    {
+      Assert.assertEquals(read.get(entry.getKey()), entry.getValue(), entry.getKey());
+    }
+  }
+
+  /**
+   * Tests that a failure to read one of the files fails the archive operation.
+   */
+  @Test(expectedExceptions = IOException.class) public void testMissingFile() throws Exception
+  {
+    List<File> files = files();
+    files.add(new File("missing.xml"));
+
+    new ZipArchiver(directory).compress(new File(directory, "fail.zip"), files, null);
+  }
+
+  /**
+   * Tests file copies.
+   */
+  @Test public void testCopy() throws Exception
+  {
+    File copy = new File(directory, "image.copy");
+
+    Assert.assertEquals(
+        ZipArchiver.copy(new File(directory, "image.png"), copy), contents.get("image.png").length
+    );
+
+    Assert.assertEquals(read(copy), contents.get("image.png"));
+  }
+
+
+  /**
+   * Tests that archive operations start new worker threads after the shared workers have been
+   * shut down.
+   */
+  @Test public void testShutdownWorkers() throws Exception
+  {
+    File archive = new File(directory, "before.zip");
+
+    new ZipArchiver(directory).compress(archive, files(), null);
+
+    ZipArchiver.shutdownWorkers();
+
+    Set<File> extracted = ZipArchiver.extract(archive, new File(directory, "extracted"));
+
+    Assert.assertEquals(extracted.size(), contents.size());
+
+    ZipArchiver.shutdownWorkers();
+  }
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private List<File> files()
+  {
+    List<File> files = new ArrayList<File>();
+
+    for (String name : contents.keySet())
+    {
+      files.add(new File(name));
+    }
+
+    return files;
+  }
+
+  private Map<String, byte[]> readZip(File archive) throws IOException
+  {
+    Map<String, byte[]> entries = new HashMap<String, byte[]>();
+    Set<String> names = new HashSet<String>();
+    ZipInputStream in = new ZipInputStream(new FileInputStream(archive));
+
+    try
+    {
+      ZipEntry entry;
+
+      while ((entry = in.getNextEntry()) != null)
+      {
+        Assert.assertTrue(names.add(entry.getName()), "Duplicate entry " + entry.getName());
+
+        entries.put(entry.getName(), readAll(in));
+      }
+    }
+
+    finally
+    {
+      in.close();
+    }
+
+    return entries;
+  }
+
+  private byte[] read(File file) throws IOException
+  {
+    InputStream in = new FileInputStream(file);
+
+    try
+    {
+      return readAll(in);
+    }
+
+    finally
+    {
+      in.close();
+    }
+  }
+
+  private byte[] readAll(InputStream in) throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int len;
+
+    while ((len = in.read(buffer)) != -1)
+    {
+      out.write(buffer, 0, len);
+    }
+
+    return out.toByteArray();
+  }
+
+  private void write(File file, byte[] content) throws IOException
+  {
+    file.getParentFile().mkdirs();
+
+    FileOutputStream out = new FileOutputStream(file);
+
+    try
+    {
+      out.write(content);
+    }
+
+    finally
+    {
+      out.close();
+    }
+  }
+
+  private void delete(File file)
+  {
+    File[] children = file.listFiles();
+
+    if (children != null)
+    {
+      for (File child : children)
+      {
+        delete(child);
+      }
+    }
+
+    file.delete();
+  }
+}
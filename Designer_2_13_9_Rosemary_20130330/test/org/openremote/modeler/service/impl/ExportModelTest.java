@@ -0,0 +1,207 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2012, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.modeler.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.openremote.modeler.domain.Absolute;
+import org.openremote.modeler.domain.Cell;
+import org.openremote.modeler.domain.CommandDelay;
+import org.openremote.modeler.domain.Group;
+import org.openremote.modeler.domain.GroupRef;
+import org.openremote.modeler.domain.Panel;
+import org.openremote.modeler.domain.Screen;
+import org.openremote.modeler.domain.ScreenPair;
+import org.openremote.modeler.domain.ScreenPairRef;
+import org.openremote.modeler.domain.Sensor;
+import org.openremote.modeler.domain.SensorType;
+import org.openremote.modeler.domain.component.Gesture;
+import org.openremote.modeler.domain.component.UIButton;
+import org.openremote.modeler.domain.component.UIComponent;
+import org.openremote.modeler.domain.component.UIGrid;
+import org.openremote.modeler.domain.component.UILabel;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link ExportModel} class.
+ */
+public class ExportModelTest
+{
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that groups and screens are collected according to the screen pair orientations.
+   */
+  @Test public void testGroupsAndScreens()
+  {
+    Screen portrait = new Screen();
+    portrait.setOid(1);
+    Screen landscape = new Screen();
+    landscape.setOid(2);
+    landscape.setLandscape(true);
+    Screen unused = new Screen();
+    unused.setOid(3);
+
+    Group first = createGroup(10, createScreenPair(11, ScreenPair.OrientationType.BOTH, portrait, landscape));
+    Group second = createGroup(20, createScreenPair(21, ScreenPair.OrientationType.LANDSCAPE, unused, landscape));
+
+    ExportModel model = new ExportModel(list(createPanel(100, first, second), createPanel(200, second)));
+
+    Assert.assertEquals(model.getPanels().size(), 2);
+    Assert.assertEquals(new ArrayList<Group>(model.getGroups()), list(first, second));
+    Assert.assertEquals(new ArrayList<Screen>(model.getScreens()), list(portrait, landscape));
+    Assert.assertEquals(portrait.getInverseScreenId(), landscape.getOid());
+  }
+
+  /**
+   * Tests collecting components, sensors and control commands of absolute and grid layouts
+   * and gestures.
+   */
+  @Test public void testComponents()
+  {
+    CommandDelay delay = new CommandDelay("100");
+
+    UIButton button = new UIButton(1);
+    button.setUiCommand(delay);
+
+    UILabel label = new UILabel(2);
+    label.setSensor(createSensor(50, "temperature"));
+
+    UILabel gridLabel = new UILabel(3);
+    gridLabel.setSensor(createSensor(50, "temperature"));
+
+    UILabel otherLabel = new UILabel(4);
+    otherLabel.setSensor(createSensor(51, "humidity"));
+
+    Gesture gesture = new Gesture(Gesture.GestureType.swipe_left_to_right);
+    gesture.setOid(5);
+    gesture.setUiCommand(new CommandDelay("200"));
+
+    Screen screen = new Screen();
+    screen.setOid(6);
+    screen.addAbsolute(createAbsolute(button));
+    screen.addAbsolute(createAbsolute(label));
+    screen.addAbsolute(createAbsolute(otherLabel));
+    screen.addGesture(gesture);
+
+    UIGrid grid = new UIGrid(0, 0, 100, 100, 1, 1);
+    Cell cell = new Cell();
+    cell.setUiComponent(gridLabel);
+    grid.addCell(cell);
+    screen.addGrid(grid);
+
+    List<Screen> screens = new ArrayList<Screen>();
+    screens.add(screen);
+
+    ExportModel model = ExportModel.forScreens(screens);
+
+    Assert.assertEquals(model.getComponents().getUIComponentsByType(UIButton.class).size(), 1);
+    Assert.assertEquals(model.getComponents().getUIComponentsByType(UILabel.class).size(), 3);
+    Assert.assertEquals(model.getComponents().getUIComponentsByType(Gesture.class).size(), 1);
+
+    // gesture commands are not included, matching the section ids previously exported
+
+    Assert.assertEquals(model.getControlCommands().size(), 1);
+    Assert.assertSame(model.getControlCommands().get(0), delay);
+
+    Map<Sensor, List<Sensor>> sensors = model.getSensors();
+
+    Assert.assertEquals(sensors.size(), 2);
+    Assert.assertEquals(sensors.get(label.getSensor()).size(), 2);
+    Assert.assertSame(sensors.get(label.getSensor()).get(1), gridLabel.getSensor());
+    Assert.assertEquals(sensors.get(otherLabel.getSensor()).size(), 1);
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private Panel createPanel(long oid, Group... groups)
+  {
+    Panel panel = new Panel();
+    panel.setOid(oid);
+
+    for (Group group : groups)
+    {
+      GroupRef groupRef = new GroupRef(group);
+      groupRef.setPanel(panel);
+      panel.addGroupRef(groupRef);
+    }
+
+    return panel;
+  }
+
+  private Group createGroup(long oid, ScreenPair screenPair)
+  {
+    Group group = new Group();
+    group.setOid(oid);
+
+    ScreenPairRef screenRef = new ScreenPairRef(screenPair);
+    screenRef.setGroup(group);
+    group.addScreenRef(screenRef);
+
+    return group;
+  }
+
+  private ScreenPair createScreenPair(long oid, ScreenPair.OrientationType orientation,
+                                      Screen portrait, Screen landscape)
+  {
+    ScreenPair screenPair = new ScreenPair();
+    screenPair.setOid(oid);
+    screenPair.setOrientation(orientation);
+    screenPair.setPortraitScreen(portrait);
+    screenPair.setLandscapeScreen(landscape);
+
+    return screenPair;
+  }
+
+  private Sensor createSensor(long oid, String name)
+  {
+    Sensor sensor = new Sensor(SensorType.CUSTOM);
+    sensor.setOid(oid);
+    sensor.setName(name);
+
+    return sensor;
+  }
+
+  private Absolute createAbsolute(UIComponent component)
+  {
+    Absolute absolute = new Absolute();
+    absolute.setUiComponent(component);
+
+    return absolute;
+  }
+
+  private <T> List<T> list(T... items)
+  {
+    List<T> list = new ArrayList<T>();
+
+    for (T item : items)
+    {
+      list.add(item);
+    }
+
+    return list;
+  }
+}
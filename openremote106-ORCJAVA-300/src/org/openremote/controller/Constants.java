@@ -171,6 +171,9 @@ public class Constants
 
   public static final String SERVER_RESPONSE_TIME_OUT = "TIMEOUT";
 
+  /** Time in milliseconds a polling request waits for a status change before it times out */
+  public static final int STATUS_POLLING_TIMEOUT = 50000;
+
   public static final String STATUS_POLLING_SENSOR_IDS_SEPARATOR = ",";
 
   public static final String STATUS_XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<openremote xmlns=\"http://www.openremote.org\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://www.openremote.org http://www.openremote.org/schemas/controller.xsd\">\n";
@@ -25,6 +25,7 @@ import java.security.PrivilegedAction;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
+import org.openremote.controller.net.NetworkWorkerPool;
 import org.openremote.controller.service.ServiceContext;
 
 
@@ -79,6 +80,12 @@ public class ControllerConfiguration extends Configuration
   public static final String BEEHIVE_SYNCING = "controller.performBeehiveSyncing";
   
   public static final String IRSEND_PATH = "irsend.path";
+
+  /**
+   * Configuration property name for the address of a LIRC daemon accepting TCP connections.
+   */
+  public static final String LIRC_ADDRESS = "lirc.address";
+
   public static final String MULTICAST_PORT = "multicast.port";
   public static final String MULTICAST_ADDRESS = "multicast.address";
   public static final String WEBAPP_PORT = "webapp.port";
@@ -90,6 +97,29 @@ public class ControllerConfiguration extends Configuration
  
   public static final String LAGARTO_BROADCAST_ADDRESS = "lagarto_network.broadcast";
 
+  /**
+   * Configuration property name for the number of threads used to poll sensors.
+   */
+  public static final String SENSOR_POLLING_THREADS = "sensor.polling.threads";
+
+  /**
+   * Configuration property name for the random variation applied to sensor polling intervals,
+   * as a percentage of the interval.
+   */
+  public static final String SENSOR_POLLING_JITTER = "sensor.polling.jitter";
+
+  /**
+   * Configuration property name for the number of threads handling requests received by the
+   * auto-discovery and round-robin servers.
+   */
+  public static final String NETWORK_WORKER_THREADS = "network.worker.threads";
+
+  /**
+   * Configuration property name for the number of network requests that can wait for a worker
+   * thread before further requests are dropped or delayed.
+   */
+  public static final String NETWORK_WORKER_QUEUE_CAPACITY = "network.worker.queue.capacity";
+
 
   public static final String CONTROLLER_APPLICATIONNAME = "controller.applicationname";
 
@@ -148,10 +178,15 @@ public class ControllerConfiguration extends Configuration
   private boolean beehiveSyncing;
   private String webappName;
   private String irsendPath;
+  private String lircAddress;
   private String lircdconfPath;
   private int proxyTimeout;
   private int beehiveCommandServiceCheckInterval;
   private String lagartoBroadcastAddr;
+  private int sensorPollingThreads = PollingScheduler.DEFAULT_THREAD_COUNT;
+  private int sensorPollingJitter = PollingScheduler.DEFAULT_JITTER_PERCENTAGE;
+  private int networkWorkerThreads = NetworkWorkerPool.DEFAULT_THREAD_COUNT;
+  private int networkWorkerQueueCapacity = NetworkWorkerPool.DEFAULT_QUEUE_CAPACITY;
 
   /** Whether copy lircd.conf for user. */
   private boolean copyLircdconf;
@@ -203,6 +238,32 @@ public class ControllerConfiguration extends Configuration
     this.irsendPath = irsendPath.trim();
   }
 
+  /**
+   * Returns the address of a LIRC daemon listening on a TCP socket, as <tt>host[:port]</tt>.
+   * When set, infrared commands are sent over a persistent connection to the daemon instead
+   * of executing the 'irsend' command.
+   *
+   * @see #setLircAddress(String)
+   *
+   * @return LIRC daemon address, or an empty string or null to use 'irsend'
+   */
+  public String getLircAddress()
+  {
+    return preferAttrCustomValue(LIRC_ADDRESS, lircAddress);
+  }
+
+  /**
+   * Sets the address of a LIRC daemon listening on a TCP socket (<tt>lircd --listen</tt>).
+   *
+   * @see #getLircAddress()
+   *
+   * @param lircAddress LIRC daemon address as <tt>host[:port]</tt>
+   */
+  public void setLircAddress(String lircAddress)
+  {
+    this.lircAddress = lircAddress.trim();
+  }
+
   /**
    * Returns a string containing an operating system specific filesystem path to
    * LIRC daemon configuration file.
@@ -571,4 +632,107 @@ public class ControllerConfiguration extends Configuration
   {
     this.lagartoBroadcastAddr = broadcastAddress.trim();
   }
+
+  /**
+   * Returns the number of threads the controller uses to poll sensor values.
+   *
+   * @see #setSensorPollingThreads(int)
+   *
+   * @return number of sensor polling threads
+   */
+  public int getSensorPollingThreads()
+  {
+    return preferAttrCustomValue(SENSOR_POLLING_THREADS, sensorPollingThreads);
+  }
+
+  /**
+   * Sets the number of threads shared by all polling sensors. A non-positive value selects
+   * a default based on the number of available processors.
+   *
+   * @see #getSensorPollingThreads()
+   *
+   * @param threads number of sensor polling threads
+   */
+  public void setSensorPollingThreads(int threads)
+  {
+    this.sensorPollingThreads = threads;
+  }
+
+  /**
+   * Returns the random variation applied to each sensor polling interval, as a percentage
+   * of the interval.
+   *
+   * @see #setSensorPollingJitter(int)
+   *
+   * @return polling interval jitter percentage
+   */
+  public int getSensorPollingJitter()
+  {
+    return preferAttrCustomValue(SENSOR_POLLING_JITTER, sensorPollingJitter);
+  }
+
+  /**
+   * Sets the random variation applied to each sensor polling interval, as a percentage of the
+   * interval. Jitter prevents sensors with identical intervals from polling their devices at
+   * the same moment.
+   *
+   * @see #getSensorPollingJitter()
+   *
+   * @param jitter polling interval jitter percentage (0-100)
+   */
+  public void setSensorPollingJitter(int jitter)
+  {
+    this.sensorPollingJitter = jitter;
+  }
+
+  /**
+   * Returns the number of threads handling requests received by the auto-discovery and
+   * round-robin servers.
+   *
+   * @see #setNetworkWorkerThreads(int)
+   *
+   * @return number of network worker threads
+   */
+  public int getNetworkWorkerThreads()
+  {
+    return preferAttrCustomValue(NETWORK_WORKER_THREADS, networkWorkerThreads);
+  }
+
+  /**
+   * Sets the number of threads handling requests received by the auto-discovery and
+   * round-robin servers. A non-positive value selects the default.
+   *
+   * @see #getNetworkWorkerThreads()
+   *
+   * @param threads number of network worker threads
+   */
+  public void setNetworkWorkerThreads(int threads)
+  {
+    this.networkWorkerThreads = threads;
+  }
+
+  /**
+   * Returns the number of network requests that can wait for a worker thread.
+   *
+   * @see #setNetworkWorkerQueueCapacity(int)
+   *
+   * @return network worker queue capacity
+   */
+  public int getNetworkWorkerQueueCapacity()
+  {
+    return preferAttrCustomValue(NETWORK_WORKER_QUEUE_CAPACITY, networkWorkerQueueCapacity);
+  }
+
+  /**
+   * Sets the number of network requests that can wait for a worker thread. Further datagrams
+   * are dropped and further connections are left waiting in the accept backlog.
+   *
+   * @see #getNetworkWorkerQueueCapacity()
+   *
+   * @param capacity network worker queue capacity
+   */
+  public void setNetworkWorkerQueueCapacity(int capacity)
+  {
+    this.networkWorkerQueueCapacity = capacity;
+  }
 }
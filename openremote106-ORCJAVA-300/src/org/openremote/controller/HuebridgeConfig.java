@@ -29,6 +29,8 @@ public class HuebridgeConfig extends Configuration {
 
    public final static String HUEBRIDGE_ADDRESS = "huebridge.address";
    public final static String HUEBRIDGE_KEY = "huebridge.key";
+   public final static String HUEBRIDGE_MAX_CONNECTIONS = "huebridge.maxConnections";
+   public final static String HUEBRIDGE_COMMANDS_PER_SECOND = "huebridge.commandsPerSecond";
 
 
   // Class Members --------------------------------------------------------------------------------
@@ -45,6 +47,8 @@ public class HuebridgeConfig extends Configuration {
 
    private String address;
    private String key;
+   private int maxConnections;
+   private int commandsPerSecond;
 
 
   // Public Instance Methods ----------------------------------------------------------------------
@@ -70,4 +74,34 @@ public class HuebridgeConfig extends Configuration {
       this.key = key;
    }
 
+  /**
+   * Returns the maximum number of concurrent (pooled) HTTP connections to a Hue bridge.
+   *
+   * @return  maximum number of connections per bridge
+   */
+   public int getMaxConnections()
+  {
+      return preferAttrCustomValue(HUEBRIDGE_MAX_CONNECTIONS, maxConnections);
+   }
+
+   public void setMaxConnections(int maxConnections)
+  {
+      this.maxConnections = maxConnections;
+   }
+
+  /**
+   * Returns the maximum number of light state changes per second sent to a Hue bridge.
+   *
+   * @return  maximum commands per second per bridge
+   */
+   public int getCommandsPerSecond()
+  {
+      return preferAttrCustomValue(HUEBRIDGE_COMMANDS_PER_SECOND, commandsPerSecond);
+   }
+
+   public void setCommandsPerSecond(int commandsPerSecond)
+  {
+      this.commandsPerSecond = commandsPerSecond;
+   }
+
 }
\ No newline at end of file
@@ -20,9 +20,15 @@
  */
 package org.openremote.controller;
 
+import java.lang.management.ManagementFactory;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.openremote.controller.net.NetworkWorkerPool;
+import org.openremote.controller.service.ServiceContext;
 import org.openremote.controller.utils.Logger;
 
 /**
@@ -80,6 +86,21 @@ public class OpenRemoteRuntime
 
   private static ThreadGroup openremoteThreadGroup = null;
 
+  /**
+   * Controller wide sensor polling scheduler, created lazily on first use.
+   */
+  private static PollingScheduler pollingScheduler = null;
+
+  /**
+   * Controller wide worker pool for network servers, created lazily on first use.
+   */
+  private static NetworkWorkerPool networkWorkerPool = null;
+
+  /**
+   * Domain name used for the management beans registered by the controller runtime.
+   */
+  public final static String MANAGEMENT_DOMAIN = "org.openremote.controller";
+
 
   /**
    * TODO :
@@ -95,5 +116,178 @@ public class OpenRemoteRuntime
     return thread;
   }
 
-}
 
+  /**
+   * Returns the controller wide scheduler used for periodic sensor polling. Read commands and
+   * polling event listeners should register their poll operations with this scheduler instead
+   * of creating a dedicated thread per sensor.  <p>
+   *
+   * The scheduler's pool size and interval jitter are read from the controller configuration
+   * when available, otherwise defaults are used.
+   *
+   * @return  polling scheduler instance
+   */
+  public static synchronized PollingScheduler getPollingScheduler()
+  {
+    if (pollingScheduler == null)
+    {
+      int threads = PollingScheduler.DEFAULT_THREAD_COUNT;
+      int jitter = PollingScheduler.DEFAULT_JITTER_PERCENTAGE;
+
+      try
+      {
+        ControllerConfiguration config = ServiceContext.getControllerConfiguration();
+
+        threads = config.getSensorPollingThreads();
+        jitter = config.getSensorPollingJitter();
+      }
+
+      catch (Throwable t)
+      {
+        log.debug(
+            "Controller configuration not available, using default polling scheduler settings : {0}",
+            t.getMessage()
+        );
+      }
+
+      pollingScheduler = new PollingScheduler(threads, jitter);
+
+      registerManagementBean("PollingScheduler", pollingScheduler);
+    }
+
+    return pollingScheduler;
+  }
+
+
+  /**
+   * Stops the controller wide polling scheduler, if it has been created, and unregisters its
+   * management bean. Invoked when the controller web application is stopped. A later call to
+   * {@link #getPollingScheduler()} creates a new scheduler.
+   */
+  public static synchronized void shutdownPollingScheduler()
+  {
+    if (pollingScheduler != null)
+    {
+      pollingScheduler.shutdown();
+      pollingScheduler = null;
+
+      unregisterManagementBean("PollingScheduler");
+    }
+  }
+
+
+  /**
+   * Returns the controller wide worker pool that handles requests received by the
+   * auto-discovery and round-robin servers. Servers should hand each received packet or
+   * connection to this pool instead of starting a thread per request.  <p>
+   *
+   * The pool's thread count and queue capacity are read from the controller configuration
+   * when available, otherwise defaults are used.
+   *
+   * @return  network worker pool instance
+   */
+  public static synchronized NetworkWorkerPool getNetworkWorkerPool()
+  {
+    if (networkWorkerPool == null)
+    {
+      int threads = NetworkWorkerPool.DEFAULT_THREAD_COUNT;
+      int queueCapacity = NetworkWorkerPool.DEFAULT_QUEUE_CAPACITY;
+
+      try
+      {
+        ControllerConfiguration config = ServiceContext.getControllerConfiguration();
+
+        threads = config.getNetworkWorkerThreads();
+        queueCapacity = config.getNetworkWorkerQueueCapacity();
+      }
+
+      catch (Throwable t)
+      {
+        log.debug(
+            "Controller configuration not available, using default network worker pool settings : {0}",
+            t.getMessage()
+        );
+      }
+
+      networkWorkerPool = new NetworkWorkerPool(threads, queueCapacity);
+
+      registerManagementBean("NetworkWorkerPool", networkWorkerPool);
+    }
+
+    return networkWorkerPool;
+  }
+
+
+  /**
+   * Stops the controller wide network worker pool, if it has been created, and unregisters its
+   * management bean. Requests received after this call are dropped by the network servers. A
+   * later call to {@link #getNetworkWorkerPool()} creates a new pool.
+   */
+  public static synchronized void shutdownNetworkWorkerPool()
+  {
+    if (networkWorkerPool != null)
+    {
+      networkWorkerPool.shutdown();
+      networkWorkerPool = null;
+
+      unregisterManagementBean("NetworkWorkerPool");
+    }
+  }
+
+
+  /**
+   * Registers a standard management bean with the platform MBean server under the controller's
+   * {@link #MANAGEMENT_DOMAIN}. Failures are logged but otherwise ignored -- monitoring is not
+   * critical to controller operation.
+   *
+   * @param type    the type key of the management bean's object name
+   * @param mbean   the management bean implementation
+   */
+  public static void registerManagementBean(String type, Object mbean)
+  {
+    try
+    {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MANAGEMENT_DOMAIN + ":type=" + type);
+
+      if (server.isRegistered(name))
+      {
+        server.unregisterMBean(name);
+      }
+
+      server.registerMBean(mbean, name);
+    }
+
+    catch (Throwable t)
+    {
+      log.warn("Unable to register management bean ''{0}'' : {1}", t, type, t.getMessage());
+    }
+  }
+
+
+  /**
+   * Removes a management bean registered with {@link #registerManagementBean(String, Object)}.
+   * Failures are logged but otherwise ignored.
+   *
+   * @param type    the type key of the management bean's object name
+   */
+  public static void unregisterManagementBean(String type)
+  {
+    try
+    {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MANAGEMENT_DOMAIN + ":type=" + type);
+
+      if (server.isRegistered(name))
+      {
+        server.unregisterMBean(name);
+      }
+    }
+
+    catch (Throwable t)
+    {
+      log.warn("Unable to unregister management bean ''{0}'' : {1}", t, type, t.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,429 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller;
+
+import java.util.Random;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openremote.controller.utils.Logger;
+
+/**
+ * A controller wide scheduler for periodic sensor polling. Instead of dedicating a sleeping
+ * thread to each polling sensor, read commands and polling event listeners register their
+ * poll operation with this scheduler which executes them on a bounded pool of threads. <p>
+ *
+ * Each registered task is executed with a fixed delay between the end of one poll and the
+ * start of the next one, so a slow device will not cause polls to pile up. The delay is
+ * randomized within the configured jitter percentage per execution so that sensors configured
+ * with identical intervals do not all hit the network (or the same gateway) at the same time. <p>
+ *
+ * The thread count and queue depth of the scheduler are exposed via
+ * {@link PollingSchedulerMBean} for monitoring purposes.
+ *
+ * @see OpenRemoteRuntime#getPollingScheduler()
+ */
+public class PollingScheduler implements PollingSchedulerMBean
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Default number of polling threads if none has been configured.
+   */
+  public final static int DEFAULT_THREAD_COUNT = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+  /**
+   * Default jitter applied to polling intervals, as a percentage of the interval.
+   */
+  public final static int DEFAULT_JITTER_PERCENTAGE = 10;
+
+  /**
+   * Upper bound (in milliseconds) for the random delay of the first poll of a newly registered
+   * task. Keeps long polling intervals from delaying the initial sensor value, which is expected
+   * to be available shortly after a sensor has been started.
+   */
+  public final static long MAX_INITIAL_DELAY = 250;
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * Log category for sensor runtime operations.
+   */
+  private final static Logger log = Logger.getLogger(Constants.RUNTIME_SENSORS_LOG_CATEGORY);
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * The bounded thread pool executing the poll operations.
+   */
+  private ScheduledThreadPoolExecutor executor;
+
+  /**
+   * Jitter as a percentage of each task's polling interval.
+   */
+  private int jitterPercentage;
+
+  /**
+   * Source of randomness for interval jitter.
+   */
+  private Random random = new Random();
+
+  /**
+   * Number of currently registered (not cancelled) polling tasks.
+   */
+  private AtomicInteger registeredTasks = new AtomicInteger(0);
+
+  /**
+   * Total number of poll executions since this scheduler was created.
+   */
+  private AtomicLong executedPolls = new AtomicLong(0);
+
+  /**
+   * Largest observed delay (in milliseconds) between the scheduled start time of a poll and
+   * its actual execution. A growing value indicates the pool is not keeping up.
+   */
+  private AtomicLong maxSchedulingDelay = new AtomicLong(0);
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Constructs a new polling scheduler.
+   *
+   * @param threadCount       maximum number of threads used to execute poll operations
+   * @param jitterPercentage  random variation applied to each polling interval, as a percentage
+   *                          of the interval (0 disables jitter)
+   */
+  public PollingScheduler(int threadCount, int jitterPercentage)
+  {
+    if (threadCount <= 0)
+    {
+      threadCount = DEFAULT_THREAD_COUNT;
+    }
+
+    if (jitterPercentage < 0 || jitterPercentage > 100)
+    {
+      jitterPercentage = DEFAULT_JITTER_PERCENTAGE;
+    }
+
+    this.jitterPercentage = jitterPercentage;
+
+    this.executor = new ScheduledThreadPoolExecutor(threadCount, new ThreadFactory()
+    {
+      private AtomicInteger threadNumber = new AtomicInteger(1);
+
+      @Override public Thread newThread(Runnable runnable)
+      {
+        Thread thread = OpenRemoteRuntime.createThread(
+            "Sensor Polling Thread " + threadNumber.getAndIncrement(), runnable
+        );
+
+        thread.setDaemon(true);
+
+        return thread;
+      }
+    });
+
+    log.info(
+        "Created sensor polling scheduler with {0} threads and {1}% interval jitter.",
+        threadCount, jitterPercentage
+    );
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Registers a periodic poll operation with this scheduler. The given runnable should execute
+   * a single poll cycle and return -- it is invoked repeatedly until the returned task is
+   * cancelled.
+   *
+   * @param name              name of the task, used for logging
+   * @param intervalMillis    polling interval in milliseconds
+   * @param poll              the poll operation
+   *
+   * @return  a task handle that can be used to cancel the polling
+   */
+  public PollingTask schedule(String name, long intervalMillis, Runnable poll)
+  {
+    if (intervalMillis <= 0)
+    {
+      throw new IllegalArgumentException(
+          "Polling interval for ''" + name + "'' must be positive, got " + intervalMillis
+      );
+    }
+
+    PollingTask task = new PollingTask(name, intervalMillis, poll);
+
+    registeredTasks.incrementAndGet();
+
+    // Spread the first execution of tasks registered at the same time (typically at deployment)
+    // across the jitter window...
+
+    task.scheduleNext(randomDelay(Math.min(MAX_INITIAL_DELAY, intervalMillis * jitterPercentage / 100)));
+
+    return task;
+  }
+
+  /**
+   * Stops the scheduler threads. Registered tasks will no longer be executed.
+   */
+  public void shutdown()
+  {
+    executor.shutdownNow();
+  }
+
+
+  // Implements PollingSchedulerMBean -------------------------------------------------------------
+
+  @Override public int getThreadCount()
+  {
+    return executor.getPoolSize();
+  }
+
+  @Override public int getMaximumThreadCount()
+  {
+    return executor.getCorePoolSize();
+  }
+
+  @Override public int getActiveThreadCount()
+  {
+    return executor.getActiveCount();
+  }
+
+  @Override public int getRegisteredTaskCount()
+  {
+    return registeredTasks.get();
+  }
+
+  /**
+   * Returns the number of poll operations whose scheduled start time has already passed but
+   * which are still waiting for a free thread.
+   */
+  @Override public int getQueueDepth()
+  {
+    int overdue = 0;
+
+    for (Runnable queued : executor.getQueue())
+    {
+      if (queued instanceof Delayed && ((Delayed)queued).getDelay(TimeUnit.MILLISECONDS) <= 0)
+      {
+        overdue++;
+      }
+    }
+
+    return overdue;
+  }
+
+  @Override public long getExecutedPollCount()
+  {
+    return executedPolls.get();
+  }
+
+  @Override public long getMaxSchedulingDelay()
+  {
+    return maxSchedulingDelay.get();
+  }
+
+  @Override public void resetMaxSchedulingDelay()
+  {
+    maxSchedulingDelay.set(0);
+  }
+
+
+  // Object Overrides -----------------------------------------------------------------------------
+
+  @Override public String toString()
+  {
+    return "Polling Scheduler (threads = " + getThreadCount() + "/" + getMaximumThreadCount() +
+           ", tasks = " + getRegisteredTaskCount() + ", queue depth = " + getQueueDepth() + ")";
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  /**
+   * Returns the given interval with a random variation of +/- jitter percentage applied.
+   */
+  private long jitter(long interval)
+  {
+    long window = interval * jitterPercentage / 100;
+
+    if (window <= 0)
+    {
+      return interval;
+    }
+
+    return Math.max(0, interval - window + randomDelay(window * 2));
+  }
+
+  /**
+   * Returns a random delay between zero and the given upper bound.
+   */
+  private long randomDelay(long bound)
+  {
+    if (bound <= 0)
+    {
+      return 0;
+    }
+
+    synchronized (random)
+    {
+      return (long)(random.nextDouble() * bound);
+    }
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * Handle to a registered poll operation.
+   */
+  public class PollingTask implements Runnable
+  {
+
+    private String name;
+    private long interval;
+    private Runnable poll;
+
+    private volatile boolean cancelled = false;
+    private volatile ScheduledFuture<?> future;
+    private volatile long scheduledTime;
+
+
+    private PollingTask(String name, long interval, Runnable poll)
+    {
+      this.name = name;
+      this.interval = interval;
+      this.poll = poll;
+    }
+
+
+    /**
+     * Cancels this task. A poll currently in progress is allowed to complete but no further
+     * polls will be executed.
+     */
+    public void cancel()
+    {
+      if (cancelled)
+      {
+        return;
+      }
+
+      cancelled = true;
+
+      registeredTasks.decrementAndGet();
+
+      ScheduledFuture<?> current = future;
+
+      if (current != null)
+      {
+        current.cancel(false);
+      }
+    }
+
+    /**
+     * @return  true if this task has been cancelled, false otherwise
+     */
+    public boolean isCancelled()
+    {
+      return cancelled;
+    }
+
+    /**
+     * @return  the name this task was registered with
+     */
+    public String getName()
+    {
+      return name;
+    }
+
+
+    // Implements Runnable ------------------------------------------------------------------------
+
+    @Override public void run()
+    {
+      if (cancelled)
+      {
+        return;
+      }
+
+      long delay = System.currentTimeMillis() - scheduledTime;
+
+      if (delay > maxSchedulingDelay.get())
+      {
+        maxSchedulingDelay.set(delay);
+      }
+
+      executedPolls.incrementAndGet();
+
+      try
+      {
+        poll.run();
+      }
+
+      catch (Throwable t)
+      {
+        log.error("Implementation error in polling task ''{0}'' : {1}", t, name, t.getMessage());
+      }
+
+      finally
+      {
+        if (!cancelled)
+        {
+          scheduleNext(jitter(interval));
+        }
+      }
+    }
+
+    @Override public String toString()
+    {
+      return "Polling Task '" + name + "' (" + interval + "ms)";
+    }
+
+
+    // Private Methods ----------------------------------------------------------------------------
+
+    private void scheduleNext(long delay)
+    {
+      try
+      {
+        scheduledTime = System.currentTimeMillis() + delay;
+
+        future = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+      }
+
+      catch (RejectedExecutionException e)
+      {
+        log.warn("Polling task ''{0}'' was rejected, the scheduler has been shut down.", name);
+      }
+    }
+  }
+}
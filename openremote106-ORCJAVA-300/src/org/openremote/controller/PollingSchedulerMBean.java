@@ -0,0 +1,69 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller;
+
+/**
+ * Management interface for {@link PollingScheduler}. Exposes the gauges that indicate whether
+ * the sensor polling pool is keeping up with the configured polling intervals.
+ */
+public interface PollingSchedulerMBean
+{
+
+  /**
+   * @return  number of threads currently in the polling pool
+   */
+  int getThreadCount();
+
+  /**
+   * @return  maximum number of threads in the polling pool
+   */
+  int getMaximumThreadCount();
+
+  /**
+   * @return  number of threads currently executing a poll
+   */
+  int getActiveThreadCount();
+
+  /**
+   * @return  number of registered polling tasks
+   */
+  int getRegisteredTaskCount();
+
+  /**
+   * @return  number of polls that are due but waiting for a free thread
+   */
+  int getQueueDepth();
+
+  /**
+   * @return  total number of executed polls
+   */
+  long getExecutedPollCount();
+
+  /**
+   * @return  largest observed delay in milliseconds between a poll's scheduled and actual start
+   */
+  long getMaxSchedulingDelay();
+
+  /**
+   * Resets the maximum scheduling delay gauge.
+   */
+  void resetMaxSchedulingDelay();
+}
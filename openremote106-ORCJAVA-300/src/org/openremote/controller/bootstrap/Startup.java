@@ -20,6 +20,13 @@
  */
 package org.openremote.controller.bootstrap;
 
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 import java.util.logging.Level;
@@ -29,6 +36,8 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.text.MessageFormat;
 
+import org.apache.log4j.spi.LoggingEvent;
+
 import org.openremote.controller.Constants;
 import org.openremote.controller.service.ServiceContext;
 import org.openremote.controller.exception.InitializationException;
@@ -48,6 +57,26 @@ import org.openremote.controller.exception.InitializationException;
 public class Startup 
 {
 
+  /**
+   * System property that controls whether log records are handed to log4j appenders on a
+   * background thread (the default) or on the logging thread. Set to 'false' to disable
+   * asynchronous logging.
+   */
+  public final static String ASYNC_LOGGING_PROPERTY = "openremote.controller.log.async";
+
+  /**
+   * The installed JUL to log4j redirect handler, if any.
+   */
+  private static Log4jRedirect log4jRedirect = null;
+
+  /**
+   * Strong references to the JUL loggers whose levels have been set from the log4j
+   * configuration -- the JUL log manager only holds weak references to its loggers, a
+   * collected logger would lose its level.
+   */
+  private static List<Logger> configuredLoggers = new ArrayList<Logger>();
+
+
   /**
    * Instantiate a specific ServiceContext implementation and execute its no-args constructor.
    * The service context implementation is assumed to automatically register itself as the
@@ -141,13 +170,20 @@ public class Startup
 
   /**
    * Configure all logging categories under {@link Constants#CONTROLLER_ROOT_LOG_CATEGORY} to
-   * redirect from java.util.logging to log4j logging.
+   * redirect from java.util.logging to log4j logging.  <p>
+   *
+   * The JUL log levels are set to match the log4j configuration (see
+   * {@link #synchronizeLogLevels()}) so that disabled log statements are discarded by the
+   * controller's logging facade before any log record is created. Unless disabled with the
+   * {@link #ASYNC_LOGGING_PROPERTY} system property, log records are passed to log4j appenders
+   * on a background thread.
    */
   public static void redirectJULtoLog4j()
   {
     try
     {
       final Logger controllerRootLogger = Logger.getLogger(Constants.CONTROLLER_ROOT_LOG_CATEGORY);
+      final boolean async = !"false".equalsIgnoreCase(System.getProperty(ASYNC_LOGGING_PROPERTY));
 
       // ---- BEGIN PRIVILEGED CODE BLOCK ---------------------------------------------------------
 
@@ -155,8 +191,9 @@ public class Startup
       {
         public Void run()
         {
-          controllerRootLogger.addHandler(new Log4jRedirect());
-          controllerRootLogger.setLevel(Level.ALL);
+          log4jRedirect = new Log4jRedirect(async);
+
+          controllerRootLogger.addHandler(log4jRedirect);
 
           return null;
         }
@@ -164,7 +201,12 @@ public class Startup
 
       // ---- END PRIVILEGED CODE BLOCK -----------------------------------------------------------
 
-      controllerRootLogger.info("Initialized JUL to LOG4J Redirector.");
+      synchronizeLogLevels();
+
+      controllerRootLogger.info(
+          "Initialized JUL to LOG4J Redirector (asynchronous = " + async + ", level = " +
+          controllerRootLogger.getLevel() + ")."
+      );
     }
 
     catch (SecurityException exception)
@@ -176,6 +218,85 @@ public class Startup
     }
   }
 
+  /**
+   * Sets the JUL log levels of {@link Constants#CONTROLLER_ROOT_LOG_CATEGORY} and each of its
+   * subcategories that has a level in the log4j configuration to the matching log4j level.
+   * Should be invoked again if the log4j configuration is changed at runtime.
+   */
+  public static void synchronizeLogLevels()
+  {
+    try
+    {
+      // ---- BEGIN PRIVILEGED CODE BLOCK ---------------------------------------------------------
+
+      AccessController.doPrivilegedWithCombiner(new PrivilegedAction<Void>()
+      {
+        public Void run()
+        {
+          String root = Constants.CONTROLLER_ROOT_LOG_CATEGORY;
+
+          Logger.getLogger(root).setLevel(
+              Log4jRedirect.mapToJULLevel(org.apache.log4j.Logger.getLogger(root).getEffectiveLevel())
+          );
+
+          Enumeration loggers = org.apache.log4j.LogManager.getCurrentLoggers();
+
+          while (loggers.hasMoreElements())
+          {
+            org.apache.log4j.Logger log4j = (org.apache.log4j.Logger)loggers.nextElement();
+
+            if (log4j.getLevel() == null || !log4j.getName().startsWith(root + "."))
+            {
+              continue;
+            }
+
+            Logger jul = LogManager.getLogManager().getLogger(log4j.getName());
+
+            if (jul == null)
+            {
+              jul = org.openremote.controller.utils.Logger.getLogger(log4j.getName());
+            }
+
+            jul.setLevel(Log4jRedirect.mapToJULLevel(log4j.getLevel()));
+
+            synchronized (configuredLoggers)
+            {
+              if (!configuredLoggers.contains(jul))
+              {
+                configuredLoggers.add(jul);
+              }
+            }
+          }
+
+          return null;
+        }
+      });
+
+      // ---- END PRIVILEGED CODE BLOCK -----------------------------------------------------------
+    }
+
+    catch (SecurityException exception)
+    {
+      // Without levels, log4j continues to filter the records...
+
+      LogManager.getLogManager().getLogger("").warning(
+          "Can't set controller log levels due to security restrictions: " + exception.getMessage()
+      );
+    }
+  }
+
+  /**
+   * Stops the asynchronous log writer, if any. Log records still queued are written before
+   * returning, later records are written on the logging thread.
+   */
+  public static void stopAsyncLogging()
+  {
+    if (log4jRedirect != null)
+    {
+      log4jRedirect.close();
+    }
+  }
+
 
 
 
@@ -186,10 +307,62 @@ public class Startup
   /**
    * Java util logging handler implementation to map JUL log records to log4j API and send
    * log messages to log4j. <p>
+   *
+   * In asynchronous mode, the level check, message formatting and the capture of the logging
+   * thread's name happen on the logging thread while the log4j appenders run on a single
+   * background writer thread. Messages are formatted before queueing since their parameters
+   * may be objects the logging thread continues to modify. If the writer falls behind and its
+   * queue fills up, records below warning level are dropped (and the number of dropped records
+   * logged later), warnings and errors are written on the logging thread.
    */
   private final static class Log4jRedirect extends Handler
   {
 
+    /**
+     * Maximum number of log events waiting for the writer thread.
+     */
+    private final static int QUEUE_CAPACITY = 10000;
+
+    /**
+     * Fully qualified class name passed to log4j as the logging class.
+     */
+    private final static String FQCN = Log4jRedirect.class.getName();
+
+
+    /**
+     * Events waiting for the writer thread, or null in synchronous mode.
+     */
+    private BlockingQueue<Event> queue = null;
+
+    private Thread writer = null;
+
+    private volatile boolean closed = false;
+
+    private AtomicLong droppedEvents = new AtomicLong(0);
+
+
+    private Log4jRedirect(boolean async)
+    {
+      if (!async)
+      {
+        return;
+      }
+
+      queue = new ArrayBlockingQueue<Event>(QUEUE_CAPACITY);
+
+      writer = new Thread("Log Writer")
+      {
+        @Override public void run()
+        {
+          writeEvents();
+        }
+      };
+
+      writer.setDaemon(true);
+      writer.start();
+    }
+
+
     /**
      * Translates and sends JUL log records to log4j logging.
      *
@@ -233,32 +406,41 @@ public class Startup
 
       // and log...
 
-      if (log4j.isEnabledFor(log4jLevel))
+      if (!log4j.isEnabledFor(log4jLevel))
       {
-        if (params != null)
-        {
-          try
-          {
-            msg = MessageFormat.format(msg, params);
-          }
-          catch (IllegalArgumentException e)
-          {
-            msg = msg + "  [LOG MESSAGE PARAMETERIZATION ERROR: " +
-                  e.getMessage().toUpperCase() + "]";
-          }
-        }
+        return;
+      }
+
+      if (queue == null || closed || !writer.isAlive())
+      {
+        log4j.callAppenders(createEvent(log4j, log4jLevel, logRecord.getMillis(), msg, params, thrown));
+
+        return;
+      }
 
-        if (thrown != null)
+      // Everything that belongs to the logging thread -- the formatted message, thread name,
+      // NDC, MDC and exception stack trace -- is captured here, only the appenders run on the
+      // writer thread...
+
+      LoggingEvent event = createEvent(log4j, log4jLevel, logRecord.getMillis(), msg, params, thrown);
+
+      event.getThreadName();
+      event.getNDC();
+      event.getMDCCopy();
+      event.getThrowableStrRep();
+
+      if (!queue.offer(new Event(log4j, event)))
+      {
+        if (level.intValue() >= Level.WARNING.intValue())
         {
-          log4j.log(log4jLevel, msg, thrown);
+          log4j.callAppenders(event);
         }
 
         else
         {
-          log4j.log(log4jLevel, msg);
+          droppedEvents.incrementAndGet();
         }
       }
-
     }
 
     /**
@@ -270,11 +452,165 @@ public class Startup
     }
 
     /**
-     * Does nothing -- Log4j API does not provide an explicit close operation for appenders.
+     * Stops the writer thread after the queued events have been written. Log4j API does not
+     * provide an explicit close operation for appenders.
      */
     @Override public void close()
     {
-      // no-op
+      if (writer == null || closed)
+      {
+        return;
+      }
+
+      closed = true;
+
+      writer.interrupt();
+
+      try
+      {
+        writer.join(5000);
+      }
+
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+
+    /**
+     * Writer thread loop. Writes queued events until closed, then drains the queue.
+     */
+    private void writeEvents()
+    {
+      try
+      {
+        while (!closed)
+        {
+          Event event = queue.poll(1, TimeUnit.SECONDS);
+
+          if (event != null)
+          {
+            write(event);
+          }
+
+          reportDroppedEvents();
+        }
+      }
+
+      catch (InterruptedException e)
+      {
+        // closed...
+      }
+
+      Event event;
+
+      while ((event = queue.poll()) != null)
+      {
+        write(event);
+      }
+
+      reportDroppedEvents();
+    }
+
+    /**
+     * Writes a queued event to the log4j appenders. A failing appender must not stop the
+     * writer thread, otherwise all later records would be dropped.
+     */
+    private void write(Event event)
+    {
+      try
+      {
+        event.logger.callAppenders(event.event);
+      }
+
+      catch (RuntimeException e)
+      {
+        System.err.println(
+            "Log writer failed to write a message to category '" + event.logger.getName() +
+            "' : " + e
+        );
+      }
+    }
+
+    private void reportDroppedEvents()
+    {
+      long dropped = droppedEvents.getAndSet(0);
+
+      if (dropped > 0)
+      {
+        org.apache.log4j.Logger log4j =
+            org.apache.log4j.Logger.getLogger(Constants.CONTROLLER_ROOT_LOG_CATEGORY);
+
+        write(new Event(log4j, createEvent(
+            log4j, org.apache.log4j.Level.WARN, System.currentTimeMillis(),
+            dropped + " log messages were dropped because the log writer could not keep up.",
+            null, null
+        )));
+      }
+    }
+
+    private LoggingEvent createEvent(org.apache.log4j.Logger log4j, org.apache.log4j.Level level,
+                                     long millis, String msg, Object[] params, Throwable thrown)
+    {
+      return new LoggingEvent(FQCN, log4j, millis, level, format(msg, params), thrown);
+    }
+
+    /**
+     * Formats a log message with its parameters.
+     */
+    private static String format(String msg, Object[] params)
+    {
+      if (params == null || msg == null)
+      {
+        return msg;
+      }
+
+      try
+      {
+        return MessageFormat.format(msg, params);
+      }
+      catch (IllegalArgumentException e)
+      {
+        return msg + "  [LOG MESSAGE PARAMETERIZATION ERROR: " +
+               e.getMessage().toUpperCase() + "]";
+      }
+    }
+
+
+    /**
+     * Maps a log4j level to the matching JUL level.
+     */
+    private static Level mapToJULLevel(org.apache.log4j.Level level)
+    {
+      if (level == null)
+      {
+        return null;
+      }
+
+      switch (level.toInt())
+      {
+        case org.apache.log4j.Level.OFF_INT:
+          return Level.OFF;
+
+        case org.apache.log4j.Level.FATAL_INT:
+        case org.apache.log4j.Level.ERROR_INT:
+          return Level.SEVERE;
+
+        case org.apache.log4j.Level.WARN_INT:
+          return Level.WARNING;
+
+        case org.apache.log4j.Level.INFO_INT:
+          return Level.INFO;
+
+        case org.apache.log4j.Level.DEBUG_INT:
+          return Level.FINE;
+
+        default:
+          // TRACE and ALL, trace is mapped from both FINER and FINEST...
+
+          return Level.ALL;
+      }
     }
 
 
@@ -342,6 +678,23 @@ public class Startup
       }
     }
 
+    /**
+     * A log4j event queued for the writer thread.
+     */
+    private static class Event
+    {
+      private org.apache.log4j.Logger logger;
+
+      private LoggingEvent event;
+
+      private Event(org.apache.log4j.Logger logger, LoggingEvent event)
+      {
+        this.logger = logger;
+        this.event = event;
+      }
+    }
+
+
     private void printWhatWeCan(Level level, String category, String message, Object[] params,
                                 Throwable thrown)
     {
@@ -89,14 +89,16 @@ public class LogInitialization implements ServletContextListener
   }
 
   /**
-   * Empty implementation
+   * Writes log messages still queued for the asynchronous log writer.
+   *
+   * @see org.openremote.controller.bootstrap.Startup#stopAsyncLogging()
    *
    * @param event   servlet context event provided by the container with access to the web
    *                application's environment
    */
   @Override public void contextDestroyed(ServletContextEvent event)
   {
-    // does nothing
+    Startup.stopAsyncLogging();
   }
 
 
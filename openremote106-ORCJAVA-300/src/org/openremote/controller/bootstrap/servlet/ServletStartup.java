@@ -24,7 +24,10 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.ServletContext;
 
+import org.openremote.controller.OpenRemoteRuntime;
 import org.openremote.controller.net.IPAutoDiscoveryServer;
+import org.openremote.controller.protocol.huebridge.HueBridgeCommandBuilder;
+import org.openremote.controller.protocol.infrared.LircClient;
 import org.openremote.controller.net.RoundRobinTCPServer;
 import org.openremote.controller.net.RoundRobinUDPServer;
 import org.openremote.controller.service.ServiceContext;
@@ -130,14 +133,21 @@ public class ServletStartup implements ServletContextListener
 
 
   /**
-   * Empty implementation.
+   * Stops the protocol clients and the controller wide thread pools held by
+   * {@link OpenRemoteRuntime} so that no threads outlive the web application. The Spring context
+   * listener is declared after this listener in web.xml and has therefore already been closed
+   * when this method is invoked.
    *
    * @param event     servlet context event provided by the container with access to the web
    *                  application's environment
    */
   @Override public void contextDestroyed(ServletContextEvent event)
   {
-    // empty
+    HueBridgeCommandBuilder.shutdownBridgeClients();
+    LircClient.shutdownClients();
+
+    OpenRemoteRuntime.shutdownPollingScheduler();
+    OpenRemoteRuntime.shutdownNetworkWorkerPool();
   }
 
 
@@ -0,0 +1,508 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openremote.controller.Constants;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * Executes macros -- sequences of executable commands with {@link DelayCommand delays} between
+ * them -- without holding the calling thread for the duration of the macro. <p>
+ *
+ * Each macro is split into steps at its delay commands. A step sends its commands on one of the
+ * scheduler's threads and then schedules the next step after the delay, so a waiting macro does
+ * not occupy a thread. Executions are identified by an ID which can be used to query their
+ * progress or cancel them. Finished executions remain queryable for a configurable retention
+ * time.
+ */
+public class MacroExecutor
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Default number of threads sending macro commands.
+   */
+  public final static int DEFAULT_THREAD_COUNT = 2;
+
+  /**
+   * Default time in milliseconds finished executions remain queryable.
+   */
+  public final static long DEFAULT_RETENTION_TIME = 5 * 60 * 1000;
+
+
+  /**
+   * States of a macro execution.
+   */
+  public enum State
+  {
+    /**
+     * Commands of the macro are being sent or the macro is waiting for its next step.
+     */
+    RUNNING,
+
+    /**
+     * All commands of the macro have been sent.
+     */
+    COMPLETED,
+
+    /**
+     * The macro was cancelled before all of its commands were sent.
+     */
+    CANCELLED,
+
+    /**
+     * Sending a command of the macro failed, the remaining commands were not sent.
+     */
+    FAILED
+  }
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * Logging category for runtime execution of commands.
+   */
+  private final static Logger log = Logger.getLogger(Constants.RUNTIME_COMMAND_EXECUTION_LOG_CATEGORY);
+
+
+  /**
+   * Indicates whether a list of commands should be executed as a macro, that is, whether it
+   * contains more than one command or any delays.
+   *
+   * @param commands    executable commands of a control action
+   *
+   * @return  true if the commands should be executed as a macro
+   */
+  public static boolean isMacro(List<ExecutableCommand> commands)
+  {
+    if (commands.size() > 1)
+    {
+      return true;
+    }
+
+    for (ExecutableCommand command : commands)
+    {
+      if (command instanceof DelayCommand)
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * Scheduler executing the macro steps.
+   */
+  private ScheduledThreadPoolExecutor scheduler;
+
+  /**
+   * Running and recently finished executions by execution ID.
+   */
+  private Map<String, Execution> executions = new ConcurrentHashMap<String, Execution>();
+
+  /**
+   * Source of execution IDs.
+   */
+  private AtomicLong executionCounter = new AtomicLong(0);
+
+  /**
+   * Time in milliseconds finished executions remain queryable.
+   */
+  private long retentionTime = DEFAULT_RETENTION_TIME;
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Constructs a macro executor with {@link #DEFAULT_THREAD_COUNT} threads.
+   */
+  public MacroExecutor()
+  {
+    this(DEFAULT_THREAD_COUNT);
+  }
+
+  /**
+   * Constructs a macro executor.
+   *
+   * @param threadCount   number of threads sending macro commands, values below one use
+   *                      {@link #DEFAULT_THREAD_COUNT}
+   */
+  public MacroExecutor(int threadCount)
+  {
+    scheduler = new ScheduledThreadPoolExecutor(
+        threadCount < 1 ? DEFAULT_THREAD_COUNT : threadCount,
+        new ThreadFactory()
+        {
+          private AtomicInteger threadNumber = new AtomicInteger(1);
+
+          @Override public Thread newThread(Runnable runnable)
+          {
+            Thread thread = new Thread(runnable, "Macro executor " + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+
+            return thread;
+          }
+        }
+    );
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Starts executing a macro. The first step is sent on a scheduler thread, this method returns
+   * immediately.
+   *
+   * @param source      description of what triggered the macro, such as a control ID and action
+   * @param commands    commands of the macro
+   *
+   * @return  the started execution
+   */
+  public Execution execute(String source, List<ExecutableCommand> commands)
+  {
+    Execution execution = new Execution(
+        Long.toString(executionCounter.incrementAndGet()), source, commands
+    );
+
+    executions.put(execution.getID(), execution);
+
+    execution.schedule(0);
+
+    return execution;
+  }
+
+  /**
+   * Returns a running or recently finished execution.
+   *
+   * @param id    execution ID
+   *
+   * @return  the execution, or null if it is not known (or no longer retained)
+   */
+  public Execution getExecution(String id)
+  {
+    return executions.get(id);
+  }
+
+  /**
+   * Cancels a running execution. A command being sent at the time is completed, no further
+   * commands of the macro are sent.
+   *
+   * @param id    execution ID
+   *
+   * @return  the execution, or null if it is not known (or no longer retained)
+   */
+  public Execution cancel(String id)
+  {
+    Execution execution = executions.get(id);
+
+    if (execution != null)
+    {
+      execution.cancel();
+    }
+
+    return execution;
+  }
+
+  /**
+   * Sets the time finished executions remain queryable.
+   *
+   * @param retentionTime   retention time in milliseconds
+   */
+  public void setRetentionTime(long retentionTime)
+  {
+    this.retentionTime = retentionTime;
+  }
+
+  /**
+   * Cancels all running executions and stops the scheduler threads.
+   */
+  public void shutdown()
+  {
+    for (Execution execution : executions.values())
+    {
+      execution.cancel();
+    }
+
+    scheduler.shutdownNow();
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * A single execution of a macro. Executes the commands of one step on each run.
+   */
+  public class Execution implements Runnable
+  {
+
+    /**
+     * Execution ID.
+     */
+    private String id;
+
+    /**
+     * Description of what triggered the macro.
+     */
+    private String source;
+
+    /**
+     * The macro's commands.
+     */
+    private List<ExecutableCommand> commands;
+
+    /**
+     * Index of the next command to send.
+     */
+    private volatile int nextCommand = 0;
+
+    /**
+     * Current state of this execution.
+     */
+    private volatile State state = State.RUNNING;
+
+    /**
+     * Start time of this execution.
+     */
+    private long startTime = System.currentTimeMillis();
+
+    /**
+     * Time this execution finished, zero while running.
+     */
+    private volatile long endTime = 0;
+
+    /**
+     * The scheduled next step, if any.
+     */
+    private ScheduledFuture<?> nextStep;
+
+
+    private Execution(String id, String source, List<ExecutableCommand> commands)
+    {
+      this.id = id;
+      this.source = source;
+      this.commands = new ArrayList<ExecutableCommand>(commands);
+    }
+
+
+    /**
+     * @return  execution ID
+     */
+    public String getID()
+    {
+      return id;
+    }
+
+    /**
+     * @return  description of what triggered the macro
+     */
+    public String getSource()
+    {
+      return source;
+    }
+
+    /**
+     * @return  current state of this execution
+     */
+    public State getState()
+    {
+      return state;
+    }
+
+    /**
+     * @return  number of commands (including delays) of the macro
+     */
+    public int getCommandCount()
+    {
+      return commands.size();
+    }
+
+    /**
+     * @return  number of commands (including delays) processed so far
+     */
+    public int getCompletedCommandCount()
+    {
+      return Math.min(nextCommand, commands.size());
+    }
+
+    /**
+     * @return  start time of this execution
+     */
+    public long getStartTime()
+    {
+      return startTime;
+    }
+
+    /**
+     * @return  time this execution finished, zero while it is running
+     */
+    public long getEndTime()
+    {
+      return endTime;
+    }
+
+
+    /**
+     * Sends the commands of the current step and schedules the next step after a delay
+     * command, if any.
+     */
+    @Override public void run()
+    {
+      try
+      {
+        while (nextCommand < commands.size())
+        {
+          if (state != State.RUNNING)
+          {
+            return;
+          }
+
+          ExecutableCommand command = commands.get(nextCommand++);
+
+          if (command == null)
+          {
+            log.warn(
+                "Got a null entry in macro ''{0}''. This may indicate an implementation error. " +
+                "Skipping and will continue processing...", source
+            );
+
+            continue;
+          }
+
+          if (command instanceof DelayCommand)
+          {
+            long delay = ((DelayCommand)command).getDelayMillisecond();
+
+            if (delay > 0)
+            {
+              schedule(delay);
+
+              return;
+            }
+
+            continue;
+          }
+
+          command.send();
+        }
+
+        finish(State.COMPLETED);
+      }
+
+      catch (Throwable t)
+      {
+        log.error(
+            "Macro ''{0}'' (execution {1}) failed at command {2} : {3}",
+            t, source, id, nextCommand, t.getMessage()
+        );
+
+        finish(State.FAILED);
+      }
+    }
+
+    @Override public String toString()
+    {
+      return "Macro execution " + id + " (" + source + ") : " + state + ", " +
+             getCompletedCommandCount() + "/" + getCommandCount();
+    }
+
+
+    private synchronized void schedule(long delay)
+    {
+      if (state != State.RUNNING)
+      {
+        return;
+      }
+
+      try
+      {
+        nextStep = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+      }
+
+      catch (RejectedExecutionException e)
+      {
+        log.warn("Macro executor has been shut down, cancelling macro ''{0}''.", source);
+
+        finish(State.CANCELLED);
+      }
+    }
+
+    private synchronized void cancel()
+    {
+      if (state != State.RUNNING)
+      {
+        return;
+      }
+
+      if (nextStep != null)
+      {
+        nextStep.cancel(false);
+      }
+
+      log.info("Cancelled macro ''{0}'' (execution {1}).", source, id);
+
+      finish(State.CANCELLED);
+    }
+
+    private synchronized void finish(State finalState)
+    {
+      if (state != State.RUNNING)
+      {
+        return;
+      }
+
+      state = finalState;
+      endTime = System.currentTimeMillis();
+
+      try
+      {
+        scheduler.schedule(new Runnable()
+        {
+          @Override public void run()
+          {
+            executions.remove(id);
+          }
+        }, retentionTime, TimeUnit.MILLISECONDS);
+      }
+
+      catch (RejectedExecutionException e)
+      {
+        executions.remove(id);
+      }
+    }
+  }
+}
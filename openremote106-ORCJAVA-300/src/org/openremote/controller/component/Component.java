@@ -21,6 +21,7 @@
 package org.openremote.controller.component;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.HashMap;
 
@@ -66,6 +67,16 @@ public abstract class Component {
    
    /** All available actions of sub controls */
    protected abstract List<String> getAvailableActions();
+
+   /**
+    * Returns the named actions of this component. Components may accept additional parameter values (such as
+    * slider values) which are not included in this list.
+    *
+    * @return unmodifiable list of action names
+    */
+   public List<String> getNamedActions() {
+      return Collections.unmodifiableList(availableActions);
+   }
    
    public boolean isValidActionWith(String actionParam) {
       for (String action : availableActions) {
@@ -56,6 +56,16 @@ public class ComponentFactory
     return componentBuilder.build(componentElement, commandParam);
   }
 
+  /**
+   * @param componentType   component element name, such as 'button' or 'switch'
+   *
+   * @return  true if a component builder has been configured for the given component type
+   */
+  public boolean hasComponentBuilder(String componentType)
+  {
+    return componentBuilders.containsKey(componentType);
+  }
+
   public void setComponentBuilders(Map<String, ComponentBuilder> componentBuilders)
   {
     this.componentBuilders = componentBuilders;
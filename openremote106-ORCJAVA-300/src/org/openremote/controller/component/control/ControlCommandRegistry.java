@@ -0,0 +1,180 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.component.control;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom.Element;
+import org.openremote.controller.Constants;
+import org.openremote.controller.command.ExecutableCommand;
+import org.openremote.controller.component.Component;
+import org.openremote.controller.component.ComponentFactory;
+import org.openremote.controller.utils.Logger;
+import org.openremote.controller.utils.MacrosIrDelayUtil;
+
+/**
+ * An immutable registry of the executable commands of each control and named control action
+ * (such as 'click' of a button or 'on' and 'off' of a switch), compiled once when the controller
+ * definition is deployed. <p>
+ *
+ * Executing a control command through the registry is a map lookup, instead of locating the
+ * control in the controller definition and building the control and its commands on every
+ * request. Controls whose commands depend on a request parameter value (such as slider values
+ * or colors) cannot be compiled ahead of time -- requests for those parameters are not found in
+ * the registry and must be built on demand.
+ *
+ * @see org.openremote.controller.deployer.Version20ModelBuilder
+ */
+public class ControlCommandRegistry
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * A registry with no compiled controls.
+   */
+  public final static ControlCommandRegistry EMPTY =
+      new ControlCommandRegistry(new HashMap<String, List<ExecutableCommand>>(0));
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * Log category for deployment.
+   */
+  private final static Logger log = Logger.getLogger(Constants.DEPLOYER_LOG_CATEGORY);
+
+
+  /**
+   * Compiles the executable commands of all controls in the given {@code <components>} element.
+   * Controls that fail to build are logged and left out of the registry.
+   *
+   * @param componentsElement   the {@code <components>} element of controller definition
+   * @param componentFactory    factory used to build the controls and their commands
+   *
+   * @return  registry of the compiled controls
+   */
+  public static ControlCommandRegistry compile(Element componentsElement, ComponentFactory componentFactory)
+  {
+    Map<String, List<ExecutableCommand>> commands = new HashMap<String, List<ExecutableCommand>>();
+
+    for (Object child : componentsElement.getChildren())
+    {
+      Element componentElement = (Element)child;
+
+      String id = componentElement.getAttributeValue("id");
+
+      if (id == null || !componentFactory.hasComponentBuilder(componentElement.getName()))
+      {
+        continue;
+      }
+
+      try
+      {
+        // Build with an empty parameter to find out the named actions of this component...
+
+        Component component = componentFactory.getComponent(componentElement, "");
+
+        if (!(component instanceof Control))
+        {
+          continue;
+        }
+
+        for (String action : component.getNamedActions())
+        {
+          Control control = (Control)componentFactory.getComponent(componentElement, action);
+
+          List<ExecutableCommand> executableCommands =
+              new ArrayList<ExecutableCommand>(control.getExecutableCommands());
+
+          MacrosIrDelayUtil.ensureDelayForIrCommand(executableCommands);
+
+          commands.put(getKey(Integer.parseInt(id), action), Collections.unmodifiableList(executableCommands));
+        }
+      }
+
+      catch (Throwable t)
+      {
+        log.warn(
+            "Commands of control ''{0}'' (ID = {1}) could not be compiled, they will be built " +
+            "when the control is used : {2}", t, componentElement.getName(), id, t.getMessage()
+        );
+      }
+    }
+
+    return new ControlCommandRegistry(commands);
+  }
+
+  private static String getKey(int controlID, String action)
+  {
+    return controlID + ":" + action.toLowerCase();
+  }
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * Executable commands by control ID and action.
+   */
+  private final Map<String, List<ExecutableCommand>> commands;
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  private ControlCommandRegistry(Map<String, List<ExecutableCommand>> commands)
+  {
+    this.commands = commands;
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Returns the compiled commands of a control action.
+   *
+   * @param controlID   control ID
+   * @param action      control action, matched case-insensitively
+   *
+   * @return  unmodifiable list of executable commands, or null if the control action has not
+   *          been compiled
+   */
+  public List<ExecutableCommand> getCommands(int controlID, String action)
+  {
+    if (action == null)
+    {
+      return null;
+    }
+
+    return commands.get(getKey(controlID, action));
+  }
+
+  /**
+   * @return  number of compiled control actions
+   */
+  public int size()
+  {
+    return commands.size();
+  }
+}
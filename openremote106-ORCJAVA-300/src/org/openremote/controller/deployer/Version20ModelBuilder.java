@@ -35,13 +35,17 @@ import java.util.Set;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.input.SAXBuilder;
+import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
 import org.openremote.controller.ControllerConfiguration;
 import org.openremote.controller.command.CommandFactory;
+import org.openremote.controller.component.ComponentFactory;
+import org.openremote.controller.component.control.ControlCommandRegistry;
 import org.openremote.controller.exception.ControllerDefinitionNotFoundException;
 import org.openremote.controller.exception.InitializationException;
 import org.openremote.controller.exception.XMLParsingException;
 import org.openremote.controller.model.Command;
+import org.openremote.controller.model.XMLMapping;
 import org.openremote.controller.model.sensor.Sensor;
 import org.openremote.controller.statuscache.StatusCache;
 import org.openremote.controller.utils.PathUtil;
@@ -162,7 +166,12 @@ public class Version20ModelBuilder extends AbstractModelBuilder
     /**
      * Enum for {@code<commands>} section in the XML document instance.
      */
-    COMMANDS("commands");
+    COMMANDS("commands"),
+
+    /**
+     * Enum for {@code<components>} section in the XML document instance.
+     */
+    COMPONENTS("components");
 
 
     // --------------------------------------------------------------------------------------------
@@ -315,6 +324,19 @@ public class Version20ModelBuilder extends AbstractModelBuilder
    */
   private long lastTimeStamp = 0L;
 
+  /**
+   * Last known size of controller.xml file. A file being written may change size without a
+   * change in its (coarse grained) timestamp.
+   */
+  private long lastLength = 0L;
+
+  /**
+   * Sensor, command and configuration definitions of the deployed object model, used to
+   * determine what has changed when the model is {@link #updateModel() updated}. Null if the
+   * object model has not been (completely) built.
+   */
+  private DefinitionSnapshot deployedDefinition;
+
 
   /**
    * This model builder delegates parsing of {@code <sensors>} segment in XML schema to this
@@ -334,6 +356,18 @@ public class Version20ModelBuilder extends AbstractModelBuilder
    * The commandFactory should update it's commandBuilder with the new configuration before building the model
    */
   private CommandFactory commandFactory;
+
+  /**
+   * Builds the controls (and their commands) of the {@code <components>} segment when the
+   * control command registry is compiled. Optional -- if not set, no registry is compiled.
+   */
+  private ComponentFactory componentFactory;
+
+  /**
+   * Executable commands of the controls in the currently deployed controller definition. The
+   * registry is replaced as a whole on each build.
+   */
+  private volatile ControlCommandRegistry controlCommandRegistry = ControlCommandRegistry.EMPTY;
   
   // Constructors -------------------------------------------------------------------------------
 
@@ -417,6 +451,7 @@ public class Version20ModelBuilder extends AbstractModelBuilder
     if (controllerDefinitionIsPresent)
     {
       lastTimeStamp = getControllerXMLTimeStamp();
+      lastLength = getControllerXMLLength();
     }
   }
 
@@ -485,9 +520,141 @@ public class Version20ModelBuilder extends AbstractModelBuilder
   {
     return deviceStateCache;
   }
+
+  /**
+   * Returns the executable commands of controls compiled from the current controller definition.
+   * The registry is empty while the model is being built.
+   *
+   * @return    control command registry
+   */
+  public ControlCommandRegistry getControlCommandRegistry()
+  {
+    return controlCommandRegistry;
+  }
+
+
+  // Service Dependencies -----------------------------------------------------------------------
+
+  /**
+   * Sets the component factory used to compile the control command registry. This is set by
+   * the deployer before the model is built (component builders depend on the deployer, which
+   * in turn depends on this model builder).
+   *
+   * @param componentFactory    component factory with builders for the control types
+   */
+  public void setComponentFactory(ComponentFactory componentFactory)
+  {
+    this.componentFactory = componentFactory;
+  }
   
 
 
+  /**
+   * Applies changes in the controller definition to the deployed object model without shutting
+   * it down. Sensors whose definition, and the definition of the command they receive their
+   * state from, have not changed keep running and keep their current state in the device state
+   * cache. Removed and changed sensors are stopped and unregistered, changed and added sensors
+   * are built and started. A change in the {@code <commands>} section rebuilds the command model
+   * and restarts the event processors using it. Control commands are always recompiled. <p>
+   *
+   * Changes in the {@code <config>} section cannot be applied incrementally as they reconfigure
+   * the command builders.
+   *
+   * @return  true if the changes were applied, false if the object model must be fully
+   *          redeployed instead -- the deployed object model has not been modified in that case
+   *
+   * @throws  InitializationException
+   *            if the controller definition cannot be read or parsed, the deployed object
+   *            model has not been modified
+   */
+  public boolean updateModel() throws InitializationException
+  {
+    if (deployedDefinition == null)
+    {
+      return false;
+    }
+
+    Document document = readControllerXMLDocument();
+    DefinitionSnapshot definition = DefinitionSnapshot.of(document);
+
+    if (!definition.config.equals(deployedDefinition.config))
+    {
+      log.info("Controller configuration has changed, full redeploy required.");
+
+      return false;
+    }
+
+    // Removed or changed sensors are stopped, changed or added sensors are started...
+
+    Set<Integer> stopped = new HashSet<Integer>();
+    Set<Integer> started = new HashSet<Integer>();
+
+    for (Map.Entry<Integer, String> sensor : deployedDefinition.sensors.entrySet())
+    {
+      if (!sensor.getValue().equals(definition.sensors.get(sensor.getKey())))
+      {
+        stopped.add(sensor.getKey());
+      }
+    }
+
+    for (Map.Entry<Integer, String> sensor : definition.sensors.entrySet())
+    {
+      if (!sensor.getValue().equals(deployedDefinition.sensors.get(sensor.getKey())))
+      {
+        started.add(sensor.getKey());
+      }
+    }
+
+    controllerXMLDefinition = document;
+
+    if (!definition.commands.equals(deployedDefinition.commands))
+    {
+      buildCommandModel();
+
+      deviceStateCache.restartEventProcessors();
+    }
+
+    for (Integer id : stopped)
+    {
+      deviceStateCache.unregisterSensor(id);
+    }
+
+    for (Integer id : started)
+    {
+      Element sensorElement = definition.sensorElements.get(id);
+
+      try
+      {
+        Sensor sensor = sensorBuilder.build(sensorElement);
+
+        deviceStateCache.registerSensor(sensor);
+
+        sensor.start();
+      }
+
+      catch (Throwable t)
+      {
+        log.error(
+            "Creating sensor failed. Error : {0} \n XML Element : {1}",
+            t, t.getMessage(), new XMLOutputter().outputString(sensorElement)
+        );
+      }
+    }
+
+    buildControlCommandRegistry();
+
+    deployedDefinition = definition;
+
+    log.info(
+        "Updated object model : {0} sensor(s) stopped, {1} started, {2} unchanged.",
+        stopped.size(), started.size(), definition.sensors.size() - started.size()
+    );
+
+    return true;
+  }
+
+
+
   // Implements ModelBuilder --------------------------------------------------------------------
 
 
@@ -517,10 +684,15 @@ public class Version20ModelBuilder extends AbstractModelBuilder
       }
 
       long lastModified = getControllerXMLTimeStamp();
+      long length = getControllerXMLLength();
+
+      // Compare for any difference rather than a newer timestamp, a replaced file may carry
+      // an older timestamp (for example when extracted from an archive)...
 
-      if (lastModified > lastTimeStamp)
+      if (lastModified != lastTimeStamp || length != lastLength)
       {
         lastTimeStamp = lastModified;
+        lastLength = length;
 
         return true;
       }
@@ -532,6 +704,9 @@ public class Version20ModelBuilder extends AbstractModelBuilder
       {
         controllerDefinitionIsPresent = true;
 
+        lastTimeStamp = getControllerXMLTimeStamp();
+        lastLength = getControllerXMLLength();
+
         return true;
       }
     }
@@ -550,11 +725,30 @@ public class Version20ModelBuilder extends AbstractModelBuilder
   @Override protected void build()
   {
      commandFactory.updateCommandBuilders(getConfigurationProperties(), deployer);
+
+    // Don't hand out commands of the previous deployment while building...
+
+    controlCommandRegistry = ControlCommandRegistry.EMPTY;
+    deployedDefinition = null;
      
     // TODO : at the moment only contains sensor model and partial command model
 
     buildCommandModel();
     buildSensorModel();
+    buildControlCommandRegistry();
+
+    try
+    {
+      deployedDefinition = DefinitionSnapshot.of(controllerXMLDefinition);
+    }
+
+    catch (InitializationException e)
+    {
+      log.warn(
+          "Controller definition changes will require a full redeploy : {0}",
+          e, e.getMessage()
+      );
+    }
   }
 
 
@@ -700,6 +894,42 @@ public class Version20ModelBuilder extends AbstractModelBuilder
   }
 
 
+  /**
+   * Compiles the executable commands of all controls in the {@code <components>} segment so
+   * that control requests do not need to locate and build the controls from the XML definition.
+   * Must be called after the sensor model has been built, as controls may refer to sensors.
+   */
+  protected void buildControlCommandRegistry()
+  {
+    if (componentFactory == null)
+    {
+      return;
+    }
+
+    try
+    {
+      Element componentsElement = XMLSegment.COMPONENTS.query(controllerXMLDefinition);
+
+      if (componentsElement == null)
+      {
+        return;
+      }
+
+      controlCommandRegistry = ControlCommandRegistry.compile(componentsElement, componentFactory);
+
+      log.info("Compiled commands of {0} control actions.", controlCommandRegistry.size());
+    }
+
+    catch (InitializationException e)
+    {
+      log.error(
+          "Unable to compile control commands, they will be built on demand : {0}",
+          e, e.getMessage()
+      );
+    }
+  }
+
+
   /**
    * Parse command definitions from controller.xml and create the corresponding Java objects. <p>
    *
@@ -880,7 +1110,140 @@ public class Version20ModelBuilder extends AbstractModelBuilder
     }
   }
 
+  /**
+   * Returns the size of controller.xml file of this controller object model.
+   *
+   * @return  file size in bytes, or zero if the file size cannot be accessed
+   */
+  private long getControllerXMLLength()
+  {
+    final File controllerXML = getControllerDefinitionFile(config);
+
+    try
+    {
+      // ----- BEGIN PRIVILEGED CODE BLOCK --------------------------------------------------------
 
-}
+      return AccessController.doPrivilegedWithCombiner(new PrivilegedAction<Long>()
+      {
+        @Override public Long run()
+        {
+          return controllerXML.length();
+        }
+      });
+
+      // ----- END PRIVILEGED CODE BLOCK ----------------------------------------------------------
+    }
+
+    catch (SecurityException e)
+    {
+      log.error(
+          "Security manager prevented access to size of file ''{0}'' ({1}).",
+          e, controllerXML, e.getMessage()
+      );
+
+      return 0L;
+    }
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * Canonical form of the parts of a controller definition that the deployed object model is
+   * built from. Each sensor is represented by its own definition together with the definitions
+   * of the commands it includes, so a changed event producer also changes the sensor.
+   */
+  private static class DefinitionSnapshot
+  {
+
+    /**
+     * Creates a snapshot of the given controller definition.
+     *
+     * @param doc   controller definition
+     *
+     * @return  definition snapshot
+     *
+     * @throws InitializationException
+     *            if the definition segments cannot be queried or a sensor ID is not a number
+     */
+    private static DefinitionSnapshot of(Document doc) throws InitializationException
+    {
+      XMLOutputter xml = new XMLOutputter(Format.getCompactFormat());
+      DefinitionSnapshot snapshot = new DefinitionSnapshot();
+
+      Element config = XMLSegment.CONFIG.query(doc);
+      Element commands = XMLSegment.COMMANDS.query(doc);
+      Element sensors = XMLSegment.SENSORS.query(doc);
+
+      snapshot.config = (config == null) ? "" : xml.outputString(config);
+      snapshot.commands = (commands == null) ? "" : xml.outputString(commands);
+
+      Map<String, String> commandsByID = new HashMap<String, String>();
+
+      if (commands != null)
+      {
+        for (Element command : getChildElements(commands))
+        {
+          commandsByID.put(command.getAttributeValue("id"), xml.outputString(command));
+        }
+      }
+
+      if (sensors == null)
+      {
+        return snapshot;
+      }
+
+      for (Element sensor : getChildElements(sensors))
+      {
+        String id = sensor.getAttributeValue("id");
+        StringBuilder definition = new StringBuilder(xml.outputString(sensor));
+
+        for (Element include : getChildElements(sensor))
+        {
+          if (include.getName().equalsIgnoreCase(XMLMapping.XML_INCLUDE_ELEMENT_NAME) &&
+              XMLMapping.XML_INCLUDE_ELEMENT_TYPE_COMMAND.equalsIgnoreCase(
+                  include.getAttributeValue(XMLMapping.XML_INCLUDE_ELEMENT_TYPE_ATTR)))
+          {
+            definition.append(
+                commandsByID.get(include.getAttributeValue(XMLMapping.XML_INCLUDE_ELEMENT_REF_ATTR))
+            );
+          }
+        }
+
+        try
+        {
+          snapshot.sensors.put(Integer.parseInt(id), definition.toString());
+          snapshot.sensorElements.put(Integer.parseInt(id), sensor);
+        }
+
+        catch (NumberFormatException e)
+        {
+          throw new XMLParsingException("Invalid sensor ID ''{0}''.", e, id);
+        }
+      }
+
+      return snapshot;
+    }
 
 
+    /**
+     * Canonical {@code <config>} section, empty string if there is none.
+     */
+    private String config;
+
+    /**
+     * Canonical {@code <commands>} section, empty string if there is none.
+     */
+    private String commands;
+
+    /**
+     * Canonical sensor definitions (including their commands) by sensor ID.
+     */
+    private Map<Integer, String> sensors = new HashMap<Integer, String>();
+
+    /**
+     * Sensor elements by sensor ID.
+     */
+    private Map<Integer, Element> sensorElements = new HashMap<Integer, Element>();
+  }
+}
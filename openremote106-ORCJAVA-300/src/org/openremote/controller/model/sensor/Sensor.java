@@ -20,13 +20,12 @@
  */
 package org.openremote.controller.model.sensor;
 
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.openremote.controller.Constants;
 import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.PollingScheduler;
 import org.openremote.controller.command.StatusCommand;
 import org.openremote.controller.component.EnumSensorType;
 import org.openremote.controller.protocol.Event;
@@ -41,9 +40,10 @@ import org.openremote.controller.utils.Logger;
  * devices that actively broadcast their state changes. Sensors operate on protocol handlers
  * to execute read requests on devices to fetch the current device state.  <p>
  *
- * Each polling sensor (for passive devices) has a thread associated with it. Sensors bound to
- * event listeners do not create threads of their own but the event listener implementations
- * themselves are usually multi-threaded. <p>
+ * Each polling sensor (for passive devices) registers a polling task with the controller wide
+ * {@link org.openremote.controller.PollingScheduler}. Sensors bound to event listeners do not
+ * create tasks of their own but the event listener implementations themselves are usually
+ * multi-threaded. <p>
  *
  * Each sensor can have list of properties which it makes available to implementations of
  * read commands and event listeners. These properties may be used by protocol implementers to
@@ -371,8 +371,8 @@ public abstract class Sensor
   /**
    * Starts this sensor. When this sensor is bound to an event listener, will invoke its
    * {@link org.openremote.controller.protocol.EventListener#setSensor(Sensor)} method. For
-   * {@link org.openremote.controller.protocol.ReadCommand} implementations will start a polling
-   * thread to invoke their {@link org.openremote.controller.protocol.ReadCommand#read(Sensor)}
+   * {@link org.openremote.controller.protocol.ReadCommand} implementations will register a polling
+   * task to invoke their {@link org.openremote.controller.protocol.ReadCommand#read(Sensor)}
    * method.
    */
   public void start()
@@ -408,7 +408,7 @@ public abstract class Sensor
   /**
    * Stops this sensor. In case this sensor has been bound to an event listener, the stop
    * invokes its {@link EventListener#stop(Sensor)} method. In case of a
-   * {@link org.openremote.controller.protocol.ReadCommand}, the polling thread is stopped.
+   * {@link org.openremote.controller.protocol.ReadCommand}, the polling task is cancelled.
    *
    * @see org.openremote.controller.model.sensor.Sensor#start()
    */
@@ -448,7 +448,7 @@ public abstract class Sensor
     if (deviceReader == null)
       return false;
     else
-      return deviceReader.pollingThreadRunning;
+      return deviceReader.pollingRunning;
   }
 
 
@@ -523,102 +523,71 @@ public abstract class Sensor
 
   /**
    * Handles the {@link org.openremote.controller.protocol.ReadCommand#read(Sensor)} polling.
+   * The polling is executed by the controller wide
+   * {@link org.openremote.controller.PollingScheduler} rather than a dedicated thread.
    */
   private class DeviceReader implements Runnable
   {
 
     /**
-     * Indicates the device polling thread's run state. Notice that for immediate stop, setting
-     * this to false is not sufficient, but the thread also must be interrupted. See
-     * {@link DeviceReader#stop}.
+     * Indicates the device polling task's run state.
      */
-    private volatile boolean pollingThreadRunning = true;
+    private volatile boolean pollingRunning = true;
 
     /**
-     * The actual thread reference being used by the owning sensor instance when
+     * The polling task registered with the controller's polling scheduler when
      * {@link org.openremote.controller.protocol.ReadCommand} is used as event producer.
      */
-    private Thread pollingThread;
+    private PollingScheduler.PollingTask pollingTask;
 
     /**
-     * Starts the device polling thread.
+     * Registers this device reader with the controller's polling scheduler.
      */
     public void start()
     {
-      pollingThreadRunning = true;
-      
-      pollingThread = OpenRemoteRuntime.createThread(
-          "Polling Sensor Thread ID = " + getSensorID() + ", Name ='" + getName() + "'", this
+      pollingRunning = true;
+
+      pollingTask = OpenRemoteRuntime.getPollingScheduler().schedule(
+          "Polling Sensor ID = " + getSensorID() + ", Name ='" + getName() + "'",
+          ReadCommand.POLLING_INTERVAL, this
       );
 
-      pollingThread.start();
+      log.info("Started polling for sensor (ID = {0}, name = {1}).", getSensorID(), getName());
     }
 
     /**
-     * Stops the device polling thread. Notice that stopping the thread will cause it to exit.
-     * The same thread cannot be resumed but a new thread will be created via
-     * {@link DeviceReader#start()}.
+     * Stops the device polling. A read in progress is allowed to complete but its result is
+     * discarded. The polling can be restarted via {@link DeviceReader#start()}.
      */
     public void stop()
     {
-      pollingThreadRunning = false;
+      pollingRunning = false;
 
-      try
+      if (pollingTask != null)
       {
-        // ----- BEGIN PRIVILEGED CODE BLOCK ------------------------------------------------------
-
-        AccessController.doPrivilegedWithCombiner(new PrivilegedAction<Void>()
-        {
-          @Override public Void run()
-          {
-            pollingThread.interrupt();
-
-            return null;
-          }
-        });
-
-        // ----- END PRIVILEGED CODE BLOCK ------------------------------------------------------
+        pollingTask.cancel();
       }
 
-      catch (SecurityException e)
-      {
-        log.warn(
-            "Could not interrupt device polling thread ''{0}'' due to security constraints: {1}\n" +
-            "the thread will exit in {2} milliseconds...",
-            pollingThread.getName(), e.getMessage(), ReadCommand.POLLING_INTERVAL
-        );
-      }
+      log.info("Shutting down polling of sensor (ID = {0}, name = {1}).", getSensorID(), getName());
     }
 
 
     // Implements Runnable ------------------------------------------------------------------------
 
     /**
-     * Once every given interval defined in {@link ReadCommand#POLLING_INTERVAL}, invokes a read()
-     * request on the sensor and the underlying event producer. Depending on event producer
-     * implementation this may create a concrete request on the device to read current state, or
-     * it may return a cached value from memory.
+     * Invoked by the polling scheduler once every interval defined in
+     * {@link ReadCommand#POLLING_INTERVAL}, invokes a read() request on the sensor and the
+     * underlying event producer. Depending on event producer implementation this may create a
+     * concrete request on the device to read current state, or it may return a cached value
+     * from memory.
      */
     @Override public void run()
     {
-      log.info("Started polling thread for sensor (ID = {0}, name = {1}).", getSensorID(), getName());
+      String value = read();
 
-      while (pollingThreadRunning)
+      if (pollingRunning)
       {
-        Sensor.this.update(read());
-
-        try
-        {
-          Thread.sleep(ReadCommand.POLLING_INTERVAL);
-        }
-        catch (InterruptedException e)
-        {
-          pollingThreadRunning = false;
-
-          log.info("Shutting down polling thread of sensor (ID = {0}, name = {1}).", getSensorID(), getName());
-
-          Thread.currentThread().interrupt();
-        }
+        Sensor.this.update(value);
       }
     }
 
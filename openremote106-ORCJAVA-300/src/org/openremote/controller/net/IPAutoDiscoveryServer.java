@@ -26,6 +26,7 @@ import java.net.MulticastSocket;
 
 import org.apache.log4j.Logger;
 import org.openremote.controller.ControllerConfiguration;
+import org.openremote.controller.OpenRemoteRuntime;
 
 /**
  * The Class IP Auto Discovery Server.
@@ -75,6 +76,7 @@ public class IPAutoDiscoveryServer implements Runnable {
             logger.info("Received an IP auto-discovery request from " + packet.getAddress().getHostAddress());
          } catch (IOException e) {
             logger.error("Can't receive packet on " + MULTICAST_ADDRESS + ":" + MULTICAST_PORT, e);
+            continue;
          }
          sendLocalIPBack(packet); 
       }
@@ -83,12 +85,13 @@ public class IPAutoDiscoveryServer implements Runnable {
 
 
    /**
-    * Send local ip back.
+    * Send local ip back. The response is sent from the controller wide network worker pool, the
+    * request is dropped if the pool is saturated.
     * 
     * @param packet the packet
     */
    private void sendLocalIPBack(DatagramPacket packet) {
-      new Thread(new IPResponseTCPClient(packet.getAddress())).start();
+      OpenRemoteRuntime.getNetworkWorkerPool().offer("auto-discovery server", new IPResponseTCPClient(packet.getAddress()));
    }
 
 
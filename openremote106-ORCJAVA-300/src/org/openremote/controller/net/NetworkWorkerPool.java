@@ -0,0 +1,333 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.net;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openremote.controller.Constants;
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * A controller wide, bounded pool of threads handling requests received by the network
+ * servers in this package (auto-discovery and round-robin cluster servers). The listener
+ * threads of the servers only receive packets and connections and hand their handling over
+ * to this pool, instead of starting a new thread per request. <p>
+ *
+ * The number of requests held by the pool -- executing or waiting for a thread -- is bounded
+ * by the thread count plus the queue capacity. When the pool is saturated, datagram servers
+ * {@link #offer offer} their requests and drop them, while connection oriented servers
+ * {@link #execute block} their accept loop which leaves pending connections in the operating
+ * system's backlog. Thread count therefore remains fixed regardless of request rate. <p>
+ *
+ * Queue and drop counters are exposed via {@link NetworkWorkerPoolMBean} for monitoring.
+ *
+ * @see OpenRemoteRuntime#getNetworkWorkerPool()
+ */
+public class NetworkWorkerPool implements NetworkWorkerPoolMBean
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Default number of worker threads if none has been configured.
+   */
+  public final static int DEFAULT_THREAD_COUNT = 4;
+
+  /**
+   * Default number of requests that can wait for a worker thread if none has been configured.
+   */
+  public final static int DEFAULT_QUEUE_CAPACITY = 64;
+
+  /**
+   * Time in seconds an idle worker thread is kept alive.
+   */
+  public final static int IDLE_THREAD_TIMEOUT = 60;
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  private final static Logger log = Logger.getLogger(Constants.CONTROLLER_RUNTIME_LOG_CATEGORY + ".net");
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private ThreadPoolExecutor executor;
+
+  /**
+   * Permits for requests held by the pool, one per thread and queue slot.
+   */
+  private Semaphore capacity;
+
+  private int queueCapacity;
+
+  private AtomicInteger peakQueuedTasks = new AtomicInteger(0);
+
+  private AtomicLong submittedTasks = new AtomicLong(0);
+
+  private AtomicLong completedTasks = new AtomicLong(0);
+
+  private AtomicLong droppedTasks = new AtomicLong(0);
+
+  private AtomicLong blockedSubmissions = new AtomicLong(0);
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Constructs a new worker pool.
+   *
+   * @param threadCount     maximum number of worker threads
+   * @param queueCapacity   maximum number of requests waiting for a worker thread
+   */
+  public NetworkWorkerPool(int threadCount, int queueCapacity)
+  {
+    if (threadCount <= 0)
+    {
+      threadCount = DEFAULT_THREAD_COUNT;
+    }
+
+    if (queueCapacity < 0)
+    {
+      queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    }
+
+    this.queueCapacity = queueCapacity;
+    this.capacity = new Semaphore(threadCount + queueCapacity);
+
+    this.executor = new ThreadPoolExecutor(
+        threadCount, threadCount, IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+          private AtomicInteger threadNumber = new AtomicInteger(1);
+
+          @Override public Thread newThread(Runnable runnable)
+          {
+            Thread thread = OpenRemoteRuntime.createThread(
+                "Network Worker Thread " + threadNumber.getAndIncrement(), runnable
+            );
+
+            thread.setDaemon(true);
+
+            return thread;
+          }
+        }
+    );
+
+    executor.allowCoreThreadTimeOut(true);
+
+    log.info(
+        "Created network worker pool with {0} threads and a queue of {1} requests.",
+        threadCount, queueCapacity
+    );
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Hands a request over to the pool if it has capacity, otherwise drops the request.
+   *
+   * @param source    name of the server submitting the request, used for logging
+   * @param task      the request handler
+   *
+   * @return  true if the request was accepted, false if it was dropped
+   */
+  public boolean offer(String source, Runnable task)
+  {
+    if (!capacity.tryAcquire())
+    {
+      long dropped = droppedTasks.incrementAndGet();
+
+      log.debug("Network worker pool saturated, dropped request from {0} ({1} dropped).", source, dropped);
+
+      return false;
+    }
+
+    return submit(source, task);
+  }
+
+  /**
+   * Hands a request over to the pool, blocking the caller until the pool has capacity.
+   *
+   * @param source    name of the server submitting the request, used for logging
+   * @param task      the request handler
+   *
+   * @return  true if the request was accepted, false if the pool has been shut down
+   *
+   * @throws InterruptedException   if interrupted while waiting for capacity
+   */
+  public boolean execute(String source, Runnable task) throws InterruptedException
+  {
+    if (!capacity.tryAcquire())
+    {
+      blockedSubmissions.incrementAndGet();
+
+      capacity.acquire();
+    }
+
+    return submit(source, task);
+  }
+
+  /**
+   * Stops the worker threads. Queued requests are discarded.
+   */
+  public void shutdown()
+  {
+    executor.shutdownNow();
+  }
+
+
+  // Implements NetworkWorkerPoolMBean ------------------------------------------------------------
+
+  @Override public int getThreadCount()
+  {
+    return executor.getPoolSize();
+  }
+
+  @Override public int getMaximumThreadCount()
+  {
+    return executor.getMaximumPoolSize();
+  }
+
+  @Override public int getActiveThreadCount()
+  {
+    return executor.getActiveCount();
+  }
+
+  @Override public int getQueuedTaskCount()
+  {
+    return executor.getQueue().size();
+  }
+
+  @Override public int getQueueCapacity()
+  {
+    return queueCapacity;
+  }
+
+  @Override public int getPeakQueuedTaskCount()
+  {
+    return peakQueuedTasks.get();
+  }
+
+  @Override public long getSubmittedTaskCount()
+  {
+    return submittedTasks.get();
+  }
+
+  @Override public long getCompletedTaskCount()
+  {
+    return completedTasks.get();
+  }
+
+  @Override public long getDroppedTaskCount()
+  {
+    return droppedTasks.get();
+  }
+
+  @Override public long getBlockedSubmissionCount()
+  {
+    return blockedSubmissions.get();
+  }
+
+  @Override public void resetStatistics()
+  {
+    peakQueuedTasks.set(0);
+    submittedTasks.set(0);
+    completedTasks.set(0);
+    droppedTasks.set(0);
+    blockedSubmissions.set(0);
+  }
+
+
+  // Object Overrides -----------------------------------------------------------------------------
+
+  @Override public String toString()
+  {
+    return "Network Worker Pool (threads = " + getThreadCount() + "/" + getMaximumThreadCount() +
+           ", queued = " + getQueuedTaskCount() + "/" + getQueueCapacity() +
+           ", dropped = " + getDroppedTaskCount() + ")";
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  /**
+   * Submits a request for which a capacity permit has already been acquired.
+   */
+  private boolean submit(final String source, final Runnable task)
+  {
+    try
+    {
+      executor.execute(new Runnable()
+      {
+        @Override public void run()
+        {
+          try
+          {
+            task.run();
+          }
+
+          catch (Throwable t)
+          {
+            log.error("Handling a request from {0} failed : {1}", t, source, t.getMessage());
+          }
+
+          finally
+          {
+            capacity.release();
+
+            completedTasks.incrementAndGet();
+          }
+        }
+      });
+    }
+
+    catch (RejectedExecutionException e)
+    {
+      capacity.release();
+
+      droppedTasks.incrementAndGet();
+
+      log.debug("Network worker pool has been shut down, dropped request from {0}.", source);
+
+      return false;
+    }
+
+    submittedTasks.incrementAndGet();
+
+    int queued = executor.getQueue().size();
+
+    if (queued > peakQueuedTasks.get())
+    {
+      peakQueuedTasks.set(queued);
+    }
+
+    return true;
+  }
+}
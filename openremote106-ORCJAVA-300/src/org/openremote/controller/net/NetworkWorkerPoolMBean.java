@@ -0,0 +1,84 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.net;
+
+/**
+ * Management interface for {@link NetworkWorkerPool}. Exposes the thread and queue gauges and
+ * the counters of handled and dropped network requests.
+ */
+public interface NetworkWorkerPoolMBean
+{
+
+  /**
+   * @return  number of threads currently in the pool
+   */
+  int getThreadCount();
+
+  /**
+   * @return  maximum number of threads in the pool
+   */
+  int getMaximumThreadCount();
+
+  /**
+   * @return  number of threads currently handling a request
+   */
+  int getActiveThreadCount();
+
+  /**
+   * @return  number of requests waiting for a free thread
+   */
+  int getQueuedTaskCount();
+
+  /**
+   * @return  maximum number of requests that can wait for a free thread
+   */
+  int getQueueCapacity();
+
+  /**
+   * @return  largest observed number of requests waiting for a free thread
+   */
+  int getPeakQueuedTaskCount();
+
+  /**
+   * @return  total number of requests accepted for handling
+   */
+  long getSubmittedTaskCount();
+
+  /**
+   * @return  total number of requests that have been handled
+   */
+  long getCompletedTaskCount();
+
+  /**
+   * @return  total number of requests dropped because the pool was saturated
+   */
+  long getDroppedTaskCount();
+
+  /**
+   * @return  total number of requests whose submission was blocked until the pool had capacity
+   */
+  long getBlockedSubmissionCount();
+
+  /**
+   * Clears the peak queue gauge and the request counters.
+   */
+  void resetStatistics();
+}
@@ -6,11 +6,13 @@ import java.io.InputStreamReader;
 import java.net.BindException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
+import org.openremote.controller.OpenRemoteRuntime;
 import org.openremote.controller.RoundRobinConfiguration;
 import org.openremote.controller.exception.roundrobin.TCPServerStartFailException;
 import org.openremote.controller.spring.SpringContext;
@@ -29,6 +31,12 @@ public class RoundRobinTCPServer implements Runnable {
    
    private static final String SEPARATOR_BETWEEN_MSG_KEY_AND_GROUP_NAME = RoundRobinClient.SEPARATOR_BETWEEN_MSG_KEY_AND_GROUP_NAME;
    
+   /**
+    * Time in milliseconds a group member may take to send its URL. Connections are handled by the
+    * shared network worker pool, a silent peer must not hold one of its threads indefinitely.
+    */
+   public static final int READ_TIMEOUT = 5000;
+   
    @Override
    public void run() throws TCPServerStartFailException {
       logger.info("TCP Server : starting for receiving groupmember urls...");
@@ -50,11 +58,22 @@ public class RoundRobinTCPServer implements Runnable {
       try {
          while ((socket = tcpServerSocket.accept()) != null) {
             logger.info("TCP Server : a new groupmember socket established...");
-            new Thread(new AppendGroupMemberThread(socket)).start();
-            nap(100);
+            try {
+               socket.setSoTimeout(READ_TIMEOUT);
+            } catch (IOException e) {
+               logger.warn("TCP Server : unable to set read timeout on groupmember socket.", e);
+               socket.close();
+               continue;
+            }
+            // blocks while the worker pool is saturated, further connections wait in the accept backlog
+            if (!OpenRemoteRuntime.getNetworkWorkerPool().execute("round-robin TCP server", new AppendGroupMemberThread(socket))) {
+               socket.close();
+            }
          }
       } catch (IOException e) {
          logger.info("TCP Server socket closed.");
+      } catch (InterruptedException e) {
+         logger.info("TCP Server interrupted.");
       }
    }
    
@@ -78,7 +97,12 @@ public class RoundRobinTCPServer implements Runnable {
          try {
             logger.info("TCP Server deal thread : Ready for receiving groupmember url ...");
             BufferedReader br = new BufferedReader(new InputStreamReader(this.innerSocket.getInputStream()));
-            RoundRobinData roundRobinData = splitReceivedDataFromRoundRobinUDPServer(br.readLine());
+            String line = br.readLine();
+            if (line == null) {
+               logger.warn("TCP Server deal thread : groupmember closed the connection without sending its url.");
+               return;
+            }
+            RoundRobinData roundRobinData = splitReceivedDataFromRoundRobinUDPServer(line);
             String groupMemberURL = roundRobinData.getContent();
             logger.info("TCP Server deal thread : received a groupmember url : " + groupMemberURL);
             
@@ -89,9 +113,16 @@ public class RoundRobinTCPServer implements Runnable {
             }            
             urlList.add(roundRobinData.getContent());
             chm.put(roundRobinData.getMsgKey(), urlList);
-            innerSocket.close();
+         } catch (SocketTimeoutException e) {
+            logger.warn("TCP Server deal thread : no groupmember url received within " + READ_TIMEOUT + "ms.");
          } catch (IOException e) {
             logger.error("Create bufferedReader fail.", e);
+         } finally {
+            try {
+               innerSocket.close();
+            } catch (IOException e) {
+               logger.debug("Closing groupmember socket failed.", e);
+            }
          }
       }
       
@@ -107,12 +138,4 @@ public class RoundRobinTCPServer implements Runnable {
          return rrd;
       }
    }
-   
-   private void nap(long time) {
-      try {
-         Thread.sleep(time);
-      } catch (InterruptedException e) {
-         e.printStackTrace();
-      }
-   }
 }
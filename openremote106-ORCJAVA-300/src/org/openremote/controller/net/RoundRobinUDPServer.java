@@ -25,9 +25,11 @@ import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.MulticastSocket;
 import java.net.Socket;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 import org.openremote.controller.ControllerConfiguration;
+import org.openremote.controller.OpenRemoteRuntime;
 import org.openremote.controller.RoundRobinConfiguration;
 import org.openremote.controller.exception.roundrobin.TCPClientEstablishException;
 import org.openremote.controller.exception.roundrobin.UDPServerStartFailException;
@@ -92,13 +94,13 @@ public class RoundRobinUDPServer implements Runnable {
       DatagramPacket datagramPacket = new DatagramPacket(data, data.length);
       while (true) {
          try {
+            datagramPacket.setLength(data.length);
             roundRobinUDPMulticastServerSocket.receive(datagramPacket);
-            new Thread(new UDPServerDealThread(groupName, datagramPacket)).start();
-            try {
-               Thread.sleep(100);
-            } catch (InterruptedException e) {
-               logger.error(e.getStackTrace(), e);
-            }
+            // the receive buffer is reused, hand a copy of the datagram over to the worker pool
+            DatagramPacket received = new DatagramPacket(
+                  Arrays.copyOf(datagramPacket.getData(), datagramPacket.getLength()), datagramPacket.getLength(),
+                  datagramPacket.getAddress(), datagramPacket.getPort());
+            OpenRemoteRuntime.getNetworkWorkerPool().offer("round-robin UDP server", new UDPServerDealThread(groupName, received));
          } catch (IOException e) {
             logger.error("Receive UDP multicast request data erroe.", e);
          }
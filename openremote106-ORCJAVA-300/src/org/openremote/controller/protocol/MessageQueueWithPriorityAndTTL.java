@@ -20,8 +20,11 @@
  */
 package org.openremote.controller.protocol;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * A queue that implements several specific requirements:
@@ -29,6 +32,7 @@ import java.util.LinkedList;
  * - inserted entries have a TTL, they're dropped from the queue (on read operations) if they have been in the queue longer than their TTL
  * - there is the possibility of priority entries, they are inserted at the head of the queue (after the existing priority entries)
  * - inserted entries are coalesced (if the entry class implements the Coalescable interface), newer entry is kept
+ * - coalesced entries can carry over state from the entry they replace (if the entry class implements the Mergeable interface)
  * - it is thread safe
  * 
  * @author <a href="mailto:eric@openremote.org">Eric Bariaux</a>
@@ -100,6 +104,9 @@ public class MessageQueueWithPriorityAndTTL<E> {
         // Iterate the queue from top to bottom, if an entry is Coalescable, remove it
         for (QueueEntry qe : queue) {
           if (qe.getEntry() instanceof Coalescable && ((Coalescable)e).isCoalesable((Coalescable) qe.getEntry())) {
+            if (e instanceof Mergeable) {
+              ((Mergeable)e).merge((Coalescable) qe.getEntry());
+            }
             queue.remove(qe);
             break;
           }
@@ -147,6 +154,50 @@ public class MessageQueueWithPriorityAndTTL<E> {
     return (e != null) ? e.getEntry() : null;
   }
 
+  /**
+   * Returns and removes all entries accepted by the given filter, in queue order.
+   * Entries that have exceeded their TTL are dropped. This method never waits.
+   * 
+   * @param filter selects the entries to remove
+   * @return List of removed entries, empty if none matched
+   */
+  public List<E> pollMatching(Filter<E> filter) {
+    List<E> result = new ArrayList<E>();
+    long currentTime = new Date().getTime();
+    synchronized (queue) {
+      Iterator<QueueEntry> it = queue.iterator();
+      int position = 0;
+      while (it.hasNext()) {
+        QueueEntry qe = it.next();
+        boolean expired = (ttl != 0 && qe.getTimestamp() + ttl < currentTime) ||
+                          (qe.getTtl() != 0 && qe.getTimestamp() + qe.getTtl() < currentTime);
+        if (expired || filter.accept(qe.getEntry())) {
+          it.remove();
+          if (position < firstNonPriorityMessage) {
+            firstNonPriorityMessage--;
+          }
+          if (!expired) {
+            result.add(qe.getEntry());
+          }
+        } else {
+          position++;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of entries currently in the queue, including entries whose TTL has expired but that have not been dropped yet.
+   * 
+   * @return Number of entries in the queue
+   */
+  public int size() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
   /**
    * Returns and removes the entry at the head of the queue.
    * If the queue is currently empty, this methods waits until there is an entry added before returning.
@@ -203,4 +254,28 @@ public class MessageQueueWithPriorityAndTTL<E> {
     boolean isCoalesable(Coalescable other);
     
   }
+
+  /**
+   * Coalescable entry that merges the state of the entry it replaces into itself,
+   * for instance to keep attributes of the older entry that the newer one does not set.
+   */
+  public interface Mergeable extends Coalescable {
+
+    /**
+     * Called when this entry is added to the queue and replaces an older coalescable entry.
+     * 
+     * @param older the entry being replaced
+     */
+    void merge(Coalescable older);
+
+  }
+
+  /**
+   * Selects entries for {@link MessageQueueWithPriorityAndTTL#pollMatching(Filter)}.
+   */
+  public interface Filter<E> {
+
+    boolean accept(E e);
+
+  }
 }
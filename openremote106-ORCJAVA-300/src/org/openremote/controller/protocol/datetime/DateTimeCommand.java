@@ -20,6 +20,8 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.TimeZone;
 
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.PollingScheduler;
 import org.openremote.controller.model.sensor.Sensor;
 import org.openremote.controller.protocol.EventListener;
 import org.openremote.controller.utils.Logger;
@@ -49,6 +51,9 @@ public class DateTimeCommand implements EventListener, Runnable {
 
    private final static Logger logger = Logger.getLogger(DateTimeCommandBuilder.DATETIME_PROTOCOL_LOG_CATEGORY);
 
+   /** The interval in milliseconds in which the sensor value is recalculated */
+   private final static int RECALCULATION_INTERVAL = 60000;
+
    // Instance Fields
    // ----------------------------------------------------------
 
@@ -57,11 +62,8 @@ public class DateTimeCommand implements EventListener, Runnable {
    private SimpleDateFormat dateFormatter;
    private SunriseSunsetCalculator calculator;
    
-   private Thread pollingThread;
+   private PollingScheduler.PollingTask pollingTask;
    private Sensor sensor;
-   
-   /** Boolean to indicate if polling thread should run */
-   boolean doPoll = false;
 
 
    // Implements StatusCommand ---------------------------------------------------------------------
@@ -152,34 +154,29 @@ public class DateTimeCommand implements EventListener, Runnable {
    public void setSensor(Sensor sensor) {
       logger.debug("*** setSensor called as part of EventListener init *** sensor is: " + sensor);
       this.sensor = sensor;
-      pollingThread = new Thread(this);
-      pollingThread.setName("Polling thread for sensor: " + sensor.getName());
-      pollingThread.start();
+      pollingTask = OpenRemoteRuntime.getPollingScheduler().schedule(
+          "Polling task for sensor: " + sensor.getName(), RECALCULATION_INTERVAL, this
+      );
    }
    
 
    @Override
    public void stop(Sensor sensor) {
-      this.doPoll = false;
+      if (pollingTask != null) {
+         pollingTask.cancel();
+      }
    }
 
+   /**
+    * Recalculates the sensor value once, invoked every minute by the controller's polling
+    * scheduler.
+    */
    @Override
    public void run() {
-      logger.debug("Sensor thread started for sensor: " + sensor);
-      this.doPoll = true;
-      while (this.doPoll) {
-         String readValue = this.calculateData();
-         if (!"N/A".equals(readValue)) {
-            sensor.update(readValue);
-         }
-         try {
-            Thread.sleep(60000); // We recalculate every minute
-         } catch (InterruptedException e) {
-            this.doPoll = false;
-            pollingThread.interrupt();
-         }
+      String readValue = this.calculateData();
+      if (!"N/A".equals(readValue)) {
+         sensor.update(readValue);
       }
-      logger.debug("*** Out of run method: " + sensor);
    }
 
    public TimeZone getTimezone() {
@@ -52,6 +52,8 @@ import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.params.CoreProtocolPNames;
 import org.apache.http.protocol.HTTP;
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.PollingScheduler;
 import org.openremote.controller.command.ExecutableCommand;
 import org.openremote.controller.model.sensor.Sensor;
 import org.openremote.controller.protocol.EventListener;
@@ -106,15 +108,12 @@ public class HttpGetCommand implements ExecutableCommand, EventListener, Runnabl
   /** The polling interval which is used for the sensor update thread */
   private Integer pollingInterval;
 
-  /** The thread that is used to peridically update the sensor */
-  private Thread pollingThread;
+  /** The task that is used to peridically update the sensor */
+  private PollingScheduler.PollingTask pollingTask;
   
   /** The sensor which is updated */
   private Sensor sensor;
   
-  /** Boolean to indicate if polling thread should run */
-  boolean doPoll = false;
-  
   // Constructors  ----------------------------------------------------------------
   public HttpGetCommand(URI uri, String xpathExpression, String regex, Integer pollingInterval, String method, String workload, String jsonpathExpression, String contentType)
   {
@@ -173,16 +172,18 @@ public class HttpGetCommand implements ExecutableCommand, EventListener, Runnabl
       throw new RuntimeException("Could not set sensor because no polling interval was given");
     }
     this.sensor = sensor;
-    this.doPoll = true;
-    pollingThread = new Thread(this);
-    pollingThread.setName("Polling thread for sensor: " + sensor.getName());
-    pollingThread.start();
+    pollingTask = OpenRemoteRuntime.getPollingScheduler().schedule(
+        "Polling task for sensor: " + sensor.getName(), pollingInterval, this
+    );
   }
 
   @Override
   public void stop(Sensor sensor)
   {
-    this.doPoll = false;
+    if (pollingTask != null)
+    {
+      pollingTask.cancel();
+    }
   }
   
   
@@ -249,69 +250,63 @@ public class HttpGetCommand implements ExecutableCommand, EventListener, Runnabl
        } catch (IOException ignored) {}
        client.getConnectionManager().shutdown();
     }
-    logger.info("received message: " + resp);
+    logger.info("received message: {0}", resp);
     return resp;
   }
   
+  /**
+   * Executes a single poll of the URL, invoked periodically by the controller's polling
+   * scheduler.
+   */
   @Override
   public void run() {
-     logger.debug("Sensor thread started for sensor: " + sensor);
-     while (doPoll) {
-        String readValue = this.requestURL();
-        if (regex != null) {
-          Pattern regexPattern = Pattern.compile(regex);
-          Matcher matcher = regexPattern.matcher(readValue);
-          if (matcher.find()) {
-            String result = matcher.group();
-            logger.info("result of regex evaluation: " + result);
-            sensor.update(result);
-          } else {
-            logger.info("regex evaluation did not find a match");
-            sensor.update("N/A");
-          }
-        } else if (xpathExpression != null) {
-          DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-          //The following line had "true" but I changed this to "false" since it did not work with
-          //documents that actually had a namespace defined. (MR)
-          factory.setNamespaceAware(false);
-          String result;
-          try
-          {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            ByteArrayInputStream bin = new ByteArrayInputStream(readValue.getBytes());
-            Document doc = builder.parse(bin);
+     String readValue = this.requestURL();
+     if (regex != null) {
+       Pattern regexPattern = Pattern.compile(regex);
+       Matcher matcher = regexPattern.matcher(readValue);
+       if (matcher.find()) {
+         String result = matcher.group();
+         logger.info("result of regex evaluation: {0}", result);
+         sensor.update(result);
+       } else {
+         logger.info("regex evaluation did not find a match");
+         sensor.update("N/A");
+       }
+     } else if (xpathExpression != null) {
+       DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+       //The following line had "true" but I changed this to "false" since it did not work with
+       //documents that actually had a namespace defined. (MR)
+       factory.setNamespaceAware(false);
+       String result;
+       try
+       {
+         DocumentBuilder builder = factory.newDocumentBuilder();
+         ByteArrayInputStream bin = new ByteArrayInputStream(readValue.getBytes());
+         Document doc = builder.parse(bin);
 
-            XPathFactory xfac = XPathFactory.newInstance();
-            XPath xpath = xfac.newXPath();
-            XPathExpression expr = xpath.compile(xpathExpression);
-            result = (String)expr.evaluate(doc, XPathConstants.STRING);
-            logger.info("result of xpath evaluation: " + result);
-            sensor.update(result);
-          } catch (Exception e)
-          {
-            logger.error("Could not perform xpath evaluation", e);
-            sensor.update("N/A");
-          }
-        } else if (jsonpathExpression !=null) {
-          try {
-            Object result = JsonPath.read(readValue, jsonpathExpression);
-            sensor.update(result.toString());
-          } catch (Exception e) 
-          {
-            sensor.update("N/A");
-            logger.error("Could not perform jsonpath evaluation", e);    
-          }
-        } else {
-          sensor.update(readValue);
-        }
-        try {
-           Thread.sleep(pollingInterval); // We wait for the given pollingInterval before requesting URL again
-        } catch (InterruptedException e) {
-           doPoll = false;
-           pollingThread.interrupt();
-        }
+         XPathFactory xfac = XPathFactory.newInstance();
+         XPath xpath = xfac.newXPath();
+         XPathExpression expr = xpath.compile(xpathExpression);
+         result = (String)expr.evaluate(doc, XPathConstants.STRING);
+         logger.info("result of xpath evaluation: {0}", result);
+         sensor.update(result);
+       } catch (Exception e)
+       {
+         logger.error("Could not perform xpath evaluation", e);
+         sensor.update("N/A");
+       }
+     } else if (jsonpathExpression !=null) {
+       try {
+         Object result = JsonPath.read(readValue, jsonpathExpression);
+         sensor.update(result.toString());
+       } catch (Exception e) 
+       {
+         sensor.update("N/A");
+         logger.error("Could not perform jsonpath evaluation", e);    
+       }
+     } else {
+       sensor.update(readValue);
      }
-     logger.debug("*** Out of run method: " + sensor);
   }
 
 }
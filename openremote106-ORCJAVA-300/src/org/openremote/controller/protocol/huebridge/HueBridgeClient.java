@@ -0,0 +1,407 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.protocol.huebridge;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicResponseHandler;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.openremote.controller.utils.LatencyHistogram;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * HTTP client for a single Philips Hue bridge. All commands and sensors addressing the same
+ * bridge share one instance, which keeps a small pool of persistent (keep-alive) connections
+ * to the bridge instead of opening a new TCP connection per request.  <p>
+ *
+ * The bridge only handles a handful of concurrent connections, so the pool size is bounded by
+ * {@link #getMaxConnections()}. Requests beyond that wait for a pooled connection to become
+ * available.  <p>
+ *
+ * Request latencies are recorded in a histogram which, together with the pool usage, is
+ * exposed through {@link HueBridgeClientMBean}.
+ *
+ * @see HueBridgeCommandBuilder#getBridgeClient(String)
+ */
+public class HueBridgeClient implements HueBridgeClientMBean
+{
+
+    // Constants ------------------------------------------------------------------------------------
+
+    /**
+     * Default maximum number of concurrent connections to a bridge.
+     */
+    public final static int DEFAULT_MAX_CONNECTIONS = 4;
+
+    /**
+     * Timeout in milliseconds for establishing a connection and for reading a response.
+     */
+    public final static int SOCKET_TIMEOUT = 5000;
+
+    /**
+     * Time in milliseconds after which idle pooled connections are closed. The bridge drops idle
+     * connections on its own after a short while, so there is little point in keeping them
+     * around for longer.
+     */
+    public final static long IDLE_CONNECTION_TIMEOUT = 10000;
+
+    /**
+     * Content type used for request bodies sent to the bridge.
+     */
+    public final static String CONTENT_TYPE = "application/json";
+
+
+    // Class Members --------------------------------------------------------------------------------
+
+    private final static Logger logger = Logger.getLogger(HueBridgeCommandBuilder.HUEBRIDGE_PROTOCOL_LOG_CATEGORY);
+
+
+    // Instance Fields ------------------------------------------------------------------------------
+
+    private String bridgeAddress;
+
+    private int maxConnections;
+
+    private ThreadSafeClientConnManager connectionManager;
+
+    private DefaultHttpClient client;
+
+    private LatencyHistogram latency = new LatencyHistogram();
+
+    private AtomicLong requestCount = new AtomicLong(0);
+
+    private AtomicLong failedRequestCount = new AtomicLong(0);
+
+    private Map<String, HueBridgeStatePoller> statePollers = new HashMap<String, HueBridgeStatePoller>();
+
+    private HueBridgeWriteQueue writeQueue;
+
+
+    // Constructors ---------------------------------------------------------------------------------
+
+    /**
+     * Constructs a new client for the given bridge, sending at most
+     * {@link HueBridgeWriteQueue#DEFAULT_COMMANDS_PER_SECOND} light state changes per second.
+     *
+     * @param bridgeAddress     IP address or host name of the bridge
+     * @param maxConnections    maximum number of concurrent connections to the bridge
+     */
+    public HueBridgeClient(String bridgeAddress, int maxConnections)
+    {
+        this(bridgeAddress, maxConnections, HueBridgeWriteQueue.DEFAULT_COMMANDS_PER_SECOND);
+    }
+
+    /**
+     * Constructs a new client for the given bridge.
+     *
+     * @param bridgeAddress       IP address or host name of the bridge
+     * @param maxConnections      maximum number of concurrent connections to the bridge
+     * @param commandsPerSecond   maximum number of light state changes sent per second
+     */
+    public HueBridgeClient(String bridgeAddress, int maxConnections, int commandsPerSecond)
+    {
+        if (maxConnections <= 0)
+        {
+            maxConnections = DEFAULT_MAX_CONNECTIONS;
+        }
+
+        this.bridgeAddress = bridgeAddress;
+        this.maxConnections = maxConnections;
+
+        HttpParams params = new BasicHttpParams();
+
+        ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnections));
+        ConnManagerParams.setTimeout(params, SOCKET_TIMEOUT);
+
+        HttpConnectionParams.setConnectionTimeout(params, SOCKET_TIMEOUT);
+        HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+
+        HttpProtocolParams.setUseExpectContinue(params, false);
+        HttpProtocolParams.setUserAgent(params, "OpenRemoteController");
+
+        SchemeRegistry schemes = new SchemeRegistry();
+        schemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+
+        connectionManager = new ThreadSafeClientConnManager(params, schemes);
+        client = new DefaultHttpClient(connectionManager, params);
+
+        writeQueue = new HueBridgeWriteQueue(this, commandsPerSecond);
+    }
+
+
+    // Public Instance Methods ----------------------------------------------------------------------
+
+    /**
+     * Sends a GET request to the bridge.
+     *
+     * @param uri   request URI
+     *
+     * @return  response body
+     *
+     * @throws IOException  if the request fails or the bridge responds with an error status
+     */
+    public String get(URI uri) throws IOException
+    {
+        return execute(new HttpGet(uri));
+    }
+
+    /**
+     * Sends a PUT request with a JSON body to the bridge.
+     *
+     * @param uri         request URI
+     * @param workload    JSON request body, may be null or empty
+     *
+     * @return  response body
+     *
+     * @throws IOException  if the request fails or the bridge responds with an error status
+     */
+    public String put(URI uri, String workload) throws IOException
+    {
+        HttpPut put = new HttpPut(uri);
+
+        if ((workload != null) && (workload.trim().length() != 0))
+        {
+            try
+            {
+                StringEntity data = new StringEntity(workload, "UTF-8");
+                data.setContentType(CONTENT_TYPE);
+
+                put.setEntity(data);
+            }
+
+            catch (UnsupportedEncodingException e)
+            {
+                logger.error("Could not set HTTP Put method workload", e);
+            }
+        }
+
+        return execute(put);
+    }
+
+    /**
+     * Executes a request on a pooled connection and records its latency. The response is always
+     * fully consumed so the connection can be reused.
+     *
+     * @param request   the request to execute
+     *
+     * @return  response body
+     *
+     * @throws IOException  if the request fails or the bridge responds with an error status
+     */
+    public String execute(HttpUriRequest request) throws IOException
+    {
+        connectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        requestCount.incrementAndGet();
+
+        long start = System.currentTimeMillis();
+        HttpResponse response = null;
+
+        try
+        {
+            response = client.execute(request);
+
+            return new BasicResponseHandler().handleResponse(response);
+        }
+
+        catch (IOException e)
+        {
+            failedRequestCount.incrementAndGet();
+            request.abort();
+
+            throw e;
+        }
+
+        catch (RuntimeException e)
+        {
+            failedRequestCount.incrementAndGet();
+            request.abort();
+
+            throw e;
+        }
+
+        finally
+        {
+            latency.record(System.currentTimeMillis() - start);
+
+            try
+            {
+                if ((response != null) && (response.getEntity() != null))
+                {
+                    response.getEntity().consumeContent();
+                }
+            }
+
+            catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Returns the poller that reads the state of all lights on this bridge for the given key,
+     * creating it on first use.
+     *
+     * @param key   the key (user name) used to authenticate with the bridge
+     *
+     * @return  state poller for this bridge and key
+     */
+    public HueBridgeStatePoller getStatePoller(String key)
+    {
+        synchronized (statePollers)
+        {
+            HueBridgeStatePoller poller = statePollers.get(key);
+
+            if (poller == null)
+            {
+                poller = new HueBridgeStatePoller(this, key);
+                statePollers.put(key, poller);
+            }
+
+            return poller;
+        }
+    }
+
+    /**
+     * Returns the queue through which light state changes are sent to this bridge.
+     *
+     * @return  the write queue of this bridge
+     */
+    public HueBridgeWriteQueue getWriteQueue()
+    {
+        return writeQueue;
+    }
+
+    /**
+     * Stops the write queue and closes all pooled connections. The client cannot be used after
+     * it has been shut down.
+     */
+    public void shutdown()
+    {
+        writeQueue.shutdown();
+        connectionManager.shutdown();
+    }
+
+
+    // Implements HueBridgeClientMBean --------------------------------------------------------------
+
+    @Override public String getBridgeAddress()
+    {
+        return bridgeAddress;
+    }
+
+    @Override public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    @Override public int getConnectionsInPool()
+    {
+        return connectionManager.getConnectionsInPool();
+    }
+
+    @Override public long getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    @Override public long getFailedRequestCount()
+    {
+        return failedRequestCount.get();
+    }
+
+    @Override public long getMeanLatency()
+    {
+        return latency.getMean();
+    }
+
+    @Override public long getLatency95thPercentile()
+    {
+        return latency.getPercentile(95);
+    }
+
+    @Override public long getMaxLatency()
+    {
+        return latency.getMax();
+    }
+
+    @Override public String[] getLatencyHistogram()
+    {
+        return latency.getBuckets();
+    }
+
+    @Override public int getPendingWriteCount()
+    {
+        return writeQueue.getPendingWriteCount();
+    }
+
+    @Override public long getSentWriteCount()
+    {
+        return writeQueue.getSentWriteCount();
+    }
+
+    @Override public long getCoalescedWriteCount()
+    {
+        return writeQueue.getCoalescedWriteCount();
+    }
+
+    @Override public long getGroupActionCount()
+    {
+        return writeQueue.getGroupActionCount();
+    }
+
+    @Override public void resetStatistics()
+    {
+        latency.reset();
+        requestCount.set(0);
+        failedRequestCount.set(0);
+    }
+
+
+    // Object Overrides -----------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        return "Hue Bridge Client (" + bridgeAddress + ", max connections = " + maxConnections +
+               ", " + latency + ")";
+    }
+}
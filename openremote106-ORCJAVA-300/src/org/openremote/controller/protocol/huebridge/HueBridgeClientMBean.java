@@ -0,0 +1,99 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.protocol.huebridge;
+
+/**
+ * Management interface for {@link HueBridgeClient}. Exposes connection pool usage and request
+ * latency of a single Hue bridge.
+ */
+public interface HueBridgeClientMBean
+{
+
+    /**
+     * @return  IP address or host name of the bridge
+     */
+    String getBridgeAddress();
+
+    /**
+     * @return  maximum number of concurrent connections to the bridge
+     */
+    int getMaxConnections();
+
+    /**
+     * @return  number of connections currently held in the pool (both leased and idle)
+     */
+    int getConnectionsInPool();
+
+    /**
+     * @return  total number of requests sent to the bridge
+     */
+    long getRequestCount();
+
+    /**
+     * @return  number of requests that failed with an I/O or HTTP protocol error
+     */
+    long getFailedRequestCount();
+
+    /**
+     * @return  mean request latency in milliseconds
+     */
+    long getMeanLatency();
+
+    /**
+     * @return  approximate 95th percentile request latency in milliseconds
+     */
+    long getLatency95thPercentile();
+
+    /**
+     * @return  largest observed request latency in milliseconds
+     */
+    long getMaxLatency();
+
+    /**
+     * @return  request latency histogram, one entry per bucket
+     */
+    String[] getLatencyHistogram();
+
+    /**
+     * @return  number of light state changes waiting in the write queue
+     */
+    int getPendingWriteCount();
+
+    /**
+     * @return  number of light state requests sent from the write queue, including group actions
+     */
+    long getSentWriteCount();
+
+    /**
+     * @return  number of queued light state changes merged into a newer change for the same light
+     */
+    long getCoalescedWriteCount();
+
+    /**
+     * @return  number of group actions sent in place of individual light state changes
+     */
+    long getGroupActionCount();
+
+    /**
+     * Clears the request counters and latency histogram.
+     */
+    void resetStatistics();
+}
@@ -20,18 +20,9 @@
  */
 package org.openremote.controller.protocol.huebridge;
 
-import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPut;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.CoreProtocolPNames;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.PollingScheduler;
 import org.openremote.controller.command.ExecutableCommand;
 import org.openremote.controller.exception.NoSuchCommandException;
 import org.openremote.controller.model.sensor.Sensor;
@@ -39,7 +30,6 @@ import org.openremote.controller.protocol.EventListener;
 import org.openremote.controller.utils.Logger;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -88,19 +78,20 @@ public class HueBridgeCommand implements ExecutableCommand, EventListener, Runna
   /** The polling interval which is used for the sensor update thread */
   private Integer pollingInterval;
 
-  /** The thread that is used to peridically update the sensor */
-  private Thread pollingThread;
+  /** The task that is used to peridically update the sensor */
+  private PollingScheduler.PollingTask pollingTask;
 
   /** The sensor which is updated */
   private Sensor sensor;
 
-  /** Boolean to indicate if polling thread should run */
-  boolean doPoll = false;
+  /** The shared client used to communicate with the bridge */
+  private HueBridgeClient client;
 
     // Constructor  ----------------------------------------------------------------
 
 
-    public HueBridgeCommand(String bridgeip, String key, String sensorCommand, String lightid, Boolean lightstatus, Integer color, Integer brightness, Integer saturation, Integer intervalInMillis) {
+    public HueBridgeCommand(HueBridgeClient client, String bridgeip, String key, String sensorCommand, String lightid, Boolean lightstatus, Integer color, Integer brightness, Integer saturation, Integer intervalInMillis) {
+        this.client = client;
         this.bridgeip = bridgeip;
         this.key = key;
         this.sensorCommand = sensorCommand;
@@ -167,7 +158,10 @@ public class HueBridgeCommand implements ExecutableCommand, EventListener, Runna
 @Override
   public void send()
   {
-    requestURL();
+    // validate the light URI before queueing, so configuration errors are still reported to the
+    // caller -- the state change itself is rate limited and coalesced per bridge...
+    getUri();
+    client.getWriteQueue().add(key, lightid, createWorkload());
   }
 
   @Override
@@ -178,77 +172,50 @@ public class HueBridgeCommand implements ExecutableCommand, EventListener, Runna
       throw new RuntimeException("Could not set sensor because no polling interval was given");
     }
     this.sensor = sensor;
-    this.doPoll = true;
-    pollingThread = new Thread(this);
-    pollingThread.setName("Polling thread for sensor: " + sensor.getName());
-    pollingThread.start();
+    if (sensorCommand != null) {
+      // light state sensors share a single bulk poll of all lights on the bridge...
+      client.getStatePoller(key).register(lightid, sensorCommand, sensor, pollingInterval);
+    } else {
+      pollingTask = OpenRemoteRuntime.getPollingScheduler().schedule(
+          "Polling task for sensor: " + sensor.getName(), pollingInterval, this
+      );
+    }
   }
 
   @Override
   public void stop(Sensor sensor)
   {
-    this.doPoll = false;
+    if (sensorCommand != null) {
+      client.getStatePoller(key).unregister(sensor);
+    }
+    if (pollingTask != null) {
+      pollingTask.cancel();
+    }
   }
 
 
     /**
      * Get a response from the address create with {@link #getUri()}
-     * It uses {@link DefaultHttpClient}. This method uses a {@link HttpGet} when {@link #sensorCommand} is set
-     *  otherwise it will use a {@link HttpPut} with a workload created by {@link #createWorkload()}.
+     * It uses the shared {@link HueBridgeClient} of the bridge. This method uses a GET request when {@link #sensorCommand} is set
+     *  otherwise it will use a PUT request with a workload created by {@link #createWorkload()}.
      * @return {@link String} from
      */
   private String requestURL()
   {
-    DefaultHttpClient client = new DefaultHttpClient();
-
     URI uri  = getUri();
-    String contentType = "application/json";
-
-    HttpUriRequest request = null;
-    if (sensorCommand != null) {
-
-      request = new HttpGet(uri);
-
-    } else if (sensorCommand == null) {
-
-        String workload  = createWorkload();
-        request = new HttpPut(uri);
-
-       if ((workload != null) && (workload.trim().length() != 0)) {
-         StringEntity data;
-         try {
-           data = new StringEntity(workload, "UTF-8");
-           ((HttpPut)request).setEntity(data);
-         } catch (UnsupportedEncodingException e) {
-           logger.error("Could not set HTTP Put method workload", e);
-         }
-       }
-    }
     String resp = "";
-    HttpResponse response = null;
-    ResponseHandler<String> responseHandler = new BasicResponseHandler();
-    request.addHeader("User-Agent", "OpenRemoteController");
-    request.getParams().setBooleanParameter(CoreProtocolPNames.USE_EXPECT_CONTINUE, false);
-    if (contentType != null) {
-       request.addHeader("Content-Type", contentType);
-    }
     try {
-       response = client.execute(request);
-       resp = responseHandler.handleResponse(response);
+       if (sensorCommand != null) {
+          resp = client.get(uri);
+       } else {
+          resp = client.put(uri, createWorkload());
+       }
     } catch (ClientProtocolException e) {
        logger.error("ClientProtocolException when executing HTTP method", e);
     } catch (IOException e) {
        logger.error("IOException when executing HTTP method", e);
     }
-    finally {
-       try {
-          if ((response != null) && (response.getEntity() != null)) {
-             response.getEntity().consumeContent();    
-          }
-       } catch (IOException ignored) {}
-       client.getConnectionManager().shutdown();
-    }
-    logger.info("received message: " + resp);
+    logger.info("received message: {0}", resp);
     return resp;
   }
 
@@ -279,44 +246,14 @@ public class HueBridgeCommand implements ExecutableCommand, EventListener, Runna
         return workload;
     }
 
+    /**
+     * Executes a single request for a sensor without a {@link #sensorCommand}, invoked periodically
+     * by the controller's polling scheduler. Light state sensors are updated by the bridge's
+     * {@link HueBridgeStatePoller} instead.
+     */
     @Override
   public void run() {
-     logger.debug("Sensor thread started for sensor: " + sensor);
-     while (doPoll) {
-        String readValue = this.requestURL();
-        String sensorCommand = getSensorCommand();
-         if(getSensorCommand()!= null){
-             try {
-                 JSONObject total = new JSONObject(readValue);
-                 JSONObject state = total.getJSONObject("state");
-                 String result ="";
-                 if(sensorCommand.equalsIgnoreCase("power")){
-                     result = state.getString("on");
-                 }else if (sensorCommand.equalsIgnoreCase("color")) {
-                     result = state.getString("hue");
-                 }else if (sensorCommand.equalsIgnoreCase("brightness")) {
-                     result = state.getString("bri");
-                 }else if (sensorCommand.equalsIgnoreCase("saturation")) {
-                     result = state.getString("sat");
-                 }
-                 sensor.update(result);
-
-             } catch (JSONException e) {
-                 sensor.update("N/A");
-                 logger.error("Could not perform jsonpath evaluation", e);
-             }
-         }   else{
-             sensor.update(readValue);
-         }
-
-        try {
-           Thread.sleep(pollingInterval); // We wait for the given pollingInterval before requesting URL again
-        } catch (InterruptedException e) {
-           doPoll = false;
-           pollingThread.interrupt();
-        }
-     }
-     logger.debug("*** Out of run method: " + sensor);
+     sensor.update(requestURL());
   }
 
 }
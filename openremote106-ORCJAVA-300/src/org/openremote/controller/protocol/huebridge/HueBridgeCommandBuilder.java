@@ -19,6 +19,7 @@ package org.openremote.controller.protocol.huebridge;
 import org.jdom.Element;
 import org.openremote.controller.Constants;
 import org.openremote.controller.HuebridgeConfig;
+import org.openremote.controller.OpenRemoteRuntime;
 import org.openremote.controller.command.Command;
 import org.openremote.controller.command.CommandBuilder;
 import org.openremote.controller.exception.NoSuchCommandException;
@@ -26,7 +27,10 @@ import org.openremote.controller.utils.CommandUtil;
 import org.openremote.controller.utils.Logger;
 import org.openremote.controller.utils.Strings;
 
+import javax.management.ObjectName;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.lang.Integer.parseInt;
 
@@ -73,6 +77,68 @@ public class HueBridgeCommandBuilder implements CommandBuilder {
      */
     private final static Logger logger = Logger.getLogger(HUEBRIDGE_PROTOCOL_LOG_CATEGORY);
 
+    /**
+     * Shared HTTP clients, one per bridge address. This builder is instantiated per command
+     * (prototype scope) so the clients are held statically.
+     */
+    private final static Map<String, HueBridgeClient> bridgeClients = new HashMap<String, HueBridgeClient>();
+
+
+    /**
+     * Returns the shared HTTP client for the given bridge, creating it on first use. The maximum
+     * number of connections and commands per second are read from the Hue bridge configuration
+     * when available.
+     *
+     * @param bridgeip  IP address or host name of the bridge
+     *
+     * @return  HTTP client for the bridge
+     */
+    public static HueBridgeClient getBridgeClient(String bridgeip) {
+        synchronized (bridgeClients) {
+            HueBridgeClient client = bridgeClients.get(bridgeip);
+
+            if (client == null) {
+                int maxConnections = HueBridgeClient.DEFAULT_MAX_CONNECTIONS;
+                int commandsPerSecond = HueBridgeWriteQueue.DEFAULT_COMMANDS_PER_SECOND;
+
+                try {
+                    HuebridgeConfig config = HuebridgeConfig.readXML();
+                    maxConnections = config.getMaxConnections();
+                    commandsPerSecond = config.getCommandsPerSecond();
+                } catch (Throwable t) {
+                    logger.debug("Hue bridge configuration not available, using default connection and rate limits : {0}", t.getMessage());
+                }
+
+                client = new HueBridgeClient(bridgeip, maxConnections, commandsPerSecond);
+                bridgeClients.put(bridgeip, client);
+
+                OpenRemoteRuntime.registerManagementBean(
+                    "HueBridgeClient,bridge=" + ObjectName.quote(bridgeip), client
+                );
+            }
+
+            return client;
+        }
+    }
+
+    /**
+     * Shuts down all shared bridge clients and unregisters their management beans. Invoked when
+     * the controller web application is stopped.
+     */
+    public static void shutdownBridgeClients() {
+        synchronized (bridgeClients) {
+            for (Map.Entry<String, HueBridgeClient> entry : bridgeClients.entrySet()) {
+                entry.getValue().shutdown();
+
+                OpenRemoteRuntime.unregisterManagementBean(
+                    "HueBridgeClient,bridge=" + ObjectName.quote(entry.getKey())
+                );
+            }
+
+            bridgeClients.clear();
+        }
+    }
+
     // Implements CommandBuilder
     // --------------------------------------------------------------------
 
@@ -215,7 +281,7 @@ public class HueBridgeCommandBuilder implements CommandBuilder {
             throw new NoSuchCommandException("Unable to create HttpGet command, pollingInterval could not be converted into milliseconds");
         }
 
-        return new HueBridgeCommand(bridgeip, key, sensor, lightid, powerboolean, colorvalue, brightnessvalue, saturationvalue, intervalInMillis);
+        return new HueBridgeCommand(getBridgeClient(bridgeip), bridgeip, key, sensor, lightid, powerboolean, colorvalue, brightnessvalue, saturationvalue, intervalInMillis);
 
     }
 }
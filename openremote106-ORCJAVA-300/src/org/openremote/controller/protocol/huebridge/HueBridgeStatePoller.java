@@ -0,0 +1,297 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.protocol.huebridge;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.PollingScheduler;
+import org.openremote.controller.exception.NoSuchCommandException;
+import org.openremote.controller.model.sensor.Sensor;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * Polls the state of all lights of a Hue bridge with a single {@code GET /api/<key>/lights}
+ * request per interval and distributes the result to every registered Hue sensor.  <p>
+ *
+ * Without this, each sensor (power, color, brightness and saturation of every light) would
+ * fetch and parse the full state of its light on its own -- 160 requests per interval for
+ * 40 lights. The poller parses the response once and only pushes values that changed since
+ * the last poll to the sensors, so unchanged lights do not generate status cache updates.  <p>
+ *
+ * The poller runs at the shortest polling interval of its registered sensors and is cancelled
+ * when the last sensor is removed.
+ *
+ * @see HueBridgeClient#getStatePoller(String)
+ */
+public class HueBridgeStatePoller implements Runnable
+{
+
+    // Constants ------------------------------------------------------------------------------------
+
+    /**
+     * Value pushed to sensors whose state cannot be determined.
+     */
+    public final static String UNKNOWN_VALUE = "N/A";
+
+
+    // Class Members --------------------------------------------------------------------------------
+
+    private final static Logger logger = Logger.getLogger(HueBridgeCommandBuilder.HUEBRIDGE_PROTOCOL_LOG_CATEGORY);
+
+
+    /**
+     * Extracts the value for the given sensor command ('power', 'color', 'brightness' or
+     * 'saturation') from the state object of a light.
+     *
+     * @param state           the 'state' object of a light as returned by the bridge
+     * @param sensorCommand   sensor command of the Hue sensor
+     *
+     * @return  the sensor value, or an empty string for unknown sensor commands
+     *
+     * @throws JSONException  if the state does not contain the requested attribute
+     */
+    public static String getStateValue(JSONObject state, String sensorCommand) throws JSONException
+    {
+        if (sensorCommand.equalsIgnoreCase("power")) {
+            return state.getString("on");
+        } else if (sensorCommand.equalsIgnoreCase("color")) {
+            return state.getString("hue");
+        } else if (sensorCommand.equalsIgnoreCase("brightness")) {
+            return state.getString("bri");
+        } else if (sensorCommand.equalsIgnoreCase("saturation")) {
+            return state.getString("sat");
+        }
+
+        return "";
+    }
+
+
+    // Instance Fields ------------------------------------------------------------------------------
+
+    private HueBridgeClient client;
+
+    private String key;
+
+    private List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+    private PollingScheduler.PollingTask pollingTask;
+
+    private int pollingInterval = Integer.MAX_VALUE;
+
+    /**
+     * Serializes polls in case a rescheduled task overlaps with a poll still in progress.
+     */
+    private final Object pollLock = new Object();
+
+
+    // Constructors ---------------------------------------------------------------------------------
+
+    /**
+     * Constructs a state poller for the given bridge and user key.
+     *
+     * @param client    client of the bridge to poll
+     * @param key       the key (user name) used to authenticate with the bridge
+     */
+    public HueBridgeStatePoller(HueBridgeClient client, String key)
+    {
+        this.client = client;
+        this.key = key;
+    }
+
+
+    // Public Instance Methods ----------------------------------------------------------------------
+
+    /**
+     * Registers a sensor to be updated from the bridge state. If the sensor's polling interval
+     * is shorter than the current interval of this poller, the poller is rescheduled.
+     *
+     * @param lightid           id of the light on the bridge
+     * @param sensorCommand     which attribute of the light the sensor reports
+     * @param sensor            the sensor to update
+     * @param intervalMillis    polling interval requested by the sensor
+     */
+    public synchronized void register(String lightid, String sensorCommand, Sensor sensor, int intervalMillis)
+    {
+        registrations.add(new Registration(lightid, sensorCommand, sensor));
+
+        if (pollingTask == null || intervalMillis < pollingInterval)
+        {
+            pollingInterval = Math.min(pollingInterval, intervalMillis);
+
+            if (pollingTask != null)
+            {
+                pollingTask.cancel();
+            }
+
+            pollingTask = OpenRemoteRuntime.getPollingScheduler().schedule(
+                "Hue bridge state poller for " + client.getBridgeAddress(), pollingInterval, this
+            );
+        }
+    }
+
+    /**
+     * Removes a sensor from this poller. Polling stops once no sensors remain.
+     *
+     * @param sensor    the sensor to remove
+     */
+    public synchronized void unregister(Sensor sensor)
+    {
+        for (Registration registration : registrations)
+        {
+            if (registration.sensor == sensor)
+            {
+                registrations.remove(registration);
+            }
+        }
+
+        if (registrations.isEmpty() && pollingTask != null)
+        {
+            pollingTask.cancel();
+
+            pollingTask = null;
+            pollingInterval = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return  number of sensors currently registered with this poller
+     */
+    public int getRegisteredSensorCount()
+    {
+        return registrations.size();
+    }
+
+    /**
+     * @return  the URI used to request the state of all lights on the bridge
+     */
+    public URI getUri()
+    {
+        try
+        {
+            return new URI("http://" + client.getBridgeAddress() + "/api/" + key + "/lights");
+        }
+
+        catch (URISyntaxException e)
+        {
+            throw new NoSuchCommandException("Invalid URI: " + e.getMessage(), e);
+        }
+    }
+
+
+    // Implements Runnable --------------------------------------------------------------------------
+
+    /**
+     * Executes a single poll of all lights and updates the registered sensors whose value has
+     * changed.
+     */
+    @Override public void run()
+    {
+        synchronized (pollLock)
+        {
+            poll();
+        }
+    }
+
+
+    // Private Instance Methods ---------------------------------------------------------------------
+
+    private void poll()
+    {
+        JSONObject lights = null;
+
+        try
+        {
+            lights = new JSONObject(client.get(getUri()));
+        }
+
+        catch (IOException e)
+        {
+            logger.error("Could not read light states from Hue bridge ''{0}'' : {1}", e, client.getBridgeAddress(), e.getMessage());
+        }
+
+        catch (JSONException e)
+        {
+            logger.error("Could not parse light states from Hue bridge ''{0}'' : {1}", e, client.getBridgeAddress(), e.getMessage());
+        }
+
+        for (Registration registration : registrations)
+        {
+            String value = UNKNOWN_VALUE;
+
+            if (lights != null)
+            {
+                try
+                {
+                    JSONObject state = lights.getJSONObject(registration.lightid).getJSONObject("state");
+
+                    value = getStateValue(state, registration.sensorCommand);
+                }
+
+                catch (JSONException e)
+                {
+                    logger.debug("No ''{0}'' state for light ''{1}'' : {2}", registration.sensorCommand, registration.lightid, e.getMessage());
+                }
+            }
+
+            registration.update(value);
+        }
+    }
+
+
+    // Nested Classes -------------------------------------------------------------------------------
+
+    /**
+     * A sensor bound to one attribute of one light, with the last value pushed to it.
+     */
+    private static class Registration
+    {
+        private String lightid;
+        private String sensorCommand;
+        private Sensor sensor;
+        private String lastValue;
+
+        private Registration(String lightid, String sensorCommand, Sensor sensor)
+        {
+            this.lightid = lightid;
+            this.sensorCommand = sensorCommand;
+            this.sensor = sensor;
+        }
+
+        private void update(String value)
+        {
+            if (value.equals(lastValue))
+            {
+                return;
+            }
+
+            lastValue = value;
+
+            sensor.update(value);
+        }
+    }
+}
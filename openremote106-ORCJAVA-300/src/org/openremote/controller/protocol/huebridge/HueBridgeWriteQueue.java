@@ -0,0 +1,596 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.protocol.huebridge;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.protocol.MessageQueueWithPriorityAndTTL;
+import org.openremote.controller.protocol.MessageQueueWithPriorityAndTTL.Coalescable;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * Outbound queue for light state changes sent to a single Hue bridge.  <p>
+ *
+ * The bridge drops commands once it receives more than about ten per second, so a slider bound
+ * to a Hue command can easily flood it and lose the final value. Writes are therefore queued
+ * and sent by a single sender thread per bridge:
+ *
+ * <ul>
+ *   <li>Pending writes for the same light are coalesced -- attributes of the newer write replace
+ *       those of the older one, other attributes are kept, so the latest brightness, hue and
+ *       saturation always win.</li>
+ *   <li>Output is paced with a token bucket to the configured number of commands per second.</li>
+ *   <li>When several lights receive the same state at once (typically from a macro), and the
+ *       bridge has a group containing those lights, a single {@code /groups/<id>/action} request
+ *       is sent instead of one request per light. The bridge handles group commands at a much
+ *       lower rate, so at most one group action is sent per {@link #GROUP_ACTION_INTERVAL}.</li>
+ * </ul>
+ *
+ * @see HueBridgeClient#getWriteQueue()
+ */
+public class HueBridgeWriteQueue implements Runnable
+{
+
+    // Constants ------------------------------------------------------------------------------------
+
+    /**
+     * Default number of commands per second sent to a bridge.
+     */
+    public final static int DEFAULT_COMMANDS_PER_SECOND = 10;
+
+    /**
+     * Time in milliseconds after which a queued write is discarded if it could not be sent.
+     */
+    public final static long WRITE_TTL = 5000;
+
+    /**
+     * Time in milliseconds the sender waits after taking a write from the queue, so that writes
+     * issued at the same time by a macro can be combined into a group action.
+     */
+    public final static long BATCH_WINDOW = 20;
+
+    /**
+     * Minimum number of lights in a bridge group for it to be used instead of individual writes.
+     */
+    public final static int MIN_GROUP_SIZE = 3;
+
+    /**
+     * Minimum time in milliseconds between two group actions.
+     */
+    public final static long GROUP_ACTION_INTERVAL = 1000;
+
+    /**
+     * Time in milliseconds after which the group definitions are read again from the bridge.
+     */
+    public final static long GROUP_REFRESH_INTERVAL = 10 * 60 * 1000;
+
+
+    // Class Members --------------------------------------------------------------------------------
+
+    private final static Logger logger = Logger.getLogger(HueBridgeCommandBuilder.HUEBRIDGE_PROTOCOL_LOG_CATEGORY);
+
+
+    // Instance Fields ------------------------------------------------------------------------------
+
+    private HueBridgeClient client;
+
+    private MessageQueueWithPriorityAndTTL<LightStateWrite> queue =
+        new MessageQueueWithPriorityAndTTL<LightStateWrite>(WRITE_TTL);
+
+    private TokenBucket tokens;
+
+    private Thread sender;
+
+    private volatile boolean running = false;
+
+    /**
+     * Bridge group definitions per key, only accessed from the sender thread.
+     */
+    private Map<String, GroupDefinitions> groups = new HashMap<String, GroupDefinitions>();
+
+    private long lastGroupAction = 0;
+
+    private AtomicLong sentWrites = new AtomicLong(0);
+
+    private AtomicLong coalescedWrites = new AtomicLong(0);
+
+    private AtomicLong groupActions = new AtomicLong(0);
+
+
+    // Constructors ---------------------------------------------------------------------------------
+
+    /**
+     * Constructs a write queue for the given bridge.
+     *
+     * @param client              client of the bridge to send to
+     * @param commandsPerSecond   maximum number of commands per second sent to the bridge
+     */
+    public HueBridgeWriteQueue(HueBridgeClient client, int commandsPerSecond)
+    {
+        if (commandsPerSecond <= 0)
+        {
+            commandsPerSecond = DEFAULT_COMMANDS_PER_SECOND;
+        }
+
+        this.client = client;
+        this.tokens = new TokenBucket(commandsPerSecond);
+    }
+
+
+    // Public Instance Methods ----------------------------------------------------------------------
+
+    /**
+     * Queues a light state change. Returns immediately, the change is sent asynchronously.
+     *
+     * @param key         the key (user name) used to authenticate with the bridge
+     * @param lightid     id of the light on the bridge
+     * @param workload    JSON light state, as created by {@link HueBridgeCommand#createWorkload()}
+     */
+    public void add(String key, String lightid, String workload)
+    {
+        LightStateWrite write;
+
+        try
+        {
+            write = new LightStateWrite(key, lightid, workload);
+        }
+
+        catch (JSONException e)
+        {
+            logger.error("Invalid light state ''{0}'' for light ''{1}'' : {2}", e, workload, lightid, e.getMessage());
+
+            return;
+        }
+
+        if (write.attributes.isEmpty())
+        {
+            logger.debug("Ignoring empty light state for light ''{0}''", lightid);
+
+            return;
+        }
+
+        startSender();
+
+        queue.add(write);
+    }
+
+    /**
+     * Stops the sender thread. Pending writes are discarded.
+     */
+    public synchronized void shutdown()
+    {
+        running = false;
+
+        if (sender != null)
+        {
+            sender.interrupt();
+            sender = null;
+        }
+    }
+
+    /**
+     * @return  number of writes waiting to be sent
+     */
+    public int getPendingWriteCount()
+    {
+        return queue.size();
+    }
+
+    /**
+     * @return  number of light state requests sent, including group actions
+     */
+    public long getSentWriteCount()
+    {
+        return sentWrites.get();
+    }
+
+    /**
+     * @return  number of writes merged into a newer write for the same light before being sent
+     */
+    public long getCoalescedWriteCount()
+    {
+        return coalescedWrites.get();
+    }
+
+    /**
+     * @return  number of group actions sent in place of individual light writes
+     */
+    public long getGroupActionCount()
+    {
+        return groupActions.get();
+    }
+
+
+    // Implements Runnable --------------------------------------------------------------------------
+
+    /**
+     * Sender loop, takes writes from the queue and sends them to the bridge at the configured
+     * rate until {@link #shutdown()} is called.
+     */
+    @Override public void run()
+    {
+        while (running)
+        {
+            try
+            {
+                tokens.acquire();
+
+                LightStateWrite write = queue.blockingPoll();
+
+                if (write == null)
+                {
+                    // all queued writes had expired...
+
+                    continue;
+                }
+
+                Thread.sleep(BATCH_WINDOW);
+
+                send(write);
+            }
+
+            catch (InterruptedException e)
+            {
+                running = false;
+
+                Thread.currentThread().interrupt();
+            }
+
+            catch (Throwable t)
+            {
+                logger.error("Implementation error in Hue bridge write queue : {0}", t, t.getMessage());
+            }
+        }
+    }
+
+
+    // Private Instance Methods ---------------------------------------------------------------------
+
+    private synchronized void startSender()
+    {
+        if (running)
+        {
+            return;
+        }
+
+        running = true;
+
+        sender = OpenRemoteRuntime.createThread("Hue bridge write queue for " + client.getBridgeAddress(), this);
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Sends a single request for the given write. If other lights are waiting for the same state
+     * and a matching bridge group exists, the group is addressed instead. Writes that are not
+     * covered by the request are put back at the head of the queue.
+     */
+    private void send(LightStateWrite pending)
+    {
+        final LightStateWrite write = takeLatest(pending);
+
+        List<LightStateWrite> sameState = queue.pollMatching(new MessageQueueWithPriorityAndTTL.Filter<LightStateWrite>()
+        {
+            @Override public boolean accept(LightStateWrite other)
+            {
+                return write.key.equals(other.key) && write.attributes.equals(other.attributes);
+            }
+        });
+
+        sameState.add(0, write);
+
+        String group = null;
+
+        if (sameState.size() >= MIN_GROUP_SIZE &&
+            System.currentTimeMillis() - lastGroupAction >= GROUP_ACTION_INTERVAL)
+        {
+            group = findGroup(write.key, sameState);
+        }
+
+        if (group != null)
+        {
+            Set<String> members = groups.get(write.key).lights.get(group);
+
+            put(getUri(write.key, "groups/" + group + "/action"), write.getWorkload());
+
+            lastGroupAction = System.currentTimeMillis();
+            groupActions.incrementAndGet();
+
+            for (Iterator<LightStateWrite> it = sameState.iterator(); it.hasNext(); )
+            {
+                if (members.contains(it.next().lightid))
+                {
+                    it.remove();
+                }
+            }
+        }
+
+        else
+        {
+            put(getUri(write.key, "lights/" + write.lightid + "/state"), write.getWorkload());
+
+            sameState.remove(0);
+        }
+
+        for (LightStateWrite remaining : sameState)
+        {
+            queue.priorityAdd(remaining);
+        }
+    }
+
+    /**
+     * Merges writes for the same light that were queued after the given write was taken from the
+     * queue, and returns the resulting write.
+     */
+    private LightStateWrite takeLatest(final LightStateWrite write)
+    {
+        LightStateWrite latest = write;
+
+        for (LightStateWrite newer : queue.pollMatching(new MessageQueueWithPriorityAndTTL.Filter<LightStateWrite>()
+        {
+            @Override public boolean accept(LightStateWrite other)
+            {
+                return other.isCoalesable(write);
+            }
+        }))
+        {
+            newer.merge(latest);
+            latest = newer;
+        }
+
+        return latest;
+    }
+
+    private void put(URI uri, String workload)
+    {
+        sentWrites.incrementAndGet();
+
+        try
+        {
+            String response = client.put(uri, workload);
+
+            logger.info("received message: {0}", response);
+        }
+
+        catch (IOException e)
+        {
+            logger.error("IOException when sending ''{0}'' to ''{1}''", e, workload, uri);
+        }
+    }
+
+    /**
+     * Returns the id of the largest bridge group whose lights all receive the given writes, or
+     * null if there is no such group with at least {@link #MIN_GROUP_SIZE} lights.
+     */
+    private String findGroup(String key, List<LightStateWrite> writes)
+    {
+        Set<String> lights = new HashSet<String>();
+
+        for (LightStateWrite write : writes)
+        {
+            lights.add(write.lightid);
+        }
+
+        String best = null;
+        int bestSize = MIN_GROUP_SIZE - 1;
+
+        for (Map.Entry<String, Set<String>> group : getGroups(key).lights.entrySet())
+        {
+            Set<String> members = group.getValue();
+
+            if (members.size() > bestSize && lights.containsAll(members))
+            {
+                best = group.getKey();
+                bestSize = members.size();
+            }
+        }
+
+        return best;
+    }
+
+    private GroupDefinitions getGroups(String key)
+    {
+        GroupDefinitions definitions = groups.get(key);
+
+        if (definitions == null || System.currentTimeMillis() - definitions.timestamp > GROUP_REFRESH_INTERVAL)
+        {
+            definitions = new GroupDefinitions();
+
+            try
+            {
+                JSONObject json = new JSONObject(client.get(getUri(key, "groups")));
+
+                for (Iterator<?> it = json.keys(); it.hasNext(); )
+                {
+                    String id = (String)it.next();
+                    JSONObject group = json.optJSONObject(id);
+                    JSONArray members = (group == null) ? null : group.optJSONArray("lights");
+
+                    if (members == null)
+                    {
+                        continue;
+                    }
+
+                    Set<String> lights = new HashSet<String>();
+
+                    for (int i = 0; i < members.length(); ++i)
+                    {
+                        lights.add(members.getString(i));
+                    }
+
+                    definitions.lights.put(id, lights);
+                }
+            }
+
+            catch (IOException e)
+            {
+                logger.warn("Could not read groups from Hue bridge ''{0}'' : {1}", client.getBridgeAddress(), e.getMessage());
+            }
+
+            catch (JSONException e)
+            {
+                logger.warn("Could not parse groups from Hue bridge ''{0}'' : {1}", client.getBridgeAddress(), e.getMessage());
+            }
+
+            groups.put(key, definitions);
+        }
+
+        return definitions;
+    }
+
+    private URI getUri(String key, String path)
+    {
+        try
+        {
+            return new URI("http://" + client.getBridgeAddress() + "/api/" + key + "/" + path);
+        }
+
+        catch (URISyntaxException e)
+        {
+            throw new IllegalArgumentException("Invalid URI: " + e.getMessage(), e);
+        }
+    }
+
+
+    // Nested Classes -------------------------------------------------------------------------------
+
+    /**
+     * A pending state change of a single light. Coalesces with an older pending change of the
+     * same light, keeping the attributes the newer change does not set.
+     */
+    private class LightStateWrite implements MessageQueueWithPriorityAndTTL.Mergeable
+    {
+        private String key;
+        private String lightid;
+        private Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+
+        private LightStateWrite(String key, String lightid, String workload) throws JSONException
+        {
+            this.key = key;
+            this.lightid = lightid;
+
+            JSONObject json = new JSONObject(workload);
+
+            for (Iterator<?> it = json.keys(); it.hasNext(); )
+            {
+                String name = (String)it.next();
+
+                attributes.put(name, json.get(name));
+            }
+        }
+
+        private String getWorkload()
+        {
+            return new JSONObject(attributes).toString();
+        }
+
+        @Override public boolean isCoalesable(Coalescable other)
+        {
+            if (!(other instanceof LightStateWrite))
+            {
+                return false;
+            }
+
+            LightStateWrite write = (LightStateWrite)other;
+
+            return key.equals(write.key) && lightid.equals(write.lightid);
+        }
+
+        @Override public void merge(Coalescable older)
+        {
+            Map<String, Object> merged = new LinkedHashMap<String, Object>(((LightStateWrite)older).attributes);
+            merged.putAll(attributes);
+
+            attributes = merged;
+
+            coalescedWrites.incrementAndGet();
+        }
+
+        @Override public String toString()
+        {
+            return "Light " + lightid + " : " + getWorkload();
+        }
+    }
+
+    /**
+     * Light membership of the groups defined on the bridge.
+     */
+    private static class GroupDefinitions
+    {
+        private long timestamp = System.currentTimeMillis();
+        private Map<String, Set<String>> lights = new HashMap<String, Set<String>>();
+    }
+
+    /**
+     * Token bucket limiting the request rate. Holds up to one second worth of tokens, so short
+     * bursts are sent without delay. Only used from the sender thread.
+     */
+    private static class TokenBucket
+    {
+        private double capacity;
+        private double tokensPerMilli;
+        private double available;
+        private long lastRefill = System.currentTimeMillis();
+
+        private TokenBucket(int perSecond)
+        {
+            this.capacity = perSecond;
+            this.tokensPerMilli = perSecond / 1000.0;
+            this.available = perSecond;
+        }
+
+        private void acquire() throws InterruptedException
+        {
+            refill();
+
+            while (available < 1)
+            {
+                Thread.sleep((long)Math.ceil((1 - available) / tokensPerMilli));
+
+                refill();
+            }
+
+            available -= 1;
+        }
+
+        private void refill()
+        {
+            long now = System.currentTimeMillis();
+
+            available = Math.min(capacity, available + (now - lastRefill) * tokensPerMilli);
+            lastRefill = now;
+        }
+    }
+}
@@ -71,11 +71,17 @@ public class IRCommand implements ExecutableCommand {
    
 
    /**
-    * Irsend.
+    * Irsend. Sends over a persistent {@link LircClient} connection if a LIRC daemon address is
+    * configured, otherwise executes the 'irsend' command.
     * 
     * @param sendType the send type
     */
    private void irsend(String sendType) {
+      String lircAddress = configuration.getLircAddress();
+      if (lircAddress != null && lircAddress.length() > 0) {
+         lircsend(lircAddress, sendType);
+         return;
+      }
       String cmd = configuration.getIrsendPath() + " " 
           + sendType + " " + getName() + " " + getCommand();
       try {
@@ -89,6 +95,21 @@ public class IRCommand implements ExecutableCommand {
       }
    }
 
+   /**
+    * Sends the directive to the LIRC daemon at the given address.
+    * 
+    * @param lircAddress the daemon address as host[:port]
+    * @param sendType the send type
+    */
+   private void lircsend(String lircAddress, String sendType) {
+      try {
+         LircClient.getClient(lircAddress).send(sendType, getName(), getCommand());
+         logger.info(sendType + " " + getName() + " " + getCommand());
+      } catch (IOException e) {
+         logger.error(sendType + " " + getName() + " " + getCommand() + " failed.", e);
+      }
+   }
+
    /**
     * Sets the configuration.
     * 
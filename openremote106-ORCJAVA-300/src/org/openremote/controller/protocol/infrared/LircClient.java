@@ -0,0 +1,566 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.protocol.infrared;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.openremote.controller.Constants;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * Client for the LIRC daemon socket protocol. <p>
+ *
+ * The client keeps a single connection to lircd open and writes SEND_ONCE, SEND_START and
+ * SEND_STOP directives to it without forking an 'irsend' process per command. Directives from
+ * concurrent callers are pipelined: each caller writes its directive immediately and a reader
+ * thread matches the daemon's replies to the waiting callers in the order the directives were
+ * written. <p>
+ *
+ * Since Java does not support UNIX domain sockets, the daemon must accept TCP connections
+ * (<tt>lircd --listen</tt>). If the connection is lost it is reopened on the next send.
+ */
+public class LircClient
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Log category for the LIRC client.
+   */
+  public final static String LIRC_LOG_CATEGORY = Constants.CONTROLLER_PROTOCOL_LOG_CATEGORY + "lirc";
+
+  /**
+   * Default TCP port of lircd when started with <tt>--listen</tt>.
+   */
+  public final static int DEFAULT_PORT = 8765;
+
+  /**
+   * Default time in milliseconds to wait for a connection or for the reply to a directive.
+   */
+  public final static int DEFAULT_TIMEOUT = 5000;
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  private final static Logger log = Logger.getLogger(LIRC_LOG_CATEGORY);
+
+  /**
+   * Shared clients, one per daemon address.
+   */
+  private final static Map<String, LircClient> clients = new HashMap<String, LircClient>();
+
+
+  /**
+   * Returns the shared client for a LIRC daemon address, creating it on first use.
+   *
+   * @param address   daemon address as <tt>host[:port]</tt>
+   *
+   * @return  client connected, or connecting on first send, to the given daemon
+   */
+  public static LircClient getClient(String address)
+  {
+    synchronized (clients)
+    {
+      LircClient client = clients.get(address);
+
+      if (client == null)
+      {
+        String host = address;
+        int port = DEFAULT_PORT;
+        int separator = address.lastIndexOf(':');
+
+        if (separator > 0)
+        {
+          host = address.substring(0, separator);
+          port = Integer.parseInt(address.substring(separator + 1).trim());
+        }
+
+        client = new LircClient(host.trim(), port, DEFAULT_TIMEOUT);
+        clients.put(address, client);
+      }
+
+      return client;
+    }
+  }
+
+
+  /**
+   * Closes the connections of all shared clients and discards them. The reader threads exit once
+   * their sockets are closed. Invoked when the controller web application is stopped.
+   */
+  public static void shutdownClients()
+  {
+    synchronized (clients)
+    {
+      for (LircClient client : clients.values())
+      {
+        client.close();
+      }
+
+      clients.clear();
+    }
+  }
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private String host;
+
+  private int port;
+
+  private int timeout;
+
+  /**
+   * Current connection to the daemon, or null if not connected. Guarded by this instance.
+   */
+  private Connection connection;
+
+  /**
+   * Number of connections opened to the daemon.
+   */
+  private int connectionCount = 0;
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Creates a client for the LIRC daemon at the given host and port. The connection is opened
+   * on the first send.
+   *
+   * @param host      daemon host name or IP address
+   * @param port      daemon TCP port
+   * @param timeout   time in milliseconds to wait for a connection or for a reply
+   */
+  public LircClient(String host, int port, int timeout)
+  {
+    this.host = host;
+    this.port = port;
+    this.timeout = timeout;
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Sends a directive for a remote button to the daemon and waits for its reply.
+   *
+   * @param directive   LIRC directive, such as SEND_ONCE, SEND_START or SEND_STOP
+   * @param remote      remote name as defined in lircd.conf
+   * @param button      button name as defined in lircd.conf
+   *
+   * @throws IOException  if the directive cannot be written, the daemon does not reply in
+   *                      time, or the daemon replies with an error
+   */
+  public void send(String directive, String remote, String button) throws IOException
+  {
+    Reply reply = write(directive + " " + remote + " " + button);
+
+    if (!reply.await(timeout))
+    {
+      // Replies are matched in order, a missing reply leaves the connection out of sync...
+
+      IOException e = new IOException(
+          "No reply from LIRC daemon to '" + reply.directive + "' in " + timeout + "ms."
+      );
+
+      synchronized (this)
+      {
+        reply.connection.close(e);
+      }
+
+      throw e;
+    }
+  }
+
+  /**
+   * @return  number of connections opened to the daemon since this client was created
+   */
+  public synchronized int getConnectionCount()
+  {
+    return connectionCount;
+  }
+
+  /**
+   * Closes the connection to the daemon. Callers waiting for a reply are failed. A subsequent
+   * send reopens the connection.
+   */
+  public synchronized void close()
+  {
+    if (connection != null)
+    {
+      connection.close(new IOException("LIRC client closed."));
+    }
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  /**
+   * Writes a directive to the daemon, connecting first if necessary. The pending reply is
+   * queued under the same lock as the write so replies are matched in write order.
+   */
+  private synchronized Reply write(String directive) throws IOException
+  {
+    if (connection == null)
+    {
+      connection = new Connection();
+
+      connectionCount++;
+    }
+
+    Reply reply = new Reply(directive, connection);
+
+    connection.write(reply);
+
+    return reply;
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * A single socket connection to the daemon with its reader thread.
+   */
+  private class Connection extends Thread
+  {
+    private Socket socket;
+
+    private Writer out;
+
+    private BufferedReader in;
+
+    /**
+     * Replies not yet received, in write order. Guarded by the enclosing client instance.
+     */
+    private LinkedList<Reply> pending = new LinkedList<Reply>();
+
+    private boolean closed = false;
+
+
+    private Connection() throws IOException
+    {
+      super("LIRC client " + host + ":" + port);
+
+      setDaemon(true);
+
+      socket = new Socket();
+
+      try
+      {
+        socket.connect(new InetSocketAddress(host, port), timeout);
+        socket.setTcpNoDelay(true);
+
+        out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+      }
+
+      catch (IOException e)
+      {
+        socket.close();
+
+        throw e;
+      }
+
+      log.info("Connected to LIRC daemon at {0}:{1}.", host, Integer.toString(port));
+
+      start();
+    }
+
+
+    /**
+     * Writes a directive and queues its reply. Must be called with the client lock held.
+     */
+    private void write(Reply reply) throws IOException
+    {
+      pending.add(reply);
+
+      try
+      {
+        out.write(reply.directive + "\n");
+        out.flush();
+      }
+
+      catch (IOException e)
+      {
+        close(e);
+
+        throw e;
+      }
+    }
+
+    /**
+     * Closes the socket and fails all pending replies. Must be called with the client lock held.
+     */
+    private void close(IOException reason)
+    {
+      if (closed)
+      {
+        return;
+      }
+
+      closed = true;
+
+      if (connection == this)
+      {
+        connection = null;
+      }
+
+      try
+      {
+        socket.close();
+      }
+
+      catch (IOException e)
+      {
+        log.debug("Closing LIRC socket failed : {0}", e.getMessage());
+      }
+
+      for (Reply reply : pending)
+      {
+        reply.fail(reason);
+      }
+
+      pending.clear();
+    }
+
+
+    @Override public void run()
+    {
+      IOException reason;
+
+      try
+      {
+        while (true)
+        {
+          readReply();
+        }
+      }
+
+      catch (IOException e)
+      {
+        reason = e;
+      }
+
+      synchronized (LircClient.this)
+      {
+        if (!closed)
+        {
+          log.warn("Lost connection to LIRC daemon at {0}:{1} : {2}",
+                   host, Integer.toString(port), reason.getMessage());
+        }
+
+        close(reason);
+      }
+    }
+
+    /**
+     * Reads a single reply packet and completes the oldest pending reply with it. Broadcast
+     * messages of received IR codes, and SIGHUP notifications, are skipped.
+     */
+    private void readReply() throws IOException
+    {
+      String line = readLine();
+
+      if (!line.equals("BEGIN"))
+      {
+        return;
+      }
+
+      String command = readLine();
+
+      if (command.equals("SIGHUP"))
+      {
+        while (!readLine().equals("END"))
+        {
+          // skip...
+        }
+
+        return;
+      }
+
+      String status = readLine();
+      StringBuilder data = new StringBuilder();
+
+      line = readLine();
+
+      if (line.equals("DATA"))
+      {
+        int count;
+
+        try
+        {
+          count = Integer.parseInt(readLine().trim());
+        }
+
+        catch (NumberFormatException e)
+        {
+          throw new IOException("Invalid DATA length in LIRC reply to '" + command + "'.");
+        }
+
+        for (int i = 0; i < count; ++i)
+        {
+          if (data.length() > 0)
+          {
+            data.append(' ');
+          }
+
+          data.append(readLine());
+        }
+
+        line = readLine();
+      }
+
+      if (!line.equals("END"))
+      {
+        throw new IOException("Expected END in LIRC reply to '" + command + "', got '" + line + "'.");
+      }
+
+      Reply reply;
+
+      synchronized (LircClient.this)
+      {
+        reply = pending.poll();
+      }
+
+      if (reply == null)
+      {
+        log.warn("Ignoring unexpected LIRC reply to ''{0}''.", command);
+
+        return;
+      }
+
+      if (status.equals("SUCCESS"))
+      {
+        reply.succeed();
+      }
+
+      else
+      {
+        reply.fail(new IOException("LIRC daemon failed '" + reply.directive + "' : " + data));
+      }
+    }
+
+    private String readLine() throws IOException
+    {
+      String line = in.readLine();
+
+      if (line == null)
+      {
+        throw new IOException("Connection closed by LIRC daemon.");
+      }
+
+      return line;
+    }
+  }
+
+
+  /**
+   * Reply to a single directive, awaited by the thread that wrote the directive.
+   */
+  private static class Reply
+  {
+    private String directive;
+
+    private Connection connection;
+
+    private boolean done = false;
+
+    private IOException error;
+
+
+    private Reply(String directive, Connection connection)
+    {
+      this.directive = directive;
+      this.connection = connection;
+    }
+
+
+    private synchronized void succeed()
+    {
+      done = true;
+
+      notifyAll();
+    }
+
+    private synchronized void fail(IOException e)
+    {
+      if (done)
+      {
+        return;
+      }
+
+      error = e;
+      done = true;
+
+      notifyAll();
+    }
+
+    /**
+     * Waits for the reply.
+     *
+     * @return  true if the reply was received, false if the timeout elapsed first
+     *
+     * @throws IOException  if the daemon replied with an error or the connection was lost
+     */
+    private synchronized boolean await(long timeout) throws IOException
+    {
+      long deadline = System.currentTimeMillis() + timeout;
+
+      while (!done)
+      {
+        long remaining = deadline - System.currentTimeMillis();
+
+        if (remaining <= 0)
+        {
+          return false;
+        }
+
+        try
+        {
+          wait(remaining);
+        }
+
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+
+          throw new IOException("Interrupted while waiting for LIRC reply to '" + directive + "'.");
+        }
+      }
+
+      if (error != null)
+      {
+        throw error;
+      }
+
+      return true;
+    }
+  }
+}
@@ -22,6 +22,8 @@ package org.openremote.controller.protocol.onewire;
 
 import java.io.IOException;
 
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.PollingScheduler;
 import org.openremote.controller.command.ExecutableCommand;
 import org.openremote.controller.model.sensor.Sensor;
 import org.openremote.controller.protocol.EventListener;
@@ -66,14 +68,11 @@ public class OneWireCommand implements ExecutableCommand, EventListener, Runnabl
   private TemperatureScale tempScale;
   private String data;
 
-  /** The thread that is used to peridically update the sensor */
-  private Thread pollingThread;
+  /** The task that is used to peridically update the sensor */
+  private PollingScheduler.PollingTask pollingTask;
   
   /** The sensor which is updated */
   private Sensor sensor;
-  
-  /** Boolean to indicate if polling thread should run */
-  boolean doPoll = false;
 
   // Constructors ---------------------------------------------------------------------------------
 
@@ -192,35 +191,30 @@ public class OneWireCommand implements ExecutableCommand, EventListener, Runnabl
   {
     logger.debug("*** setSensor called as part of EventListener init *** sensor is: " + sensor);
     this.sensor = sensor;
-    this.doPoll = true;
-    pollingThread = new Thread(this);
-    pollingThread.setName("Polling thread for sensor: " + sensor.getName());
-    pollingThread.start();
+    pollingTask = OpenRemoteRuntime.getPollingScheduler().schedule(
+        "Polling task for sensor: " + sensor.getName(), pollingInterval, this
+    );
   }
 
 
   @Override
   public void stop(Sensor sensor)
   {
-    this.doPoll = false;
+    if (pollingTask != null)
+    {
+      pollingTask.cancel();
+    }
   }
 
 
+  /**
+   * Reads the 1-wire device once, invoked periodically by the controller's polling scheduler.
+   */
   @Override
   public void run()
   {
-    logger.debug("Sensor thread started for sensor: " + sensor);
-    while (doPoll) {
-       String readValue = this.read();
-       sensor.update(readValue);
-       try {
-          Thread.sleep(pollingInterval); // We wait for the given pollingInterval before requesting URL again
-       } catch (InterruptedException e) {
-          doPoll = false;
-          pollingThread.interrupt();
-       }
-    }
-    logger.debug("*** Out of run method: " + sensor);
+    String readValue = this.read();
+    sensor.update(readValue);
   }
 
 
@@ -26,6 +26,8 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.exec.CommandLine;
 import org.apache.log4j.Logger;
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.PollingScheduler;
 import org.openremote.controller.command.ExecutableCommand;
 import org.openremote.controller.model.sensor.Sensor;
 import org.openremote.controller.protocol.EventListener;
@@ -47,8 +49,8 @@ public class ShellExeCommand implements ExecutableCommand, EventListener, Runnab
    /** The polling interval which is used for the sensor update thread */
    private Integer pollingInterval;
 
-   /** The thread that is used to peridically update the sensor */
-   private Thread pollingThread;
+   /** The task that is used to peridically update the sensors */
+   private PollingScheduler.PollingTask pollingTask;
    
    /** The map of sensors which all use the same command */
    private Map<String,Sensor> sensors;
@@ -56,9 +58,6 @@ public class ShellExeCommand implements ExecutableCommand, EventListener, Runnab
    /** The ordered list of sensors'names that corresponds to regex groups */
    private String sensorNamesList;
    
-   /** Boolean to indicate if polling thread should run */
-   boolean doPoll = false;
-   
    /**
     * ShellExeCommand is a protocol to start shell scripts on the controller
     * 
@@ -91,19 +90,18 @@ public class ShellExeCommand implements ExecutableCommand, EventListener, Runnab
      }
      this.sensors.put(sensor.getName(), sensor);
      if (sensors.size() == 1) {
-        this.doPoll = true;
-        pollingThread = new Thread(this);
-        pollingThread.setName("Polling thread for sensor: " + sensor.getName()+ " " +sensor.getSensorID());
-        pollingThread.start();
+        pollingTask = OpenRemoteRuntime.getPollingScheduler().schedule(
+            "Polling task for sensor: " + sensor.getName()+ " " +sensor.getSensorID(), pollingInterval, this
+        );
      }
    }
 
    @Override
    public void stop(Sensor sensor)
    {
-      this.sensors.remove(sensor);
-      if (sensors.size() == 0) {
-         this.doPoll = false;
+      this.sensors.remove(sensor.getName());
+      if (sensors.size() == 0 && pollingTask != null) {
+         pollingTask.cancel();
       }
    }
    
@@ -133,40 +131,34 @@ public class ShellExeCommand implements ExecutableCommand, EventListener, Runnab
       return result;
    }
    
+   /**
+    * Executes the shell command once and updates all sensors bound to it, invoked periodically
+    * by the controller's polling scheduler.
+    */
    @Override
    public void run() {
-      logger.debug("Thread started: " + pollingThread.getName());
       String[] sensorNames = null;
       if (sensorNamesList != null) {
          sensorNames = sensorNamesList.split(";");          // get an array with all sensor'names
       }
-      while (doPoll) {
-         String readValue = this.executeCommand();
-         if ( (regex != null) && (sensorNamesList != null) ) {
-           Pattern regexPattern = Pattern.compile(regex);
-           Matcher matcher = regexPattern.matcher(readValue);
-           if (matcher.find()) {
-              for (int i = 0; i < sensorNames.length; i++) {
-                 sensors.get(sensorNames[i]).update(matcher.group(i+1));
-              }
-           } else {
-             logger.info("regex evaluation did not find a match");
-             for (Sensor sensor : sensors.values()) {
-               sensor.update("N/A");
-            }
+      String readValue = this.executeCommand();
+      if ( (regex != null) && (sensorNamesList != null) ) {
+        Pattern regexPattern = Pattern.compile(regex);
+        Matcher matcher = regexPattern.matcher(readValue);
+        if (matcher.find()) {
+           for (int i = 0; i < sensorNames.length; i++) {
+              sensors.get(sensorNames[i]).update(matcher.group(i+1));
            }
-         } else {
-            for (Sensor sensor : sensors.values()) {
-               sensor.update(readValue);
-            }
+        } else {
+          logger.info("regex evaluation did not find a match");
+          for (Sensor sensor : sensors.values()) {
+            sensor.update("N/A");
          }
-         try {
-            Thread.sleep(pollingInterval); // We wait for the given pollingInterval before requesting URL again
-         } catch (InterruptedException e) {
-            doPoll = false;
-            pollingThread.interrupt();
+        }
+      } else {
+         for (Sensor sensor : sensors.values()) {
+            sensor.update(readValue);
          }
       }
-      logger.debug("*** Out of run method: " + pollingThread.getName());
    }
 }
@@ -30,6 +30,8 @@ import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.net.telnet.TelnetClient;
 import org.apache.log4j.Logger;
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.PollingScheduler;
 import org.openremote.controller.command.ExecutableCommand;
 import org.openremote.controller.model.sensor.Sensor;
 import org.openremote.controller.model.sensor.SwitchSensor;
@@ -79,15 +81,12 @@ public class TelnetCommand implements ExecutableCommand, EventListener, Runnable
    /** The polling interval which is used for the sensor update thread */
    private Integer pollingInterval;
 
-   /** The thread that is used to peridically update the sensor */
-   private Thread pollingThread;
+   /** The task that is used to peridically update the sensor */
+   private PollingScheduler.PollingTask pollingTask;
    
    /** The sensor which is updated */
    private Sensor sensor;
    
-   /** Boolean to indicate if polling thread should run */
-   boolean doPoll = false;
-   
    
    
 
@@ -223,76 +222,71 @@ public class TelnetCommand implements ExecutableCommand, EventListener, Runnable
        throw new RuntimeException("Could not set sensor because no polling interval was given");
      }
      this.sensor = sensor;
-     this.doPoll = true;
-     pollingThread = new Thread(this);
-     pollingThread.setName("Polling thread for sensor: " + sensor.getName());
-     pollingThread.start();
+     pollingTask = OpenRemoteRuntime.getPollingScheduler().schedule(
+         "Polling task for sensor: " + sensor.getName(), pollingInterval, this
+     );
    }
 
    @Override
    public void stop(Sensor sensor)
    {
-     this.doPoll = false;
+     if (pollingTask != null) {
+       pollingTask.cancel();
+     }
    }
    
+   /**
+    * Executes a single status poll over telnet, invoked periodically by the controller's
+    * polling scheduler.
+    */
    @Override
    public void run() {
-      logger.debug("Sensor thread started for sensor: " + sensor);
-      while (doPoll) {
-         logger.debug("Executing status command for sensor: " + sensor);
-   	   String filteredResponse = "";
-   	   send(true);
-   	   logger.debug("Telnet status command received value: " + response);
-   	   try {
-      	   if ("".equals(responseFilter) || responseFilter == null) {
-         	   filteredResponse = response;
-      	   } else {
-               Pattern p = Pattern.compile(responseFilter, Pattern.CANON_EQ | Pattern.UNICODE_CASE);
-               Matcher m = p.matcher(response);
-               boolean b = m.matches();
-               if (b) {
-                  String matchedGroup = m.group(responseFilterGroup);
-                  if (matchedGroup != null) {
-                     filteredResponse = matchedGroup;
-                  }
-               } else {
-                  filteredResponse = statusDefault;
-                  logger.warn("Telnet Read Status: No Match using Regex: '" + responseFilter + "' on response from command '" + command + "'");
-               } 
-            }            
-         }
-         catch (PatternSyntaxException e) {
-            logger.error("Telnet Read Status: Invalid filter expression", e);
-         }
-         
-         logger.debug("Telnet status command value after regex: " + filteredResponse);
-         if (!"".equals(filteredResponse)) {
-            if (sensor instanceof SwitchSensor) {
-               filteredResponse = filteredResponse.toLowerCase().replaceAll("1|on", "true");
-               Boolean bool = Boolean.parseBoolean(filteredResponse);
-               if (bool) {
-                  logger.debug("Telnet status command updating switch sensor with value 'on'");
-                  sensor.update("on");
-               } else {
-                  logger.debug("Telnet status command updating switch sensor with value 'off'");
-                  sensor.update("off");  
+      logger.debug("Executing status command for sensor: " + sensor);
+      String filteredResponse = "";
+      send(true);
+      logger.debug("Telnet status command received value: " + response);
+      try {
+         if ("".equals(responseFilter) || responseFilter == null) {
+            filteredResponse = response;
+         } else {
+            Pattern p = Pattern.compile(responseFilter, Pattern.CANON_EQ | Pattern.UNICODE_CASE);
+            Matcher m = p.matcher(response);
+            boolean b = m.matches();
+            if (b) {
+               String matchedGroup = m.group(responseFilterGroup);
+               if (matchedGroup != null) {
+                  filteredResponse = matchedGroup;
                }
             } else {
-               logger.debug("Telnet status command updating switch sensor with value '" + filteredResponse + "'");
-               sensor.update(filteredResponse);
+               filteredResponse = statusDefault;
+               logger.warn("Telnet Read Status: No Match using Regex: '" + responseFilter + "' on response from command '" + command + "'");
+            } 
+         }            
+      }
+      catch (PatternSyntaxException e) {
+         logger.error("Telnet Read Status: Invalid filter expression", e);
+      }
+      
+      logger.debug("Telnet status command value after regex: " + filteredResponse);
+      if (!"".equals(filteredResponse)) {
+         if (sensor instanceof SwitchSensor) {
+            filteredResponse = filteredResponse.toLowerCase().replaceAll("1|on", "true");
+            Boolean bool = Boolean.parseBoolean(filteredResponse);
+            if (bool) {
+               logger.debug("Telnet status command updating switch sensor with value 'on'");
+               sensor.update("on");
+            } else {
+               logger.debug("Telnet status command updating switch sensor with value 'off'");
+               sensor.update("off");  
             }
          } else {
-            logger.debug("Telnet status command updating switch sensor with value 'N/A'");
-            sensor.update("N/A");
-         }
-         try {
-            Thread.sleep(pollingInterval); // We wait for the given pollingInterval before requesting URL again
-         } catch (InterruptedException e) {
-            doPoll = false;
-            pollingThread.interrupt();
+            logger.debug("Telnet status command updating switch sensor with value '" + filteredResponse + "'");
+            sensor.update(filteredResponse);
          }
+      } else {
+         logger.debug("Telnet status command updating switch sensor with value 'N/A'");
+         sensor.update("N/A");
       }
-      logger.debug("*** Out of run method: " + sensor);
    }
 
    
@@ -74,7 +74,16 @@ public class ControlCommandRESTServlet extends RESTAPI {
     {
       if (isNotEmpty(componentID) && isNotEmpty(commandParam))
       {
-        componentControlService.trigger(componentID, commandParam);
+        String executionID = componentControlService.trigger(componentID, commandParam);
+
+        // Macros run asynchronously, point the client to the execution's status resource...
+
+        if (executionID != null)
+        {
+          response.setHeader(
+              "Location", request.getContextPath() + MacroRESTServlet.MACROS_PATH + executionID
+          );
+        }
 
         sendResponse(request, response, 200, "SUCCESS");
       }
@@ -31,6 +31,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.log4j.Logger;
 import org.openremote.controller.Constants;
 import org.openremote.controller.exception.ControlCommandException;
+import org.openremote.controller.service.PanelDefinition;
 import org.openremote.controller.service.ProfileService;
 import org.openremote.controller.spring.SpringContext;
 
@@ -78,9 +79,9 @@ public class FindPanelByID extends RESTAPI
         String decodedPanelName = panelName;
         decodedPanelName = URLDecoder.decode(panelName, "UTF-8");
 
-        String panelXML = profileService.getProfileByPanelName(decodedPanelName);
+        PanelDefinition panel = profileService.getPanelDefinitionByName(decodedPanelName);
 
-        sendResponse(request, response, panelXML);
+        sendResponse(request, response, panel);
       }
 
       catch (ControlCommandException e)
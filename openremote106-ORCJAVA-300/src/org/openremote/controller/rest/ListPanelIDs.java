@@ -26,6 +26,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.log4j.Logger;
 import org.openremote.controller.Constants;
 import org.openremote.controller.exception.ControlCommandException;
+import org.openremote.controller.service.PanelDefinition;
 import org.openremote.controller.service.ProfileService;
 import org.openremote.controller.spring.SpringContext;
 
@@ -83,8 +84,8 @@ public class ListPanelIDs extends RESTAPI
   {
     try
     {
-      String panelsXML = profileService.getAllPanels();
-      sendResponse(request, response, panelsXML);
+      PanelDefinition panels = profileService.getAllPanelsDefinition();
+      sendResponse(request, response, panels);
     }
 
     catch (ControlCommandException e)
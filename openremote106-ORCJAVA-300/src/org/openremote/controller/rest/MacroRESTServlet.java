@@ -0,0 +1,163 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.rest;
+
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openremote.controller.Constants;
+import org.openremote.controller.command.MacroExecutor;
+import org.openremote.controller.service.ControlCommandService;
+import org.openremote.controller.service.ServiceContext;
+import org.openremote.controller.utils.JSONWriter;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * Queries and cancels asynchronously executed macros. Control requests that start a macro
+ * return the execution's resource path in their 'Location' header. <p>
+ *
+ * <tt>/rest/macros/{executionID}</tt> returns the state of an execution,
+ * <tt>/rest/macros/{executionID}/cancel</tt> cancels it and returns its state. The state is
+ * returned as
+ *
+ * <pre>{@code
+ * <macro id = "12" source = "5/click" state = "RUNNING" completed = "2" commands = "5"/>
+ * }</pre>
+ *
+ * within the OpenRemote document root, or as the equivalent JSON object
+ * <tt>{"macro":{"id":"12",...}}</tt>. The state is one of RUNNING, COMPLETED, CANCELLED or
+ * FAILED. Finished executions can be queried for a limited time only.
+ */
+@SuppressWarnings("serial")
+public class MacroRESTServlet extends RESTAPI
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Path of the macro execution resources, relative to the web application context.
+   */
+  public final static String MACROS_PATH = "/rest/macros/";
+
+  /**
+   * Path segment to cancel an execution.
+   */
+  public final static String CANCEL = "cancel";
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  private final static Logger logger = Logger.getLogger(Constants.REST_COMPONENT_ACTION_LOG_CATEGORY);
+
+  private final static ControlCommandService componentControlService =
+    ServiceContext.getComponentControlService();
+
+
+  // Implement REST API ---------------------------------------------------------------------------
+
+  @Override protected void handleRequest(HttpServletRequest request, HttpServletResponse response)
+  {
+    String pathinfo = request.getPathInfo();
+    StringTokenizer st = new StringTokenizer(pathinfo == null ? "" : pathinfo, "/");
+
+    String executionID = st.hasMoreTokens() ? st.nextToken() : null;
+    String operation = st.hasMoreTokens() ? st.nextToken() : null;
+
+    if (executionID == null || (operation != null && !operation.equals(CANCEL)))
+    {
+      sendResponse(request, response, 400, "Invalid macro request : " + pathinfo);
+
+      return;
+    }
+
+    MacroExecutor.Execution execution = (operation == null)
+        ? componentControlService.getMacroExecution(executionID)
+        : componentControlService.cancelMacroExecution(executionID);
+
+    if (execution == null)
+    {
+      sendResponse(request, response, 404, "Macro execution " + executionID + " not found.");
+
+      return;
+    }
+
+    try
+    {
+      sendMacroResponse(request, response, execution);
+    }
+
+    catch (IOException e)
+    {
+      logger.error("Unable to write response: {0}", e, e.getMessage());
+    }
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private void sendMacroResponse(HttpServletRequest request, HttpServletResponse response,
+                                 MacroExecutor.Execution execution) throws IOException
+  {
+    switch (getResponseType(request))
+    {
+      case APPLICATION_JSON:
+      case TEXT_JAVASCRIPT:
+
+        new JSONWriter(response.getWriter())
+            .beginObject()
+              .name("macro").beginObject()
+                .name("id").value(execution.getID())
+                .name("source").value(execution.getSource())
+                .name("state").value(execution.getState().name())
+                .name("completed").value(execution.getCompletedCommandCount())
+                .name("commands").value(execution.getCommandCount())
+              .endObject()
+            .endObject();
+
+        break;
+
+      case APPLICATION_XML:     // fall through to default...
+      default:
+
+        StringBuilder xml = new StringBuilder(Constants.STATUS_XML_HEADER);
+
+        xml.append("<macro id=\"").append(escape(execution.getID()))
+           .append("\" source=\"").append(escape(execution.getSource()))
+           .append("\" state=\"").append(execution.getState().name())
+           .append("\" completed=\"").append(execution.getCompletedCommandCount())
+           .append("\" commands=\"").append(execution.getCommandCount())
+           .append("\"/>\n")
+           .append(Constants.STATUS_XML_TAIL);
+
+        response.getWriter().print(xml);
+
+        break;
+    }
+  }
+
+  private String escape(String value)
+  {
+    return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+  }
+}
@@ -21,6 +21,7 @@
 package org.openremote.controller.rest;
 
 import java.io.IOException;
+import java.util.Map;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -28,6 +29,8 @@ import javax.servlet.ServletException;
 
 import org.openremote.controller.Constants;
 import org.openremote.controller.rest.support.json.JSONTranslator;
+import org.openremote.controller.service.PanelDefinition;
+import org.openremote.controller.utils.JSONWriter;
 import org.apache.log4j.Logger;
 
 /**
@@ -73,6 +76,39 @@ public abstract class RESTAPI extends HttpServlet
      return sb.toString();
   }
 
+  /**
+   * Composes the XML document of a sensor status or polling response.
+   *
+   * @param statuses    sensor statuses by sensor ID
+   *
+   * @return  status XML document
+   */
+  public static String composeStatusXMLDocument(Map<Integer, String> statuses)
+  {
+    StringBuilder sb = new StringBuilder(Constants.STATUS_XML_HEADER.length() + statuses.size() * 40);
+    sb.append(Constants.STATUS_XML_HEADER);
+
+    for (Map.Entry<Integer, String> status : statuses.entrySet())
+    {
+      sb.append("<")
+          .append(Constants.STATUS_XML_STATUS_RESULT_ELEMENT_NAME)
+          .append(" ")
+          .append(Constants.STATUS_XML_STATUS_RESULT_ELEMENT_SENSOR_IDENTITY)
+          .append("=\"")
+          .append(status.getKey())
+          .append("\">");
+
+      sb.append(status.getValue());
+      sb.append("</");
+      sb.append(Constants.STATUS_XML_STATUS_RESULT_ELEMENT_NAME).append(">\n");
+      sb.append("\n");
+    }
+
+    sb.append(Constants.STATUS_XML_TAIL);
+
+    return sb.toString();
+  }
+
   // Servlet Implementation -----------------------------------------------------------------------
   @Override protected void doOptions(HttpServletRequest request, HttpServletResponse response)
         throws ServletException, IOException
@@ -114,6 +150,38 @@ public abstract class RESTAPI extends HttpServlet
 
   @Override protected void doPost(HttpServletRequest request, HttpServletResponse response)
       throws ServletException, IOException
+  {
+    prepareResponse(request, response);
+
+    try
+    {
+      handleRequest(request, response);
+    }
+    catch (Throwable t)
+    {
+      logger.error("Error in handling REST API response: " + t.getMessage(), t);
+
+      response.setStatus(500);
+    }
+    finally
+    {
+      // flush through the response rather than its writer, cached responses are written
+      // directly to the output stream...
+
+      response.flushBuffer();
+    }
+  }
+
+
+
+  protected abstract void handleRequest(HttpServletRequest request, HttpServletResponse response);
+
+
+  /**
+   * Sets the character encoding, CORS header and content type of the response, and stores
+   * the response type matching the client's 'accept' header in the request.
+   */
+  protected void prepareResponse(HttpServletRequest request, HttpServletResponse response)
   {
     // Get the 'accept' header from client -- this will indicate whether we will send
     // application/xml or application/json response...     
@@ -153,28 +221,20 @@ public abstract class RESTAPI extends HttpServlet
     
     // Store response type in request object
     request.setAttribute("responseType", responseType);
-
-    try
-    {
-      handleRequest(request, response);
-    }
-    catch (Throwable t)
-    {
-      logger.error("Error in handling REST API response: " + t.getMessage(), t);
-
-      response.setStatus(500);
-    }
-    finally
-    {
-      response.getWriter().flush();
-    }
   }
 
 
 
-  protected abstract void handleRequest(HttpServletRequest request, HttpServletResponse response);
-
+  /**
+   * Returns the response type stored in the request by {@link #prepareResponse}, defaulting to
+   * XML.
+   */
+  protected ResponseType getResponseType(HttpServletRequest request)
+  {
+    Object obj = request.getAttribute("responseType");
 
+    return obj == null ? ResponseType.APPLICATION_XML : (ResponseType)obj;
+  }
 
   protected void sendResponse(HttpServletRequest request, HttpServletResponse response, String xml)
   {
@@ -210,13 +270,166 @@ public abstract class RESTAPI extends HttpServlet
   }
 
 
+  /**
+   * Sends a cached panel definition in the response type requested by the client. The JSON
+   * form is translated on first use and stored with the definition. <p>
+   *
+   * The response includes the definition's entity tag and last modified time. Conditional
+   * requests ('If-None-Match' or 'If-Modified-Since') matching the current definition are
+   * answered with '304 Not Modified' and no content. JSONP callback responses are always sent
+   * in full.
+   *
+   * @param request       HTTP request
+   * @param response      HTTP response
+   * @param definition    panel definition to send
+   */
+  protected void sendResponse(HttpServletRequest request, HttpServletResponse response,
+                              PanelDefinition definition)
+  {
+    ResponseType responseType = ResponseType.APPLICATION_XML;
+    Object obj = request.getAttribute("responseType");
+
+    if (obj != null)
+    {
+      responseType = (ResponseType)obj;
+    }
+
+    // JSON and JSONP share the same document, the XML and JSON forms need distinct tags...
+
+    String eTag = definition.getETag();
+    byte[] content;
+
+    switch (responseType)
+    {
+      case APPLICATION_JSON:
+      case TEXT_JAVASCRIPT:
+
+        eTag = eTag.substring(0, eTag.length() - 1) + "-json\"";
+        content = definition.getJSONBytes();
+
+        if (content == null)
+        {
+          definition.setJSON(JSONTranslator.translateXMLToJSON(request, response, definition.getXML()));
+
+          content = definition.getJSONBytes();
+        }
+
+        if (responseType == ResponseType.TEXT_JAVASCRIPT)
+        {
+          response.setContentType(Constants.MIME_TEXT_JAVASCRIPT);
+        }
+
+        break;
+
+      case APPLICATION_XML:     // fall through to default...
+      default:
+
+        content = definition.getXMLBytes();
+
+        break;
+    }
+
+    // A JSONP callback wraps the document in script -- the filter adding the callback has
+    // already written to the response through its writer, so neither validators nor a content
+    // length apply and the content must go through the same writer...
+
+    String callback = request.getParameter(Constants.CALLBACK_PARAM_NAME);
+
+    try
+    {
+      if (callback != null && !"".equals(callback))
+      {
+        response.getWriter().print(new String(content, Constants.CHARACTER_ENCODING_UTF8));
+
+        return;
+      }
+
+      response.setHeader("ETag", eTag);
+      response.setDateHeader("Last-Modified", definition.getLastModified());
+      response.setHeader("Cache-Control", "no-cache");
+      response.setHeader("Vary", "Accept");
+
+      if (isNotModified(request, eTag, definition.getLastModified()))
+      {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+        return;
+      }
+
+      response.setContentLength(content.length);
+      response.getOutputStream().write(content);
+    }
+
+    catch (IOException e)
+    {
+      logger.error("Unable to write response: " + e.getMessage(), e);
+    }
+  }
+
+
+  /**
+   * Sends sensor statuses in the response type requested by the client. JSON responses are
+   * written directly to the response as
+   * <tt>{"status":[{"id":sensorID,"content":"value"},...]}</tt>, an empty status map is sent
+   * as an empty object.
+   *
+   * @param request     HTTP request
+   * @param response    HTTP response
+   * @param statuses    sensor statuses by sensor ID
+   */
+  protected void sendStatusResponse(HttpServletRequest request, HttpServletResponse response,
+                                    Map<Integer, String> statuses)
+  {
+    try
+    {
+      switch (getResponseType(request))
+      {
+        case APPLICATION_JSON:
+        case TEXT_JAVASCRIPT:
+
+          JSONWriter json = new JSONWriter(response.getWriter());
+
+          json.beginObject();
+
+          if (!statuses.isEmpty())
+          {
+            json.name(Constants.STATUS_XML_STATUS_RESULT_ELEMENT_NAME).beginArray();
+
+            for (Map.Entry<Integer, String> status : statuses.entrySet())
+            {
+              json.beginObject()
+                  .name(Constants.STATUS_XML_STATUS_RESULT_ELEMENT_SENSOR_IDENTITY).value(status.getKey().longValue())
+                  .name("content").value(status.getValue())
+                  .endObject();
+            }
+
+            json.endArray();
+          }
+
+          json.endObject();
+
+          break;
+
+        case APPLICATION_XML:     // fall through to default...
+        default:
+
+          response.getWriter().print(composeStatusXMLDocument(statuses));
+
+          break;
+      }
+    }
+
+    catch (IOException e)
+    {
+      logger.error("Unable to write response: " + e.getMessage(), e);
+    }
+  }
+
+
   protected void sendResponse(HttpServletRequest request, HttpServletResponse response, int errorCode, String message)
   {
-     ResponseType responseType = ResponseType.APPLICATION_XML;
-     Object obj = request.getAttribute("responseType");
-     if (obj != null) {
-        responseType = (ResponseType)obj;
-     }
+    ResponseType responseType = getResponseType(request);
+
     switch (responseType)
     {
       case APPLICATION_XML:
@@ -239,6 +452,31 @@ public abstract class RESTAPI extends HttpServlet
         //    Assuming HTTP OK here for JSON responses (XML responses set the HTTP
         //    return code to match the error code as expected).
         //                                                                        [JPL]
+
+      case TEXT_JAVASCRIPT:
+
+        // JSON error documents are written directly, without the XML round trip...
+
+        response.setStatus(HttpServletResponse.SC_OK);
+
+        try
+        {
+          new JSONWriter(response.getWriter())
+              .beginObject()
+                .name("error").beginObject()
+                  .name("code").value(errorCode)
+                  .name("message").value(message)
+                .endObject()
+              .endObject();
+        }
+
+        catch (IOException e)
+        {
+          logger.error("Unable to write response: " + e.getMessage(), e);
+        }
+
+        return;
+
       default:
 
         break;
@@ -250,5 +488,43 @@ public abstract class RESTAPI extends HttpServlet
 
 
 
-}
+  // Private Instance Methods ---------------------------------------------------------------------
 
+  /**
+   * Checks the request's conditional headers against the current entity tag and last modified
+   * time. 'If-None-Match' takes precedence over 'If-Modified-Since' as per HTTP/1.1.
+   */
+  private boolean isNotModified(HttpServletRequest request, String eTag, long lastModified)
+  {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+
+    if (ifNoneMatch != null)
+    {
+      for (String tag : ifNoneMatch.split(","))
+      {
+        tag = tag.trim();
+
+        if (tag.equals("*") || tag.equals(eTag) || tag.equals("W/" + eTag))
+        {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    try
+    {
+      long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+
+      // HTTP dates have a resolution of one second...
+
+      return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    catch (IllegalArgumentException e)
+    {
+      return false;
+    }
+  }
+}
@@ -60,7 +60,7 @@ public class StatusCommandRESTServlet extends RESTAPI {
           unParsedSensorIDs = matcher.group(1);
           try {
               if (unParsedSensorIDs != null && !"".equals(unParsedSensorIDs)) {
-                 sendResponse(request, response, statusCommandService.readFromCache(unParsedSensorIDs));
+                 sendStatusResponse(request, response, statusCommandService.queryStatuses(unParsedSensorIDs));
               }
           } catch (ControllerException e) {
               logger.error("CommandException occurs", e);
@@ -20,14 +20,18 @@
  */
 package org.openremote.controller.rest;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.CometEvent;
+import org.apache.catalina.CometProcessor;
 import org.openremote.controller.Constants;
 import org.openremote.controller.statuscache.StatusCache;
 import org.openremote.controller.utils.Logger;
@@ -40,15 +44,39 @@ import org.openremote.controller.spring.SpringContext;
 
 /**
  * Status Polling RESTful servlet of sensor.
- * It's responsiable for response corresponding result with the RESTful polling url.
+ * It's responsiable for response corresponding result with the RESTful polling url. <p>
+ *
+ * When deployed on a Tomcat connector that supports Comet (the NIO connector), polling
+ * requests are handled through {@link #event(CometEvent)}: a request that has to wait for a
+ * status change is parked with the {@link StatusPollingService} and the container thread is
+ * released. The response is written and the connection closed by the thread completing the
+ * poll. On other connectors and containers, the regular blocking servlet path is used. The
+ * NIO connector has to be enabled in Tomcat's server.xml, see the servlet declaration in
+ * web.xml.
  * 
  * @author Handy.Wang 2009-10-19
  */
-public class StatusPollingRESTServlet extends RESTAPI {
+public class StatusPollingRESTServlet extends RESTAPI implements CometProcessor {
 
   // TODO : add appropriate subcategory to logging
   private final static Logger logger = Logger.getLogger(Constants.HTTP_REST_LOG_CATEGORY);
 
+  /**
+   * Polling URL pattern, the groups are the panel identifier and the list of sensor IDs.
+   */
+  private final static Pattern POLLING_URL_PATTERN = Pattern.compile("rest\\/polling\\/(.*?)\\/(.*)");
+
+  /**
+   * Request attribute holding the callback of a parked Comet polling request.
+   */
+  private final static String POLLING_CALLBACK_ATTRIBUTE = StatusPollingRESTServlet.class.getName() + ".callback";
+
+  /**
+   * Comet connection timeout in milliseconds. Longer than the polling timeout, so that a
+   * parked request normally completes with the regular polling timeout response.
+   */
+  private final static int COMET_TIMEOUT = Constants.STATUS_POLLING_TIMEOUT + 10000;
+
 
   private StatusCache deviceStateCache = ServiceContext.getDeviceStateCache();
 
@@ -60,9 +88,7 @@ public class StatusPollingRESTServlet extends RESTAPI {
    protected void handleRequest(HttpServletRequest request, HttpServletResponse response) {
 
       String url = request.getRequestURL().toString();
-      String regexp = "rest\\/polling\\/(.*?)\\/(.*)";
-      Pattern pattern = Pattern.compile(regexp);
-      Matcher matcher = pattern.matcher(url);
+      Matcher matcher = POLLING_URL_PATTERN.matcher(url);
       String unParsedSensorIDs = null;
       
       if (matcher.find()) {
@@ -73,18 +99,8 @@ public class StatusPollingRESTServlet extends RESTAPI {
          unParsedSensorIDs = matcher.group(2);
          try {
             checkSensorId(unParsedSensorIDs);
-            String pollingResults = statusPollingService.queryChangedState(deviceID, unParsedSensorIDs);
-            if (pollingResults != null && !"".equals(pollingResults)) {
-               if (Constants.SERVER_RESPONSE_TIME_OUT.equalsIgnoreCase(pollingResults)) {
-                  sendResponse(request, response, 504, "Time out");
-               } else {
-                  logger.info("Return the polling status.");
-                  sendResponse(request, response, pollingResults);
-               }
-            } else {
-               sendResponse(request, response, 504, "Time out");
-            }
-            logger.info("Finished polling at " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + "\n");
+            Map<Integer, String> changedStatuses = statusPollingService.queryChangedStatuses(deviceID, unParsedSensorIDs);
+            sendPollingResults(request, response, changedStatuses);
          } catch (ControllerException e) {
             logger.error("CommandException occurs", e);
             sendResponse(request, response, e.getErrorCode(), e.getMessage());
@@ -94,6 +110,151 @@ public class StatusPollingRESTServlet extends RESTAPI {
       }
    }
    
+
+  // Implements CometProcessor --------------------------------------------------------------------
+
+  /**
+   * Handles polling requests on Comet capable connectors without holding a container thread
+   * while the panel waits for a status change.
+   */
+  @Override public void event(CometEvent event) throws IOException, ServletException
+  {
+    HttpServletRequest request = event.getHttpServletRequest();
+
+    switch (event.getEventType())
+    {
+      case BEGIN:
+
+        beginPolling(event);
+
+        break;
+
+      case READ:
+
+        // Polling requests carry no body, discard anything the client sends...
+
+        InputStream in = request.getInputStream();
+        byte[] buffer = new byte[512];
+
+        while (in.available() > 0 && in.read(buffer) >= 0)
+        {
+          // discard
+        }
+
+        break;
+
+      case END:
+      case ERROR:
+
+        CometPollingCallback callback = (CometPollingCallback)request.getAttribute(POLLING_CALLBACK_ATTRIBUTE);
+
+        if (callback == null)
+        {
+          event.close();
+        }
+
+        else if (event.getEventSubType() == CometEvent.EventSubType.TIMEOUT)
+        {
+          callback.timeout();
+        }
+
+        else
+        {
+          callback.close();
+        }
+
+        break;
+    }
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  /**
+   * Parses the polling URL of a Comet request and hands the request over to the asynchronous
+   * polling service. Invalid requests are answered and closed immediately.
+   */
+  private void beginPolling(CometEvent event) throws IOException, ServletException
+  {
+    HttpServletRequest request = event.getHttpServletRequest();
+    HttpServletResponse response = event.getHttpServletResponse();
+
+    prepareResponse(request, response);
+
+    CometPollingCallback callback = new CometPollingCallback(event);
+    request.setAttribute(POLLING_CALLBACK_ATTRIBUTE, callback);
+
+    String url = request.getRequestURL().toString();
+    Matcher matcher = POLLING_URL_PATTERN.matcher(url);
+
+    if (!matcher.find())
+    {
+      sendResponse(request, response, ControlCommandException.INVALID_POLLING_URL, "Invalid polling url:" + url);
+      callback.close();
+
+      return;
+    }
+
+    String deviceID = matcher.group(1);
+    String unParsedSensorIDs = matcher.group(2);
+
+    if (deviceID == null || "".equals(deviceID))
+    {
+      sendResponse(request, response, ControlCommandException.INVALID_POLLING_URL, "Device id was null");
+      callback.close();
+
+      return;
+    }
+
+    try
+    {
+      event.setTimeout(COMET_TIMEOUT);
+    }
+
+    catch (UnsupportedOperationException e)
+    {
+      // Connector does not support Comet timeouts, its connection timeout applies instead
+      // and is handled as a polling timeout...
+    }
+
+    try
+    {
+      checkSensorId(unParsedSensorIDs);
+
+      callback.setPollingRequest(statusPollingService.queryChangedStatuses(deviceID, unParsedSensorIDs, callback));
+    }
+
+    catch (ControllerException e)
+    {
+      logger.error("CommandException occurs", e);
+
+      callback.failed(e);
+    }
+
+    catch (Throwable t)
+    {
+      logger.error("Error in handling REST API response: " + t.getMessage(), t);
+
+      response.setStatus(500);
+      callback.close();
+    }
+  }
+
+  /**
+   * Writes the result of a polling request to the response.
+   */
+  private void sendPollingResults(HttpServletRequest request, HttpServletResponse response,
+                                  Map<Integer, String> changedStatuses)
+  {
+    if (changedStatuses != null) {
+       logger.info("Return the polling status.");
+       sendStatusResponse(request, response, changedStatuses);
+    } else {
+       sendResponse(request, response, 504, "Time out");
+    }
+    logger.info("Finished polling at " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + "\n");
+  }
+
   /**
    * check whether the sensor id is valid.
    *
@@ -126,4 +287,101 @@ public class StatusPollingRESTServlet extends RESTAPI {
     }
   }
 
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * Completes a Comet polling request. Invoked by the polling service once the panel's sensors
+   * have changed or the polling timeout has passed, or by the container when the connection
+   * ends. Only the first of these writes to the response. When the connection ends first, the
+   * parked request is cancelled so that the changes are left for the panel's next poll.
+   */
+  private class CometPollingCallback implements StatusPollingService.StatusCallback
+  {
+    private CometEvent event;
+    private StatusPollingService.PollingRequest pollingRequest;
+    private boolean closed = false;
+
+    private CometPollingCallback(CometEvent event)
+    {
+      this.event = event;
+    }
+
+    @Override public synchronized void completed(Map<Integer, String> changedStatuses)
+    {
+      if (closed)
+      {
+        return;
+      }
+
+      sendPollingResults(event.getHttpServletRequest(), event.getHttpServletResponse(), changedStatuses);
+
+      close();
+    }
+
+    @Override public synchronized void failed(ControllerException exception)
+    {
+      if (closed)
+      {
+        return;
+      }
+
+      sendResponse(event.getHttpServletRequest(), event.getHttpServletResponse(),
+                   exception.getErrorCode(), exception.getMessage());
+
+      close();
+    }
+
+    private synchronized void setPollingRequest(StatusPollingService.PollingRequest request)
+    {
+      if (closed)
+      {
+        request.cancel();
+      }
+
+      else
+      {
+        pollingRequest = request;
+      }
+    }
+
+    /**
+     * Answers the request with a polling timeout, unless the polling service is already
+     * completing it with changed statuses.
+     */
+    private synchronized void timeout()
+    {
+      if (pollingRequest == null || pollingRequest.cancel())
+      {
+        completed(null);
+      }
+    }
+
+    private synchronized void close()
+    {
+      if (closed)
+      {
+        return;
+      }
+
+      closed = true;
+
+      if (pollingRequest != null)
+      {
+        pollingRequest.cancel();
+      }
+
+      try
+      {
+        event.getHttpServletResponse().getWriter().flush();
+        event.close();
+      }
+
+      catch (IOException e)
+      {
+        logger.debug("Could not close polling connection : {0}", e, e.getMessage());
+      }
+    }
+  }
+
 }
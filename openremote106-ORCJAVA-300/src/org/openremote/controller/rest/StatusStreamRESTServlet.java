@@ -0,0 +1,483 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.CometEvent;
+import org.apache.catalina.CometProcessor;
+import org.json.JSONObject;
+import org.openremote.controller.Constants;
+import org.openremote.controller.exception.ControlCommandException;
+import org.openremote.controller.exception.ControllerException;
+import org.openremote.controller.service.StatusStreamService;
+import org.openremote.controller.spring.SpringContext;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * Streaming status REST API using Server-Sent Events. A client subscribes once to a set of
+ * sensors with <tt>GET /rest/stream/{sensorID},{sensorID},...</tt> and keeps the connection
+ * open. The response is a <tt>text/event-stream</tt> where each event carries a JSON object of
+ * sensor statuses keyed by sensor ID, for example:
+ *
+ * <pre>
+ *   data: {"1001":"on","1002":"55"}
+ * </pre>
+ *
+ * The first event contains the current status of all subscribed sensors, each subsequent
+ * event only the sensors that have changed. Comment lines are sent as heartbeats while no
+ * sensor changes. <p>
+ *
+ * On Comet capable Tomcat connectors (NIO) the connection does not hold a container thread,
+ * events are written by the {@link StatusStreamService} delivery threads. On other connectors
+ * and containers the request thread is held for the lifetime of the stream.
+ */
+public class StatusStreamRESTServlet extends HttpServlet implements CometProcessor
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * MIME type of Server-Sent Events.
+   */
+  public final static String MIME_TEXT_EVENT_STREAM = "text/event-stream";
+
+  /**
+   * Reconnect delay in milliseconds suggested to clients in the first event.
+   */
+  private final static int RECONNECT_DELAY = 5000;
+
+  /**
+   * Comet idle timeout in milliseconds. A timeout is not fatal for a stream, this only limits
+   * how often the container reports an idle connection.
+   */
+  private final static int COMET_TIMEOUT = 10 * 60 * 1000;
+
+  /**
+   * Request attribute holding the subscription of a Comet stream.
+   */
+  private final static String SUBSCRIPTION_ATTRIBUTE = StatusStreamRESTServlet.class.getName() + ".subscription";
+
+  /**
+   * Comment line sent as heartbeat, ignored by clients.
+   */
+  private final static String HEARTBEAT_EVENT = ":\n\n";
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  private final static Logger logger = Logger.getLogger(Constants.HTTP_REST_LOG_CATEGORY);
+
+  /**
+   * Formats sensor statuses as a Server-Sent Event with a JSON object data field.
+   */
+  private static String formatStatusEvent(Map<Integer, String> statuses)
+  {
+    StringBuilder builder = new StringBuilder("data: {");
+
+    if (statuses != null)
+    {
+      boolean first = true;
+
+      for (Map.Entry<Integer, String> status : new TreeMap<Integer, String>(statuses).entrySet())
+      {
+        if (!first)
+        {
+          builder.append(',');
+        }
+
+        builder.append('"').append(status.getKey()).append("\":");
+        builder.append(JSONObject.quote(status.getValue()));
+
+        first = false;
+      }
+    }
+
+    return builder.append("}\n\n").toString();
+  }
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private StatusStreamService statusStreamService =
+      (StatusStreamService)SpringContext.getInstance().getBean("statusStreamService");
+
+
+  // Implements CometProcessor --------------------------------------------------------------------
+
+  @Override public void event(CometEvent event) throws IOException, ServletException
+  {
+    HttpServletRequest request = event.getHttpServletRequest();
+
+    switch (event.getEventType())
+    {
+      case BEGIN:
+
+        beginStream(event);
+
+        break;
+
+      case READ:
+
+        // Stream requests carry no body, discard anything the client sends...
+
+        InputStream in = request.getInputStream();
+        byte[] buffer = new byte[512];
+
+        while (in.available() > 0 && in.read(buffer) >= 0)
+        {
+          // discard
+        }
+
+        break;
+
+      case END:
+      case ERROR:
+
+        if (event.getEventSubType() == CometEvent.EventSubType.TIMEOUT)
+        {
+          // idle stream, keep the connection open...
+
+          break;
+        }
+
+        StatusStreamService.Subscription subscription =
+            (StatusStreamService.Subscription)request.getAttribute(SUBSCRIPTION_ATTRIBUTE);
+
+        if (subscription != null)
+        {
+          subscription.cancel();
+        }
+
+        event.close();
+
+        break;
+    }
+  }
+
+
+  // Servlet Implementation -----------------------------------------------------------------------
+
+  /**
+   * Streams status changes on the request thread, used when the connector does not support
+   * Comet.
+   */
+  @Override protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException
+  {
+    String sensorIDs = getSensorIDs(request);
+
+    if (sensorIDs == null)
+    {
+      response.sendError(ControlCommandException.INVALID_POLLING_URL, "No sensor IDs in stream URL.");
+
+      return;
+    }
+
+    QueueingStatusWriter writer = new QueueingStatusWriter();
+    StatusStreamService.Subscription subscription;
+
+    try
+    {
+      subscription = statusStreamService.subscribe(sensorIDs, writer);
+    }
+
+    catch (ControllerException e)
+    {
+      response.sendError(e.getErrorCode(), e.getMessage());
+
+      return;
+    }
+
+    try
+    {
+      prepareResponse(response);
+
+      PrintWriter out = response.getWriter();
+      out.print("retry: " + RECONNECT_DELAY + "\n\n");
+
+      while (true)
+      {
+        String streamEvent = writer.take();
+
+        if (streamEvent == null)
+        {
+          break;
+        }
+
+        out.print(streamEvent);
+        out.flush();
+
+        if (out.checkError())
+        {
+          break;
+        }
+      }
+    }
+
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+
+    finally
+    {
+      subscription.cancel();
+      writer.streamClosed();
+    }
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private void beginStream(CometEvent event) throws IOException, ServletException
+  {
+    HttpServletRequest request = event.getHttpServletRequest();
+    HttpServletResponse response = event.getHttpServletResponse();
+
+    String sensorIDs = getSensorIDs(request);
+
+    if (sensorIDs == null)
+    {
+      response.sendError(ControlCommandException.INVALID_POLLING_URL, "No sensor IDs in stream URL.");
+      event.close();
+
+      return;
+    }
+
+    try
+    {
+      event.setTimeout(COMET_TIMEOUT);
+    }
+
+    catch (UnsupportedOperationException e)
+    {
+      // Connector does not support Comet timeouts, stream ends on its connection timeout
+      // and the client reconnects...
+    }
+
+    prepareResponse(response);
+
+    CometStatusWriter writer = new CometStatusWriter(event);
+    writer.write("retry: " + RECONNECT_DELAY + "\n\n");
+
+    try
+    {
+      request.setAttribute(SUBSCRIPTION_ATTRIBUTE, statusStreamService.subscribe(sensorIDs, writer));
+    }
+
+    catch (ControllerException e)
+    {
+      logger.error("Status stream subscription failed : {0}", e, e.getMessage());
+
+      writer.streamClosed();
+    }
+  }
+
+  private void prepareResponse(HttpServletResponse response) throws IOException
+  {
+    response.setCharacterEncoding(Constants.CHARACTER_ENCODING_UTF8);
+    response.setContentType(MIME_TEXT_EVENT_STREAM);
+    response.setHeader("Cache-Control", "no-cache");
+
+    // HTML5 CORS header, same as other REST API responses...
+
+    response.addHeader("Access-Control-Allow-Origin", "*");
+
+    response.flushBuffer();
+  }
+
+  /**
+   * @return  comma separated sensor IDs from the request path, or <tt>null</tt> if none
+   */
+  private String getSensorIDs(HttpServletRequest request)
+  {
+    String path = request.getPathInfo();
+
+    if (path == null)
+    {
+      return null;
+    }
+
+    path = path.startsWith("/") ? path.substring(1) : path;
+
+    if (path.endsWith("/"))
+    {
+      path = path.substring(0, path.length() - 1);
+    }
+
+    return "".equals(path) ? null : path;
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * Writes stream events directly to a Comet response.
+   */
+  private static class CometStatusWriter implements StatusStreamService.StatusStreamListener
+  {
+    private CometEvent event;
+
+    private boolean closed = false;
+
+    private CometStatusWriter(CometEvent event)
+    {
+      this.event = event;
+    }
+
+    @Override public void statusChanged(Map<Integer, String> statuses) throws IOException
+    {
+      write(formatStatusEvent(statuses));
+    }
+
+    @Override public void heartbeat() throws IOException
+    {
+      write(HEARTBEAT_EVENT);
+    }
+
+    @Override public synchronized void streamClosed()
+    {
+      if (closed)
+      {
+        return;
+      }
+
+      closed = true;
+
+      try
+      {
+        event.close();
+      }
+
+      catch (IOException e)
+      {
+        logger.debug("Could not close status stream : {0}", e, e.getMessage());
+      }
+    }
+
+    private synchronized void write(String streamEvent) throws IOException
+    {
+      if (closed)
+      {
+        throw new IOException("Status stream has been closed.");
+      }
+
+      PrintWriter out = event.getHttpServletResponse().getWriter();
+
+      out.print(streamEvent);
+      out.flush();
+
+      if (out.checkError())
+      {
+        throw new IOException("Status stream client has disconnected.");
+      }
+    }
+  }
+
+  /**
+   * Collects stream events for the request thread of a non-Comet stream. Statuses that have not
+   * been written yet are merged per sensor, so a slow client receives the latest value of each
+   * changed sensor instead of a backlog that grows with every status change.
+   */
+  private static class QueueingStatusWriter implements StatusStreamService.StatusStreamListener
+  {
+    private Map<Integer, String> pendingStatuses = new LinkedHashMap<Integer, String>();
+
+    private boolean heartbeatPending = false;
+
+    private boolean closed = false;
+
+    @Override public synchronized void statusChanged(Map<Integer, String> statuses) throws IOException
+    {
+      if (closed)
+      {
+        throw new IOException("Status stream has been closed.");
+      }
+
+      if (statuses != null)
+      {
+        pendingStatuses.putAll(statuses);
+      }
+
+      notifyAll();
+    }
+
+    @Override public synchronized void heartbeat() throws IOException
+    {
+      if (closed)
+      {
+        throw new IOException("Status stream has been closed.");
+      }
+
+      heartbeatPending = true;
+
+      notifyAll();
+    }
+
+    @Override public synchronized void streamClosed()
+    {
+      closed = true;
+
+      notifyAll();
+    }
+
+    /**
+     * Waits for the next stream event. Pending statuses take precedence over a heartbeat.
+     *
+     * @return  next stream event, or <tt>null</tt> once the stream has been closed
+     */
+    private synchronized String take() throws InterruptedException
+    {
+      while (!closed && pendingStatuses.isEmpty() && !heartbeatPending)
+      {
+        wait();
+      }
+
+      if (closed)
+      {
+        return null;
+      }
+
+      heartbeatPending = false;
+
+      if (pendingStatuses.isEmpty())
+      {
+        return HEARTBEAT_EVENT;
+      }
+
+      String streamEvent = formatStatusEvent(pendingStatuses);
+      pendingStatuses.clear();
+
+      return streamEvent;
+    }
+  }
+}
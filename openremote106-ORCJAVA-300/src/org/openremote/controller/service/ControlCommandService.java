@@ -19,6 +19,7 @@
 */
 package org.openremote.controller.service;
 
+import org.openremote.controller.command.MacroExecutor;
 
 /**
  * The Interface ControlCommandService.
@@ -31,7 +32,28 @@ public interface ControlCommandService {
      * 
      * @param buttonID the button id
      * @param commandParam the command type
+     * 
+     * @return the execution ID if the commands are executed asynchronously as a macro,
+     *         null if they were executed before returning
+     */
+    String trigger(String buttonID, String commandParam);
+
+    /**
+     * Returns a running or recently finished macro execution.
+     * 
+     * @param executionID the execution ID returned by {@link #trigger}
+     * 
+     * @return the macro execution, or null if not known
+     */
+    MacroExecutor.Execution getMacroExecution(String executionID);
+
+    /**
+     * Cancels a running macro execution.
+     * 
+     * @param executionID the execution ID returned by {@link #trigger}
+     * 
+     * @return the macro execution, or null if not known
      */
-    void trigger(String buttonID, String commandParam);
+    MacroExecutor.Execution cancelMacroExecution(String executionID);
     
 }
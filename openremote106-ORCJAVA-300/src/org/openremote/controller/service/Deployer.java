@@ -34,10 +34,16 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -48,6 +54,8 @@ import org.jdom.Element;
 import org.openremote.controller.Constants;
 import org.openremote.controller.ControllerConfiguration;
 import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.command.ExecutableCommand;
+import org.openremote.controller.component.ComponentFactory;
 import org.openremote.controller.deployer.ModelBuilder;
 import org.openremote.controller.deployer.Version20ModelBuilder;
 import org.openremote.controller.deployer.Version30ModelBuilder;
@@ -250,6 +258,25 @@ public class Deployer
    * For example unlink from Beehive, download new design, start proxy, update controller, .... 
    */
   private BeehiveCommandCheckService beehiveCommandCheckService;
+
+  /**
+   * Component factory used to compile the control commands of deployed controller definitions,
+   * see {@link Version20ModelBuilder#setComponentFactory}.
+   */
+  private ComponentFactory componentFactory;
+
+  /**
+   * Profile service whose panel definitions are reloaded when a new controller definition has
+   * been deployed. Optional.
+   */
+  private ProfileService profileService;
+
+  /**
+   * Indicates whether changes of the controller definition detected by the
+   * {@link ControllerDefinitionWatch} are applied to the deployed object model incrementally
+   * rather than with a full {@link #softRestart()}.
+   */
+  private boolean incrementalDeploy = false;
   
   // Constructors ---------------------------------------------------------------------------------
 
@@ -454,6 +481,78 @@ public class Deployer
   }
 
 
+  /**
+   * Applies changes of the controller definition to the deployed object model. If
+   * {@link #setIncrementalDeploy incremental deployment} is enabled and the deployed model
+   * builder supports it, only the changed parts of the object model are rebuilt, see
+   * {@link Version20ModelBuilder#updateModel()}. Otherwise, or if the changes cannot be applied
+   * incrementally, falls back to a {@link #softRestart()}.
+   *
+   * @throws ControllerDefinitionNotFoundException
+   *            If there are no controller definitions to load from, see {@link #softRestart()}
+   */
+  public void updateDeployment() throws ControllerDefinitionNotFoundException
+  {
+    if (!incrementalDeploy || !(modelBuilder instanceof Version20ModelBuilder) ||
+        detectVersion() != ModelBuilder.SchemaVersion.VERSION_2_0)
+    {
+      softRestart();
+
+      return;
+    }
+
+    try
+    {
+      pause();
+
+      log.info(
+          "\n\n" +
+          "--------------------------------------------------------------------\n\n" +
+          "  UPDATING CONTROLLER RUNTIME...\n\n" +
+          "--------------------------------------------------------------------\n"
+      );
+
+      // Cached elements belong to the previous controller definition...
+
+      controllerXMLElementCache.clear();
+      xmlElementCache.clear();
+
+      boolean updated = false;
+
+      try
+      {
+        updated = ((Version20ModelBuilder)modelBuilder).updateModel();
+      }
+
+      catch (InitializationException e)
+      {
+        log.error("Incremental update failed, redeploying : {0}", e, e.getMessage());
+      }
+
+      if (!updated)
+      {
+        softShutdown();
+
+        startup();
+
+        return;
+      }
+
+      if (profileService != null)
+      {
+        profileService.loadPanelDefinitions();
+      }
+
+      log.info("Update complete.");
+    }
+
+    finally
+    {
+      resume();
+    }
+  }
+
+
   /**
    * Deploys a controller configuration from a given ZIP archive. This can be used when the
    * controller configuration is already present on the local system. <p>
@@ -613,6 +712,30 @@ public class Deployer
   }
 
 
+  /**
+   * Returns the executable commands of a control action, as compiled when the current controller
+   * definition was deployed.
+   *
+   * @param controlID       control ID
+   * @param commandParam    control action, such as 'click' or 'on'
+   *
+   * @return  unmodifiable list of commands, or null if no runtime object model is deployed or
+   *          the control action was not compiled (for example, because its commands depend on
+   *          a parameter value) -- in which case the control must be built on demand
+   */
+  public List<ExecutableCommand> getCompiledControlCommands(int controlID, String commandParam)
+  {
+    ModelBuilder current = modelBuilder;
+
+    if (current instanceof Version20ModelBuilder)
+    {
+      return ((Version20ModelBuilder)current).getControlCommandRegistry().getCommands(controlID, commandParam);
+    }
+
+    return null;
+  }
+
+
   /**
    * TODO
    *
@@ -726,6 +849,47 @@ public class Deployer
      }
   }
 
+  // Service Dependencies -------------------------------------------------------------------------
+
+  /**
+   * Sets the component factory the deployed object model uses to compile control commands.
+   * This is injected as a property since the component builders in turn depend on this
+   * deployer.
+   *
+   * @param componentFactory    component factory with builders for the control types
+   */
+  public void setComponentFactory(ComponentFactory componentFactory)
+  {
+    this.componentFactory = componentFactory;
+  }
+
+  /**
+   * Sets the profile service to load panel definitions from the deployed panel.xml once the
+   * object model has been built.
+   *
+   * @param profileService    profile service serving the panel definitions
+   */
+  public void setProfileService(ProfileService profileService)
+  {
+    this.profileService = profileService;
+  }
+
+  /**
+   * Enables incremental deployment of controller definition changes detected by the
+   * controller definition watch. Only sensors (and controls) whose definitions have changed
+   * are stopped and rebuilt, the rest of the deployed object model keeps running with its
+   * current state. Disabled by default.
+   *
+   * @see #updateDeployment()
+   *
+   * @param incrementalDeploy   true to enable incremental deployment
+   */
+  public void setIncrementalDeploy(boolean incrementalDeploy)
+  {
+    this.incrementalDeploy = incrementalDeploy;
+  }
+
+
   // Protected Instance Methods -------------------------------------------------------------------
 
   /**
@@ -863,10 +1027,20 @@ public class Deployer
     //        the builder should register the sensors and leave the lifecycle management
     //        to the managing framework
 
+    if (modelBuilder instanceof Version20ModelBuilder)
+    {
+      ((Version20ModelBuilder)modelBuilder).setComponentFactory(componentFactory);
+    }
+
     modelBuilder.buildModel();
 
     Map<String, String> props = getConfigurationProperties();
     controllerConfig.setConfigurationProperties(props);
+
+    if (profileService != null)
+    {
+      profileService.loadPanelDefinitions();
+    }
     
     log.info("Startup complete.");
   }
@@ -1191,6 +1365,10 @@ public class Deployer
    * This service performs the automated file watching of the controller definition artifacts
    * (depending on the model builder implementation). <p>
    *
+   * Changes are detected with file system notifications on the controller's resource
+   * directory where the platform supports them (java.nio.file.WatchService). Where it doesn't,
+   * or while the resource directory does not exist, the controller definition is polled. <p>
+   *
    * Per the rules defined in this implementation and in combination with those provided by
    * model builders via their
    * {@link org.openremote.controller.deployer.ModelBuilder#hasControllerDefinitionChanged()}
@@ -1207,6 +1385,34 @@ public class Deployer
     // TODO : ORCJAVA-188 -- should implement lifecycle interface
 
 
+    // Constants ----------------------------------------------------------------------------------
+
+    /**
+     * Interval in milliseconds between checks for controller definition changes when file
+     * system notifications are not available.
+     */
+    private final static int POLL_INTERVAL = 1000;
+
+    /**
+     * Interval in milliseconds between checks for controller definition changes when file
+     * system notifications are available. Guards against file systems that do not report all
+     * changes, such as network mounts.
+     */
+    private final static int RESCAN_INTERVAL = 60000;
+
+    /**
+     * Time in milliseconds the controller definition must remain unchanged before a detected
+     * change is deployed. Avoids deploying a partially written controller definition.
+     */
+    private final static int SETTLE_TIME = 500;
+
+    /**
+     * Maximum time in milliseconds to wait for a continuously changing controller definition
+     * to settle before deploying it regardless.
+     */
+    private final static int MAX_SETTLE_TIME = 10000;
+
+
     // Instance Fields ----------------------------------------------------------------------------
 
     /**
@@ -1225,11 +1431,29 @@ public class Deployer
      */
     private volatile boolean paused = false;
 
+    /**
+     * Monitor the watcher thread waits on while paused and between checks. Signalled on
+     * resume and stop.
+     */
+    private final Object pauseLock = new Object();
+
     /**
      * The actual thread reference.
      */
     private Thread watcherThread;
 
+    /**
+     * File system notification service, or null if the platform does not support it and the
+     * controller definition is polled instead.
+     */
+    private WatchService watchService;
+
+    /**
+     * Registration of the resource directory with the watch service, or null if the directory
+     * is not currently watched.
+     */
+    private WatchKey watchKey;
+
 
     // Constructors -------------------------------------------------------------------------------
 
@@ -1267,7 +1491,12 @@ public class Deployer
      */
     public void stop()
     {
-      running = false;
+      synchronized (pauseLock)
+      {
+        running = false;
+
+        pauseLock.notifyAll();
+      }
 
       watcherThread.interrupt();
     }
@@ -1280,7 +1509,10 @@ public class Deployer
      */
     public void pause()
     {
-      paused = true;
+      synchronized (pauseLock)
+      {
+        paused = true;
+      }
     }
 
     /**
@@ -1290,7 +1522,12 @@ public class Deployer
      */
     public void resume()
     {
-      paused = false;
+      synchronized (pauseLock)
+      {
+        paused = false;
+
+        pauseLock.notifyAll();
+      }
     }
 
 
@@ -1299,7 +1536,7 @@ public class Deployer
     /**
      * Runs the watcher thread using the following logic:  <p>
      *
-     * - If paused, do nothing  <br>
+     * - If paused, block until resumed  <br>
      *
      * - If cannot detect controller definition files for any known schemas, keep waiting <br>
      *
@@ -1308,18 +1545,35 @@ public class Deployer
      *
      * - If has an existing controller object model deployed but the model builder reports
      *   a change in it (what constitutes a change depends on deployed model builder implementation),
-     *   then run deployer.softRestart() <br>
+     *   then run deployer.updateDeployment() <br>
      *
      * - If an existing controller model was deployed but the controller definition is removed
      *   (as reported by {@link org.openremote.controller.service.Deployer#detectVersion()})
-     *   then undeploy the object model.
+     *   then undeploy the object model.  <p>
+     *
+     * Detected changes are deployed only once the controller definition has stopped changing
+     * for {@link #SETTLE_TIME} milliseconds. Between checks the thread blocks until a file
+     * system notification arrives, see {@link #awaitChange()}.
      */
     @Override public void run()
     {
+      openWatchService();
+
       while (running)
       {
-        if (paused)
-          continue;
+        try
+        {
+          awaitResume();
+        }
+
+        catch (InterruptedException e)
+        {
+          break;
+        }
+
+        // Register before checking, so that a change made during the check is not missed...
+
+        watchDirectory();
 
         try
         {
@@ -1330,7 +1584,17 @@ public class Deployer
           {
             try
             {
-              deployer.softRestart();
+              awaitSettled();
+
+              if (deployer.modelBuilder == null)
+              {
+                deployer.softRestart();
+              }
+
+              else
+              {
+                deployer.updateDeployment();
+              }
             }
 
             catch (ControllerDefinitionNotFoundException e)
@@ -1341,6 +1605,11 @@ public class Deployer
               );
             }
 
+            catch (InterruptedException e)
+            {
+              break;
+            }
+
             catch (Throwable t)
             {
               log.error(
@@ -1366,18 +1635,201 @@ public class Deployer
 
         try
         {
-          Thread.sleep(2000);
+          awaitChange();
         }
+
         catch (InterruptedException e)
         {
-          running = false;
-
-          Thread.currentThread().interrupt();
+          break;
         }
       }
 
+      running = false;
+
+      closeWatchService();
+
       log.info("{0} has been stopped.", watcherThread.getName());
     }
+
+
+    // Private Instance Methods -------------------------------------------------------------------
+
+    /**
+     * Blocks the watcher thread while this service is paused.
+     *
+     * @throws InterruptedException   if the watcher thread is interrupted while waiting
+     */
+    private void awaitResume() throws InterruptedException
+    {
+      synchronized (pauseLock)
+      {
+        while (paused && running)
+        {
+          pauseLock.wait();
+        }
+      }
+    }
+
+    /**
+     * Creates the file system watch service, if supported by the platform.
+     */
+    private void openWatchService()
+    {
+      try
+      {
+        watchService = FileSystems.getDefault().newWatchService();
+      }
+
+      catch (UnsupportedOperationException e)
+      {
+        log.info(
+            "File system notifications are not supported, polling controller definition " +
+            "every {0} ms.", POLL_INTERVAL
+        );
+      }
+
+      catch (IOException e)
+      {
+        log.warn(
+            "Cannot watch file system, polling controller definition every {0} ms : {1}",
+            e, POLL_INTERVAL, e.getMessage()
+        );
+      }
+    }
+
+    private void closeWatchService()
+    {
+      if (watchService == null)
+      {
+        return;
+      }
+
+      try
+      {
+        watchService.close();
+      }
+
+      catch (IOException e)
+      {
+        log.debug("Closing file system watch service failed : {0}", e, e.getMessage());
+      }
+    }
+
+    /**
+     * Registers the controller's resource directory with the watch service, unless it is
+     * already registered.
+     *
+     * @return  true if the directory is watched, false if the controller definition must be
+     *          polled
+     */
+    private boolean watchDirectory()
+    {
+      if (watchService == null)
+      {
+        return false;
+      }
+
+      if (watchKey != null && watchKey.isValid())
+      {
+        return true;
+      }
+
+      watchKey = null;
+
+      File directory = Version20ModelBuilder.getControllerDefinitionFile(
+          deployer.controllerConfig
+      ).getAbsoluteFile().getParentFile();
+
+      if (directory == null || !directory.isDirectory())
+      {
+        return false;
+      }
+
+      try
+      {
+        watchKey = directory.toPath().register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE
+        );
+
+        log.debug("Watching ''{0}'' for controller definition changes.", directory);
+
+        return true;
+      }
+
+      catch (IOException e)
+      {
+        log.debug("Cannot watch ''{0}'', polling instead : {1}", e, directory, e.getMessage());
+      }
+
+      catch (InvalidPathException e)
+      {
+        log.debug("Cannot watch ''{0}'', polling instead : {1}", e, directory, e.getMessage());
+      }
+
+      return false;
+    }
+
+    /**
+     * Blocks until the next check for controller definition changes is due : until a file
+     * system notification arrives in the resource directory (or {@link #RESCAN_INTERVAL} has
+     * passed) when the directory is watched, otherwise for {@link #POLL_INTERVAL}. Returns
+     * early when this service is stopped.
+     *
+     * @throws InterruptedException   if the watcher thread is interrupted while waiting
+     */
+    private void awaitChange() throws InterruptedException
+    {
+      if (!watchDirectory())
+      {
+        synchronized (pauseLock)
+        {
+          if (running)
+          {
+            pauseLock.wait(POLL_INTERVAL);
+          }
+        }
+
+        return;
+      }
+
+      WatchKey key = watchService.poll(RESCAN_INTERVAL, TimeUnit.MILLISECONDS);
+
+      // Consume all pending notifications, a single check covers them...
+
+      while (key != null)
+      {
+        key.pollEvents();
+
+        if (!key.reset() && key == watchKey)
+        {
+          watchKey = null;
+        }
+
+        key = watchService.poll();
+      }
+    }
+
+    /**
+     * Waits until the controller definition has not changed for {@link #SETTLE_TIME}
+     * milliseconds, or at most {@link #MAX_SETTLE_TIME} milliseconds.
+     *
+     * @throws InterruptedException   if the watcher thread is interrupted while waiting
+     */
+    private void awaitSettled() throws InterruptedException
+    {
+      long deadline = System.currentTimeMillis() + MAX_SETTLE_TIME;
+
+      do
+      {
+        Thread.sleep(SETTLE_TIME);
+      }
+      while (deployer.modelBuilder != null &&
+             deployer.modelBuilder.hasControllerDefinitionChanged() &&
+             System.currentTimeMillis() < deadline);
+    }
   }
 
 
@@ -0,0 +1,186 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.service;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.openremote.controller.Constants;
+
+/**
+ * A pre-serialized panel definition (a single panel layout or the list of panels) as returned
+ * to panel clients through the HTTP/REST API. <p>
+ *
+ * Definitions are built once per deployed panel.xml and shared by all requests. Together with
+ * the XML document they carry an entity tag and a last modified timestamp to allow clients to
+ * revalidate their copy with conditional HTTP requests. The JSON form depends on the REST API
+ * formatting and is stored here by the REST API implementation on first use.
+ *
+ * @see ProfileService
+ */
+public class PanelDefinition
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * Panel definition XML document.
+   */
+  private final String xml;
+
+  /**
+   * UTF-8 encoded XML document.
+   */
+  private final byte[] xmlBytes;
+
+  /**
+   * Last modified time of panel.xml this definition was built from.
+   */
+  private final long lastModified;
+
+  /**
+   * Entity tag of the XML document.
+   */
+  private final String eTag;
+
+  /**
+   * UTF-8 encoded JSON document, or null until first requested.
+   */
+  private volatile byte[] jsonBytes = null;
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Constructs a new panel definition.
+   *
+   * @param xml             panel definition XML document
+   * @param lastModified    last modified time of the panel.xml file the definition was built from
+   */
+  public PanelDefinition(String xml, long lastModified)
+  {
+    this.xml = xml;
+    this.xmlBytes = encode(xml);
+    this.lastModified = lastModified;
+    this.eTag = createETag(xmlBytes);
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * @return  panel definition XML document
+   */
+  public String getXML()
+  {
+    return xml;
+  }
+
+  /**
+   * @return  UTF-8 encoded XML document -- the returned array is shared and must not be modified
+   */
+  public byte[] getXMLBytes()
+  {
+    return xmlBytes;
+  }
+
+  /**
+   * @return  UTF-8 encoded JSON document, or null if the JSON form has not been stored yet --
+   *          the returned array is shared and must not be modified
+   */
+  public byte[] getJSONBytes()
+  {
+    return jsonBytes;
+  }
+
+  /**
+   * Stores the JSON form of this panel definition.
+   *
+   * @param json    JSON document translated from {@link #getXML()}
+   */
+  public void setJSON(String json)
+  {
+    this.jsonBytes = encode(json);
+  }
+
+  /**
+   * @return  last modified time of the panel.xml file this definition was built from
+   */
+  public long getLastModified()
+  {
+    return lastModified;
+  }
+
+  /**
+   * Returns the entity tag of this definition. The tag is derived from the XML document content
+   * so that an unchanged panel keeps its tag across redeployments of panel.xml.
+   *
+   * @return  quoted entity tag
+   */
+  public String getETag()
+  {
+    return eTag;
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private byte[] encode(String document)
+  {
+    try
+    {
+      return document.getBytes(Constants.CHARACTER_ENCODING_UTF8);
+    }
+
+    catch (UnsupportedEncodingException e)
+    {
+      throw new Error("UTF-8 encoding is not supported by this VM.", e);
+    }
+  }
+
+  private String createETag(byte[] content)
+  {
+    try
+    {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+
+      StringBuilder tag = new StringBuilder(digest.length * 2 + 2);
+
+      tag.append('"');
+
+      for (byte b : digest)
+      {
+        tag.append(Character.forDigit((b >> 4) & 0xF, 16));
+        tag.append(Character.forDigit(b & 0xF, 16));
+      }
+
+      tag.append('"');
+
+      return tag.toString();
+    }
+
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new Error("MD5 digest is not supported by this VM.", e);
+    }
+  }
+}
@@ -74,5 +74,26 @@ public interface ProfileService {
     * @return A xml string that contains all the panels. 
     */
    String getPanelsXML(String xmlPath);
+
+   /**
+    * This method is used to get the cached definition of a panel by the name of the panel.
+    * The definition is built once per deployed panel.xml in your ${resource.path}.
+    * @param panelName The name of panel.
+    * @return the panel definition with its XML document, entity tag and last modified time.
+    */
+   PanelDefinition getPanelDefinitionByName(String panelName);
+
+   /**
+    * This method is used to get the cached definition which includes all the panels in panel.xml.
+    * The definition is built once per deployed panel.xml in your ${resource.path}.
+    * @return the panel list definition with its XML document, entity tag and last modified time.
+    */
+   PanelDefinition getAllPanelsDefinition();
+
+   /**
+    * This method is used to build the panel definitions of the deployed panel.xml ahead of the
+    * first panel request. Called when a new controller definition has been deployed.
+    */
+   void loadPanelDefinitions();
    
 }
@@ -20,6 +20,8 @@
  */
 package org.openremote.controller.service;
 
+import java.util.Map;
+
 /**
  * TODO
  * 
@@ -36,4 +38,14 @@ public interface StatusCommandService
    */
   String readFromCache(String unParsedSensorIDs);
 
+  /**
+   * Reads statuses of sensor IDs from status cache, for responses that are not formatted as
+   * XML documents.
+   *
+   * @param  unParsedSensorIDs  comma separated list of sensor IDs
+   *
+   * @return sensor statuses by sensor ID, invalid sensor IDs are skipped
+   */
+  Map<Integer, String> queryStatuses(String unParsedSensorIDs);
+
 }
@@ -20,6 +20,9 @@
  */
 package org.openremote.controller.service;
 
+import java.util.Map;
+
+import org.openremote.controller.exception.ControllerException;
 
 /**
  * It's responsiable for polling changed statuses from changed status table.
@@ -34,5 +37,98 @@ public interface StatusPollingService {
     * Query changed states from ChangedStatus table. 
     */
    public String queryChangedState(String deviceID, String unParsedSensorIDs);
-   
+
+  /**
+   * Query changed statuses from ChangedStatus table, for responses that are not formatted as
+   * XML documents. Otherwise equivalent to {@link #queryChangedState(String, String)}.
+   *
+   * @param deviceID            panel identifier
+   * @param unParsedSensorIDs   comma separated list of polled sensor IDs
+   *
+   * @return changed sensor statuses by sensor ID, or null if the polling timeout passed
+   *         without changes
+   */
+  public Map<Integer, String> queryChangedStatuses(String deviceID, String unParsedSensorIDs);
+
+  /**
+   * Query changed states from ChangedStatus table without blocking the calling thread. If
+   * none of the polled sensors has changed, the request is parked and the callback is completed
+   * by the thread that records the next status change, or with
+   * {@link org.openremote.controller.Constants#SERVER_RESPONSE_TIME_OUT} once the polling
+   * timeout has passed.
+   *
+   * @param deviceID            panel identifier
+   * @param unParsedSensorIDs   comma separated list of polled sensor IDs
+   * @param callback            receives the polling result at most once, exactly once unless
+   *                            the request is cancelled
+   *
+   * @return handle to cancel the request if the panel's connection ends before it completes
+   */
+  public PollingRequest queryChangedState(String deviceID, String unParsedSensorIDs, PollingCallback callback);
+
+  /**
+   * Query changed statuses from ChangedStatus table without blocking the calling thread, for
+   * responses that are not formatted as XML documents. Otherwise equivalent to
+   * {@link #queryChangedState(String, String, PollingCallback)}.
+   *
+   * @param deviceID            panel identifier
+   * @param unParsedSensorIDs   comma separated list of polled sensor IDs
+   * @param callback            receives the changed statuses at most once, exactly once unless
+   *                            the request is cancelled
+   *
+   * @return handle to cancel the request if the panel's connection ends before it completes
+   */
+  public PollingRequest queryChangedStatuses(String deviceID, String unParsedSensorIDs, StatusCallback callback);
+
+
+  // Nested Interfaces ----------------------------------------------------------------------------
+
+  /**
+   * Handle of an asynchronous polling request.
+   */
+  public interface PollingRequest
+  {
+    /**
+     * Withdraws a parked polling request, for example when the panel's connection has ended.
+     * Once cancelled, the request's callback is not invoked and status changes are kept for the
+     * panel's next poll.
+     *
+     * @return true if the request was withdrawn, false if it had already completed
+     */
+    boolean cancel();
+  }
+
+  /**
+   * Receives the result of an asynchronous polling request.
+   */
+  public interface PollingCallback
+  {
+    /**
+     * @param pollingResults  XML document of the changed statuses, or
+     *                        {@link org.openremote.controller.Constants#SERVER_RESPONSE_TIME_OUT}
+     */
+    void completed(String pollingResults);
+
+    /**
+     * @param exception  the reason the polling request could not be completed
+     */
+    void failed(ControllerException exception);
+  }
+
+  /**
+   * Receives the changed statuses of an asynchronous polling request.
+   */
+  public interface StatusCallback
+  {
+    /**
+     * @param changedStatuses   changed sensor statuses by sensor ID, or null if the polling
+     *                          timeout passed without changes
+     */
+    void completed(Map<Integer, String> changedStatuses);
+
+    /**
+     * @param exception  the reason the polling request could not be completed
+     */
+    void failed(ControllerException exception);
+  }
 }
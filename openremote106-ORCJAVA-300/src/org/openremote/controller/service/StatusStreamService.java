@@ -0,0 +1,92 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.service;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Pushes sensor status changes to long-lived subscribers, such as the streaming status REST
+ * API. A subscriber registers once for a set of sensor IDs and then receives the current values
+ * of those sensors followed by the new values of each sensor as it changes, without having to
+ * re-send its sensor list with every request as status polling does.
+ *
+ * @see StatusPollingService
+ */
+public interface StatusStreamService
+{
+
+  /**
+   * Subscribes to status changes of the given sensors. The listener first receives the current
+   * status of all subscribed sensors and then the statuses of changed sensors as they change.
+   * Notifications to a single listener are never delivered concurrently.
+   *
+   * @param unParsedSensorIDs   comma separated list of sensor IDs
+   * @param listener            receives the status changes
+   *
+   * @return  subscription handle to cancel the subscription with
+   */
+  Subscription subscribe(String unParsedSensorIDs, StatusStreamListener listener);
+
+
+  // Nested Interfaces ----------------------------------------------------------------------------
+
+  /**
+   * Receives status changes of a subscription.
+   */
+  public interface StatusStreamListener
+  {
+    /**
+     * @param statuses  sensor statuses by sensor ID, either the initial statuses of all
+     *                  subscribed sensors or the statuses of the changed sensors
+     *
+     * @throws IOException  if the status could not be delivered to the subscriber -- the
+     *                      subscription is cancelled
+     */
+    void statusChanged(Map<Integer, String> statuses) throws IOException;
+
+    /**
+     * Invoked periodically while no status changes occur, so that the subscriber can keep its
+     * connection alive and detect that the other end has gone away.
+     *
+     * @throws IOException  if the subscriber is no longer reachable -- the subscription is
+     *                      cancelled
+     */
+    void heartbeat() throws IOException;
+
+    /**
+     * Invoked when the service ends the subscription, for example because the controller
+     * definition is being redeployed. Subscribers should subscribe again.
+     */
+    void streamClosed();
+  }
+
+  /**
+   * Handle of an active subscription.
+   */
+  public interface Subscription
+  {
+    /**
+     * Stops delivering status changes to the subscription's listener.
+     */
+    void cancel();
+  }
+}
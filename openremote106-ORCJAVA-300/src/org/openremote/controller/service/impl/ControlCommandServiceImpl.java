@@ -25,6 +25,7 @@ import java.util.List;
 import org.jdom.Element;
 import org.openremote.controller.Constants;
 import org.openremote.controller.command.ExecutableCommand;
+import org.openremote.controller.command.MacroExecutor;
 import org.openremote.controller.component.Component;
 import org.openremote.controller.component.ComponentFactory;
 import org.openremote.controller.component.control.Control;
@@ -59,6 +60,12 @@ public class ControlCommandServiceImpl implements ControlCommandService
   private Deployer deployer;
   private ComponentFactory componentFactory;
 
+  /**
+   * Executes control actions with multiple commands or delays asynchronously. If not set, all
+   * commands are executed on the calling thread.
+   */
+  private MacroExecutor macroExecutor;
+
 
 
   // Constructors ---------------------------------------------------------------------------------
@@ -72,13 +79,32 @@ public class ControlCommandServiceImpl implements ControlCommandService
 
   // Public Instance Methods ----------------------------------------------------------------------
 
-  public void trigger(String controlID, String commandParam)
+  /**
+   * Executes the commands of a control action. Macros (several commands, or delays) are handed
+   * to the {@link #setMacroExecutor macro executor} if one has been set, and this method
+   * returns without waiting for them to complete.
+   *
+   * @param controlID       control ID
+   * @param commandParam    control action, such as 'click' or 'on'
+   *
+   * @return  macro execution ID, or null if the commands were executed before returning (or
+   *          could not be resolved)
+   */
+  @Override public String trigger(String controlID, String commandParam)
   {
     try
     {
-      Control control = getControl(controlID, commandParam);
-      List<ExecutableCommand> executableCommands = control.getExecutableCommands();
-      MacrosIrDelayUtil.ensureDelayForIrCommand(executableCommands);
+      List<ExecutableCommand> executableCommands = getExecutableCommands(controlID, commandParam);
+
+      if (macroExecutor != null && MacroExecutor.isMacro(executableCommands))
+      {
+        MacroExecutor.Execution execution =
+            macroExecutor.execute(controlID + "/" + commandParam, executableCommands);
+
+        log.debug("Started {0}.", execution);
+
+        return execution.getID();
+      }
 
       for (ExecutableCommand executableCommand : executableCommands)
       {
@@ -134,6 +160,31 @@ public class ControlCommandServiceImpl implements ControlCommandService
           "Error message : {1}", exception, controlID, exception.getMessage()
       );
     }
+
+    return null;
+  }
+
+  @Override public MacroExecutor.Execution getMacroExecution(String executionID)
+  {
+    return macroExecutor == null ? null : macroExecutor.getExecution(executionID);
+  }
+
+  @Override public MacroExecutor.Execution cancelMacroExecution(String executionID)
+  {
+    return macroExecutor == null ? null : macroExecutor.cancel(executionID);
+  }
+
+
+  // Service Dependencies -------------------------------------------------------------------------
+
+  /**
+   * Sets the executor for control actions that consist of several commands or delays.
+   *
+   * @param macroExecutor   macro executor
+   */
+  public void setMacroExecutor(MacroExecutor macroExecutor)
+  {
+    this.macroExecutor = macroExecutor;
   }
 
 
@@ -141,6 +192,28 @@ public class ControlCommandServiceImpl implements ControlCommandService
 
   // Private Instance Methods ---------------------------------------------------------------------
 
+  /**
+   * Returns the commands to execute for a control action. Commands compiled at deployment are
+   * used when available, otherwise the control is built from the controller definition.
+   */
+  private List<ExecutableCommand> getExecutableCommands(String controlID, String commandParam)
+      throws InitializationException
+  {
+    List<ExecutableCommand> executableCommands =
+        deployer.getCompiledControlCommands(Integer.parseInt(controlID), commandParam);
+
+    if (executableCommands != null)
+    {
+      return executableCommands;
+    }
+
+    Control control = getControl(controlID, commandParam);
+    executableCommands = control.getExecutableCommands();
+    MacrosIrDelayUtil.ensureDelayForIrCommand(executableCommands);
+
+    return executableCommands;
+  }
+
   private Control getControl(String controlID, String commandParam) throws InitializationException
   {
     Element controlElement = deployer.queryElementById(Integer.parseInt(controlID));
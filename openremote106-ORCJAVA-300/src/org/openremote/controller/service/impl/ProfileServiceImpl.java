@@ -23,26 +23,42 @@ package org.openremote.controller.service.impl;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.jdom.Attribute;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.jdom.Namespace;
+import org.jdom.filter.ElementFilter;
 import org.jdom.input.SAXBuilder;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
 import org.jdom.xpath.XPath;
+import org.json.JSONObject;
+import org.json.XML;
 import org.openremote.controller.ControllerConfiguration;
 import org.openremote.controller.Constants;
+import org.openremote.controller.exception.ControlCommandException;
 import org.openremote.controller.exception.InvalidPanelXMLException;
 import org.openremote.controller.exception.NoSuchPanelException;
 import org.openremote.controller.exception.PanelXMLNotFoundException;
+import org.openremote.controller.service.PanelDefinition;
 import org.openremote.controller.service.ProfileService;
+import org.openremote.controller.utils.JSONWriter;
+import org.openremote.controller.utils.Logger;
 import org.openremote.controller.utils.PathUtil;
 
 /**
- * Used to get panel.xml content according to panel identity.
+ * Used to get panel.xml content according to panel identity. <p>
+ *
+ * Each panel.xml file is parsed once and the panel definitions built from it are cached until
+ * the file's timestamp or size changes, so repeated panel requests (for example, all panels
+ * reconnecting after a controller restart) are served without parsing or serializing XML.
  * 
  * @author Javen
  *
@@ -52,57 +68,139 @@ public class ProfileServiceImpl implements ProfileService
 
   private static final String TABBAR_ELEMENT_NAME = "tabbar";
 
+  /**
+   * Log category for loading panel definitions at deployment.
+   */
+  private final static Logger log = Logger.getLogger(Constants.DEPLOYER_LOG_CATEGORY);
+
   private ControllerConfiguration configuration;
 
+  /**
+   * Parsed panel.xml files by path.
+   */
+  private final Map<String, PanelXML> panelXMLCache = new ConcurrentHashMap<String, PanelXML>();
+
+
   @Override public String getProfileByPanelID(String panelID)
   {
-    String xmlPath = PathUtil.addSlashSuffix(configuration.getResourcePath()) + Constants.PANEL_XML;
-    return getProfileByPanelID(xmlPath, panelID);
+    return getProfileByPanelID(getPanelXMLPath(), panelID);
   }
 
   @Override public String getProfileByPanelID(String panleXMLPath, String panelID)
   {
-    Document doc = this.getProfileDocumentByPanelID(panleXMLPath, panelID);
-    return output(doc);
+    return getPanelXML(panleXMLPath).getPanelByID(panelID).getXML();
   }
 
   @Override public String getAllPanels()
   {
-    String xmlPath = PathUtil.addSlashSuffix(configuration.getResourcePath()) + Constants.PANEL_XML;
-    Document doc = getAllPanelsDocument(xmlPath);
-    return output(doc);
+    return getAllPanelsDefinition().getXML();
   }
 
   @Override public String getAllPanels(String panelXMLPath)
   {
-    Document doc = getAllPanelsDocument(panelXMLPath);
-    return output(doc);
+    return getPanelXML(panelXMLPath).getAllPanels().getXML();
   }
 
   @Override public String getPanelsXML(String xmlPath)
   {
-    Document doc = getAllPanelsDocument(xmlPath);
-    return output(doc);
+    return getPanelXML(xmlPath).getAllPanels().getXML();
   }
 
   @Override public String getProfileByPanelName(String panelName)
   {
-    String xmlPath = PathUtil.addSlashSuffix(configuration.getResourcePath()) + Constants.PANEL_XML;
-    Document doc = getProfileDocumentByPanelName(xmlPath, panelName);
-    return output(doc);
+    return getPanelDefinitionByName(panelName).getXML();
   }
 
   @Override public String getProfileByName(String panelXMLPath, String panelName)
   {
-    Document doc = getProfileDocumentByPanelName(panelXMLPath, panelName);
-    return output(doc);
+    return getPanelXML(panelXMLPath).getPanelByName(panelName).getXML();
   }
 
+  @Override public PanelDefinition getPanelDefinitionByName(String panelName)
+  {
+    return getPanelXML(getPanelXMLPath()).getPanelByName(panelName);
+  }
 
+  @Override public PanelDefinition getAllPanelsDefinition()
+  {
+    return getPanelXML(getPanelXMLPath()).getAllPanels();
+  }
 
-  private Document getAllPanelsDocument(String xmlPath)
+  @Override public void loadPanelDefinitions()
   {
-    Document doc = buildXML(xmlPath);
+    String xmlPath = getPanelXMLPath();
+
+    if (!new File(xmlPath).exists())
+    {
+      log.debug("No {0} deployed, panel definitions not loaded.", Constants.PANEL_XML);
+
+      return;
+    }
+
+    try
+    {
+      PanelXML panelXML = getPanelXML(xmlPath);
+
+      int count = panelXML.loadAll();
+
+      log.info("Loaded {0} panel definitions from {1}.", count, xmlPath);
+    }
+
+    catch (ControlCommandException e)
+    {
+      log.warn("Unable to load panel definitions from {0} : {1}", e, xmlPath, e.getMessage());
+    }
+  }
+
+
+
+  private String getPanelXMLPath()
+  {
+    return PathUtil.addSlashSuffix(configuration.getResourcePath()) + Constants.PANEL_XML;
+  }
+
+  /**
+   * Returns the parsed panel.xml file at the given path, parsing it again if the file has
+   * changed since it was cached.
+   */
+  private PanelXML getPanelXML(String xmlPath)
+  {
+    File file = new File(xmlPath);
+
+    if (!file.exists())
+    {
+      throw new PanelXMLNotFoundException(" Make sure it's in " + xmlPath);
+    }
+
+    long lastModified = file.lastModified();
+    long length = file.length();
+
+    PanelXML panelXML = panelXMLCache.get(xmlPath);
+
+    if (panelXML != null && panelXML.isCurrent(lastModified, length))
+    {
+      return panelXML;
+    }
+
+    synchronized (panelXMLCache)
+    {
+      panelXML = panelXMLCache.get(xmlPath);
+
+      if (panelXML == null || !panelXML.isCurrent(lastModified, length))
+      {
+        panelXML = new PanelXML(buildXML(xmlPath), lastModified, length);
+
+        panelXMLCache.put(xmlPath, panelXML);
+      }
+
+      return panelXML;
+    }
+  }
+
+
+  private Document getAllPanelsDocument(PanelXML panelXML)
+  {
+    Document doc = panelXML.document;
     Element root = doc.getRootElement();
     Element newRoot = new Element(root.getName());
 
@@ -127,9 +225,9 @@ public class ProfileServiceImpl implements ProfileService
 
 
   @SuppressWarnings("unchecked")
-  private Document getProfileDocumentByPanelID(String xmlPath, String panelID)
+  private Document getProfileDocumentByPanelID(PanelXML panelXML, String panelID)
   {
-    Document doc = buildXML(xmlPath);
+    Document doc = panelXML.document;
     Element root = doc.getRootElement();
     Element newRoot = new Element(root.getName());
     newRoot.setNamespace(root.getNamespace());
@@ -142,7 +240,7 @@ public class ProfileServiceImpl implements ProfileService
     newRoot.addContent(screensEle);
     newRoot.addContent(groupsEle);
 
-    Element panel = queryElementFromXMLById(xmlPath, panelID);
+    Element panel = panelXML.getElementById(panelID);
 
     if (panel == null)
     {
@@ -154,7 +252,7 @@ public class ProfileServiceImpl implements ProfileService
     for (Element groupRef : refGroups)
     {
       String groupID = groupRef.getAttributeValue("ref");
-      Element group = (Element) queryElementFromXMLById(xmlPath, groupID).clone();
+      Element group = (Element) panelXML.getElementById(groupID).clone();
       groupsEle.addContent(group);
     }
 
@@ -167,7 +265,7 @@ public class ProfileServiceImpl implements ProfileService
       for (Element refScreen : refScreens)
       {
         String screenID = refScreen.getAttributeValue("ref");
-        Element screen = (Element) queryElementFromXMLById(xmlPath, screenID).clone();
+        Element screen = (Element) panelXML.getElementById(screenID).clone();
         screensEle.addContent(screen);
       }
     }
@@ -176,16 +274,16 @@ public class ProfileServiceImpl implements ProfileService
   }
 
   @SuppressWarnings("unchecked")
-  private Document getProfileDocumentByPanelName(String xmlPath, String name)
+  private Document getProfileDocumentByPanelName(PanelXML panelXML, String name)
   {
-    Document doc = buildXML(xmlPath);
+    Document doc = panelXML.document;
     Element root = doc.getRootElement();
     Element newRoot = new Element(root.getName());
     newRoot.setNamespace(root.getNamespace());
 
     Document targetDocument = new Document(newRoot);
 
-    Element panel = queryPanelByName(xmlPath, name);
+    Element panel = panelXML.getPanelElementByName(name);
 
     if (panel == null)
     {
@@ -215,7 +313,7 @@ public class ProfileServiceImpl implements ProfileService
     for (Element groupRef : refGroups)
     {
       String groupID = groupRef.getAttributeValue("ref");
-      Element includeGroup = queryElementFromXMLById(xmlPath, groupID);
+      Element includeGroup = panelXML.getElementById(groupID);
 
       if (null == includeGroup)
       {
@@ -248,7 +346,7 @@ public class ProfileServiceImpl implements ProfileService
       for (Element refScreen : refScreens)
       {
         String screenID = refScreen.getAttributeValue("ref");
-        Element screen = (Element) queryElementFromXMLById(xmlPath, screenID).clone();
+        Element screen = (Element) panelXML.getElementById(screenID).clone();
         screensEle.addContent(screen);
       }
     }
@@ -256,8 +354,6 @@ public class ProfileServiceImpl implements ProfileService
     return targetDocument;
   }
 
-
-
   private String output(Document targetDocument)
   {
     Format format = Format.getPrettyFormat();
@@ -279,6 +375,49 @@ public class ProfileServiceImpl implements ProfileService
   }
 
 
+  /**
+   * Writes the JSON form of the panel list directly from the panel elements. The output matches
+   * the XML to JSON translation of the panel list document : panel attributes are converted to
+   * numbers or booleans where the values allow and the panels are always an array.
+   */
+  @SuppressWarnings("unchecked")
+  private String outputJSON(Document panelList)
+  {
+    StringWriter writer = new StringWriter();
+    JSONWriter json = new JSONWriter(writer);
+
+    try
+    {
+      json.beginObject().name("panel").beginArray();
+
+      for (Element panel : (List<Element>)panelList.getRootElement().getChildren())
+      {
+        json.beginObject();
+
+        for (Attribute attribute : (List<Attribute>)panel.getAttributes())
+        {
+          Object value = XML.stringToValue(attribute.getValue());
+
+          json.name(attribute.getName()).value(value == JSONObject.NULL ? null : value);
+        }
+
+        json.endObject();
+      }
+
+      json.endArray().endObject();
+    }
+
+    catch (IOException e)
+    {
+      // StringWriter does not throw I/O exceptions...
+
+      throw new Error("Writing to a string failed : " + e.getMessage(), e);
+    }
+
+    return writer.toString();
+  }
+
+
   private void setNamespace(Element root, Element newRoot, Element... elements)
   {
     Namespace ns1 = Namespace.getNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
@@ -294,17 +433,6 @@ public class ProfileServiceImpl implements ProfileService
   }
 
 
-  private Element queryElementFromXMLById(String xmlPath, String id)
-  {
-    return queryElementFromXML(xmlPath, "//" + Constants.OPENREMOTE_NAMESPACE + ":*[@id='" + id + "']");
-  }
-
-  private Element queryPanelByName(String xmlPath, String name)
-  {
-    return queryElementFromXML(xmlPath, "//" + Constants.OPENREMOTE_NAMESPACE + ":panel[@name=\""
-          + escapeQuotes(name) + "\"]");
-  }
-
   private List<Element> queryElementByElementName(Document doc, String eleName)
   {
     return queryElementFromDocument(doc, "//" + Constants.OPENREMOTE_NAMESPACE + ":" + eleName);
@@ -360,14 +488,6 @@ public class ProfileServiceImpl implements ProfileService
     }
   }
 
-
-  private Element queryElementFromXML(String xmlPath, String xPath)
-  {
-    Document doc = buildXML(xmlPath);
-    List<Element> results = queryElementFromDocument(doc, xPath);
-    return results.size() > 0 ? results.get(0) : null;
-  }
-
   public void setConfiguration(ControllerConfiguration configuration)
   {
     this.configuration = configuration;
@@ -377,4 +497,152 @@ public class ProfileServiceImpl implements ProfileService
   {
     return xpath.replaceAll("\"", "");
   }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * A parsed panel.xml file with its elements indexed by ID and panel name, and the panel
+   * definitions built from it so far.
+   */
+  private class PanelXML
+  {
+    private final Document document;
+
+    private final long lastModified;
+
+    private final long length;
+
+    /**
+     * Elements of the OpenRemote namespace by their 'id' attribute, first occurrence in
+     * document order.
+     */
+    private final Map<String, Element> elementsByID = new HashMap<String, Element>();
+
+    /**
+     * Panel elements by their 'name' attribute, first occurrence in document order.
+     */
+    private final Map<String, Element> panelsByName = new HashMap<String, Element>();
+
+    private final Map<String, PanelDefinition> definitionsByID = new HashMap<String, PanelDefinition>();
+
+    private final Map<String, PanelDefinition> definitionsByName = new HashMap<String, PanelDefinition>();
+
+    private PanelDefinition allPanels = null;
+
+
+    private PanelXML(Document document, long lastModified, long length)
+    {
+      this.document = document;
+      this.lastModified = lastModified;
+      this.length = length;
+
+      Iterator<?> elements = document.getDescendants(new ElementFilter(Namespace.getNamespace(Constants.OPENREMOTE_WEBSITE)));
+
+      while (elements.hasNext())
+      {
+        Element element = (Element)elements.next();
+
+        String id = element.getAttributeValue("id");
+
+        if (id != null && !elementsByID.containsKey(id))
+        {
+          elementsByID.put(id, element);
+        }
+
+        String name = element.getAttributeValue("name");
+
+        if (name != null && element.getName().equals("panel") && !panelsByName.containsKey(name))
+        {
+          panelsByName.put(name, element);
+        }
+      }
+    }
+
+
+    private boolean isCurrent(long lastModified, long length)
+    {
+      return this.lastModified == lastModified && this.length == length;
+    }
+
+    private Element getElementById(String id)
+    {
+      return elementsByID.get(id);
+    }
+
+    private Element getPanelElementByName(String name)
+    {
+      return panelsByName.get(escapeQuotes(name));
+    }
+
+    private synchronized PanelDefinition getPanelByID(String panelID)
+    {
+      PanelDefinition definition = definitionsByID.get(panelID);
+
+      if (definition == null)
+      {
+        definition = new PanelDefinition(output(getProfileDocumentByPanelID(this, panelID)), lastModified);
+
+        definitionsByID.put(panelID, definition);
+      }
+
+      return definition;
+    }
+
+    private synchronized PanelDefinition getPanelByName(String panelName)
+    {
+      PanelDefinition definition = definitionsByName.get(panelName);
+
+      if (definition == null)
+      {
+        definition = new PanelDefinition(output(getProfileDocumentByPanelName(this, panelName)), lastModified);
+
+        definitionsByName.put(panelName, definition);
+      }
+
+      return definition;
+    }
+
+    private synchronized PanelDefinition getAllPanels()
+    {
+      if (allPanels == null)
+      {
+        Document panelList = getAllPanelsDocument(this);
+
+        allPanels = new PanelDefinition(output(panelList), lastModified);
+        allPanels.setJSON(outputJSON(panelList));
+      }
+
+      return allPanels;
+    }
+
+    /**
+     * Builds the panel list and the definitions of all named panels.
+     *
+     * @return  number of panel definitions built
+     */
+    private int loadAll()
+    {
+      getAllPanels();
+
+      int count = 0;
+
+      for (String name : panelsByName.keySet())
+      {
+        try
+        {
+          getPanelByName(name);
+
+          count++;
+        }
+
+        catch (ControlCommandException e)
+        {
+          log.warn("Unable to load definition of panel ''{0}'' : {1}", e, name, e.getMessage());
+        }
+      }
+
+      return count;
+    }
+  }
 }
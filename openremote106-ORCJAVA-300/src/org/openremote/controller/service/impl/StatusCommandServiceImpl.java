@@ -20,6 +20,7 @@
  */
 package org.openremote.controller.service.impl;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -63,13 +64,7 @@ public class StatusCommandServiceImpl implements StatusCommandService
 
   @Override public String readFromCache(String unParsedSensorIDs)
   {
-    if (deployer.isPaused())
-    {
-      throw new ControllerXMLChangedException("The content of controller.xml had changed.");
-    }
-
-    Set<Integer> statusSensorIDs = parseStatusSensorIDsStrToSet(unParsedSensorIDs);
-    Map<Integer, String> latestStatuses = statusCache.queryStatus(statusSensorIDs);
+    Map<Integer, String> latestStatuses = queryStatuses(unParsedSensorIDs);
 
     StringBuffer sb = new StringBuffer();
     sb.append(Constants.STATUS_XML_HEADER);
@@ -96,6 +91,24 @@ public class StatusCommandServiceImpl implements StatusCommandService
     return sb.toString();
   }
 
+  @Override public Map<Integer, String> queryStatuses(String unParsedSensorIDs)
+  {
+    if (deployer.isPaused())
+    {
+      throw new ControllerXMLChangedException("The content of controller.xml had changed.");
+    }
+
+    Set<Integer> statusSensorIDs = parseStatusSensorIDsStrToSet(unParsedSensorIDs);
+    Map<Integer, String> latestStatuses = statusCache.queryStatus(statusSensorIDs);
+
+    if (latestStatuses == null)
+    {
+      return new HashMap<Integer, String>(0);
+    }
+
+    return latestStatuses;
+  }
+
 
   // Private Instance Methods ---------------------------------------------------------------------
   
@@ -20,18 +20,28 @@
  */
 package org.openremote.controller.service.impl;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.openremote.controller.Constants;
+import org.openremote.controller.OpenRemoteRuntime;
 import org.openremote.controller.utils.Logger;
 import org.openremote.controller.config.ControllerXMLChangedException;
+import org.openremote.controller.exception.ControllerException;
 import org.openremote.controller.exception.NoSuchComponentException;
 import org.openremote.controller.service.StatusPollingService;
 import org.openremote.controller.service.Deployer;
+import org.openremote.controller.statuscache.ChangedStatusListener;
 import org.openremote.controller.statuscache.ChangedStatusRecord;
 import org.openremote.controller.statuscache.ChangedStatusTable;
 import org.openremote.controller.statuscache.PollingData;
@@ -49,10 +59,53 @@ public class StatusPollingServiceImpl implements StatusPollingService {
   // TODO : use one of the controller runtime categories
   private final static Logger logger = Logger.getLogger(Constants.RUNTIME_STATECACHE_LOG_CATEGORY);
 
+  /**
+   * Number of threads completing asynchronous polling requests.
+   */
+  private final static int ASYNC_POLLING_THREADS = 2;
+
+  /**
+   * Handle returned for polling requests that completed without being parked.
+   */
+  private final static PollingRequest COMPLETED_REQUEST = new PollingRequest()
+  {
+    @Override public boolean cancel()
+    {
+      return false;
+    }
+  };
+
    private ChangedStatusTable changedStatusTable;
    private Deployer deployer;
    private StatusCache statusCache;
 
+  /**
+   * Completes asynchronous polling requests and fires their timeouts, so that neither the
+   * thread recording a status change nor a container thread is held by a waiting panel.
+   */
+  private ScheduledThreadPoolExecutor asyncPollingExecutor =
+      new ScheduledThreadPoolExecutor(ASYNC_POLLING_THREADS, new ThreadFactory()
+      {
+        private AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override public Thread newThread(Runnable runnable)
+        {
+          Thread thread = OpenRemoteRuntime.createThread(
+              "Async status polling " + threadNumber.getAndIncrement(), runnable
+          );
+
+          thread.setDaemon(true);
+
+          return thread;
+        }
+      });
+
+  /**
+   * Asynchronous polling requests currently parked on a changed status record.
+   */
+  private Set<AsyncPollingRequest> parkedRequests =
+      Collections.newSetFromMap(new ConcurrentHashMap<AsyncPollingRequest, Boolean>());
+
 
    /* (non-Javadoc)
     * @see org.openremote.controller.service.ControlStatusPollingService#querySkipState(java.lang.String)
@@ -67,47 +120,35 @@ public class StatusPollingServiceImpl implements StatusPollingService {
     */
    @Override
    public String queryChangedState(String deviceID, String unParsedSensorIDs) {
+      Map<Integer, String> changedStatuses = queryChangedStatuses(deviceID, unParsedSensorIDs);
+
+      return changedStatuses == null ? Constants.SERVER_RESPONSE_TIME_OUT : composePollingResult(changedStatuses);
+   }
+
+  /**
+   * Blocking polling request returning the changed statuses, see
+   * {@link #queryChangedState(String, String)}.
+   */
+  @Override public Map<Integer, String> queryChangedStatuses(String deviceID, String unParsedSensorIDs)
+  {
       if (deployer.isPaused()) {
          throw new ControllerXMLChangedException("The content of controller.xml had changed.");
       }
       
       logger.info("Querying changed state from ChangedStatus table...");
-      String skipState = "";
-      String[] sensorIDs = (unParsedSensorIDs == null || "".equals(unParsedSensorIDs)) ? new String[]{} : unParsedSensorIDs.split(Constants.STATUS_POLLING_SENSOR_IDS_SEPARATOR);
-      
-      Set<Integer> pollingSensorIDs = new TreeSet<Integer>();
-      for (String pollingSensorID : sensorIDs) {
-         try {
-            pollingSensorIDs.add(Integer.parseInt(pollingSensorID));
-         } catch (NumberFormatException e) {
-            throw new NoSuchComponentException("The sensor id '" + pollingSensorID + "' should be digit", e);
-         }
-      }
-      String orderedSensorIDs = pollingSensorIDs.toString();
-      String changedStatusRecordKey = deviceID+"-"+orderedSensorIDs;
+      Map<Integer, String> skipState;
+      ChangedStatusRecord changedStateRecord = findOrInsertRecord(deviceID, unParsedSensorIDs);
 
-      ChangedStatusRecord changedStateRecord = changedStatusTable.query(changedStatusRecordKey);
-      String tempInfo = "Found: [device => " + deviceID + ", sensorIDs => " + orderedSensorIDs + "] in ChangedStatus table.";
-      logger.info(changedStateRecord == null ? "Not " + tempInfo : tempInfo);
-      
-      if (changedStateRecord == null) {
-         changedStateRecord = new ChangedStatusRecord(changedStatusRecordKey, pollingSensorIDs);
-         changedStatusTable.insert(changedStateRecord);
-      }
-      if (changedStateRecord.getStatusChangedSensorIDs() != null && changedStateRecord.getStatusChangedSensorIDs().size() > 0) {
-         logger.info("Got the skipped sensor ids of statuses in " + changedStateRecord);
-      }
-      
       synchronized (changedStateRecord) {
          boolean willTimeout = false;
          while (changedStateRecord.getStatusChangedSensorIDs() == null || changedStateRecord.getStatusChangedSensorIDs().size() == 0) {
             if (willTimeout) {
                logger.info("Had timeout for waiting status change.");
-               return Constants.SERVER_RESPONSE_TIME_OUT;
+               return null;
             }
             try {
-               logger.info(changedStateRecord + "Waiting...");
-               changedStateRecord.wait(50000);
+               logger.info("{0}Waiting...", changedStateRecord);
+               changedStateRecord.wait(Constants.STATUS_POLLING_TIMEOUT);
                
                if (deployer.isPaused()) {
                   throw new ControllerXMLChangedException("The content of controller.xml had changed.");
@@ -116,39 +157,184 @@ public class StatusPollingServiceImpl implements StatusPollingService {
                willTimeout = true;
             } catch (InterruptedException e) {
                e.printStackTrace();
-               return Constants.SERVER_RESPONSE_TIME_OUT;
+               return null;
             }
          }
          if (willTimeout) {
-            logger.info("Had waited the skipped sensor ids of statuses in " + changedStateRecord);
+            logger.info("Had waited the skipped sensor ids of statuses in {0}", changedStateRecord);
          }
-         skipState = queryChangedStatusesFromCachedStatusTable(changedStateRecord.getStatusChangedSensorIDs());
-         changedStatusTable.resetChangedStatusIDs(changedStatusRecordKey);
+         skipState = takeChangedStatuses(changedStateRecord);
       }
       
       return skipState;
    }
+
+  /**
+   * Asynchronous variant of {@link #queryChangedState(String, String)}. Returns immediately
+   * with the skipped statuses of the panel if there are any, otherwise registers a
+   * {@link ChangedStatusListener} with the panel's changed status record. The listener is
+   * completed on the next status change of one of the polled sensors, or times out after
+   * {@link Constants#STATUS_POLLING_TIMEOUT} milliseconds.
+   */
+  @Override public PollingRequest queryChangedState(String deviceID, String unParsedSensorIDs,
+                                                    final PollingCallback callback)
+  {
+    return queryChangedStatuses(deviceID, unParsedSensorIDs, new StatusCallback()
+    {
+      @Override public void completed(Map<Integer, String> changedStatuses)
+      {
+        callback.completed(
+            changedStatuses == null ? Constants.SERVER_RESPONSE_TIME_OUT : composePollingResult(changedStatuses)
+        );
+      }
+
+      @Override public void failed(ControllerException exception)
+      {
+        callback.failed(exception);
+      }
+    });
+  }
+
+  /**
+   * Asynchronous polling request returning the changed statuses, see
+   * {@link #queryChangedState(String, String, PollingCallback)}.
+   */
+  @Override public PollingRequest queryChangedStatuses(String deviceID, String unParsedSensorIDs,
+                                                       StatusCallback callback)
+  {
+    if (deployer.isPaused())
+    {
+      throw new ControllerXMLChangedException("The content of controller.xml had changed.");
+    }
+
+    ChangedStatusRecord record = findOrInsertRecord(deviceID, unParsedSensorIDs);
+    Map<Integer, String> changedStatuses;
+
+    synchronized (record)
+    {
+      if (record.getStatusChangedSensorIDs().isEmpty())
+      {
+        AsyncPollingRequest request = new AsyncPollingRequest(record, callback);
+
+        try
+        {
+          request.timeout = asyncPollingExecutor.schedule(
+              request, Constants.STATUS_POLLING_TIMEOUT, TimeUnit.MILLISECONDS
+          );
+
+          record.addListener(request);
+          parkedRequests.add(request);
+
+          logger.debug("{0} parked asynchronously.", record);
+
+          return request;
+        }
+
+        catch (RejectedExecutionException e)
+        {
+          // The service has been shut down, answer as if the request timed out...
+
+          logger.debug("Status polling service has been shut down, not parking {0}.", record);
+
+          changedStatuses = null;
+        }
+      }
+
+      else
+      {
+        changedStatuses = takeChangedStatuses(record);
+      }
+    }
+
+    callback.completed(changedStatuses);
+
+    return COMPLETED_REQUEST;
+  }
+
+
+  /**
+   * Cancels all parked asynchronous polling requests and stops the async polling threads.
+   * Invoked when the controller's service context is closed.
+   */
+  public void shutdown()
+  {
+    for (AsyncPollingRequest request : parkedRequests)
+    {
+      request.cancel();
+    }
+
+    asyncPollingExecutor.shutdownNow();
+
+    logger.info("Status polling service shut down.");
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  /**
+   * Returns the changed status record of the given panel and sensors, inserting a new record
+   * if the panel has not polled these sensors before.
+   */
+  private ChangedStatusRecord findOrInsertRecord(String deviceID, String unParsedSensorIDs)
+  {
+      String[] sensorIDs = (unParsedSensorIDs == null || "".equals(unParsedSensorIDs)) ? new String[]{} : unParsedSensorIDs.split(Constants.STATUS_POLLING_SENSOR_IDS_SEPARATOR);
+      
+      Set<Integer> pollingSensorIDs = new TreeSet<Integer>();
+      for (String pollingSensorID : sensorIDs) {
+         try {
+            pollingSensorIDs.add(Integer.parseInt(pollingSensorID));
+         } catch (NumberFormatException e) {
+            throw new NoSuchComponentException("The sensor id '" + pollingSensorID + "' should be digit", e);
+         }
+      }
+      String orderedSensorIDs = pollingSensorIDs.toString();
+      String changedStatusRecordKey = deviceID+"-"+orderedSensorIDs;
+
+      ChangedStatusRecord changedStateRecord = changedStatusTable.query(changedStatusRecordKey);
+      logger.info(changedStateRecord == null ? "Not Found: [device => {0}, sensorIDs => {1}] in ChangedStatus table." :
+            "Found: [device => {0}, sensorIDs => {1}] in ChangedStatus table.", deviceID, orderedSensorIDs);
+      
+      if (changedStateRecord == null) {
+         changedStateRecord = new ChangedStatusRecord(changedStatusRecordKey, pollingSensorIDs);
+         changedStatusTable.insert(changedStateRecord);
+      }
+      if (changedStateRecord.getStatusChangedSensorIDs() != null && changedStateRecord.getStatusChangedSensorIDs().size() > 0) {
+         logger.info("Got the skipped sensor ids of statuses in {0}", changedStateRecord);
+      }
+
+      return changedStateRecord;
+  }
+
+  /**
+   * Returns the changed statuses of a record and resets its changed sensor IDs. Callers must
+   * hold the record's lock.
+   */
+  private Map<Integer, String> takeChangedStatuses(ChangedStatusRecord record)
+  {
+    Map<Integer, String> changedStatuses = queryChangedStatusesFromCachedStatusTable(record.getStatusChangedSensorIDs());
+    changedStatusTable.resetChangedStatusIDs(record.getRecordKey());
+
+    return changedStatuses;
+  }
    
    /**
     * Query the changed statuses from CachedStatusTable with changedSensorIDs of ChangedStatusRecord. 
     */
-   private String queryChangedStatusesFromCachedStatusTable(Set<Integer> statusChangedIDs) {
+   private Map<Integer, String> queryChangedStatusesFromCachedStatusTable(Set<Integer> statusChangedIDs) {
       logger.info("Querying changed data from StatusCache...");
       PollingData pollingData = new PollingData(statusChangedIDs);
       Map<Integer, String> changedStatuses = statusCache.queryStatus(pollingData.getSensorIDs());
-      pollingData.setChangedStatuses(changedStatuses);
       logger.info("Have queried changed data from StatusCache.");
-      return composePollingResult(pollingData);
+      return changedStatuses;
    }
    
    /**
     * compose the changed statuses into xml-formatted data.
     */
-   private String composePollingResult(PollingData pollingResult) {
+   private String composePollingResult(Map<Integer, String> changedStatuses) {
       StringBuffer sb = new StringBuffer();
       sb.append(Constants.STATUS_XML_HEADER);
       
-      Map<Integer, String> changedStatuses = pollingResult.getChangedStatuses();
       if (changedStatuses == null) {
          return "";
       }
@@ -179,4 +365,139 @@ public class StatusPollingServiceImpl implements StatusPollingService {
      this.statusCache = statusCache;
   }
 
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * A parked asynchronous polling request. Registered as a one-shot listener with the panel's
+   * changed status record and as a timeout task with the async polling executor, whichever
+   * fires first completes the callback, unless the request is cancelled before.
+   */
+  private class AsyncPollingRequest implements ChangedStatusListener, Runnable, PollingRequest
+  {
+    private ChangedStatusRecord record;
+    private StatusCallback callback;
+    private AtomicBoolean completed = new AtomicBoolean(false);
+
+    /** Guarded by the record's lock */
+    private ScheduledFuture<?> timeout;
+
+    private AsyncPollingRequest(ChangedStatusRecord record, StatusCallback callback)
+    {
+      this.record = record;
+      this.callback = callback;
+    }
+
+    /**
+     * Invoked on the thread recording the status change, hands the completion over to the
+     * async polling executor.
+     */
+    @Override public void statusChanged(ChangedStatusRecord record)
+    {
+      try
+      {
+        asyncPollingExecutor.execute(new Runnable()
+        {
+          @Override public void run()
+          {
+            complete();
+          }
+        });
+      }
+
+      catch (RejectedExecutionException e)
+      {
+        logger.debug("Status polling service has been shut down, dropped change of {0}.", record);
+      }
+    }
+
+    /**
+     * Unregisters this request from the record and cancels its timeout. Changes consumed by
+     * this request are left in the record.
+     */
+    @Override public boolean cancel()
+    {
+      synchronized (record)
+      {
+        if (!completed.compareAndSet(false, true))
+        {
+          return false;
+        }
+
+        record.removeListener(this);
+        timeout.cancel(false);
+      }
+
+      parkedRequests.remove(this);
+
+      logger.debug("Asynchronous polling of {0} cancelled.", record);
+
+      return true;
+    }
+
+    /**
+     * Polling timeout.
+     */
+    @Override public void run()
+    {
+      synchronized (record)
+      {
+        record.removeListener(this);
+      }
+
+      if (completed.compareAndSet(false, true))
+      {
+        parkedRequests.remove(this);
+
+        logger.debug("Asynchronous polling of {0} timed out.", record);
+
+        callback.completed(null);
+      }
+    }
+
+    private void complete()
+    {
+      Map<Integer, String> changedStatuses;
+      boolean paused;
+
+      synchronized (record)
+      {
+        if (completed.get())
+        {
+          return;
+        }
+
+        // Another polling request with the same key may have consumed the changes already...
+
+        if (record.getStatusChangedSensorIDs().isEmpty())
+        {
+          record.addListener(this);
+
+          return;
+        }
+
+        if (!completed.compareAndSet(false, true))
+        {
+          return;
+        }
+
+        timeout.cancel(false);
+        parkedRequests.remove(this);
+
+        paused = deployer.isPaused();
+        changedStatuses = paused ? null : takeChangedStatuses(record);
+      }
+
+      if (paused)
+      {
+        callback.failed(new ControllerXMLChangedException("The content of controller.xml had changed."));
+      }
+
+      else
+      {
+        callback.completed(changedStatuses);
+      }
+    }
+  }
+
 }
@@ -0,0 +1,434 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.service.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openremote.controller.Constants;
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.exception.NoSuchComponentException;
+import org.openremote.controller.service.Deployer;
+import org.openremote.controller.service.StatusStreamService;
+import org.openremote.controller.statuscache.ChangedStatusListener;
+import org.openremote.controller.statuscache.ChangedStatusRecord;
+import org.openremote.controller.statuscache.ChangedStatusTable;
+import org.openremote.controller.statuscache.StatusCache;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * Status stream implementation on top of the {@link ChangedStatusTable} used by status polling.
+ * Each subscription owns a changed status record with a unique key. Instead of a polling
+ * request waiting on the record, the subscription stays registered as a
+ * {@link ChangedStatusListener}: on each notification the changed sensor IDs are collected,
+ * the listener is re-registered and the current values of the changed sensors are pushed to the
+ * subscriber. <p>
+ *
+ * Notifications are delivered on a small pool of daemon threads, never on the thread that
+ * updated the status cache. Deliveries to a single subscriber are serialized and always carry
+ * the latest value of each changed sensor, so a slow subscriber receives fewer, merged updates
+ * rather than a growing backlog.
+ */
+public class StatusStreamServiceImpl implements StatusStreamService
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Default interval in milliseconds of heartbeats sent to idle subscribers. Shorter than the
+   * usual idle timeouts of proxies and NAT gateways.
+   */
+  public final static long DEFAULT_HEARTBEAT_INTERVAL = 25000;
+
+  /**
+   * Number of threads delivering status changes to subscribers.
+   */
+  private final static int DELIVERY_THREADS = 2;
+
+  /**
+   * Key prefix of the changed status records of stream subscriptions.
+   */
+  private final static String RECORD_KEY_PREFIX = "stream-";
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  private final static Logger log = Logger.getLogger(Constants.RUNTIME_STATECACHE_LOG_CATEGORY);
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private ChangedStatusTable changedStatusTable;
+
+  private StatusCache statusCache;
+
+  private Deployer deployer;
+
+  private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+
+  private AtomicLong subscriptionCounter = new AtomicLong(0);
+
+  /**
+   * Subscriptions that have not been cancelled.
+   */
+  private Set<StatusSubscription> activeSubscriptions =
+      Collections.newSetFromMap(new ConcurrentHashMap<StatusSubscription, Boolean>());
+
+  private ScheduledThreadPoolExecutor executor =
+      new ScheduledThreadPoolExecutor(DELIVERY_THREADS, new ThreadFactory()
+      {
+        private AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override public Thread newThread(Runnable runnable)
+        {
+          Thread thread = OpenRemoteRuntime.createThread(
+              "Status stream " + threadNumber.getAndIncrement(), runnable
+          );
+
+          thread.setDaemon(true);
+
+          return thread;
+        }
+      });
+
+
+  // Implements StatusStreamService ---------------------------------------------------------------
+
+  @Override public Subscription subscribe(String unParsedSensorIDs, StatusStreamListener listener)
+  {
+    Set<Integer> sensorIDs = parseSensorIDs(unParsedSensorIDs);
+
+    String key = RECORD_KEY_PREFIX + subscriptionCounter.incrementAndGet() + "-" + sensorIDs;
+
+    ChangedStatusRecord record = new ChangedStatusRecord(key, sensorIDs);
+    StatusSubscription subscription = new StatusSubscription(record, listener);
+
+    changedStatusTable.insert(record);
+    activeSubscriptions.add(subscription);
+
+    subscription.start();
+
+    log.debug("Status stream subscription {0} started.", key);
+
+    return subscription;
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * @return  number of subscriptions that have not been cancelled
+   */
+  public int getActiveSubscriptionCount()
+  {
+    return activeSubscriptions.size();
+  }
+
+  /**
+   * Closes all open subscriptions, notifying their listeners, and stops the delivery threads.
+   * Invoked when the controller's service context is closed.
+   */
+  public void shutdown()
+  {
+    for (StatusSubscription subscription : activeSubscriptions)
+    {
+      subscription.close();
+    }
+
+    executor.shutdownNow();
+
+    log.info("Status stream service shut down.");
+  }
+
+
+  // Service Dependencies -------------------------------------------------------------------------
+
+  public void setChangedStatusTable(ChangedStatusTable changedStatusTable)
+  {
+    this.changedStatusTable = changedStatusTable;
+  }
+
+  public void setStatusCache(StatusCache statusCache)
+  {
+    this.statusCache = statusCache;
+  }
+
+  public void setDeployer(Deployer deployer)
+  {
+    this.deployer = deployer;
+  }
+
+  /**
+   * @param heartbeatInterval   interval in milliseconds of heartbeats sent to subscribers
+   */
+  public void setHeartbeatInterval(long heartbeatInterval)
+  {
+    this.heartbeatInterval = heartbeatInterval;
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private Set<Integer> parseSensorIDs(String unParsedSensorIDs)
+  {
+    Set<Integer> sensorIDs = new TreeSet<Integer>();
+
+    if (unParsedSensorIDs == null || "".equals(unParsedSensorIDs))
+    {
+      throw new NoSuchComponentException("No sensor IDs to subscribe to.");
+    }
+
+    for (String sensorID : unParsedSensorIDs.split(Constants.STATUS_POLLING_SENSOR_IDS_SEPARATOR))
+    {
+      try
+      {
+        sensorIDs.add(Integer.parseInt(sensorID.trim()));
+      }
+
+      catch (NumberFormatException e)
+      {
+        throw new NoSuchComponentException("The sensor id '" + sensorID + "' should be digit", e);
+      }
+    }
+
+    return sensorIDs;
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private class StatusSubscription implements Subscription, ChangedStatusListener
+  {
+    private ChangedStatusRecord record;
+
+    private StatusStreamListener listener;
+
+    private AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    /**
+     * Set while a delivery task for this subscription is queued, so that a burst of changes
+     * results in a single delivery.
+     */
+    private AtomicBoolean deliveryScheduled = new AtomicBoolean(false);
+
+    private volatile ScheduledFuture<?> heartbeat;
+
+    private StatusSubscription(ChangedStatusRecord record, StatusStreamListener listener)
+    {
+      this.record = record;
+      this.listener = listener;
+    }
+
+    /**
+     * Registers with the changed status record, sends the initial statuses and starts the
+     * heartbeat.
+     */
+    private void start()
+    {
+      synchronized (this)
+      {
+        synchronized (record)
+        {
+          record.addListener(this);
+        }
+
+        deliver(statusCache.queryStatus(record.getPollingSensorIDs()));
+      }
+
+      try
+      {
+        heartbeat = executor.scheduleWithFixedDelay(new Runnable()
+        {
+          @Override public void run()
+          {
+            sendHeartbeat();
+          }
+        }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+      }
+
+      catch (RejectedExecutionException e)
+      {
+        log.debug("Status stream service has been shut down, closing {0}.", record.getRecordKey());
+
+        close();
+
+        return;
+      }
+
+      if (cancelled.get())
+      {
+        heartbeat.cancel(false);
+      }
+    }
+
+    @Override public void statusChanged(ChangedStatusRecord record)
+    {
+      if (deliveryScheduled.compareAndSet(false, true))
+      {
+        try
+        {
+          executor.execute(new Runnable()
+          {
+            @Override public void run()
+            {
+              deliverChanges();
+            }
+          });
+        }
+
+        catch (RejectedExecutionException e)
+        {
+          log.debug("Status stream service has been shut down, dropped change of {0}.", record.getRecordKey());
+        }
+      }
+    }
+
+    @Override public void cancel()
+    {
+      end();
+    }
+
+    /**
+     * Cancels the subscription and tells the listener that the stream has ended.
+     */
+    private void close()
+    {
+      if (end())
+      {
+        listener.streamClosed();
+      }
+    }
+
+    /**
+     * Stops the heartbeat and removes the subscription's record.
+     *
+     * @return  true if the subscription was ended by this call, false if it had already ended
+     */
+    private boolean end()
+    {
+      if (!cancelled.compareAndSet(false, true))
+      {
+        return false;
+      }
+
+      ScheduledFuture<?> task = heartbeat;
+
+      if (task != null)
+      {
+        task.cancel(false);
+      }
+
+      changedStatusTable.remove(record.getRecordKey());
+      activeSubscriptions.remove(this);
+
+      log.debug("Status stream subscription {0} cancelled.", record.getRecordKey());
+
+      return true;
+    }
+
+    private synchronized void deliverChanges()
+    {
+      deliveryScheduled.set(false);
+
+      if (cancelled.get())
+      {
+        return;
+      }
+
+      Set<Integer> changedSensorIDs;
+
+      synchronized (record)
+      {
+        changedSensorIDs = new HashSet<Integer>(record.getStatusChangedSensorIDs());
+        record.getStatusChangedSensorIDs().clear();
+
+        record.addListener(this);
+      }
+
+      // Status cache wakes up all records when the controller definition is being
+      // redeployed, sensor IDs may not be valid anymore afterwards...
+
+      if (deployer != null && deployer.isPaused())
+      {
+        close();
+
+        return;
+      }
+
+      if (!changedSensorIDs.isEmpty())
+      {
+        deliver(statusCache.queryStatus(changedSensorIDs));
+      }
+    }
+
+    private synchronized void sendHeartbeat()
+    {
+      if (cancelled.get())
+      {
+        return;
+      }
+
+      record.touch();
+
+      try
+      {
+        listener.heartbeat();
+      }
+
+      catch (IOException e)
+      {
+        log.debug("Status stream subscriber {0} has gone away : {1}", record.getRecordKey(), e.getMessage());
+
+        cancel();
+      }
+    }
+
+    private void deliver(Map<Integer, String> statuses)
+    {
+      record.touch();
+
+      try
+      {
+        listener.statusChanged(statuses);
+      }
+
+      catch (IOException e)
+      {
+        log.debug("Status stream subscriber {0} has gone away : {1}", record.getRecordKey(), e.getMessage());
+
+        cancel();
+      }
+    }
+  }
+}
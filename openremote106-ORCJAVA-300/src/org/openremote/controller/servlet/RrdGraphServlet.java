@@ -16,11 +16,8 @@
  */
 package org.openremote.controller.servlet;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -31,11 +28,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.openremote.controller.spring.SpringContext;
 import org.openremote.controller.statuscache.rrd4j.Rrd4jDataLogger;
+import org.openremote.controller.statuscache.rrd4j.RrdGraphRenderer;
 import org.openremote.controller.utils.Strings;
-import org.rrd4j.graph.RrdGraph;
-import org.rrd4j.graph.RrdGraphDef;
-import org.rrd4j.graph.RrdGraphDefTemplate;
-import org.springframework.util.FileCopyUtils;
 
 /**
  * 
@@ -49,7 +43,7 @@ public class RrdGraphServlet extends HttpServlet {
     * 
     */
    private static final long serialVersionUID = 458348209402500938L;
-   private SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HH-mm");
+   private static final String DATE_FORMAT = "yyyyMMdd-HH-mm";
 
    // HttpServlet Implementation -------------------------------------------------------------------
 
@@ -62,64 +56,50 @@ public class RrdGraphServlet extends HttpServlet {
       String width = request.getParameter("width");
       String height = request.getParameter("height");
 
-      File a = File.createTempFile("OR_RrdGraph_", null);
-      a.deleteOnExit();
-
       SpringContext sc = SpringContext.getInstance();
 
       Rrd4jDataLogger rrd4j = (Rrd4jDataLogger) sc.getBean("rrd4jLogger");
-      String graphDef = rrd4j.getGraphDef(graphName);
-      RrdGraphDefTemplate temp = new RrdGraphDefTemplate(graphDef);
+      RrdGraphRenderer renderer = rrd4j.getGraphRenderer();
+      if (renderer == null || graphName == null || !renderer.hasGraph(graphName)) {
+         response.sendError(HttpServletResponse.SC_NOT_FOUND, graphName);
+         return;
+      }
 
+      byte[] image;
       try {
-         RrdGraphDef gdef = temp.getRrdGraphDef();
-         gdef.setFilename(a.getAbsolutePath());
-         Date startDate = null;
-         Date endDate = null;
          Date now = new Date();
-         if (start != null) {
-            if (start.startsWith("+") || start.startsWith(" ")) {
-               startDate = new Date(now.getTime()+Strings.convertPollingIntervalString(start.substring(1)));
-            } else if (start.startsWith("-")) {
-               startDate = new Date(now.getTime()-Strings.convertPollingIntervalString(start.substring(1)));
-            } else {
-               startDate = df.parse(start);
-            }
-            gdef.setStartTime(startDate.getTime()/1000);
-         }
-         if (end != null) {
-            if (end.startsWith("+") || end.startsWith(" ")) {
-               endDate = new Date(now.getTime()+Strings.convertPollingIntervalString(end.substring(1)));
-            } else if (end.startsWith("-")) {
-               endDate = new Date(now.getTime()-Strings.convertPollingIntervalString(end.substring(1)));
-            } else {
-               endDate = df.parse(end);
-            }
-            if ((startDate != null) && (endDate.compareTo(startDate) <= 0)) {
-               response.getWriter().print("End-Date has to be after Start-Date");
-               return;
-            }
-            gdef.setEndTime(endDate.getTime()/1000);
-         }
-         gdef.setWidth((width==null)?800:(Integer.parseInt(width)));
-         gdef.setHeight((height==null)?400:(Integer.parseInt(height)));
-         gdef.setImageFormat("PNG");
-         RrdGraph g = new RrdGraph(gdef);
-         BufferedImage bi = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
-         g.render(bi.getGraphics());
-
-         String relativePath = request.getPathInfo();
-         InputStream is = new FileInputStream(a);
-         if (is != null) {
-            FileCopyUtils.copy(is, response.getOutputStream());
-         } else {
-            response.sendError(HttpServletResponse.SC_NOT_FOUND, relativePath);
+         Date startDate = (start == null) ? null : parseDate(start, now);
+         Date endDate = (end == null) ? null : parseDate(end, now);
+         if ((startDate != null) && (endDate != null) && (endDate.compareTo(startDate) <= 0)) {
+            response.getWriter().print("End-Date has to be after Start-Date");
+            return;
          }
+         image = renderer.render(graphName,
+               (startDate == null) ? null : startDate.getTime() / 1000,
+               (endDate == null) ? null : endDate.getTime() / 1000,
+               (width == null) ? 800 : Integer.parseInt(width),
+               (height == null) ? 400 : Integer.parseInt(height));
       } catch (Exception e) {
-         // TODO Auto-generated catch block
-         e.printStackTrace();
          throw new ServletException(e);
       }
+
+      response.setContentType("image/png");
+      response.setContentLength(image.length);
+      response.getOutputStream().write(image);
+   }
+
+   /**
+    * Parses a time given either as date in 'yyyyMMdd-HH-mm' format or as '+' or '-' offset from now.
+    */
+   private Date parseDate(String value, Date now) throws ParseException {
+      if (value.startsWith("+") || value.startsWith(" ")) {
+         return new Date(now.getTime() + Strings.convertPollingIntervalString(value.substring(1)));
+      } else if (value.startsWith("-")) {
+         return new Date(now.getTime() - Strings.convertPollingIntervalString(value.substring(1)));
+      } else {
+         // SimpleDateFormat is not thread-safe, servlet requests are served concurrently...
+         return new SimpleDateFormat(DATE_FORMAT).parse(value);
+      }
    }
 
 }
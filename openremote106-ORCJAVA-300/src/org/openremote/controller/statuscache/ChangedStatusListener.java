@@ -0,0 +1,42 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.statuscache;
+
+/**
+ * A one-shot callback registered with a {@link ChangedStatusRecord} by a polling request that
+ * does not block a thread while waiting for a status change. <p>
+ *
+ * When one of the record's sensors changes, {@link ChangedStatusTable} removes all registered
+ * listeners from the record and notifies them outside of the record's lock. A listener that
+ * wants to keep waiting must register itself again.
+ *
+ * @see ChangedStatusRecord#addListener(ChangedStatusListener)
+ */
+public interface ChangedStatusListener
+{
+
+  /**
+   * Invoked when one of the polled sensors of the record has changed.
+   *
+   * @param record  the record with the changed sensor IDs
+   */
+  void statusChanged(ChangedStatusRecord record);
+}
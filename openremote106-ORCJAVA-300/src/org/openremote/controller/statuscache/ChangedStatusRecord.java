@@ -20,7 +20,10 @@
  */
 package org.openremote.controller.statuscache;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -52,6 +55,12 @@ public class ChangedStatusRecord
   /** The ids whose status had changed in the statusChangedSensorIDs */
   private Set<Integer> statusChangedSensorIDs = new HashSet<Integer>(3);
 
+  /** Time this record was last used by a polling request, used to evict abandoned records */
+  private volatile long lastAccessed = System.currentTimeMillis();
+
+  /** Asynchronous polling requests waiting for a change, guarded by this record's lock */
+  private List<ChangedStatusListener> listeners = new ArrayList<ChangedStatusListener>(1);
+
 
 
   // Constructors ---------------------------------------------------------------------------------
@@ -88,6 +97,57 @@ public class ChangedStatusRecord
      this.statusChangedSensorIDs = statusChangedSensorIDs;
   }
 
+  /**
+   * Marks this record as used by a polling request.
+   */
+  public void touch()
+  {
+    lastAccessed = System.currentTimeMillis();
+  }
+
+  /**
+   * @return  time in milliseconds this record was last used by a polling request
+   */
+  public long getLastAccessed()
+  {
+    return lastAccessed;
+  }
+
+  /**
+   * Registers a one-shot listener that is notified on the next status change of this record.
+   * Callers must hold this record's lock.
+   */
+  public void addListener(ChangedStatusListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes a previously registered listener. Callers must hold this record's lock.
+   */
+  public void removeListener(ChangedStatusListener listener)
+  {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Removes and returns all registered listeners. Callers must hold this record's lock.
+   *
+   * @return  the listeners registered since the last status change
+   */
+  public List<ChangedStatusListener> removeListeners()
+  {
+    if (listeners.isEmpty())
+    {
+      return Collections.emptyList();
+    }
+
+    List<ChangedStatusListener> removed = listeners;
+    listeners = new ArrayList<ChangedStatusListener>(1);
+
+    return removed;
+  }
+
 
 
   @Override public boolean equals(Object obj)
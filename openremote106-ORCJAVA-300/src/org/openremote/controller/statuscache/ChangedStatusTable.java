@@ -22,7 +22,12 @@ package org.openremote.controller.statuscache;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  *
@@ -52,20 +57,80 @@ import java.util.Map;
  */
 public class ChangedStatusTable
 {
-   
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Default time in milliseconds after which a record that has not been used by any polling
+   * request is evicted. Panels re-poll as soon as a previous request returns and a polling
+   * request waits at most 50 seconds, so a record this old belongs to a panel that has gone away.
+   */
+  public final static long DEFAULT_RECORD_EXPIRY = 5 * 60 * 1000;
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
   private Map<String, ChangedStatusRecord> recordList;
 
+  /**
+   * Reverse index from sensor ID to the records polling that sensor, so that a sensor change
+   * only touches the polling requests that are interested in it.
+   */
+  private Map<Integer, Set<ChangedStatusRecord>> sensorIndex =
+      new ConcurrentHashMap<Integer, Set<ChangedStatusRecord>>();
+
+  private long recordExpiry;
+
+  private long lastEviction = System.currentTimeMillis();
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
   public ChangedStatusTable()
+  {
+    this(DEFAULT_RECORD_EXPIRY);
+  }
+
+  /**
+   * @param recordExpiry  time in milliseconds after which unused records are evicted
+   */
+  public ChangedStatusTable(long recordExpiry)
   {
     recordList = new HashMap<String, ChangedStatusRecord>();
+
+    this.recordExpiry = recordExpiry;
   }
 
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
   /**
-   * Insert a changed status record.
+   * Insert a changed status record. Records that have not been used for longer than the record
+   * expiry time are evicted at the same time.
    */
   public synchronized void insert(ChangedStatusRecord record)
   {
-       recordList.put(record.getRecordKey(), record);
+    evictExpiredRecords();
+
+    ChangedStatusRecord previous = recordList.put(record.getRecordKey(), record);
+
+    if (previous != null)
+    {
+      unindex(previous);
+    }
+
+    for (Integer sensorID : record.getPollingSensorIDs())
+    {
+      Set<ChangedStatusRecord> records = sensorIndex.get(sensorID);
+
+      if (records == null)
+      {
+        records = new CopyOnWriteArraySet<ChangedStatusRecord>();
+        sensorIndex.put(sensorID, records);
+      }
+
+      records.add(record);
+    }
   }
    
   /**
@@ -73,22 +138,44 @@ public class ChangedStatusTable
    */
   public synchronized ChangedStatusRecord query(String key)
   {
-    return recordList.get(key);
-  }
+    ChangedStatusRecord record = recordList.get(key);
 
+    if (record != null)
+    {
+      record.touch();
+    }
 
+    return record;
+  }
 
+  /**
+   * Marks the given sensor as changed in all records polling it, wakes up their waiting
+   * polling requests and completes their asynchronous polling requests.
+   */
   public void updateStatusChangedIDs(Integer statusChangedSensorID)
   {
-    for(ChangedStatusRecord record : recordList.values())
+    Set<ChangedStatusRecord> records = sensorIndex.get(statusChangedSensorID);
+
+    if (records == null)
+    {
+      return;
+    }
+
+    for (ChangedStatusRecord record : records)
     {
+      List<ChangedStatusListener> listeners;
+
       synchronized (record)
       {
-        if (record.getPollingSensorIDs().contains(statusChangedSensorID))
-        {
-           record.getStatusChangedSensorIDs().add(statusChangedSensorID);
-           record.notifyAll();
-        }
+        record.getStatusChangedSensorIDs().add(statusChangedSensorID);
+        record.notifyAll();
+
+        listeners = record.removeListeners();
+      }
+
+      for (ChangedStatusListener listener : listeners)
+      {
+        listener.statusChanged(record);
       }
     }
   }
@@ -106,13 +193,90 @@ public class ChangedStatusTable
     }
   }
 
+  /**
+   * Removes a record and stops recording status changes for it.
+   *
+   * @param key   the record key
+   *
+   * @return  the removed record, or <tt>null</tt> if there was no record with the given key
+   */
+  public synchronized ChangedStatusRecord remove(String key)
+  {
+    ChangedStatusRecord record = recordList.remove(key);
+
+    if (record != null)
+    {
+      unindex(record);
+    }
+
+    return record;
+  }
+
   /**
    * Clear all records
    */
-  public void clearAllRecords()
+  public synchronized void clearAllRecords()
   {
     this.recordList.clear();
+    this.sensorIndex.clear();
   }
 
-   
+  /**
+   * @return  number of records in this table
+   */
+  public synchronized int size()
+  {
+    return recordList.size();
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  /**
+   * Removes records that have not been used by a polling request within the record expiry time.
+   * Runs at most once per expiry period.
+   */
+  private void evictExpiredRecords()
+  {
+    long now = System.currentTimeMillis();
+
+    if (now - lastEviction < recordExpiry)
+    {
+      return;
+    }
+
+    lastEviction = now;
+
+    Iterator<ChangedStatusRecord> it = recordList.values().iterator();
+
+    while (it.hasNext())
+    {
+      ChangedStatusRecord record = it.next();
+
+      if (now - record.getLastAccessed() > recordExpiry)
+      {
+        it.remove();
+
+        unindex(record);
+      }
+    }
+  }
+
+  private void unindex(ChangedStatusRecord record)
+  {
+    for (Integer sensorID : record.getPollingSensorIDs())
+    {
+      Set<ChangedStatusRecord> records = sensorIndex.get(sensorID);
+
+      if (records != null)
+      {
+        records.remove(record);
+
+        if (records.isEmpty())
+        {
+          sensorIndex.remove(sensorID);
+        }
+      }
+    }
+  }
 }
@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.openremote.controller.utils.Logger;
 import org.openremote.controller.Constants;
+import org.openremote.controller.OpenRemoteRuntime;
 import org.openremote.controller.model.Command;
 
 
@@ -40,7 +41,12 @@ import org.openremote.controller.model.Command;
  * configuration. The event which will be stored in the in-memory state cache is the event instance
  * returned by the last processor in the stack. <p>
  *
- * Typical use of event processors is scripting of incoming events, executing rules, logging, etc.
+ * Typical use of event processors is scripting of incoming events, executing rules, logging, etc. <p>
+ *
+ * By default the chain is executed synchronously on the thread that reports the event. When
+ * configured as {@link #setAsynchronous(boolean) asynchronous}, incoming events are stored in
+ * the cache immediately and the processors are executed by an {@link EventProcessorPipeline}
+ * on dedicated threads instead.
  *
  * @see org.openremote.controller.statuscache.EventProcessor
  * @see org.openremote.controller.statuscache.StatusCache
@@ -73,6 +79,27 @@ public class EventProcessorChain
 //  private InitializationContext eventProcessorInitContext;
     private CommandFacade commandFacade;
 
+  /**
+   * Indicates whether the event processors should be executed asynchronously.
+   */
+  private boolean asynchronous = false;
+
+  /**
+   * Maximum number of queued events per processor when executed asynchronously.
+   */
+  private int queueCapacity = EventProcessorPipeline.DEFAULT_QUEUE_CAPACITY;
+
+  /**
+   * Policy for full processor queues when executed asynchronously.
+   */
+  private EventProcessorPipeline.OverflowPolicy overflowPolicy = EventProcessorPipeline.OverflowPolicy.COALESCE;
+
+  /**
+   * The asynchronous processing pipeline while the chain is started in asynchronous mode,
+   * null otherwise.
+   */
+  private volatile EventProcessorPipeline pipeline;
+
 
 
   // Service Dependencies -------------------------------------------------------------------------
@@ -88,6 +115,55 @@ public class EventProcessorChain
     this.processors = processors;
   }
 
+  /**
+   * Configures whether the event processors are executed on the thread reporting an event
+   * (the default) or asynchronously on dedicated threads. <p>
+   *
+   * In asynchronous mode the incoming event value is stored in the cache, and polling clients
+   * are notified, before the processors see the event. Modifications made by the processors are
+   * applied to the cache once all of them have completed but terminating an event no longer
+   * prevents its value from being stored.
+   *
+   * @param asynchronous    true to execute event processors asynchronously
+   */
+  public void setAsynchronous(boolean asynchronous)
+  {
+    this.asynchronous = asynchronous;
+  }
+
+  /**
+   * Sets the maximum number of events queued for each event processor in asynchronous mode.
+   *
+   * @param capacity    queue capacity, non-positive value selects the default
+   */
+  public void setQueueCapacity(int capacity)
+  {
+    this.queueCapacity = capacity;
+  }
+
+  /**
+   * Sets the policy applied when an event processor queue is full in asynchronous mode.
+   *
+   * @see EventProcessorPipeline.OverflowPolicy
+   *
+   * @param policy    either 'coalesce' or 'block'
+   */
+  public void setOverflowPolicy(String policy)
+  {
+    try
+    {
+      this.overflowPolicy = EventProcessorPipeline.OverflowPolicy.valueOf(policy.trim().toUpperCase());
+    }
+
+    catch (IllegalArgumentException e)
+    {
+      log.error(
+          "Unknown event processing overflow policy ''{0}'', using ''{1}''.",
+          policy, overflowPolicy
+      );
+    }
+  }
+
 
   public void createCommandFacade(Set<Command> commands)
   {
@@ -122,6 +198,14 @@ public class EventProcessorChain
         );
       }
     }
+
+    if (asynchronous && !processors.isEmpty())
+    {
+      pipeline = new EventProcessorPipeline(processors, queueCapacity, overflowPolicy);
+      pipeline.start();
+
+      OpenRemoteRuntime.registerManagementBean("EventProcessorPipeline", pipeline);
+    }
   }
 
   public void stop()
@@ -130,6 +214,10 @@ public class EventProcessorChain
 
     Logger initLog = Logger.getLogger(Constants.EVENT_PROCESSOR_INIT_LOG_CATEGORY);
 
+    // Stop feeding events to the processors before they are stopped...
+
+    stopAsynchronousProcessing();
+
     for (EventProcessor ep : processors)
     {
       try
@@ -204,6 +292,45 @@ public class EventProcessorChain
   }
 
 
+  /**
+   * Queues an event for asynchronous processing. The event carried by the context must already
+   * be stored in the cache. Events submitted after the chain has been stopped are ignored.
+   *
+   * @param ctx   event context to process
+   */
+  protected void submit(EventContext ctx)
+  {
+    EventProcessorPipeline current = pipeline;
+
+    if (current != null)
+    {
+      current.submit(ctx);
+    }
+  }
+
+  /**
+   * Stops the asynchronous processing threads, if any. Queued events are discarded. Called as
+   * part of {@link #stop()} but can be invoked earlier if the caller holds resources the
+   * processing threads may be waiting for.
+   */
+  protected synchronized void stopAsynchronousProcessing()
+  {
+    if (pipeline != null)
+    {
+      pipeline.stop();
+
+      pipeline = null;
+    }
+  }
+
+  /**
+   * @return  true if the chain has been started in asynchronous mode
+   */
+  protected boolean isAsynchronous()
+  {
+    return pipeline != null;
+  }
+
   protected CommandFacade getCommandFacade()
   {
     return commandFacade;
@@ -0,0 +1,527 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.statuscache;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openremote.controller.Constants;
+import org.openremote.controller.OpenRemoteRuntime;
+import org.openremote.controller.protocol.Event;
+import org.openremote.controller.utils.Logger;
+
+/**
+ * Runs the event processors of an {@link EventProcessorChain} asynchronously, away from the
+ * sensor threads that report new values to the {@link StatusCache}. <p>
+ *
+ * Each event processor is a stage with its own bounded queue and a dedicated worker thread.
+ * An event is pushed through the stages in the configured processor order, and a stage hands
+ * the event over to the next one once its processor has completed. Since each stage processes
+ * its queue in order on a single thread, the events of any given sensor reach each processor
+ * in the order they were reported, and a processor is never invoked concurrently (as was the
+ * case with the synchronous chain). A slow processor, such as a data logger flushing to disk,
+ * only delays the stages behind it. <p>
+ *
+ * When a stage queue is full the configured {@link OverflowPolicy} applies: either the newest
+ * queued event of the same sensor is replaced with the incoming one, or the event source waits
+ * for space in the queue. The worker threads of the pipeline itself never wait on a full queue
+ * -- event processors may feed new events back into the cache (rules executing commands, for
+ * example) and waiting on their own queues would deadlock the pipeline.
+ *
+ * @see EventProcessorChain#setAsynchronous(boolean)
+ */
+public class EventProcessorPipeline implements EventProcessorPipelineMBean
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Default maximum number of events queued per stage.
+   */
+  public final static int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  /**
+   * Time (in milliseconds) to wait for each stage to complete its current event when the
+   * pipeline is stopped.
+   */
+  public final static long STOP_TIMEOUT = 5000;
+
+
+  // Enums ----------------------------------------------------------------------------------------
+
+  /**
+   * Determines what happens to a new event when a stage queue is full.
+   */
+  public enum OverflowPolicy
+  {
+    /**
+     * Replaces the newest queued event of the same sensor with the new event. Intermediate
+     * values of a fast changing sensor may not be seen by all processors but the latest value
+     * always is. If no event of the same sensor is queued, the event source waits as with
+     * {@link #BLOCK}.
+     */
+    COALESCE,
+
+    /**
+     * The event source waits until the stage has room for the new event. No events are lost
+     * but sensor threads may be slowed down to the pace of the slowest processor.
+     */
+    BLOCK
+  }
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * <b>Runtime</b> log category for event processing.
+   */
+  private final static Logger log = Logger.getLogger(Constants.RUNTIME_STATECACHE_LOG_CATEGORY);
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * Processing stages, one per event processor, in the order of the processor chain.
+   */
+  private List<Stage> stages;
+
+  /**
+   * Maximum number of events queued per stage.
+   */
+  private int queueCapacity;
+
+  /**
+   * Policy applied when a stage queue is full.
+   */
+  private OverflowPolicy overflowPolicy;
+
+  /**
+   * Indicates whether the stage threads are accepting and processing events.
+   */
+  private volatile boolean running = false;
+
+  /**
+   * Number of events that have passed through all stages.
+   */
+  private AtomicLong processedEvents = new AtomicLong(0);
+
+  /**
+   * Number of queued events replaced by a newer event of the same sensor.
+   */
+  private AtomicLong coalescedEvents = new AtomicLong(0);
+
+  /**
+   * Number of times an event source waited on a full stage queue.
+   */
+  private AtomicLong blockedEvents = new AtomicLong(0);
+
+  /**
+   * Number of events terminated by event processors.
+   */
+  private AtomicLong terminatedEvents = new AtomicLong(0);
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Constructs a new pipeline for the given event processors. The pipeline does not process
+   * events until it has been {@link #start() started}.
+   *
+   * @param processors      ordered list of event processors, one stage is created per processor
+   * @param queueCapacity   maximum number of events queued per stage, non-positive value selects
+   *                        the {@link #DEFAULT_QUEUE_CAPACITY default}
+   * @param overflowPolicy  policy applied when a stage queue is full, if null
+   *                        {@link OverflowPolicy#COALESCE} is used
+   */
+  public EventProcessorPipeline(List<EventProcessor> processors, int queueCapacity,
+                                OverflowPolicy overflowPolicy)
+  {
+    this.queueCapacity = (queueCapacity <= 0) ? DEFAULT_QUEUE_CAPACITY : queueCapacity;
+    this.overflowPolicy = (overflowPolicy == null) ? OverflowPolicy.COALESCE : overflowPolicy;
+    this.stages = new ArrayList<Stage>(processors.size());
+
+    Stage next = null;
+
+    for (int index = processors.size() - 1; index >= 0; --index)
+    {
+      next = new Stage(processors.get(index), next);
+
+      stages.add(0, next);
+    }
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Starts the worker threads of all stages.
+   */
+  public void start()
+  {
+    running = true;
+
+    for (Stage stage : stages)
+    {
+      stage.thread.start();
+    }
+
+    log.info(
+        "Started asynchronous event processing with {0} stages (queue capacity {1}, overflow policy {2}).",
+        stages.size(), queueCapacity, overflowPolicy
+    );
+  }
+
+  /**
+   * Stops the worker threads. Events still queued are discarded. Waits up to
+   * {@link #STOP_TIMEOUT} milliseconds per stage for the event currently being processed.
+   */
+  public void stop()
+  {
+    running = false;
+
+    int discarded = 0;
+
+    for (Stage stage : stages)
+    {
+      discarded += stage.clear();
+    }
+
+    for (Stage stage : stages)
+    {
+      try
+      {
+        stage.thread.join(STOP_TIMEOUT);
+      }
+
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+
+        break;
+      }
+    }
+
+    log.info("Stopped asynchronous event processing, discarded {0} queued events.", discarded);
+  }
+
+
+  // Implements EventProcessorPipelineMBean -------------------------------------------------------
+
+  @Override public int getQueueCapacity()
+  {
+    return queueCapacity;
+  }
+
+  @Override public String getOverflowPolicy()
+  {
+    return overflowPolicy.name();
+  }
+
+  @Override public String[] getQueuedEvents()
+  {
+    String[] queued = new String[stages.size()];
+
+    for (int index = 0; index < stages.size(); ++index)
+    {
+      Stage stage = stages.get(index);
+
+      queued[index] = stage.processor.getName() + " : " + stage.size();
+    }
+
+    return queued;
+  }
+
+  @Override public long getProcessedEventCount()
+  {
+    return processedEvents.get();
+  }
+
+  @Override public long getCoalescedEventCount()
+  {
+    return coalescedEvents.get();
+  }
+
+  @Override public long getBlockedEventCount()
+  {
+    return blockedEvents.get();
+  }
+
+  @Override public long getTerminatedEventCount()
+  {
+    return terminatedEvents.get();
+  }
+
+  @Override public void resetStatistics()
+  {
+    processedEvents.set(0);
+    coalescedEvents.set(0);
+    blockedEvents.set(0);
+    terminatedEvents.set(0);
+  }
+
+
+  // Protected Instance Methods -------------------------------------------------------------------
+
+  /**
+   * Queues an event for processing. The event carried by the context is expected to already
+   * be stored in the device state cache -- once all stages have completed, any modification
+   * the processors made is applied to the cache.
+   *
+   * @param ctx   event context of the event to process
+   */
+  protected void submit(EventContext ctx)
+  {
+    if (stages.isEmpty())
+    {
+      return;
+    }
+
+    stages.get(0).enqueue(new PendingEvent(ctx));
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private boolean isStageThread(Thread thread)
+  {
+    for (Stage stage : stages)
+    {
+      if (stage.thread == thread)
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private void complete(PendingEvent pending)
+  {
+    processedEvents.incrementAndGet();
+
+    pending.ctx.getDeviceStateCache().applyProcessedEvent(
+        pending.original, pending.originalValue, pending.ctx
+    );
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * An event travelling through the stages, along with the state it was stored in the cache with.
+   */
+  private static class PendingEvent
+  {
+    private EventContext ctx;
+    private Event original;
+    private String originalValue;
+
+    private PendingEvent(EventContext ctx)
+    {
+      this.ctx = ctx;
+      this.original = ctx.getEvent();
+      this.originalValue = original.serialize();
+    }
+  }
+
+
+  /**
+   * A single event processor with its event queue and worker thread.
+   */
+  private class Stage implements Runnable
+  {
+    private EventProcessor processor;
+    private Stage next;
+    private LinkedList<PendingEvent> queue = new LinkedList<PendingEvent>();
+    private Thread thread;
+
+    private Stage(EventProcessor processor, Stage next)
+    {
+      this.processor = processor;
+      this.next = next;
+      this.thread = OpenRemoteRuntime.createThread("Event Processor - " + processor.getName(), this);
+
+      thread.setDaemon(true);
+    }
+
+    private void enqueue(PendingEvent pending)
+    {
+      synchronized (queue)
+      {
+        if (queue.size() >= queueCapacity)
+        {
+          if (overflowPolicy == OverflowPolicy.COALESCE && coalesce(pending))
+          {
+            return;
+          }
+
+          if (!isStageThread(Thread.currentThread()))
+          {
+            blockedEvents.incrementAndGet();
+
+            try
+            {
+              while (running && queue.size() >= queueCapacity)
+              {
+                queue.wait();
+              }
+            }
+
+            catch (InterruptedException e)
+            {
+              Thread.currentThread().interrupt();
+            }
+          }
+        }
+
+        if (!running)
+        {
+          log.debug(
+              "Event processing has been stopped. Event {0} was not processed by ''{1}''.",
+              pending.original, processor.getName()
+          );
+
+          return;
+        }
+
+        queue.addLast(pending);
+        queue.notifyAll();
+      }
+    }
+
+    private boolean coalesce(PendingEvent pending)
+    {
+      Integer sensorID = pending.original.getSourceID();
+      ListIterator<PendingEvent> it = queue.listIterator(queue.size());
+
+      while (it.hasPrevious())
+      {
+        if (it.previous().original.getSourceID().equals(sensorID))
+        {
+          it.set(pending);
+
+          coalescedEvents.incrementAndGet();
+
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    private int size()
+    {
+      synchronized (queue)
+      {
+        return queue.size();
+      }
+    }
+
+    private int clear()
+    {
+      synchronized (queue)
+      {
+        int discarded = queue.size();
+
+        queue.clear();
+        queue.notifyAll();
+
+        return discarded;
+      }
+    }
+
+    @Override public void run()
+    {
+      while (running)
+      {
+        PendingEvent pending;
+
+        synchronized (queue)
+        {
+          try
+          {
+            while (running && queue.isEmpty())
+            {
+              queue.wait();
+            }
+          }
+
+          catch (InterruptedException e)
+          {
+            return;
+          }
+
+          if (!running)
+          {
+            return;
+          }
+
+          pending = queue.removeFirst();
+
+          queue.notifyAll();
+        }
+
+        process(pending);
+      }
+    }
+
+    private void process(PendingEvent pending)
+    {
+      try
+      {
+        processor.push(pending.ctx);
+      }
+
+      catch (Throwable t)
+      {
+        log.error(
+            "Event processor ''{0}'' failed to process {1} : {2}",
+            t, processor.getName(), pending.ctx.getEvent(), t.getMessage()
+        );
+      }
+
+      if (pending.ctx.hasTerminated())
+      {
+        terminatedEvents.incrementAndGet();
+
+        log.debug(
+            "Event {0} was terminated by ''{1}''. The value already stored in device state " +
+            "cache is not reverted.", pending.ctx.getEvent(), processor.getName()
+        );
+
+        return;
+      }
+
+      if (next != null)
+      {
+        next.enqueue(pending);
+      }
+
+      else
+      {
+        complete(pending);
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.statuscache;
+
+/**
+ * Management interface for {@link EventProcessorPipeline}. Exposes the queue depth and overflow
+ * counters of the asynchronous event processing stages.
+ */
+public interface EventProcessorPipelineMBean
+{
+
+  /**
+   * @return  maximum number of events queued per processing stage
+   */
+  int getQueueCapacity();
+
+  /**
+   * @return  the configured overflow policy, either COALESCE or BLOCK
+   */
+  String getOverflowPolicy();
+
+  /**
+   * @return  number of events currently queued in each stage, one entry per event processor
+   */
+  String[] getQueuedEvents();
+
+  /**
+   * @return  total number of events that have passed through all processing stages
+   */
+  long getProcessedEventCount();
+
+  /**
+   * @return  number of queued events replaced by a newer event of the same sensor because
+   *          a stage queue was full
+   */
+  long getCoalescedEventCount();
+
+  /**
+   * @return  number of times an event source had to wait for space in a full stage queue
+   */
+  long getBlockedEventCount();
+
+  /**
+   * @return  number of events terminated by an event processor
+   */
+  long getTerminatedEventCount();
+
+  /**
+   * Clears the event counters.
+   */
+  void resetStatistics();
+}
@@ -161,6 +161,58 @@ public class StatusCache
 
 
 
+  /**
+   * Stops a registered sensor and removes it and its current state from this cache. Polling
+   * requests waiting on the sensor are woken up. Used when redeploying a changed controller
+   * definition without a full {@link #shutdown()}.
+   *
+   * @param id    sensor ID
+   *
+   * @return      the removed sensor, or null if no sensor was registered with the given ID
+   */
+  public Sensor unregisterSensor(int id)
+  {
+    Sensor sensor;
+
+    synchronized (this)
+    {
+      sensor = sensors.remove(id);
+
+      if (sensor == null)
+      {
+        return null;
+      }
+
+      sensorMap.remove(sensor);
+    }
+
+    // Stop outside the lock, sensor threads may be waiting to update this cache...
+
+    stopSensor(sensor);
+
+    Logger.getLogger(Constants.SENSOR_INIT_LOG_CATEGORY).info("Unregistered sensor : {0}", sensor);
+
+    return sensor;
+  }
+
+  /**
+   * Stops and restarts the event processors of this cache. Used when the command model the
+   * processors were started with has been replaced by {@link #initializeEventContext}.
+   */
+  public void restartEventProcessors()
+  {
+    // Asynchronous processing threads may be waiting on this cache, see shutdown()...
+
+    eventProcessorChain.stopAsynchronousProcessing();
+
+    synchronized (this)
+    {
+      eventProcessorChain.stop();
+      eventProcessorChain.start();
+    }
+  }
+
+
   /**
    * Returns a sensor instance associated with the given ID.
    *
@@ -183,8 +235,8 @@ public class StatusCache
 
 
   /**
-   * Performs a state cache cleanup at shut down. This method is synchronized, preventing
-   * concurrent thread access to shutdown steps. <p>
+   * Performs a state cache cleanup at shut down. The shutdown steps are synchronized, preventing
+   * concurrent thread access to them. <p>
    *
    * Part of the shutdown of state cache:
    * <ul>
@@ -199,8 +251,14 @@ public class StatusCache
    * Once the shutdown is completed, this cache instance can be discarded. There's no corresponding
    * start operation to allow reuse of this object.
    */
-  public synchronized void shutdown()
+  public void shutdown()
   {
+    // Asynchronous event processing threads may be waiting on this cache instance to apply
+    // their results, stop them before locking...
+
+    eventProcessorChain.stopAsynchronousProcessing();
+
+    synchronized (this)
     {
       try
       {
@@ -227,51 +285,77 @@ public class StatusCache
   /**
    * Updates an incoming event value into cache. <p>
    *
+   * When the event processor chain is executed synchronously, the event is pushed through the
+   * processors first and the value stored in the cache is the one returned by the last processor.
+   * When the chain is {@link EventProcessorChain#setAsynchronous(boolean) asynchronous}, the
+   * incoming value is stored (and polling clients notified) immediately and the event is queued
+   * for the processors -- see {@link #applyProcessedEvent}. <p>
+   *
    * <b>TODO:</b>
    *
-   * This method is currently synchronized to restrict concurrency -- events are processed
+   * Synchronous processing is serialized to restrict concurrency -- events are processed
    * and updated one-by-one. The implications of concurrent event processing through the processors
    * and concurrent updates must be evaluated. See ORCJAVA-205.
    *
    * @param event   the event to process -- the actual value stored in this cache will depend
    *                on the modifications made by event processors associated with this cache
    */
-  public synchronized void update(Event event)
+  public void update(Event event)
   {
+    if (eventProcessorChain.isAsynchronous())
+    {
+      synchronized (this)
+      {
+        if (isShutdownInProcess)
+        {
+          logIgnoredUpdate(event);
 
-    // fail fast on incoming sensor updates, if we want to shut things down already...
+          return;
+        }
 
-    if (isShutdownInProcess)
-    {
-      log.debug(
-          "Device state cache is shutting down. Ignoring update from ''{0}'' (ID = ''{1}'').",
-          event.getSource(), event.getSourceID()
-      );
+        sensorMap.update(event);
+      }
+
+      // Queue outside the lock, an event source may have to wait for the processors to catch up...
+
+      eventProcessorChain.submit(new EventContext(this, event, eventProcessorChain.getCommandFacade()));
 
       return;
     }
 
+    synchronized (this)
+    {
+      // fail fast on incoming sensor updates, if we want to shut things down already...
 
-    // push incoming event through processing chain -- keep the last returned instance including
-    // modifications if any...
+      if (isShutdownInProcess)
+      {
+        logIgnoredUpdate(event);
 
-    EventContext ctx = new EventContext(this, event, eventProcessorChain.getCommandFacade());
+        return;
+      }
 
-    eventProcessorChain.push(ctx);
 
-    // Update the final value...
+      // push incoming event through processing chain -- keep the last returned instance including
+      // modifications if any...
 
-    if (!ctx.hasTerminated())
-    {
-      sensorMap.update(ctx.getEvent());
-    }
+      EventContext ctx = new EventContext(this, event, eventProcessorChain.getCommandFacade());
 
-    else
-    {
-      log.debug(
-          "Event {0} was terminated by event processors. No update was made to device state cache.",
-          ctx.getEvent()
-      );
+      eventProcessorChain.push(ctx);
+
+      // Update the final value...
+
+      if (!ctx.hasTerminated())
+      {
+        sensorMap.update(ctx.getEvent());
+      }
+
+      else
+      {
+        log.debug(
+            "Event {0} was terminated by event processors. No update was made to device state cache.",
+            ctx.getEvent()
+        );
+      }
     }
   }
 
@@ -358,6 +442,60 @@ public class StatusCache
 
 
 
+  // Protected Instance Methods -------------------------------------------------------------------
+
+  /**
+   * Applies the result of asynchronous event processing to the cache. The original event value
+   * has already been stored when the event arrived -- the processed event is only stored if the
+   * event processors modified or replaced it, and no newer value of the same sensor has been
+   * stored in the meantime.
+   *
+   * @param original        the event as it was stored in the cache
+   * @param originalValue   serialized value of the original event at the time it was stored
+   * @param ctx             event context after all event processors have completed
+   */
+  protected synchronized void applyProcessedEvent(Event original, String originalValue, EventContext ctx)
+  {
+    Event processed = ctx.getEvent();
+
+    // A cleared cache means we're shutting down or redeploying -- don't bring back old state...
+
+    if (isShutdownInProcess || !sensorMap.hasExistingState(processed.getSourceID()))
+    {
+      return;
+    }
+
+    Event current = sensorMap.getCurrentState(processed.getSourceID());
+
+    if (processed == original)
+    {
+      // Processors may have modified the stored instance in place, polling clients must still
+      // learn about the change...
+
+      if (current == original && !originalValue.equals(original.serialize()))
+      {
+        sensorMap.markChanged(original);
+      }
+
+      return;
+    }
+
+    if (processed.getSourceID().equals(original.getSourceID()) &&
+        current != original && !current.isEqual(original))
+    {
+      log.trace(
+          "Newer value {0} stored while processing {1}, discarding processed event {2}.",
+          current, original, processed
+      );
+
+      return;
+    }
+
+    sensorMap.update(processed);
+  }
+
+
+
   // Private Instance Methods ---------------------------------------------------------------------
 
 
@@ -368,28 +506,43 @@ public class StatusCache
   {
     for (Sensor sensor : sensors.values())
     {
-      log.info(
-          "Stopping sensor ''{0}'' (ID = ''{1}'')...",
-          sensor.getName(), sensor.getSensorID()
-      );
+      stopSensor(sensor);
+    }
+  }
 
-      try
-      {
-        sensor.stop();
-      }
+  private void stopSensor(Sensor sensor)
+  {
+    log.info(
+        "Stopping sensor ''{0}'' (ID = ''{1}'')...",
+        sensor.getName(), sensor.getSensorID()
+    );
 
-      catch (Throwable t)
-      {
-        log.error(
-            "Failed to stop sensor ''{0}'' (ID = ''{1}'') : {2}",
-            t, sensor.getName(), sensor.getSensorID(), t.getMessage()
-        );
-      }
+    try
+    {
+      sensor.stop();
+    }
+
+    catch (Throwable t)
+    {
+      log.error(
+          "Failed to stop sensor ''{0}'' (ID = ''{1}'') : {2}",
+          t, sensor.getName(), sensor.getSensorID(), t.getMessage()
+      );
     }
   }
 
 
 
+  private void logIgnoredUpdate(Event event)
+  {
+    log.debug(
+        "Device state cache is shutting down. Ignoring update from ''{0}'' (ID = ''{1}'').",
+        event.getSource(), event.getSourceID()
+    );
+  }
+
+
+
   // Inner Classes --------------------------------------------------------------------------------
 
 
@@ -414,6 +567,22 @@ public class StatusCache
       currentState.put(sensor.getSensorID(), new Sensor.UnknownEvent(sensor));
     }
 
+    private void remove(Sensor sensor)
+    {
+      Integer id = sensor.getSensorID();
+
+      if (id.equals(nameIdIndex.get(sensor.getName())))
+      {
+        nameIdIndex.remove(sensor.getName());
+      }
+
+      currentState.remove(id);
+
+      // wake up polling requests waiting on the removed sensor...
+
+      deviceStatusChanges.updateStatusChangedIDs(id);
+    }
+
     private Iterator<Event> getSnapshot()
     {
       return currentState.values().iterator();  
@@ -487,12 +656,16 @@ public class StatusCache
       }
 
 
+      markChanged(event);
+    }
+
+    private void markChanged(Event event)
+    {
       deviceStatusChanges.updateStatusChangedIDs(event.getSourceID());
 
       log.trace(
           "Marked Sensor ID = {0} (''{1}'') changed.", event.getSourceID(), event.getSource()
       );
-
     }
 
   }
@@ -22,9 +22,17 @@ import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -35,14 +43,18 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
+import org.openremote.controller.Constants;
 import org.openremote.controller.ControllerConfiguration;
+import org.openremote.controller.OpenRemoteRuntime;
 import org.openremote.controller.exception.InitializationException;
 import org.openremote.controller.service.ServiceContext;
 import org.openremote.controller.statuscache.EventContext;
 import org.openremote.controller.statuscache.EventProcessor;
 import org.openremote.controller.statuscache.LifeCycleEvent;
+import org.openremote.controller.utils.Logger;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.DsType;
+import org.rrd4j.core.RrdBackendFactory;
 import org.rrd4j.core.RrdDb;
 import org.rrd4j.core.RrdDef;
 import org.rrd4j.core.Sample;
@@ -56,41 +68,108 @@ import org.w3c.dom.NodeList;
  * Each sensor update creates a new data entry within a rrd4j datasource.
  * The rrd4j-config.xml can also be used to configure graphs which later can be displayed within the console.
  * The graphs are provided from a servlet.
+ * <p>
+ * In write-behind mode sensor values are not written to the RRD files as they arrive. The latest value of each
+ * datasource is kept in memory and a background thread writes a single sample per database on each step boundary
+ * of that database, using the memory mapped NIO backend by default. This keeps disk latency away from the event
+ * processing path.
+ * <p>
+ * Graphs are rendered by a {@link RrdGraphRenderer} which reuses the parsed graph definitions and caches
+ * the rendered images for one RRD step.
+ *
  * @author marcus
  *
  */
 public class Rrd4jDataLogger extends EventProcessor {
 
+   /**
+    * RRD4J backend used for the database files in write-behind mode unless configured otherwise.
+    */
+   public static final String DEFAULT_WRITE_BEHIND_BACKEND = "NIO";
+
+   private static final Logger log = Logger.getLogger(Constants.RUNTIME_STATECACHE_LOG_CATEGORY);
+
    private List<RrdDb> rrdDbList;
    private Map<String,String> graphDefMap;
-   
+
+   private boolean writeBehind = false;
+   private String writeBehindBackend = DEFAULT_WRITE_BEHIND_BACKEND;
+   private Map<RrdDb, PendingSample> pendingSamples = new LinkedHashMap<RrdDb, PendingSample>();
+   private ScheduledExecutorService flushExecutor;
+
+   private int graphCacheSize = RrdGraphRenderer.DEFAULT_CACHE_SIZE;
+   private int maxConcurrentGraphRenders = RrdGraphRenderer.DEFAULT_MAX_CONCURRENT_RENDERS;
+   private RrdGraphRenderer graphRenderer;
+
    @Override
    public String getName() {
       return "RRD4J Data Logger";
    }
 
+   /**
+    * Enables or disables write-behind mode. Must be set before the data logger is started.
+    *
+    * @param writeBehind true to buffer samples in memory and write them once per RRD step
+    */
+   public void setWriteBehind(boolean writeBehind) {
+      this.writeBehind = writeBehind;
+   }
+
+   /**
+    * Sets the name of the RRD4J backend (for example 'NIO' or 'FILE') used to open the database files in
+    * write-behind mode.
+    *
+    * @param backend RRD4J backend factory name
+    */
+   public void setWriteBehindBackend(String backend) {
+      this.writeBehindBackend = backend;
+   }
+
+   /**
+    * Sets the number of rendered graph images kept in memory. Must be set before the data logger is started.
+    *
+    * @param size maximum number of cached images, zero disables caching
+    */
+   public void setGraphCacheSize(int size) {
+      this.graphCacheSize = size;
+   }
+
+   /**
+    * Sets the number of graphs that can be rendered at the same time. Must be set before the data logger
+    * is started.
+    *
+    * @param renders maximum number of concurrent renders
+    */
+   public void setMaxConcurrentGraphRenders(int renders) {
+      this.maxConcurrentGraphRenders = renders;
+   }
+
    @Override
-   public synchronized void push(EventContext ctx) {
+   public void push(EventContext ctx) {
+      if (!writeBehind) {
+         writeSample(ctx);
+         return;
+      }
+
       String sensorName = ctx.getEvent().getSource();
-      for (RrdDb rrdDb : rrdDbList) {
-         try {
-            if (rrdDb.getDatasource(sensorName) != null) {
-               try {
-                  long newUpdate = System.currentTimeMillis() / 1000;
-                  long lastUpdate = rrdDb.getLastUpdateTime();
-                  if (lastUpdate<newUpdate){
-                     double value = Double.parseDouble("" + ctx.getEvent().getValue());
-                     Sample sample = rrdDb.createSample(newUpdate);
-                     sample.setValue(sensorName, value);
-                     sample.update();
-                  }
-               } catch (NumberFormatException e) {
-               }
-            }
-         } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-         }
+      double value;
+      try {
+         value = Double.parseDouble("" + ctx.getEvent().getValue());
+      } catch (NumberFormatException e) {
+         return;
+      }
+      for (PendingSample pending : pendingSamples.values()) {
+         pending.setValue(sensorName, value);
+      }
+   }
+
+   /**
+    * Writes the buffered values of all databases which received new values since the previous flush. Only applies
+    * in write-behind mode, the values are otherwise written as they arrive.
+    */
+   public void flush() {
+      for (PendingSample pending : pendingSamples.values()) {
+         pending.flush();
       }
    }
 
@@ -104,7 +183,9 @@ public class Rrd4jDataLogger extends EventProcessor {
       
       //Parse XML for RRD4J databases and datasources
       List<RrdDef> rrdDefList = parseConfigXML(rrdConfigUri);
+      RrdBackendFactory backendFactory = getBackendFactory();
       rrdDbList = new ArrayList<RrdDb>();
+      pendingSamples = new LinkedHashMap<RrdDb, PendingSample>();
       for (RrdDef rrdDef : rrdDefList) {
          RrdDb rrdDb = null;
          String dbFileName = rrdDef.getPath();
@@ -112,29 +193,61 @@ public class Rrd4jDataLogger extends EventProcessor {
             URI rrdFileUri = rrdDirUri.resolve(dbFileName);
             File rrdFile = new File(rrdFileUri);
             if (rrdFile.exists()) {
-               rrdDb = new RrdDb(rrdFile.getAbsolutePath());
+               rrdDb = new RrdDb(rrdFile.getAbsolutePath(), backendFactory);
             } else {
                rrdDef.setPath(rrdFile.getAbsolutePath());
-               rrdDb = new RrdDb(rrdDef);
+               rrdDb = new RrdDb(rrdDef, backendFactory);
             }
             rrdDbList.add(rrdDb);
+            if (writeBehind) {
+               pendingSamples.put(rrdDb, new PendingSample(rrdDb));
+            }
          } catch (IOException e) {
             throw new InitializationException("Could not load/create rrd4j db file", e);
          }
       }
+
+      if (writeBehind) {
+         startFlushing();
+      }
       
       //Parse XML for RRD4J graph definitions
       graphDefMap = parseConfigXMLGraphs(rrdConfigUri, rrdDirUri);
-
-      
+      try {
+         graphRenderer = new RrdGraphRenderer(graphDefMap, getMinimumStep(), graphCacheSize,
+               maxConcurrentGraphRenders);
+      } catch (IOException e) {
+         throw new InitializationException("Could not parse rrd4j graph definitions", e);
+      }
    }
 
    public String getGraphDef(String graphName) {
       return graphDefMap.get(graphName);
    }
+
+   /**
+    * Returns the renderer of the graphs configured in rrd4j-config.xml.
+    *
+    * @return graph renderer, or null if the data logger has not been started
+    */
+   public RrdGraphRenderer getGraphRenderer() {
+      return graphRenderer;
+   }
    
    @Override
    public void stop() {
+      if (flushExecutor != null) {
+         flushExecutor.shutdown();
+         try {
+            flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         flushExecutor = null;
+
+         // Write whatever was received since the last step boundary...
+         flush();
+      }
       for (RrdDb rrdDb : rrdDbList) {
          try {
             rrdDb.close();
@@ -145,6 +258,90 @@ public class Rrd4jDataLogger extends EventProcessor {
       }
    }
 
+   /**
+    * Writes the event value immediately, used when write-behind mode is not enabled.
+    */
+   private synchronized void writeSample(EventContext ctx) {
+      String sensorName = ctx.getEvent().getSource();
+      for (RrdDb rrdDb : rrdDbList) {
+         try {
+            if (rrdDb.getDatasource(sensorName) != null) {
+               try {
+                  long newUpdate = System.currentTimeMillis() / 1000;
+                  long lastUpdate = rrdDb.getLastUpdateTime();
+                  if (lastUpdate<newUpdate){
+                     double value = Double.parseDouble("" + ctx.getEvent().getValue());
+                     Sample sample = rrdDb.createSample(newUpdate);
+                     sample.setValue(sensorName, value);
+                     sample.update();
+                  }
+               } catch (NumberFormatException e) {
+               }
+            }
+         } catch (IOException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+         }
+      }
+   }
+
+   /**
+    * Returns the smallest step of all databases in seconds, graph images are cached for this long.
+    */
+   private long getMinimumStep() throws InitializationException {
+      long step = Long.MAX_VALUE;
+      for (RrdDb rrdDb : rrdDbList) {
+         try {
+            step = Math.min(step, rrdDb.getHeader().getStep());
+         } catch (IOException e) {
+            throw new InitializationException("Could not read step of rrd4j db ''{0}''", e, rrdDb.getPath());
+         }
+      }
+      return (step == Long.MAX_VALUE) ? 1 : step;
+   }
+
+   private RrdBackendFactory getBackendFactory() {
+      if (!writeBehind) {
+         return RrdBackendFactory.getDefaultFactory();
+      }
+      try {
+         return RrdBackendFactory.getFactory(writeBehindBackend);
+      } catch (IllegalArgumentException e) {
+         log.error("Unknown RRD4J backend ''{0}'', using default backend.", writeBehindBackend);
+         return RrdBackendFactory.getDefaultFactory();
+      }
+   }
+
+   /**
+    * Schedules the flush of each database on its step boundaries.
+    */
+   private void startFlushing() throws InitializationException {
+      flushExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable runnable) {
+            Thread thread = OpenRemoteRuntime.createThread("RRD4J Write-Behind", runnable);
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+
+      long now = System.currentTimeMillis();
+      for (final PendingSample pending : pendingSamples.values()) {
+         long step;
+         try {
+            step = pending.rrdDb.getHeader().getStep() * 1000;
+         } catch (IOException e) {
+            throw new InitializationException("Could not read step of rrd4j db ''{0}''", e, pending.rrdDb.getPath());
+         }
+         flushExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+               pending.flush();
+            }
+         }, step - (now % step), step, TimeUnit.MILLISECONDS);
+      }
+   }
+
    private Map<String,String> parseConfigXMLGraphs(URI configUri, URI rddDirUri) throws InitializationException {
       try {
          File fXmlFile = new File(configUri);
@@ -297,4 +494,61 @@ public class Rrd4jDataLogger extends EventProcessor {
       }
       return sw.toString();
       }
+
+   /**
+    * Latest values of the datasources of a single database, waiting to be written on the next step boundary.
+    * Values are carried over to the following samples so that a datasource which did not change within a step
+    * is not recorded as unknown.
+    */
+   private static class PendingSample {
+      private RrdDb rrdDb;
+      private Set<String> datasources;
+      private Map<String, Double> values = new HashMap<String, Double>();
+      private boolean updated = false;
+
+      private PendingSample(RrdDb rrdDb) throws IOException {
+         this.rrdDb = rrdDb;
+         this.datasources = new HashSet<String>(Arrays.asList(rrdDb.getDsNames()));
+      }
+
+      private synchronized void setValue(String datasource, double value) {
+         if (datasources.contains(datasource)) {
+            values.put(datasource, value);
+            updated = true;
+         }
+      }
+
+      private void flush() {
+         Map<String, Double> sample;
+         synchronized (this) {
+            if (!updated) {
+               return;
+            }
+            sample = new HashMap<String, Double>(values);
+            updated = false;
+         }
+         try {
+            synchronized (rrdDb) {
+               long time = System.currentTimeMillis() / 1000;
+               if (rrdDb.isClosed()) {
+                  return;
+               }
+               if (rrdDb.getLastUpdateTime() >= time) {
+                  // Already written within this second, keep the values for the next flush...
+                  synchronized (this) {
+                     updated = true;
+                  }
+                  return;
+               }
+               Sample rrdSample = rrdDb.createSample(time);
+               for (Map.Entry<String, Double> value : sample.entrySet()) {
+                  rrdSample.setValue(value.getKey(), value.getValue());
+               }
+               rrdSample.update();
+            }
+         } catch (Throwable t) {
+            log.error("Failed to write sample to ''{0}'' : {1}", t, rrdDb.getPath(), t.getMessage());
+         }
+      }
+   }
 }
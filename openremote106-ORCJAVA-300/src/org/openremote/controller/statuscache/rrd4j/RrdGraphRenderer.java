@@ -0,0 +1,378 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.statuscache.rrd4j;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.rrd4j.graph.RrdGraph;
+import org.rrd4j.graph.RrdGraphConstants;
+import org.rrd4j.graph.RrdGraphDef;
+import org.rrd4j.graph.RrdGraphDefTemplate;
+
+/**
+ * Renders the graphs configured in rrd4j-config.xml to PNG images in memory and caches the
+ * results. <p>
+ *
+ * Graph definition templates are parsed once when the renderer is created. Requested time
+ * windows are aligned to the RRD step so that repeated requests for a relative window (such as
+ * the last hour) within the same step map to the same cache entry -- the underlying data cannot
+ * have changed in between. Cached images expire after one step. <p>
+ *
+ * Concurrent requests for an image that is being rendered wait for that render instead of
+ * starting their own, and the number of renders running at the same time is bounded.
+ *
+ * @see Rrd4jDataLogger#getGraphRenderer()
+ */
+public class RrdGraphRenderer
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Default number of rendered images kept in memory.
+   */
+  public final static int DEFAULT_CACHE_SIZE = 50;
+
+  /**
+   * Default number of graphs that can be rendered at the same time.
+   */
+  public final static int DEFAULT_MAX_CONCURRENT_RENDERS = 2;
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private Map<String, RrdGraphDefTemplate> templates = new HashMap<String, RrdGraphDefTemplate>();
+
+  private long step;
+
+  private Map<GraphKey, CachedGraph> cache;
+
+  private Semaphore renderPermits;
+
+  private AtomicLong renderCount = new AtomicLong(0);
+
+  private AtomicLong cacheHitCount = new AtomicLong(0);
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * Creates a new renderer and parses the given graph definitions.
+   *
+   * @param graphDefs             graph definition XML documents, keyed by graph name
+   * @param step                  RRD step in seconds the time windows are aligned to
+   * @param cacheSize             maximum number of rendered images kept in memory, zero
+   *                              disables caching
+   * @param maxConcurrentRenders  maximum number of graphs rendered at the same time
+   *
+   * @throws IOException  if a graph definition cannot be parsed
+   */
+  public RrdGraphRenderer(Map<String, String> graphDefs, long step, final int cacheSize,
+                          int maxConcurrentRenders) throws IOException
+  {
+    for (Map.Entry<String, String> graphDef : graphDefs.entrySet())
+    {
+      templates.put(graphDef.getKey(), new RrdGraphDefTemplate(graphDef.getValue()));
+    }
+
+    this.step = Math.max(1, step);
+    this.renderPermits = new Semaphore(Math.max(1, maxConcurrentRenders), true);
+
+    this.cache = new LinkedHashMap<GraphKey, CachedGraph>(16, 0.75f, true)
+    {
+      @Override protected boolean removeEldestEntry(Map.Entry<GraphKey, CachedGraph> eldest)
+      {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Indicates whether a graph with the given name has been configured.
+   *
+   * @param graphName   name of the graph
+   *
+   * @return  true if the graph exists, false otherwise
+   */
+  public boolean hasGraph(String graphName)
+  {
+    return templates.containsKey(graphName);
+  }
+
+  /**
+   * Returns the PNG image of a graph, either from the cache or by rendering it. Start and end
+   * times are aligned down to the RRD step.
+   *
+   * @param graphName   name of the graph
+   * @param startTime   start of the time window in seconds since epoch, or null to use the
+   *                    start time of the graph definition
+   * @param endTime     end of the time window in seconds since epoch, or null to use the end
+   *                    time of the graph definition
+   * @param width       image width in pixels
+   * @param height      image height in pixels
+   *
+   * @return  PNG image bytes, or null if no graph with the given name has been configured
+   *
+   * @throws IOException  if the graph cannot be rendered
+   */
+  public byte[] render(String graphName, Long startTime, Long endTime, int width, int height)
+      throws IOException
+  {
+    final RrdGraphDefTemplate template = templates.get(graphName);
+
+    if (template == null)
+    {
+      return null;
+    }
+
+    final GraphKey key = new GraphKey(graphName, align(startTime), align(endTime), width, height);
+
+    long now = System.currentTimeMillis();
+
+    FutureTask<byte[]> task;
+    boolean owner = false;
+
+    synchronized (cache)
+    {
+      CachedGraph cached = cache.get(key);
+
+      if (cached == null || cached.expires <= now)
+      {
+        task = new FutureTask<byte[]>(new Callable<byte[]>()
+        {
+          public byte[] call() throws Exception
+          {
+            return renderGraph(template, key);
+          }
+        });
+
+        cached = new CachedGraph(task, now + step * 1000);
+        cache.put(key, cached);
+
+        owner = true;
+      }
+
+      else
+      {
+        task = cached.task;
+
+        cacheHitCount.incrementAndGet();
+      }
+    }
+
+    if (owner)
+    {
+      task.run();
+    }
+
+    try
+    {
+      return task.get();
+    }
+
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+
+      throw new IOException("Interrupted while waiting for graph '" + graphName + "'.");
+    }
+
+    catch (ExecutionException e)
+    {
+      synchronized (cache)
+      {
+        CachedGraph cached = cache.get(key);
+
+        if (cached != null && cached.task == task)
+        {
+          cache.remove(key);
+        }
+      }
+
+      Throwable cause = e.getCause();
+
+      if (cause instanceof IOException)
+      {
+        throw (IOException)cause;
+      }
+
+      IOException ioe = new IOException("Failed to render graph '" + graphName + "' : " + cause.getMessage());
+      ioe.initCause(cause);
+
+      throw ioe;
+    }
+  }
+
+  /**
+   * @return  number of graphs rendered since this renderer was created
+   */
+  public long getRenderCount()
+  {
+    return renderCount.get();
+  }
+
+  /**
+   * @return  number of requests served from the cache or from a render already in progress
+   */
+  public long getCacheHitCount()
+  {
+    return cacheHitCount.get();
+  }
+
+  /**
+   * Removes all cached images.
+   */
+  public void clear()
+  {
+    synchronized (cache)
+    {
+      cache.clear();
+    }
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private Long align(Long time)
+  {
+    if (time == null)
+    {
+      return null;
+    }
+
+    return time - (time % step);
+  }
+
+  private byte[] renderGraph(RrdGraphDefTemplate template, GraphKey key) throws Exception
+  {
+    renderPermits.acquire();
+
+    try
+    {
+      RrdGraphDef graphDef;
+
+      // Template is backed by a DOM which is not safe for concurrent access...
+
+      synchronized (template)
+      {
+        graphDef = template.getRrdGraphDef();
+      }
+
+      graphDef.setFilename(RrdGraphConstants.IN_MEMORY_IMAGE);
+      graphDef.setImageFormat("PNG");
+      graphDef.setWidth(key.width);
+      graphDef.setHeight(key.height);
+
+      if (key.startTime != null)
+      {
+        graphDef.setStartTime(key.startTime);
+      }
+
+      if (key.endTime != null)
+      {
+        graphDef.setEndTime(key.endTime);
+      }
+
+      RrdGraph graph = new RrdGraph(graphDef);
+
+      renderCount.incrementAndGet();
+
+      return graph.getRrdGraphInfo().getBytes();
+    }
+
+    finally
+    {
+      renderPermits.release();
+    }
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private static class GraphKey
+  {
+    private String graphName;
+    private Long startTime;
+    private Long endTime;
+    private int width;
+    private int height;
+
+    private GraphKey(String graphName, Long startTime, Long endTime, int width, int height)
+    {
+      this.graphName = graphName;
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.width = width;
+      this.height = height;
+    }
+
+    @Override public boolean equals(Object o)
+    {
+      if (!(o instanceof GraphKey))
+      {
+        return false;
+      }
+
+      GraphKey key = (GraphKey)o;
+
+      return graphName.equals(key.graphName) &&
+             (startTime == null ? key.startTime == null : startTime.equals(key.startTime)) &&
+             (endTime == null ? key.endTime == null : endTime.equals(key.endTime)) &&
+             width == key.width &&
+             height == key.height;
+    }
+
+    @Override public int hashCode()
+    {
+      int hash = graphName.hashCode();
+
+      hash = 31 * hash + (startTime == null ? 0 : startTime.hashCode());
+      hash = 31 * hash + (endTime == null ? 0 : endTime.hashCode());
+      hash = 31 * hash + width;
+      hash = 31 * hash + height;
+
+      return hash;
+    }
+  }
+
+  private static class CachedGraph
+  {
+    private FutureTask<byte[]> task;
+    private long expires;
+
+    private CachedGraph(FutureTask<byte[]> task, long expires)
+    {
+      this.task = task;
+      this.expires = expires;
+    }
+  }
+}
@@ -24,15 +24,22 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openremote.controller.utils.Logger;
 import org.openremote.controller.Constants;
 import org.openremote.controller.ControllerConfiguration;
+import org.openremote.controller.OpenRemoteRuntime;
 import org.openremote.controller.service.ServiceContext;
 import org.openremote.controller.exception.InitializationException;
 import org.openremote.controller.protocol.Event;
@@ -46,6 +53,9 @@ import org.drools.KnowledgeBase;
 import org.drools.KnowledgeBaseConfiguration;
 import org.drools.KnowledgeBaseFactory;
 import org.drools.conf.AssertBehaviorOption;
+import org.drools.event.rule.AfterActivationFiredEvent;
+import org.drools.event.rule.BeforeActivationFiredEvent;
+import org.drools.event.rule.DefaultAgendaEventListener;
 import org.drools.runtime.StatefulKnowledgeSession;
 import org.drools.runtime.Globals;
 import org.drools.runtime.rule.FactHandle;
@@ -64,7 +74,7 @@ import org.drools.io.ResourceFactory;
  *
  * @author <a href="mailto:juha@openremote.org">Juha Lindfors</a>
  */
-public class RuleEngine extends EventProcessor
+public class RuleEngine extends EventProcessor implements RuleEngineMBean
 {
 
   // TODO : integrate with statuscache/deployer lifecycle
@@ -113,8 +123,21 @@ public class RuleEngine extends EventProcessor
 
   private KnowledgeBase kb;
   private StatefulKnowledgeSession knowledgeSession;
+
+  /**
+   * Fact handle of the latest event of each sensor in the working memory, by sensor ID.
+   */
   private Map<Integer, FactHandle> eventSources = new HashMap<Integer, FactHandle>();
 
+  private AtomicLong processedEvents = new AtomicLong(0);
+  private AtomicLong skippedEvents = new AtomicLong(0);
+
+  /**
+   * Firing statistics by rule name.
+   */
+  private ConcurrentHashMap<String, RuleStatistics> ruleStatistics =
+      new ConcurrentHashMap<String, RuleStatistics>();
+
   private SwitchFacade switchFacade;
   private LevelFacade levelFacade;
   private RangeFacade rangeFacade;
@@ -142,6 +165,21 @@ public class RuleEngine extends EventProcessor
 
     Event evt = ctx.getEvent();
 
+    // The latest event of each sensor is kept in the working memory. If the sensor value has
+    // not changed, the working memory would not change either, so there's nothing for the
+    // rules to match on...
+
+    FactHandle previous = eventSources.get(evt.getSourceID());
+
+    if (previous != null && evt.equals(knowledgeSession.getObject(previous)))
+    {
+      skippedEvents.incrementAndGet();
+
+      log.trace("Skipping unchanged event {0}", evt);
+
+      return;
+    }
+
     switchFacade.pushEventContext(ctx);
     switchFacade.pushLogger(log);
     levelFacade.pushEventContext(ctx);
@@ -157,22 +195,24 @@ public class RuleEngine extends EventProcessor
 
     try
     {
-      if (!knowledgeSession.getObjects().contains(evt))
+      if (previous != null)
       {
-        if (eventSources.keySet().contains(evt.getSourceID()))
-        {
-          knowledgeSession.retract(eventSources.get(evt.getSourceID()));
+        knowledgeSession.retract(previous);
 
-          eventSources.remove(evt.getSourceID());
-        }
+        eventSources.remove(evt.getSourceID());
+      }
 
-        FactHandle handle = knowledgeSession.insert(evt);
+      FactHandle handle = knowledgeSession.insert(evt);
 
-        eventSources.put(evt.getSourceID(), handle);
-      }
+      eventSources.put(evt.getSourceID(), handle);
+
+      processedEvents.incrementAndGet();
 
-      log.trace("Inserted event {0}", evt);
-      log.trace("Fact count: " + knowledgeSession.getFactCount());
+      if (log.isTraceEnabled())
+      {
+        log.trace("Inserted event {0}", evt);
+        log.trace("Fact count: {0}", knowledgeSession.getFactCount());
+      }
       
       knowledgeSession.fireAllRules();
     }
@@ -264,6 +304,11 @@ public class RuleEngine extends EventProcessor
 
 
     knowledgeSession = kb.newStatefulKnowledgeSession();
+    knowledgeSession.addEventListener(new RuleStatisticsListener());
+
+    eventSources.clear();
+
+    OpenRemoteRuntime.registerManagementBean("RuleEngine", this);
 
     switchFacade = new SwitchFacade();
     rangeFacade = new RangeFacade();
@@ -331,6 +376,77 @@ public class RuleEngine extends EventProcessor
   }
 
 
+  // Implements RuleEngineMBean -------------------------------------------------------------------
+
+  @Override public long getFactCount()
+  {
+    StatefulKnowledgeSession session = knowledgeSession;
+
+    return (session == null || kb == null) ? 0 : session.getFactCount();
+  }
+
+  @Override public long getProcessedEventCount()
+  {
+    return processedEvents.get();
+  }
+
+  @Override public long getSkippedEventCount()
+  {
+    return skippedEvents.get();
+  }
+
+  @Override public String[] getRuleStatistics()
+  {
+    List<Map.Entry<String, RuleStatistics>> rules =
+        new ArrayList<Map.Entry<String, RuleStatistics>>(ruleStatistics.entrySet());
+
+    Collections.sort(rules, new Comparator<Map.Entry<String, RuleStatistics>>()
+    {
+      @Override public int compare(Map.Entry<String, RuleStatistics> r1, Map.Entry<String, RuleStatistics> r2)
+      {
+        long t1 = r1.getValue().totalTime.get();
+        long t2 = r2.getValue().totalTime.get();
+
+        return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1);
+      }
+    });
+
+    String[] statistics = new String[rules.size()];
+
+    for (int index = 0; index < statistics.length; ++index)
+    {
+      statistics[index] = rules.get(index).getKey() + " : " + rules.get(index).getValue();
+    }
+
+    return statistics;
+  }
+
+  @Override public void resetStatistics()
+  {
+    processedEvents.set(0);
+    skippedEvents.set(0);
+    ruleStatistics.clear();
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Returns the number of times a rule has fired since the rule engine was started or the
+   * statistics were last reset.
+   *
+   * @param ruleName    name of the rule
+   *
+   * @return  firing count of the rule, zero for unknown rules
+   */
+  public long getRuleFiringCount(String ruleName)
+  {
+    RuleStatistics statistics = ruleStatistics.get(ruleName);
+
+    return (statistics == null) ? 0 : statistics.firings.get();
+  }
+
+
   // Private Instance Methods ---------------------------------------------------------------------
 
 
@@ -550,5 +666,68 @@ public class RuleEngine extends EventProcessor
     return packages;
   }
 
-}
 
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * Firing count and execution times of a single rule.
+   */
+  private static class RuleStatistics
+  {
+    private AtomicLong firings = new AtomicLong(0);
+    private AtomicLong totalTime = new AtomicLong(0);
+    private AtomicLong maxTime = new AtomicLong(0);
+
+    private void record(long nanos)
+    {
+      firings.incrementAndGet();
+      totalTime.addAndGet(nanos);
+
+      if (nanos > maxTime.get())
+      {
+        maxTime.set(nanos);
+      }
+    }
+
+    @Override public String toString()
+    {
+      long count = firings.get();
+      long total = totalTime.get();
+
+      return count + " firings, total " + (total / 1000000) + "ms, mean " +
+             (count == 0 ? 0 : total / count / 1000) + "us, max " + (maxTime.get() / 1000) + "us";
+    }
+  }
+
+  /**
+   * Records the firing count and execution time of each rule. Rule consequences are executed
+   * one at a time on the thread firing the rules, so a single start time is sufficient.
+   */
+  private class RuleStatisticsListener extends DefaultAgendaEventListener
+  {
+    private long firingStarted;
+
+    @Override public void beforeActivationFired(BeforeActivationFiredEvent event)
+    {
+      firingStarted = System.nanoTime();
+    }
+
+    @Override public void afterActivationFired(AfterActivationFiredEvent event)
+    {
+      long elapsed = System.nanoTime() - firingStarted;
+      String ruleName = event.getActivation().getRule().getName();
+
+      RuleStatistics statistics = ruleStatistics.get(ruleName);
+
+      if (statistics == null)
+      {
+        RuleStatistics created = new RuleStatistics();
+
+        statistics = ruleStatistics.putIfAbsent(ruleName, created);
+        statistics = (statistics == null) ? created : statistics;
+      }
+
+      statistics.record(elapsed);
+    }
+  }
+}
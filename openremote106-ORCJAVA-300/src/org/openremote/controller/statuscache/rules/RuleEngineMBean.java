@@ -0,0 +1,56 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.statuscache.rules;
+
+/**
+ * Management interface of the {@link RuleEngine}. Exposes event throughput and per-rule firing
+ * counts and execution times, to help locate expensive rules.
+ */
+public interface RuleEngineMBean
+{
+
+  /**
+   * @return  number of facts in the rule engine's working memory
+   */
+  long getFactCount();
+
+  /**
+   * @return  number of events inserted into the working memory and evaluated by the rules
+   */
+  long getProcessedEventCount();
+
+  /**
+   * @return  number of events skipped because the same sensor value was already in the
+   *          working memory
+   */
+  long getSkippedEventCount();
+
+  /**
+   * @return  one entry per fired rule with its firing count and execution times, ordered by
+   *          total execution time (most expensive rule first)
+   */
+  String[] getRuleStatistics();
+
+  /**
+   * Clears the event counters and rule statistics.
+   */
+  void resetStatistics();
+}
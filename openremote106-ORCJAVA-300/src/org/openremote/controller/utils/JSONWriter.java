@@ -0,0 +1,330 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A minimal streaming JSON writer. Values are written directly to the underlying character
+ * stream as they are added, without building an intermediate document. <p>
+ *
+ * For example:
+ *
+ * <pre>{@code
+ *
+ *   new JSONWriter(writer)
+ *       .beginObject()
+ *         .name("status").beginArray()
+ *           .beginObject().name("id").value(1).name("content").value("ON").endObject()
+ *         .endArray()
+ *       .endObject();
+ *
+ * }</pre>
+ *
+ * The writer does not validate the document structure beyond separating values with commas,
+ * callers are responsible for balancing objects and arrays and naming object members.
+ */
+public class JSONWriter
+{
+
+  // Class Members --------------------------------------------------------------------------------
+
+  /**
+   * Hex digits for escaping control characters.
+   */
+  private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+  /**
+   * Writes a string value as a quoted and escaped JSON string.
+   *
+   * @param value   string value
+   * @param out     character stream to write to
+   *
+   * @throws IOException  if writing to the stream fails
+   */
+  public static void quote(String value, Writer out) throws IOException
+  {
+    out.write('"');
+
+    int start = 0;
+    int length = value.length();
+
+    for (int index = 0; index < length; ++index)
+    {
+      char c = value.charAt(index);
+      String escape = null;
+
+      switch (c)
+      {
+        case '"':   escape = "\\\"";  break;
+        case '\\':  escape = "\\\\";  break;
+        case '\n':  escape = "\\n";   break;
+        case '\r':  escape = "\\r";   break;
+        case '\t':  escape = "\\t";   break;
+        case '\b':  escape = "\\b";   break;
+        case '\f':  escape = "\\f";   break;
+
+        default:
+
+          // control characters and line/paragraph separators (invalid in JavaScript strings)...
+
+          if (c < 0x20 || c == 0x2028 || c == 0x2029)
+          {
+            escape = "\\u" + HEX_DIGITS[(c >> 12) & 0xF] + HEX_DIGITS[(c >> 8) & 0xF] +
+                     HEX_DIGITS[(c >> 4) & 0xF] + HEX_DIGITS[c & 0xF];
+          }
+      }
+
+      if (escape != null)
+      {
+        out.write(value, start, index - start);
+        out.write(escape);
+
+        start = index + 1;
+      }
+    }
+
+    out.write(value, start, length - start);
+    out.write('"');
+  }
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  /**
+   * Character stream the JSON document is written to.
+   */
+  private Writer out;
+
+  /**
+   * Whether a value has been written at each nesting level, used to separate values.
+   */
+  private boolean[] hasValues = new boolean[8];
+
+  /**
+   * Current nesting level.
+   */
+  private int depth = 0;
+
+  /**
+   * True after an object member name has been written, the next value belongs to it.
+   */
+  private boolean afterName = false;
+
+
+  // Constructors ---------------------------------------------------------------------------------
+
+  /**
+   * @param out   character stream to write the JSON document to
+   */
+  public JSONWriter(Writer out)
+  {
+    this.out = out;
+  }
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Begins a JSON object.
+   */
+  public JSONWriter beginObject() throws IOException
+  {
+    return begin('{');
+  }
+
+  /**
+   * Ends the current JSON object.
+   */
+  public JSONWriter endObject() throws IOException
+  {
+    return end('}');
+  }
+
+  /**
+   * Begins a JSON array.
+   */
+  public JSONWriter beginArray() throws IOException
+  {
+    return begin('[');
+  }
+
+  /**
+   * Ends the current JSON array.
+   */
+  public JSONWriter endArray() throws IOException
+  {
+    return end(']');
+  }
+
+  /**
+   * Writes the name of the next member of the current object.
+   *
+   * @param name    member name
+   */
+  public JSONWriter name(String name) throws IOException
+  {
+    separate();
+
+    quote(name, out);
+    out.write(':');
+
+    afterName = true;
+
+    return this;
+  }
+
+  /**
+   * Writes a string value, or JSON null if the value is null.
+   */
+  public JSONWriter value(String value) throws IOException
+  {
+    separate();
+
+    if (value == null)
+    {
+      out.write("null");
+    }
+
+    else
+    {
+      quote(value, out);
+    }
+
+    return this;
+  }
+
+  /**
+   * Writes an integer value.
+   */
+  public JSONWriter value(long value) throws IOException
+  {
+    separate();
+
+    out.write(Long.toString(value));
+
+    return this;
+  }
+
+  /**
+   * Writes a boolean value.
+   */
+  public JSONWriter value(boolean value) throws IOException
+  {
+    separate();
+
+    out.write(value ? "true" : "false");
+
+    return this;
+  }
+
+  /**
+   * Writes a number, boolean or string value. Other objects are written as their string
+   * representation, null as JSON null. Non-finite numbers are written as strings as they have
+   * no JSON representation.
+   */
+  public JSONWriter value(Object value) throws IOException
+  {
+    if (value instanceof Boolean)
+    {
+      return value(((Boolean)value).booleanValue());
+    }
+
+    if (value instanceof Number)
+    {
+      String number = value.toString();
+
+      if (number.equals("NaN") || number.contains("Infinity"))
+      {
+        return value(number);
+      }
+
+      separate();
+
+      out.write(number);
+
+      return this;
+    }
+
+    return value(value == null ? null : value.toString());
+  }
+
+  /**
+   * Flushes the underlying character stream.
+   */
+  public void flush() throws IOException
+  {
+    out.flush();
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private JSONWriter begin(char bracket) throws IOException
+  {
+    separate();
+
+    out.write(bracket);
+
+    if (++depth == hasValues.length)
+    {
+      boolean[] deeper = new boolean[hasValues.length * 2];
+      System.arraycopy(hasValues, 0, deeper, 0, hasValues.length);
+      hasValues = deeper;
+    }
+
+    hasValues[depth] = false;
+
+    return this;
+  }
+
+  private JSONWriter end(char bracket) throws IOException
+  {
+    out.write(bracket);
+
+    depth--;
+
+    return this;
+  }
+
+  /**
+   * Writes a comma before any value that is not the first of its object or array, unless the
+   * value follows a member name.
+   */
+  private void separate() throws IOException
+  {
+    if (afterName)
+    {
+      afterName = false;
+
+      return;
+    }
+
+    if (hasValues[depth])
+    {
+      out.write(',');
+    }
+
+    hasValues[depth] = true;
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with fixed, roughly logarithmic millisecond buckets. Intended
+ * for cheap recording of request or execution times on hot paths where the distribution is
+ * exposed for monitoring (for example via JMX) rather than used for exact statistics.  <p>
+ *
+ * Percentiles are approximated by the upper bound of the bucket that contains them.
+ */
+public class LatencyHistogram
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  /**
+   * Upper bounds (inclusive, in milliseconds) of the histogram buckets. Values larger than the
+   * last bound are counted in an additional overflow bucket.
+   */
+  public final static long[] BUCKET_BOUNDS = new long[]
+      { 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+  private AtomicLong count = new AtomicLong(0);
+
+  private AtomicLong total = new AtomicLong(0);
+
+  private AtomicLong max = new AtomicLong(0);
+
+
+  // Public Instance Methods ----------------------------------------------------------------------
+
+  /**
+   * Records a single measurement.
+   *
+   * @param millis    measured latency in milliseconds
+   */
+  public void record(long millis)
+  {
+    if (millis < 0)
+    {
+      millis = 0;
+    }
+
+    buckets.incrementAndGet(bucketIndex(millis));
+    count.incrementAndGet();
+    total.addAndGet(millis);
+
+    long current = max.get();
+
+    while (millis > current && !max.compareAndSet(current, millis))
+    {
+      current = max.get();
+    }
+  }
+
+  /**
+   * @return  number of recorded measurements
+   */
+  public long getCount()
+  {
+    return count.get();
+  }
+
+  /**
+   * @return  mean of the recorded measurements in milliseconds, or zero if none recorded
+   */
+  public long getMean()
+  {
+    long n = count.get();
+
+    return n == 0 ? 0 : total.get() / n;
+  }
+
+  /**
+   * @return  largest recorded measurement in milliseconds
+   */
+  public long getMax()
+  {
+    return max.get();
+  }
+
+  /**
+   * Returns an approximation of the given percentile as the upper bound of the bucket that
+   * contains it. If the percentile falls in the overflow bucket, the maximum recorded value
+   * is returned.
+   *
+   * @param percentile    percentile between 0 and 100
+   *
+   * @return  approximate percentile value in milliseconds
+   */
+  public long getPercentile(double percentile)
+  {
+    long n = count.get();
+
+    if (n == 0)
+    {
+      return 0;
+    }
+
+    long threshold = (long)Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100);
+    long cumulative = 0;
+
+    for (int i = 0; i < BUCKET_BOUNDS.length; ++i)
+    {
+      cumulative += buckets.get(i);
+
+      if (cumulative >= threshold)
+      {
+        return BUCKET_BOUNDS[i];
+      }
+    }
+
+    return max.get();
+  }
+
+  /**
+   * Returns the bucket counts in a human readable form, one entry per bucket, such as
+   * {@code "<= 50ms : 12"}.
+   *
+   * @return  bucket counts
+   */
+  public String[] getBuckets()
+  {
+    String[] result = new String[BUCKET_BOUNDS.length + 1];
+
+    for (int i = 0; i < BUCKET_BOUNDS.length; ++i)
+    {
+      result[i] = "<= " + BUCKET_BOUNDS[i] + "ms : " + buckets.get(i);
+    }
+
+    result[BUCKET_BOUNDS.length] =
+        "> " + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] + "ms : " + buckets.get(BUCKET_BOUNDS.length);
+
+    return result;
+  }
+
+  /**
+   * Clears all recorded measurements.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < buckets.length(); ++i)
+    {
+      buckets.set(i, 0);
+    }
+
+    count.set(0);
+    total.set(0);
+    max.set(0);
+  }
+
+
+  // Object Overrides -----------------------------------------------------------------------------
+
+  @Override public String toString()
+  {
+    return "Latency (count = " + getCount() + ", mean = " + getMean() + "ms, p95 = " +
+           getPercentile(95) + "ms, max = " + getMax() + "ms)";
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  private int bucketIndex(long millis)
+  {
+    for (int i = 0; i < BUCKET_BOUNDS.length; ++i)
+    {
+      if (millis <= BUCKET_BOUNDS[i])
+      {
+        return i;
+      }
+    }
+
+    return BUCKET_BOUNDS.length;
+  }
+}
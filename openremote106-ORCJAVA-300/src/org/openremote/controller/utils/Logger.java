@@ -36,6 +36,13 @@ import org.openremote.controller.Constants;
  * 
  * Logging categories should be child groups of
  * {@link org.openremote.controller.Constants#CONTROLLER_ROOT_LOG_CATEGORY}.
+ * <p>
+ *
+ * Log statements on frequently executed code paths should pass their dynamic content as
+ * message parameters rather than concatenating it into the message. The one and two parameter
+ * variants do not allocate anything when the log level is disabled; where creating a parameter
+ * is itself expensive, guard the statement with {@link #isDebugEnabled()} or
+ * {@link #isTraceEnabled()}.
  *
  * @author <a href="mailto:juha@openremote.org">Juha Lindfors</a>
  */
@@ -120,6 +127,42 @@ public class Logger extends java.util.logging.Logger
 
   // Public Instance Methods ----------------------------------------------------------------------
 
+  /**
+   * Indicates whether {@link #info} messages are logged in this log category. Can be used to
+   * guard log statements whose message or parameters are expensive to construct.
+   *
+   * @return  true if info level is enabled, false otherwise
+   */
+  public boolean isInfoEnabled()
+  {
+    return isLoggable(Level.INFO);
+  }
+
+  /**
+   * Indicates whether {@link #debug} messages are logged in this log category. Can be used to
+   * guard log statements whose message or parameters are expensive to construct.
+   *
+   * @return  true if debug level is enabled, false otherwise
+   */
+  public boolean isDebugEnabled()
+  {
+    return isLoggable(Level.FINE);
+  }
+
+  /**
+   * Indicates whether {@link #trace} messages are logged in this log category. Can be used to
+   * guard log statements whose message or parameters are expensive to construct.
+   *
+   * @return  true if trace level is enabled, false otherwise
+   */
+  public boolean isTraceEnabled()
+  {
+    return isLoggable(Level.FINER);
+  }
+
+
+  // Error Logging --------------------------------------------------------------------------------
+
   /**
    * Synonymous to using {@link java.util.logging.Logger#severe}.
    *
@@ -147,6 +190,34 @@ public class Logger extends java.util.logging.Logger
     super.log(Level.SEVERE, msg, params);
   }
 
+  /**
+   * Same as {@link #error(String, Object...)} with a single message parameter. The parameter
+   * array is only created if the error level is enabled for this log category.
+   *
+   * @param msg     log message
+   * @param param   log message parameter
+   */
+  public void error(String msg, Object param)
+  {
+    super.log(Level.SEVERE, msg, param);
+  }
+
+  /**
+   * Same as {@link #error(String, Object...)} with two message parameters. The parameter array
+   * is only created if the error level is enabled for this log category.
+   *
+   * @param msg      log message
+   * @param param1   first log message parameter
+   * @param param2   second log message parameter
+   */
+  public void error(String msg, Object param1, Object param2)
+  {
+    if (isLoggable(Level.SEVERE))
+    {
+      super.log(Level.SEVERE, msg, new Object[] { param1, param2 });
+    }
+  }
+
   /**
    * Same as {@link #error} with an additional exception stack trace added to the logging record.
    *
@@ -171,12 +242,23 @@ public class Logger extends java.util.logging.Logger
    */
   public void error(String msg, Throwable throwable, Object... params)
   {
-    LogRecord record = new LogRecord(Level.SEVERE, msg);
-    record.setThrown(throwable);
-    record.setParameters(params);
-    record.setLoggerName(getName());
-    
-    super.log(record);
+    logRecord(Level.SEVERE, msg, throwable, params);
+  }
+
+  /**
+   * Same as {@link #error(String, Throwable, Object...)} with a single message parameter. The
+   * log record is only created if the error level is enabled for this log category.
+   *
+   * @param msg         log message
+   * @param throwable   exception or error associated with the log message
+   * @param param       log message parameter
+   */
+  public void error(String msg, Throwable throwable, Object param)
+  {
+    if (isLoggable(Level.SEVERE))
+    {
+      logRecord(Level.SEVERE, msg, throwable, new Object[] { param });
+    }
   }
 
 
@@ -207,6 +289,34 @@ public class Logger extends java.util.logging.Logger
     super.log(Level.WARNING, msg, params);
   }
 
+  /**
+   * Same as {@link #warn(String, Object...)} with a single message parameter. The parameter
+   * array is only created if the warn level is enabled for this log category.
+   *
+   * @param msg     log message
+   * @param param   log message parameter
+   */
+  public void warn(String msg, Object param)
+  {
+    super.log(Level.WARNING, msg, param);
+  }
+
+  /**
+   * Same as {@link #warn(String, Object...)} with two message parameters. The parameter array
+   * is only created if the warn level is enabled for this log category.
+   *
+   * @param msg      log message
+   * @param param1   first log message parameter
+   * @param param2   second log message parameter
+   */
+  public void warn(String msg, Object param1, Object param2)
+  {
+    if (isLoggable(Level.WARNING))
+    {
+      super.log(Level.WARNING, msg, new Object[] { param1, param2 });
+    }
+  }
+
 
   /**
    * Same as {@link #warn} with an additional exception stack trace added to the logging record.
@@ -233,12 +343,23 @@ public class Logger extends java.util.logging.Logger
    */
   public void warn(String msg, Throwable throwable, Object... params)
   {
-    LogRecord record = new LogRecord(Level.WARNING, msg);
-    record.setThrown(throwable);
-    record.setParameters(params);
-    record.setLoggerName(getName());
+    logRecord(Level.WARNING, msg, throwable, params);
+  }
 
-    super.log(record);
+  /**
+   * Same as {@link #warn(String, Throwable, Object...)} with a single message parameter. The
+   * log record is only created if the warn level is enabled for this log category.
+   *
+   * @param msg         log message
+   * @param throwable   exception or error associated with the log message
+   * @param param       log message parameter
+   */
+  public void warn(String msg, Throwable throwable, Object param)
+  {
+    if (isLoggable(Level.WARNING))
+    {
+      logRecord(Level.WARNING, msg, throwable, new Object[] { param });
+    }
   }
 
 
@@ -272,6 +393,34 @@ public class Logger extends java.util.logging.Logger
     super.log(Level.INFO, msg, params);
   }
 
+  /**
+   * Same as {@link #info(String, Object...)} with a single message parameter. The parameter
+   * array is only created if the info level is enabled for this log category.
+   *
+   * @param msg     log message
+   * @param param   log message parameter
+   */
+  public void info(String msg, Object param)
+  {
+    super.log(Level.INFO, msg, param);
+  }
+
+  /**
+   * Same as {@link #info(String, Object...)} with two message parameters. The parameter array
+   * is only created if the info level is enabled for this log category.
+   *
+   * @param msg      log message
+   * @param param1   first log message parameter
+   * @param param2   second log message parameter
+   */
+  public void info(String msg, Object param1, Object param2)
+  {
+    if (isLoggable(Level.INFO))
+    {
+      super.log(Level.INFO, msg, new Object[] { param1, param2 });
+    }
+  }
+
   /**
    * Same as {@link #info} with an additional exception stack trace added to the logging record.
    *
@@ -296,12 +445,23 @@ public class Logger extends java.util.logging.Logger
    */
   public void info(String msg, Throwable throwable, Object... params)
   {
-    LogRecord record = new LogRecord(Level.INFO, msg);
-    record.setThrown(throwable);
-    record.setParameters(params);
-    record.setLoggerName(getName());
+    logRecord(Level.INFO, msg, throwable, params);
+  }
 
-    super.log(record);
+  /**
+   * Same as {@link #info(String, Throwable, Object...)} with a single message parameter. The
+   * log record is only created if the info level is enabled for this log category.
+   *
+   * @param msg         log message
+   * @param throwable   exception or error associated with the log message
+   * @param param       log message parameter
+   */
+  public void info(String msg, Throwable throwable, Object param)
+  {
+    if (isLoggable(Level.INFO))
+    {
+      logRecord(Level.INFO, msg, throwable, new Object[] { param });
+    }
   }
 
 
@@ -334,6 +494,34 @@ public class Logger extends java.util.logging.Logger
     super.log(Level.FINE, msg, params);
   }
 
+  /**
+   * Same as {@link #debug(String, Object...)} with a single message parameter. The parameter
+   * array is only created if the debug level is enabled for this log category.
+   *
+   * @param msg     log message
+   * @param param   log message parameter
+   */
+  public void debug(String msg, Object param)
+  {
+    super.log(Level.FINE, msg, param);
+  }
+
+  /**
+   * Same as {@link #debug(String, Object...)} with two message parameters. The parameter array
+   * is only created if the debug level is enabled for this log category.
+   *
+   * @param msg      log message
+   * @param param1   first log message parameter
+   * @param param2   second log message parameter
+   */
+  public void debug(String msg, Object param1, Object param2)
+  {
+    if (isLoggable(Level.FINE))
+    {
+      super.log(Level.FINE, msg, new Object[] { param1, param2 });
+    }
+  }
+
   /**
    * Same as {@link #debug} with an additional exception stack trace added to the logging record.
    *
@@ -358,12 +546,23 @@ public class Logger extends java.util.logging.Logger
    */
   public void debug(String msg, Throwable throwable, Object... params)
   {
-    LogRecord record = new LogRecord(Level.FINE, msg);
-    record.setThrown(throwable);
-    record.setParameters(params);
-    record.setLoggerName(getName());
+    logRecord(Level.FINE, msg, throwable, params);
+  }
 
-    super.log(record);
+  /**
+   * Same as {@link #debug(String, Throwable, Object...)} with a single message parameter. The
+   * log record is only created if the debug level is enabled for this log category.
+   *
+   * @param msg         log message
+   * @param throwable   exception or error associated with the log message
+   * @param param       log message parameter
+   */
+  public void debug(String msg, Throwable throwable, Object param)
+  {
+    if (isLoggable(Level.FINE))
+    {
+      logRecord(Level.FINE, msg, throwable, new Object[] { param });
+    }
   }
 
 
@@ -393,6 +592,34 @@ public class Logger extends java.util.logging.Logger
     super.log(Level.FINER, msg, params);
   }
 
+  /**
+   * Same as {@link #trace(String, Object...)} with a single message parameter. The parameter
+   * array is only created if the trace level is enabled for this log category.
+   *
+   * @param msg     log message
+   * @param param   log message parameter
+   */
+  public void trace(String msg, Object param)
+  {
+    super.log(Level.FINER, msg, param);
+  }
+
+  /**
+   * Same as {@link #trace(String, Object...)} with two message parameters. The parameter array
+   * is only created if the trace level is enabled for this log category.
+   *
+   * @param msg      log message
+   * @param param1   first log message parameter
+   * @param param2   second log message parameter
+   */
+  public void trace(String msg, Object param1, Object param2)
+  {
+    if (isLoggable(Level.FINER))
+    {
+      super.log(Level.FINER, msg, new Object[] { param1, param2 });
+    }
+  }
+
   /**
    * Same as {@link #trace} with an additional exception stack trace added to the logging record.
    *
@@ -417,13 +644,49 @@ public class Logger extends java.util.logging.Logger
    */
   public void trace(String msg, Throwable throwable, Object... params)
   {
-    LogRecord record = new LogRecord(Level.FINER, msg);
+    logRecord(Level.FINER, msg, throwable, params);
+  }
+
+  /**
+   * Same as {@link #trace(String, Throwable, Object...)} with a single message parameter. The
+   * log record is only created if the trace level is enabled for this log category.
+   *
+   * @param msg         log message
+   * @param throwable   exception or error associated with the log message
+   * @param param       log message parameter
+   */
+  public void trace(String msg, Throwable throwable, Object param)
+  {
+    if (isLoggable(Level.FINER))
+    {
+      logRecord(Level.FINER, msg, throwable, new Object[] { param });
+    }
+  }
+
+
+  // Private Instance Methods ---------------------------------------------------------------------
+
+  /**
+   * Logs a record with an exception and message parameters. The record is only created if the
+   * given level is enabled for this log category.
+   *
+   * @param level       log level
+   * @param msg         log message
+   * @param throwable   exception or error associated with the log message
+   * @param params      log message parameters
+   */
+  private void logRecord(Level level, String msg, Throwable throwable, Object[] params)
+  {
+    if (!isLoggable(level))
+    {
+      return;
+    }
+
+    LogRecord record = new LogRecord(level, msg);
     record.setThrown(throwable);
     record.setParameters(params);
     record.setLoggerName(getName());
 
     super.log(record);
   }
-
 }
-
@@ -0,0 +1,179 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PollingScheduler}.
+ */
+public class PollingSchedulerTest
+{
+
+  private PollingScheduler scheduler;
+
+
+  @Before public void setUp()
+  {
+    scheduler = new PollingScheduler(2, 10);
+  }
+
+  @After public void tearDown()
+  {
+    scheduler.shutdown();
+  }
+
+
+  /**
+   * Tests that a registered task is executed repeatedly.
+   */
+  @Test public void testRepeatedExecution() throws Exception
+  {
+    final CountDownLatch latch = new CountDownLatch(5);
+
+    scheduler.schedule("repeat", 20, new Runnable()
+    {
+      @Override public void run()
+      {
+        latch.countDown();
+      }
+    });
+
+    Assert.assertTrue(
+        "Expected five polls within two seconds.", latch.await(2, TimeUnit.SECONDS)
+    );
+
+    Assert.assertEquals(1, scheduler.getRegisteredTaskCount());
+    Assert.assertTrue(scheduler.getExecutedPollCount() >= 5);
+  }
+
+  /**
+   * Tests that a cancelled task is no longer executed.
+   */
+  @Test public void testCancel() throws Exception
+  {
+    final AtomicInteger count = new AtomicInteger(0);
+
+    PollingScheduler.PollingTask task = scheduler.schedule("cancel", 20, new Runnable()
+    {
+      @Override public void run()
+      {
+        count.incrementAndGet();
+      }
+    });
+
+    Thread.sleep(200);
+
+    task.cancel();
+
+    Assert.assertTrue(task.isCancelled());
+    Assert.assertEquals(0, scheduler.getRegisteredTaskCount());
+
+    Thread.sleep(50);
+
+    int polls = count.get();
+
+    Thread.sleep(200);
+
+    Assert.assertEquals("Cancelled task was still executed.", polls, count.get());
+  }
+
+  /**
+   * Tests that a failing poll does not stop the task or the scheduler threads.
+   */
+  @Test public void testFailingTask() throws Exception
+  {
+    final CountDownLatch latch = new CountDownLatch(3);
+
+    scheduler.schedule("failing", 20, new Runnable()
+    {
+      @Override public void run()
+      {
+        latch.countDown();
+
+        throw new RuntimeException("Expected test exception.");
+      }
+    });
+
+    Assert.assertTrue(
+        "Expected failing task to be rescheduled.", latch.await(2, TimeUnit.SECONDS)
+    );
+  }
+
+  /**
+   * Tests that many tasks share the bounded thread pool and that blocked threads show up
+   * in the queue depth gauge.
+   */
+  @Test public void testBoundedThreadCount() throws Exception
+  {
+    final CountDownLatch release = new CountDownLatch(1);
+
+    for (int i = 0; i < 10; ++i)
+    {
+      scheduler.schedule("blocking " + i, 10, new Runnable()
+      {
+        @Override public void run()
+        {
+          try
+          {
+            release.await();
+          }
+
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }
+
+    Thread.sleep(300);
+
+    Assert.assertEquals(2, scheduler.getThreadCount());
+    Assert.assertEquals(2, scheduler.getActiveThreadCount());
+    Assert.assertEquals(10, scheduler.getRegisteredTaskCount());
+    Assert.assertEquals(8, scheduler.getQueueDepth());
+
+    release.countDown();
+  }
+
+  /**
+   * Tests that a non-positive interval is rejected.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testInvalidInterval()
+  {
+    scheduler.schedule("invalid", 0, new Runnable()
+    {
+      @Override public void run()
+      {
+
+      }
+    });
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MacroExecutor}.
+ */
+public class MacroExecutorTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private MacroExecutor executor = new MacroExecutor(1);
+
+  private List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @After public void tearDown()
+  {
+    executor.shutdown();
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that execution returns immediately and commands are sent in order after their delays.
+   */
+  @Test public void testExecute() throws Exception
+  {
+    List<ExecutableCommand> macro = new ArrayList<ExecutableCommand>();
+    macro.add(new TestCommand("a"));
+    macro.add(new DelayCommand("300"));
+    macro.add(new TestCommand("b"));
+    macro.add(new TestCommand("c"));
+
+    long start = System.currentTimeMillis();
+
+    MacroExecutor.Execution execution = executor.execute("1/click", macro);
+
+    Assert.assertTrue(System.currentTimeMillis() - start < 100);
+    Assert.assertEquals(MacroExecutor.State.RUNNING, execution.getState());
+    Assert.assertSame(execution, executor.getExecution(execution.getID()));
+
+    Thread.sleep(150);
+
+    Assert.assertEquals(1, sent.size());
+
+    awaitState(execution, MacroExecutor.State.COMPLETED);
+
+    Assert.assertEquals("[a, b, c]", sent.toString());
+    Assert.assertEquals(4, execution.getCompletedCommandCount());
+    Assert.assertTrue(execution.getEndTime() - execution.getStartTime() >= 300);
+  }
+
+  /**
+   * Tests that a cancelled macro does not send its remaining commands.
+   */
+  @Test public void testCancel() throws Exception
+  {
+    List<ExecutableCommand> macro = new ArrayList<ExecutableCommand>();
+    macro.add(new TestCommand("a"));
+    macro.add(new DelayCommand("300"));
+    macro.add(new TestCommand("b"));
+
+    MacroExecutor.Execution execution = executor.execute("1/click", macro);
+
+    Thread.sleep(100);
+
+    Assert.assertSame(execution, executor.cancel(execution.getID()));
+    Assert.assertEquals(MacroExecutor.State.CANCELLED, execution.getState());
+
+    Thread.sleep(400);
+
+    Assert.assertEquals("[a]", sent.toString());
+    Assert.assertNull(executor.cancel("unknown"));
+  }
+
+  /**
+   * Tests that a failing command stops the macro.
+   */
+  @Test public void testFailure() throws Exception
+  {
+    List<ExecutableCommand> macro = new ArrayList<ExecutableCommand>();
+    macro.add(new TestCommand("a"));
+    macro.add(new ExecutableCommand()
+    {
+      @Override public void send()
+      {
+        throw new RuntimeException("test failure");
+      }
+    });
+    macro.add(new TestCommand("b"));
+
+    MacroExecutor.Execution execution = executor.execute("1/click", macro);
+
+    awaitState(execution, MacroExecutor.State.FAILED);
+
+    Assert.assertEquals("[a]", sent.toString());
+  }
+
+  /**
+   * Tests that a long delay does not hold the only executor thread from other macros.
+   */
+  @Test public void testDelayDoesNotHoldThread() throws Exception
+  {
+    List<ExecutableCommand> slow = new ArrayList<ExecutableCommand>();
+    slow.add(new DelayCommand("5000"));
+    slow.add(new TestCommand("slow"));
+
+    List<ExecutableCommand> fast = new ArrayList<ExecutableCommand>();
+    fast.add(new TestCommand("fast1"));
+    fast.add(new TestCommand("fast2"));
+
+    MacroExecutor.Execution slowExecution = executor.execute("1/click", slow);
+    MacroExecutor.Execution fastExecution = executor.execute("2/click", fast);
+
+    awaitState(fastExecution, MacroExecutor.State.COMPLETED);
+
+    Assert.assertEquals("[fast1, fast2]", sent.toString());
+    Assert.assertEquals(MacroExecutor.State.RUNNING, slowExecution.getState());
+  }
+
+  /**
+   * Tests that finished executions are removed after the retention time.
+   */
+  @Test public void testRetention() throws Exception
+  {
+    executor.setRetentionTime(100);
+
+    List<ExecutableCommand> macro = new ArrayList<ExecutableCommand>();
+    macro.add(new TestCommand("a"));
+    macro.add(new TestCommand("b"));
+
+    MacroExecutor.Execution execution = executor.execute("1/click", macro);
+
+    awaitState(execution, MacroExecutor.State.COMPLETED);
+
+    Thread.sleep(300);
+
+    Assert.assertNull(executor.getExecution(execution.getID()));
+  }
+
+  /**
+   * Tests which command lists are executed as macros.
+   */
+  @Test public void testIsMacro()
+  {
+    List<ExecutableCommand> commands = new ArrayList<ExecutableCommand>();
+    commands.add(new TestCommand("a"));
+
+    Assert.assertFalse(MacroExecutor.isMacro(commands));
+
+    commands.add(new TestCommand("b"));
+
+    Assert.assertTrue(MacroExecutor.isMacro(commands));
+    Assert.assertTrue(MacroExecutor.isMacro(Collections.<ExecutableCommand>singletonList(new DelayCommand("10"))));
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private void awaitState(MacroExecutor.Execution execution, MacroExecutor.State state) throws Exception
+  {
+    long start = System.currentTimeMillis();
+
+    while (execution.getState() != state && System.currentTimeMillis() - start < 5000)
+    {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(state, execution.getState());
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private class TestCommand implements ExecutableCommand
+  {
+    private String name;
+
+    private TestCommand(String name)
+    {
+      this.name = name;
+    }
+
+    @Override public void send()
+    {
+      sent.add(name);
+    }
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.component.control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdom.Element;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openremote.controller.command.ExecutableCommand;
+import org.openremote.controller.component.Component;
+import org.openremote.controller.component.ComponentBuilder;
+import org.openremote.controller.component.ComponentFactory;
+import org.openremote.controller.exception.InitializationException;
+
+/**
+ * Unit tests for {@link ControlCommandRegistry} class.
+ */
+public class ControlCommandRegistryTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private ComponentFactory componentFactory;
+
+  private AtomicInteger builds = new AtomicInteger(0);
+
+
+  // Test Setup -----------------------------------------------------------------------------------
+
+  @Before public void setUp()
+  {
+    Map<String, ComponentBuilder> builders = new HashMap<String, ComponentBuilder>();
+
+    builders.put("toggle", new ToggleBuilder());
+    builders.put("display", new DisplayBuilder());
+    builders.put("broken", new BrokenBuilder());
+
+    componentFactory = new ComponentFactory();
+    componentFactory.setComponentBuilders(builders);
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that the commands of each named control action are compiled and returned without
+   * building the control again.
+   */
+  @Test public void testCompileNamedActions()
+  {
+    ControlCommandRegistry registry = ControlCommandRegistry.compile(
+        components(component("toggle", "1"), component("toggle", "2")), componentFactory
+    );
+
+    Assert.assertEquals(4, registry.size());
+
+    int buildCount = builds.get();
+
+    List<ExecutableCommand> on = registry.getCommands(1, "on");
+
+    Assert.assertEquals(1, on.size());
+    Assert.assertEquals("1:on", on.get(0).toString());
+    Assert.assertEquals("2:off", registry.getCommands(2, "off").get(0).toString());
+
+    Assert.assertSame(on, registry.getCommands(1, "on"));
+    Assert.assertEquals(buildCount, builds.get());
+  }
+
+  /**
+   * Tests that control actions are matched case-insensitively.
+   */
+  @Test public void testActionIgnoresCase()
+  {
+    ControlCommandRegistry registry = ControlCommandRegistry.compile(
+        components(component("toggle", "1")), componentFactory
+    );
+
+    Assert.assertEquals("1:on", registry.getCommands(1, "ON").get(0).toString());
+    Assert.assertEquals("1:off", registry.getCommands(1, "Off").get(0).toString());
+  }
+
+  /**
+   * Tests that unknown controls and parameter values which are not named actions (such as slider
+   * values) are not found in the registry.
+   */
+  @Test public void testUnknownAction()
+  {
+    ControlCommandRegistry registry = ControlCommandRegistry.compile(
+        components(component("toggle", "1")), componentFactory
+    );
+
+    Assert.assertNull(registry.getCommands(1, "50"));
+    Assert.assertNull(registry.getCommands(1, null));
+    Assert.assertNull(registry.getCommands(99, "on"));
+  }
+
+  /**
+   * Tests that the compiled command lists cannot be modified by callers.
+   */
+  @Test public void testCommandsAreUnmodifiable()
+  {
+    ControlCommandRegistry registry = ControlCommandRegistry.compile(
+        components(component("toggle", "1")), componentFactory
+    );
+
+    try
+    {
+      registry.getCommands(1, "on").add(new NamedCommand("x"));
+
+      Assert.fail("Should not get here...");
+    }
+
+    catch (UnsupportedOperationException e)
+    {
+      // expected...
+    }
+  }
+
+  /**
+   * Tests that components that are not controls, that fail to build, that have no builder or no
+   * ID are left out of the registry without affecting other controls.
+   */
+  @Test public void testSkipUncompiledComponents()
+  {
+    Element noID = new Element("toggle");
+
+    ControlCommandRegistry registry = ControlCommandRegistry.compile(
+        components(
+            component("display", "1"), component("broken", "2"), component("unknown", "3"),
+            noID, component("toggle", "4")
+        ),
+        componentFactory
+    );
+
+    Assert.assertEquals(2, registry.size());
+    Assert.assertNull(registry.getCommands(1, "on"));
+    Assert.assertNull(registry.getCommands(2, "on"));
+    Assert.assertNull(registry.getCommands(3, "on"));
+    Assert.assertNotNull(registry.getCommands(4, "on"));
+  }
+
+  /**
+   * Tests the empty registry.
+   */
+  @Test public void testEmpty()
+  {
+    Assert.assertEquals(0, ControlCommandRegistry.EMPTY.size());
+    Assert.assertNull(ControlCommandRegistry.EMPTY.getCommands(1, "on"));
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private Element components(Element... components)
+  {
+    Element element = new Element("components");
+
+    for (Element component : components)
+    {
+      element.addContent(component);
+    }
+
+    return element;
+  }
+
+  private Element component(String type, String id)
+  {
+    Element element = new Element(type);
+    element.setAttribute("id", id);
+
+    return element;
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private static class NamedCommand implements ExecutableCommand
+  {
+    private String name;
+
+    private NamedCommand(String name)
+    {
+      this.name = name;
+    }
+
+    public void send()
+    {
+
+    }
+
+    @Override public String toString()
+    {
+      return name;
+    }
+  }
+
+  private static class Toggle extends Control
+  {
+    @Override protected List<String> getAvailableActions()
+    {
+      return Arrays.asList("on", "off");
+    }
+  }
+
+  private static class Display extends Component
+  {
+    @Override protected List<String> getAvailableActions()
+    {
+      return new ArrayList<String>();
+    }
+  }
+
+  private class ToggleBuilder extends ComponentBuilder
+  {
+    @Override public Component build(Element componentElement, String commandParam)
+    {
+      builds.incrementAndGet();
+
+      Toggle toggle = new Toggle();
+
+      if (toggle.isValidActionWith(commandParam))
+      {
+        toggle.addExecutableCommand(
+            new NamedCommand(componentElement.getAttributeValue("id") + ":" + commandParam)
+        );
+      }
+
+      return toggle;
+    }
+  }
+
+  private static class DisplayBuilder extends ComponentBuilder
+  {
+    @Override public Component build(Element componentElement, String commandParam)
+    {
+      return new Display();
+    }
+  }
+
+  private static class BrokenBuilder extends ComponentBuilder
+  {
+    @Override public Component build(Element componentElement, String commandParam)
+        throws InitializationException
+    {
+      if (commandParam.length() > 0)
+      {
+        throw new RuntimeException("Broken control.");
+      }
+
+      return new Toggle();
+    }
+  }
+}
@@ -21,6 +21,7 @@
 package org.openremote.controller.deployer;
 
 import java.io.File;
+import java.io.FileWriter;
 
 import junit.framework.Assert;
 import org.jdom.Document;
@@ -29,6 +30,7 @@ import org.openremote.controller.ControllerConfiguration;
 import org.openremote.controller.command.CommandFactory;
 import org.openremote.controller.exception.ControllerDefinitionNotFoundException;
 import org.openremote.controller.exception.XMLParsingException;
+import org.openremote.controller.model.sensor.Sensor;
 import org.openremote.controller.model.xml.Version20SensorBuilder;
 import org.openremote.controller.service.DeployerTest;
 import org.openremote.controller.statuscache.StatusCache;
@@ -324,6 +326,212 @@ public class Version20ModelBuilderTest
     }
   }
 
+  /**
+   * Tests change detection of controller.xml : modifications that do not change the file
+   * timestamp, replacement with an older file, and removal.
+   *
+   * @throws Exception if test fails
+   */
+  @Test public void testHasControllerDefinitionChanged() throws Exception
+  {
+    File resourcePath = File.createTempFile("controller", "");
+    resourcePath.delete();
+    resourcePath.mkdir();
+
+    File controllerXML = new File(resourcePath, "controller.xml");
+
+    try
+    {
+      FileWriter writer = new FileWriter(controllerXML);
+      writer.write("<openremote/>");
+      writer.close();
+
+      long timestamp = controllerXML.lastModified();
+
+      ControllerConfiguration config = new ControllerConfiguration();
+      config.setResourcePath(resourcePath.toURI().toString());
+
+      CommandFactory commandFactory = DeployerTest.createCommandFactory();
+
+      Version20ModelBuilder builder = new Version20ModelBuilder(
+          new StatusCache(),
+          config,
+          new Version20SensorBuilder(),
+          new Version20CommandBuilder(commandFactory),
+          commandFactory
+      );
+
+      Assert.assertFalse(builder.hasControllerDefinitionChanged());
+
+      // partial write within the file system timestamp granularity...
+
+      writer = new FileWriter(controllerXML, true);
+      writer.write("<!-- more -->");
+      writer.close();
+
+      controllerXML.setLastModified(timestamp);
+
+      Assert.assertTrue(builder.hasControllerDefinitionChanged());
+      Assert.assertFalse(builder.hasControllerDefinitionChanged());
+
+      // replaced with an older file...
+
+      controllerXML.setLastModified(timestamp - 60000);
+
+      Assert.assertTrue(builder.hasControllerDefinitionChanged());
+      Assert.assertFalse(builder.hasControllerDefinitionChanged());
+
+      controllerXML.delete();
+
+      Assert.assertTrue(builder.hasControllerDefinitionChanged());
+      Assert.assertFalse(builder.hasControllerDefinitionChanged());
+    }
+
+    finally
+    {
+      controllerXML.delete();
+      resourcePath.delete();
+    }
+  }
+
+  /**
+   * Tests incremental update of the object model : unchanged sensors keep running, changed,
+   * added and removed sensors are replaced, started and stopped, and configuration changes
+   * require a full redeploy.
+   *
+   * @throws Exception if test fails
+   */
+  @Test public void testUpdateModel() throws Exception
+  {
+    File resourcePath = File.createTempFile("controller", "");
+    resourcePath.delete();
+    resourcePath.mkdir();
+
+    File controllerXML = new File(resourcePath, "controller.xml");
+
+    try
+    {
+      writeControllerXML(
+          controllerXML,
+          sensorXML(1001, "sensor A", 98) + sensorXML(1002, "sensor B", 96),
+          commandXML(98, "cmd3") + commandXML(96, "cmd5"),
+          "false"
+      );
+
+      ControllerConfiguration config = new ControllerConfiguration();
+      config.setResourcePath(resourcePath.toURI().toString());
+
+      CommandFactory commandFactory = DeployerTest.createCommandFactory();
+      StatusCache cache = new StatusCache();
+
+      Version20SensorBuilder sensorBuilder = new Version20SensorBuilder();
+      sensorBuilder.setCommandFactory(commandFactory);
+
+      Version20ModelBuilder builder = new Version20ModelBuilder(
+          cache, config, sensorBuilder, new Version20CommandBuilder(commandFactory), commandFactory
+      );
+
+      builder.buildModel();
+
+      Sensor sensorA = cache.getSensor(1001);
+      Sensor sensorB = cache.getSensor(1002);
+
+      Assert.assertNotNull(sensorA);
+      Assert.assertNotNull(sensorB);
+
+      // change sensor B, add sensor C...
+
+      writeControllerXML(
+          controllerXML,
+          sensorXML(1001, "sensor A", 98) + sensorXML(1002, "sensor B2", 96) +
+          sensorXML(1003, "sensor C", 96),
+          commandXML(98, "cmd3") + commandXML(96, "cmd5"),
+          "false"
+      );
+
+      Assert.assertTrue(builder.updateModel());
+
+      Assert.assertSame(sensorA, cache.getSensor(1001));
+      Assert.assertNotSame(sensorB, cache.getSensor(1002));
+      Assert.assertEquals("sensor B2", cache.getSensor(1002).getName());
+      Assert.assertNotNull(cache.getSensor(1003));
+
+      // change the command of sensor A, remove sensor C...
+
+      sensorB = cache.getSensor(1002);
+
+      writeControllerXML(
+          controllerXML,
+          sensorXML(1001, "sensor A", 98) + sensorXML(1002, "sensor B2", 96),
+          commandXML(98, "cmd4") + commandXML(96, "cmd5"),
+          "false"
+      );
+
+      Assert.assertTrue(builder.updateModel());
+
+      Assert.assertNotSame(sensorA, cache.getSensor(1001));
+      Assert.assertSame(sensorB, cache.getSensor(1002));
+      Assert.assertNull(cache.getSensor(1003));
+      Assert.assertEquals(Sensor.UNKNOWN_STATUS, cache.queryStatus(1003));
+
+      // configuration changes are not applied incrementally...
+
+      sensorA = cache.getSensor(1001);
+
+      writeControllerXML(
+          controllerXML,
+          sensorXML(1001, "sensor A", 98) + sensorXML(1002, "sensor B2", 96),
+          commandXML(98, "cmd4") + commandXML(96, "cmd5"),
+          "true"
+      );
+
+      Assert.assertFalse(builder.updateModel());
+      Assert.assertSame(sensorA, cache.getSensor(1001));
+
+      cache.shutdown();
+    }
+
+    finally
+    {
+      controllerXML.delete();
+      resourcePath.delete();
+    }
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private void writeControllerXML(File file, String sensors, String commands, String configValue)
+      throws Exception
+  {
+    FileWriter writer = new FileWriter(file);
+
+    writer.write(
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<openremote xmlns=\"http://www.openremote.org\" " +
+        "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n" +
+        "  <components/>\n" +
+        "  <sensors>" + sensors + "</sensors>\n" +
+        "  <commands>" + commands + "</commands>\n" +
+        "  <config><property name=\"copy.lircd.conf.on\" value=\"" + configValue + "\"/></config>\n" +
+        "</openremote>\n"
+    );
+
+    writer.close();
+  }
+
+  private String sensorXML(int id, String name, int commandID)
+  {
+    return "<sensor id=\"" + id + "\" name=\"" + name + "\" type=\"custom\">" +
+           "<include type=\"command\" ref=\"" + commandID + "\"/></sensor>";
+  }
+
+  private String commandXML(int id, String address)
+  {
+    return "<command id=\"" + id + "\" protocol=\"virtual\">" +
+           "<property name=\"command\" value=\"STATUS\"/>" +
+           "<property name=\"address\" value=\"" + address + "\"/></command>";
+  }
 
 
 }
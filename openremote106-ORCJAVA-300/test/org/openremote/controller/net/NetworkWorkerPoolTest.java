@@ -0,0 +1,204 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.net;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link NetworkWorkerPool}.
+ */
+public class NetworkWorkerPoolTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private NetworkWorkerPool pool;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @After public void tearDown()
+  {
+    if (pool != null)
+    {
+      pool.shutdown();
+    }
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that requests beyond the thread count and queue capacity are dropped and counted,
+   * and that the thread count stays bounded.
+   */
+  @Test public void testOfferDropsWhenSaturated() throws Exception
+  {
+    pool = new NetworkWorkerPool(2, 3);
+
+    CountDownLatch release = new CountDownLatch(1);
+    int accepted = 0;
+
+    for (int i = 0; i < 20; ++i)
+    {
+      if (pool.offer("test", new BlockingTask(release)))
+      {
+        accepted++;
+      }
+    }
+
+    Assert.assertEquals(5, accepted);
+    Assert.assertEquals(15, pool.getDroppedTaskCount());
+    Assert.assertEquals(5, pool.getSubmittedTaskCount());
+    Assert.assertEquals(2, pool.getThreadCount());
+    Assert.assertEquals(3, pool.getQueuedTaskCount());
+    Assert.assertEquals(3, pool.getPeakQueuedTaskCount());
+
+    release.countDown();
+
+    awaitCompleted(5);
+
+    // Capacity is returned once requests have been handled...
+
+    Assert.assertTrue(pool.offer("test", new BlockingTask(release)));
+
+    awaitCompleted(6);
+
+    Assert.assertEquals(15, pool.getDroppedTaskCount());
+  }
+
+  /**
+   * Tests that execute blocks the caller until the pool has capacity.
+   */
+  @Test public void testExecuteBlocksWhenSaturated() throws Exception
+  {
+    pool = new NetworkWorkerPool(1, 1);
+
+    final CountDownLatch release = new CountDownLatch(1);
+
+    Assert.assertTrue(pool.execute("test", new BlockingTask(release)));
+    Assert.assertTrue(pool.execute("test", new BlockingTask(release)));
+
+    final AtomicBoolean submitted = new AtomicBoolean(false);
+
+    Thread submitter = new Thread()
+    {
+      @Override public void run()
+      {
+        try
+        {
+          submitted.set(pool.execute("test", new BlockingTask(release)));
+        }
+
+        catch (InterruptedException e)
+        {
+          // test fails on the assertion below...
+        }
+      }
+    };
+
+    submitter.start();
+
+    Thread.sleep(200);
+
+    Assert.assertFalse("Submission should block while the pool is saturated.", submitted.get());
+
+    release.countDown();
+
+    submitter.join(5000);
+
+    Assert.assertTrue(submitted.get());
+    Assert.assertEquals(1, pool.getBlockedSubmissionCount());
+    Assert.assertEquals(0, pool.getDroppedTaskCount());
+
+    awaitCompleted(3);
+  }
+
+  /**
+   * Tests that a failing request does not consume pool capacity.
+   */
+  @Test public void testFailingTaskReleasesCapacity() throws Exception
+  {
+    pool = new NetworkWorkerPool(1, 0);
+
+    for (int i = 0; i < 3; ++i)
+    {
+      Assert.assertTrue(pool.execute("test", new Runnable()
+      {
+        @Override public void run()
+        {
+          throw new RuntimeException("failing request");
+        }
+      }));
+    }
+
+    awaitCompleted(3);
+
+    Assert.assertTrue(pool.offer("test", new BlockingTask(new CountDownLatch(0))));
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private void awaitCompleted(long count) throws InterruptedException
+  {
+    long start = System.currentTimeMillis();
+
+    while (pool.getCompletedTaskCount() < count && System.currentTimeMillis() - start < 5000)
+    {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(count, pool.getCompletedTaskCount());
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private static class BlockingTask implements Runnable
+  {
+    private CountDownLatch release;
+
+    private BlockingTask(CountDownLatch release)
+    {
+      this.release = release;
+    }
+
+    @Override public void run()
+    {
+      try
+      {
+        release.await(5, TimeUnit.SECONDS);
+      }
+
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -1,10 +1,14 @@
 package org.openremote.controller.protocol;
 
+import java.util.List;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
 import org.openremote.controller.protocol.MessageQueueWithPriorityAndTTL;
 import org.openremote.controller.protocol.MessageQueueWithPriorityAndTTL.Coalescable;
+import org.openremote.controller.protocol.MessageQueueWithPriorityAndTTL.Filter;
+import org.openremote.controller.protocol.MessageQueueWithPriorityAndTTL.Mergeable;
 
 /**
  * 
@@ -61,6 +65,61 @@ public class MessageQueueWithPriorityAndTTLTest {
     Assert.assertEquals("Entry 3", queue.poll().getValue());
   }
 
+  @Test public void testMergeable() {
+    MessageQueueWithPriorityAndTTL<MergeableEntry> queue = new MessageQueueWithPriorityAndTTL<MergeableEntry>();
+    queue.add(new MergeableEntry("Entry 1", "a"));
+    queue.add(new MergeableEntry("Entry 2", "b"));
+    queue.add(new MergeableEntry("Entry 1", "c"));
+    Assert.assertEquals(2, queue.size());
+    Assert.assertEquals("b", queue.poll().getState());
+    Assert.assertEquals("ac", queue.poll().getState());
+    Assert.assertNull(queue.poll());
+  }
+
+  @Test public void testPollMatching() {
+    MessageQueueWithPriorityAndTTL<String> queue = new MessageQueueWithPriorityAndTTL<String>();
+    queue.add("Message 1");
+    queue.add("Other 2");
+    queue.priorityAdd("Message 3");
+    queue.priorityAdd("Other 4");
+    queue.add("Message 5");
+    List<String> matching = queue.pollMatching(new Filter<String>() {
+      public boolean accept(String e) {
+        return e.startsWith("Message");
+      }
+    });
+    Assert.assertEquals(3, matching.size());
+    Assert.assertEquals("Message 3", matching.get(0));
+    Assert.assertEquals("Message 1", matching.get(1));
+    Assert.assertEquals("Message 5", matching.get(2));
+    // Priority entries must still be ahead of the others
+    queue.priorityAdd("Other 6");
+    Assert.assertEquals("Other 4", queue.poll());
+    Assert.assertEquals("Other 6", queue.poll());
+    Assert.assertEquals("Other 2", queue.poll());
+    Assert.assertNull(queue.poll());
+  }
+
+  private class MergeableEntry extends TestEntry implements Mergeable {
+
+    private String state;
+
+    public MergeableEntry(String value, String state) {
+      super(value);
+      this.state = state;
+    }
+
+    public String getState() {
+      return state;
+    }
+
+    @Override
+    public void merge(Coalescable older) {
+      state = ((MergeableEntry)older).getState() + state;
+    }
+
+  }
+
   private class TestEntry implements Coalescable {
 
     private String value;
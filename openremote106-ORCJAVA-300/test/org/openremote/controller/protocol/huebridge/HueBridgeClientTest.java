@@ -0,0 +1,180 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.protocol.huebridge;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URI;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.openremote.controller.utils.LatencyHistogram;
+
+/**
+ * Tests for {@link HueBridgeClient}.
+ */
+public class HueBridgeClientTest
+{
+
+    // Constants ------------------------------------------------------------------------------------
+
+    private final static int HTTP_SERVER_PORT = 9998;
+
+    private final static String BRIDGE_ADDRESS = "127.0.0.1:" + HTTP_SERVER_PORT;
+
+    private final static String HTTP_SERVER_URL = "http://" + BRIDGE_ADDRESS;
+
+
+    // Instance Fields ------------------------------------------------------------------------------
+
+    private Server httpServer;
+
+    private HueBridgeClient client;
+
+
+    // Test Setup and Tear Down ---------------------------------------------------------------------
+
+    @Before public void setUp() throws Exception
+    {
+        httpServer = new Server(HTTP_SERVER_PORT);
+        httpServer.setHandler(new EchoHandler());
+        httpServer.start();
+
+        client = new HueBridgeClient(BRIDGE_ADDRESS, 2);
+    }
+
+    @After public void tearDown() throws Exception
+    {
+        client.shutdown();
+        httpServer.stop();
+    }
+
+
+    // Tests ----------------------------------------------------------------------------------------
+
+    /**
+     * Tests GET and PUT requests and that their latencies are recorded.
+     */
+    @Test public void testRequests() throws Exception
+    {
+        Assert.assertEquals("GET /api/key/lights/1", client.get(new URI(HTTP_SERVER_URL + "/api/key/lights/1")));
+
+        Assert.assertEquals(
+            "PUT /api/key/lights/1/state {\"on\":true}",
+            client.put(new URI(HTTP_SERVER_URL + "/api/key/lights/1/state"), "{\"on\":true}")
+        );
+
+        Assert.assertEquals(2, client.getRequestCount());
+        Assert.assertEquals(0, client.getFailedRequestCount());
+        Assert.assertEquals(LatencyHistogram.BUCKET_BOUNDS.length + 1, client.getLatencyHistogram().length);
+    }
+
+    /**
+     * Tests that consecutive requests reuse the pooled connection.
+     */
+    @Test public void testKeepAlive() throws Exception
+    {
+        for (int i = 0; i < 10; ++i)
+        {
+            client.get(new URI(HTTP_SERVER_URL + "/api/key/lights/" + i));
+        }
+
+        Assert.assertEquals(1, client.getConnectionsInPool());
+    }
+
+    /**
+     * Tests that error responses are counted as failures and do not leak pooled connections.
+     */
+    @Test public void testErrorResponse() throws Exception
+    {
+        for (int i = 0; i < 5; ++i)
+        {
+            try
+            {
+                client.get(new URI(HTTP_SERVER_URL + "/error/500"));
+
+                Assert.fail("should not get here, was expecting an IOException");
+            }
+
+            catch (IOException e)
+            {
+                // expected...
+            }
+        }
+
+        Assert.assertEquals(5, client.getFailedRequestCount());
+        Assert.assertEquals("GET /ok", client.get(new URI(HTTP_SERVER_URL + "/ok")));
+    }
+
+    /**
+     * Tests that the builder hands out one shared client per bridge.
+     */
+    @Test public void testSharedClientPerBridge()
+    {
+        HueBridgeClient first = HueBridgeCommandBuilder.getBridgeClient("10.0.0.1");
+
+        Assert.assertSame(first, HueBridgeCommandBuilder.getBridgeClient("10.0.0.1"));
+        Assert.assertNotSame(first, HueBridgeCommandBuilder.getBridgeClient("10.0.0.2"));
+    }
+
+
+    // Nested Classes -------------------------------------------------------------------------------
+
+    private static class EchoHandler extends AbstractHandler
+    {
+        public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+                throws IOException, ServletException
+        {
+            if (target.startsWith("/error/"))
+            {
+                response.sendError(Integer.parseInt(target.substring(7)));
+            }
+
+            else
+            {
+                StringBuilder body = new StringBuilder(request.getMethod() + " " + target);
+                BufferedReader reader = request.getReader();
+                String line;
+
+                while ((line = reader.readLine()) != null)
+                {
+                    body.append(" ").append(line);
+                }
+
+                response.setContentType("application/json");
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.getWriter().print(body.toString());
+                response.getWriter().flush();
+            }
+
+            ((Request)request).setHandled(true);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.protocol.huebridge;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.openremote.controller.component.RangeSensor;
+import org.openremote.controller.model.sensor.Sensor;
+import org.openremote.controller.protocol.Event;
+import org.openremote.controller.protocol.EventListener;
+import org.openremote.controller.statuscache.ChangedStatusTable;
+import org.openremote.controller.statuscache.EventProcessorChain;
+import org.openremote.controller.statuscache.StatusCache;
+
+/**
+ * Tests for {@link HueBridgeStatePoller}.
+ */
+public class HueBridgeStatePollerTest
+{
+
+    // Constants ------------------------------------------------------------------------------------
+
+    private final static int HTTP_SERVER_PORT = 9997;
+
+    private final static String BRIDGE_ADDRESS = "127.0.0.1:" + HTTP_SERVER_PORT;
+
+
+    // Instance Fields ------------------------------------------------------------------------------
+
+    private Server httpServer;
+
+    private LightsHandler lights = new LightsHandler();
+
+    private AtomicInteger cacheUpdates = new AtomicInteger(0);
+
+    private StatusCache cache;
+
+
+    // Test Setup and Tear Down ---------------------------------------------------------------------
+
+    @Before public void setUp() throws Exception
+    {
+        httpServer = new Server(HTTP_SERVER_PORT);
+        httpServer.setHandler(lights);
+        httpServer.start();
+
+        cache = new StatusCache(new ChangedStatusTable(), new EventProcessorChain())
+        {
+            @Override public synchronized void update(Event event)
+            {
+                cacheUpdates.incrementAndGet();
+
+                super.update(event);
+            }
+        };
+    }
+
+    @After public void tearDown() throws Exception
+    {
+        httpServer.stop();
+    }
+
+
+    // Tests ----------------------------------------------------------------------------------------
+
+    /**
+     * Tests that all Hue sensors of a bridge are updated from a single bulk request per interval
+     * and that only changed values are pushed to the status cache.
+     */
+    @Test public void testBulkPoll() throws Exception
+    {
+        Sensor bri1 = createSensor(1, "1", "brightness");
+        Sensor hue1 = createSensor(2, "1", "color");
+        Sensor bri2 = createSensor(3, "2", "brightness");
+        Sensor hue2 = createSensor(4, "2", "color");
+
+        bri1.start();
+        hue1.start();
+        bri2.start();
+        hue2.start();
+
+        Thread.sleep(1000);
+
+        Assert.assertEquals("100", cache.queryStatus(1));
+        Assert.assertEquals("20000", cache.queryStatus(2));
+        Assert.assertEquals("200", cache.queryStatus(3));
+        Assert.assertEquals("40000", cache.queryStatus(4));
+
+        int requests = lights.requests.get();
+
+        Assert.assertTrue("Expected a few bulk polls, got " + requests, requests >= 2 && requests <= 15);
+        Assert.assertEquals("Unchanged values should not be pushed.", 4, cacheUpdates.get());
+
+        lights.brightness2 = 150;
+
+        Thread.sleep(500);
+
+        Assert.assertEquals("150", cache.queryStatus(3));
+        Assert.assertEquals(5, cacheUpdates.get());
+
+        bri1.stop();
+        hue1.stop();
+        bri2.stop();
+        hue2.stop();
+
+        Assert.assertEquals(0, HueBridgeCommandBuilder.getBridgeClient(BRIDGE_ADDRESS).getStatePoller("openremote").getRegisteredSensorCount());
+
+        Thread.sleep(300);
+
+        requests = lights.requests.get();
+
+        Thread.sleep(500);
+
+        Assert.assertEquals("Polling should stop with the last sensor.", requests, lights.requests.get());
+    }
+
+
+    // Helpers --------------------------------------------------------------------------------------
+
+    private Sensor createSensor(int id, String lightid, String sensorCommand)
+    {
+        Element ele = new Element("command");
+        ele.setAttribute("id", "test");
+        ele.setAttribute("protocol", "huebridge");
+
+        ele.addContent(createProperty("bridgeip", BRIDGE_ADDRESS));
+        ele.addContent(createProperty("key", "openremote"));
+        ele.addContent(createProperty("lightid", lightid));
+        ele.addContent(createProperty("sensor", sensorCommand));
+        ele.addContent(createProperty("pollingInterval", "100"));
+
+        EventListener command = (EventListener)new HueBridgeCommandBuilder().build(ele);
+
+        return new RangeSensor("sensor" + id, id, cache, command, 0, 65535);
+    }
+
+    private Element createProperty(String name, String value)
+    {
+        Element property = new Element("property");
+        property.setAttribute("name", name);
+        property.setAttribute("value", value);
+
+        return property;
+    }
+
+
+    // Nested Classes -------------------------------------------------------------------------------
+
+    private static class LightsHandler extends AbstractHandler
+    {
+        private AtomicInteger requests = new AtomicInteger(0);
+
+        private volatile int brightness2 = 200;
+
+        public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+                throws IOException, ServletException
+        {
+            if (target.equals("/api/openremote/lights"))
+            {
+                requests.incrementAndGet();
+
+                response.setContentType("application/json");
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.getWriter().print(
+                    "{\"1\":{\"state\":{\"on\":true,\"bri\":100,\"hue\":20000,\"sat\":10},\"name\":\"Lamp 1\"}," +
+                    " \"2\":{\"state\":{\"on\":true,\"bri\":" + brightness2 + ",\"hue\":40000,\"sat\":20},\"name\":\"Lamp 2\"}}"
+                );
+                response.getWriter().flush();
+            }
+
+            else
+            {
+                response.sendError(404);
+            }
+
+            ((Request)request).setHandled(true);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.protocol.huebridge;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+
+/**
+ * Tests for {@link HueBridgeWriteQueue}.
+ */
+public class HueBridgeWriteQueueTest
+{
+
+    // Constants ------------------------------------------------------------------------------------
+
+    private final static int HTTP_SERVER_PORT = 9996;
+
+    private final static String BRIDGE_ADDRESS = "127.0.0.1:" + HTTP_SERVER_PORT;
+
+
+    // Instance Fields ------------------------------------------------------------------------------
+
+    private Server httpServer;
+
+    private BridgeHandler bridge = new BridgeHandler();
+
+    private HueBridgeClient client;
+
+
+    // Test Setup and Tear Down ---------------------------------------------------------------------
+
+    @Before public void setUp() throws Exception
+    {
+        httpServer = new Server(HTTP_SERVER_PORT);
+        httpServer.setHandler(bridge);
+        httpServer.start();
+    }
+
+    @After public void tearDown() throws Exception
+    {
+        client.shutdown();
+        httpServer.stop();
+    }
+
+
+    // Tests ----------------------------------------------------------------------------------------
+
+    /**
+     * Tests that a burst of writes to the same light is coalesced and that the final value is
+     * always sent.
+     */
+    @Test public void testCoalescing() throws Exception
+    {
+        client = new HueBridgeClient(BRIDGE_ADDRESS, 2, 5);
+
+        HueBridgeWriteQueue queue = client.getWriteQueue();
+
+        queue.add("key", "1", "{\"on\":true}");
+
+        for (int bri = 0; bri <= 100; ++bri)
+        {
+            queue.add("key", "1", "{\"bri\":" + bri + "}");
+        }
+
+        Thread.sleep(500);
+
+        List<String> requests = bridge.getRequests();
+
+        Assert.assertTrue("Expected coalesced writes, got " + requests.size(), requests.size() < 10);
+
+        JSONObject last = new JSONObject(requests.get(requests.size() - 1).split(" ", 2)[1]);
+
+        Assert.assertEquals(100, last.getInt("bri"));
+        Assert.assertTrue("Expected writes to be coalesced.", queue.getCoalescedWriteCount() > 90);
+    }
+
+    /**
+     * Tests that merged writes keep the attributes the newer write does not set.
+     */
+    @Test public void testMerge() throws Exception
+    {
+        client = new HueBridgeClient(BRIDGE_ADDRESS, 2, 1);
+
+        HueBridgeWriteQueue queue = client.getWriteQueue();
+
+        queue.add("key", "1", "{\"bri\":10}");
+        queue.add("key", "1", "{\"on\":true,\"bri\":20}");
+        queue.add("key", "1", "{\"hue\":30000}");
+
+        Thread.sleep(500);
+
+        List<String> requests = bridge.getRequests();
+
+        Assert.assertEquals(requests.toString(), 1, requests.size());
+
+        JSONObject merged = new JSONObject(requests.get(0).split(" ", 2)[1]);
+
+        Assert.assertEquals(true, merged.getBoolean("on"));
+        Assert.assertEquals(20, merged.getInt("bri"));
+        Assert.assertEquals(30000, merged.getInt("hue"));
+    }
+
+    /**
+     * Tests that writes to different lights are paced to the configured rate.
+     */
+    @Test public void testRateLimit() throws Exception
+    {
+        client = new HueBridgeClient(BRIDGE_ADDRESS, 2, 20);
+
+        HueBridgeWriteQueue queue = client.getWriteQueue();
+
+        long start = System.currentTimeMillis();
+
+        for (int light = 1; light <= 40; ++light)
+        {
+            queue.add("key", "" + light, "{\"bri\":" + light + "}");
+        }
+
+        while (bridge.getRequests().size() < 40 && System.currentTimeMillis() - start < 5000)
+        {
+            Thread.sleep(20);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+
+        Assert.assertEquals(40, bridge.getRequests().size());
+
+        // 20 tokens available up front, the remaining 20 at 20 per second...
+
+        Assert.assertTrue("Writes were not rate limited, took " + elapsed + "ms", elapsed >= 900);
+    }
+
+    /**
+     * Tests that identical state for all lights of a bridge group is sent as a group action.
+     */
+    @Test public void testGroupAction() throws Exception
+    {
+        client = new HueBridgeClient(BRIDGE_ADDRESS, 2, 10);
+
+        HueBridgeWriteQueue queue = client.getWriteQueue();
+
+        queue.add("key", "1", "{\"on\":false}");
+        queue.add("key", "2", "{\"on\":false}");
+        queue.add("key", "3", "{\"on\":false}");
+        queue.add("key", "4", "{\"on\":false}");
+
+        Thread.sleep(500);
+
+        List<String> requests = bridge.getRequests();
+
+        Assert.assertEquals(requests.toString(), 2, requests.size());
+        Assert.assertTrue(requests.contains("/api/key/groups/1/action {\"on\":false}"));
+        Assert.assertTrue(requests.contains("/api/key/lights/4/state {\"on\":false}"));
+        Assert.assertEquals(1, queue.getGroupActionCount());
+    }
+
+
+    // Nested Classes -------------------------------------------------------------------------------
+
+    private static class BridgeHandler extends AbstractHandler
+    {
+        private List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+        private List<String> getRequests()
+        {
+            synchronized (requests)
+            {
+                return new ArrayList<String>(requests);
+            }
+        }
+
+        public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+                throws IOException, ServletException
+        {
+            response.setContentType("application/json");
+            response.setStatus(HttpServletResponse.SC_OK);
+
+            if (request.getMethod().equals("GET") && target.equals("/api/key/groups"))
+            {
+                response.getWriter().print(
+                    "{\"1\":{\"name\":\"Living room\",\"lights\":[\"1\",\"2\",\"3\"]}," +
+                    " \"2\":{\"name\":\"Kitchen\",\"lights\":[\"5\",\"6\",\"7\"]}}"
+                );
+            }
+
+            else if (request.getMethod().equals("PUT"))
+            {
+                BufferedReader reader = request.getReader();
+                StringBuilder body = new StringBuilder();
+                String line;
+
+                while ((line = reader.readLine()) != null)
+                {
+                    body.append(line);
+                }
+
+                requests.add(target + " " + body);
+
+                response.getWriter().print("[{\"success\":{}}]");
+            }
+
+            response.getWriter().flush();
+
+            ((Request)request).setHandled(true);
+        }
+    }
+}
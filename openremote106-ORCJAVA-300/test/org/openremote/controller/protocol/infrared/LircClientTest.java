@@ -0,0 +1,447 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.protocol.infrared;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link LircClient} against a fake LIRC daemon.
+ */
+public class LircClientTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private FakeLircd lircd;
+
+  private LircClient client;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @Before public void setUp() throws Exception
+  {
+    lircd = new FakeLircd();
+    lircd.start();
+
+    client = new LircClient("127.0.0.1", lircd.getPort(), 2000);
+  }
+
+  @After public void tearDown() throws Exception
+  {
+    client.close();
+    lircd.shutdown();
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that consecutive directives are sent over a single connection.
+   */
+  @Test public void testSendOverPersistentConnection() throws Exception
+  {
+    client.send("SEND_ONCE", "tv", "power");
+    client.send("SEND_START", "tv", "volume_up");
+    client.send("SEND_STOP", "tv", "volume_up");
+
+    Assert.assertEquals(
+        "[SEND_ONCE tv power, SEND_START tv volume_up, SEND_STOP tv volume_up]",
+        lircd.getDirectives().toString()
+    );
+
+    Assert.assertEquals(1, client.getConnectionCount());
+    Assert.assertEquals(1, lircd.connections.get());
+  }
+
+  /**
+   * Tests that an error reply from the daemon is reported with its message.
+   */
+  @Test public void testErrorReply() throws Exception
+  {
+    try
+    {
+      client.send("SEND_ONCE", "tv", "unknown");
+
+      Assert.fail("should not get here...");
+    }
+
+    catch (IOException e)
+    {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("unknown command: \"unknown\""));
+    }
+
+    // The connection remains usable...
+
+    client.send("SEND_ONCE", "tv", "power");
+
+    Assert.assertEquals(1, client.getConnectionCount());
+  }
+
+  /**
+   * Tests that directives from concurrent callers are pipelined: all are written before the
+   * daemon replies to any of them.
+   */
+  @Test public void testPipelining() throws Exception
+  {
+    final int callers = 5;
+
+    lircd.replyAfter = callers;
+
+    final CountDownLatch done = new CountDownLatch(callers);
+    final AtomicInteger failures = new AtomicInteger(0);
+
+    for (int i = 0; i < callers; ++i)
+    {
+      final String button = "button" + i;
+
+      new Thread()
+      {
+        @Override public void run()
+        {
+          try
+          {
+            client.send("SEND_ONCE", "tv", button);
+          }
+
+          catch (IOException e)
+          {
+            failures.incrementAndGet();
+          }
+
+          done.countDown();
+        }
+      }.start();
+    }
+
+    Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(0, failures.get());
+    Assert.assertEquals(callers, lircd.getDirectives().size());
+    Assert.assertEquals(1, client.getConnectionCount());
+  }
+
+  /**
+   * Tests that broadcast messages of received IR codes and SIGHUP notifications are not taken
+   * as replies.
+   */
+  @Test public void testBroadcastIgnored() throws Exception
+  {
+    lircd.broadcast = true;
+
+    client.send("SEND_ONCE", "tv", "power");
+
+    lircd.replyAfter = 2;
+
+    // The second reply would be taken by the first caller if broadcasts were not skipped...
+
+    final CountDownLatch first = new CountDownLatch(1);
+
+    new Thread()
+    {
+      @Override public void run()
+      {
+        try
+        {
+          client.send("SEND_ONCE", "tv", "unknown");
+        }
+
+        catch (IOException e)
+        {
+          first.countDown();
+        }
+      }
+    }.start();
+
+    client.send("SEND_ONCE", "tv", "mute");
+
+    Assert.assertTrue("Error reply was not matched to its directive.", first.await(5, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Tests that the connection is reopened after the daemon closes it.
+   */
+  @Test public void testReconnect() throws Exception
+  {
+    lircd.closeAfter = 1;
+
+    client.send("SEND_ONCE", "tv", "power");
+
+    long start = System.currentTimeMillis();
+
+    while (lircd.connections.get() == 1 && System.currentTimeMillis() - start < 2000)
+    {
+      try
+      {
+        client.send("SEND_ONCE", "tv", "mute");
+      }
+
+      catch (IOException e)
+      {
+        // connection loss not yet detected...
+      }
+
+      Thread.sleep(20);
+    }
+
+    client.send("SEND_ONCE", "tv", "mute");
+
+    Assert.assertEquals(2, client.getConnectionCount());
+    Assert.assertEquals(2, lircd.connections.get());
+  }
+
+  /**
+   * Tests that a daemon which does not reply causes a timeout and a new connection.
+   */
+  @Test public void testTimeout() throws Exception
+  {
+    client = new LircClient("127.0.0.1", lircd.getPort(), 200);
+
+    lircd.replyAfter = Integer.MAX_VALUE;
+
+    try
+    {
+      client.send("SEND_ONCE", "tv", "power");
+
+      Assert.fail("should not get here...");
+    }
+
+    catch (IOException e)
+    {
+      // expected...
+    }
+
+    lircd.replyAfter = 1;
+
+    client.send("SEND_ONCE", "tv", "power");
+
+    Assert.assertEquals(2, client.getConnectionCount());
+  }
+
+
+  /**
+   * Tests that shutting down the shared clients closes their connections and that a new client
+   * is created afterwards.
+   */
+  @Test public void testShutdownClients() throws Exception
+  {
+    String address = "127.0.0.1:" + lircd.getPort();
+    LircClient shared = LircClient.getClient(address);
+
+    shared.send("SEND_ONCE", "tv", "power");
+
+    Assert.assertSame(shared, LircClient.getClient(address));
+
+    LircClient.shutdownClients();
+
+    long start = System.currentTimeMillis();
+
+    while (isReaderRunning() && System.currentTimeMillis() - start < 2000)
+    {
+      Thread.sleep(20);
+    }
+
+    Assert.assertFalse(isReaderRunning());
+    Assert.assertNotSame(shared, LircClient.getClient(address));
+
+    LircClient.shutdownClients();
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private boolean isReaderRunning()
+  {
+    String name = "LIRC client 127.0.0.1:" + lircd.getPort();
+
+    for (Thread thread : Thread.getAllStackTraces().keySet())
+    {
+      if (thread.getName().equals(name) && thread.isAlive())
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  /**
+   * Minimal stand-in for lircd: records directives and replies SUCCESS, or ERROR for the button
+   * named 'unknown'.
+   */
+  private static class FakeLircd extends Thread
+  {
+    private ServerSocket server;
+
+    private List<String> directives = Collections.synchronizedList(new ArrayList<String>());
+
+    private AtomicInteger connections = new AtomicInteger(0);
+
+    /**
+     * Number of directives to collect before replying to all of them.
+     */
+    private volatile int replyAfter = 1;
+
+    /**
+     * Number of directives after which the next connection is closed, or zero to keep it open.
+     */
+    private volatile int closeAfter = 0;
+
+    /**
+     * Whether to precede each reply with broadcast and SIGHUP packets.
+     */
+    private volatile boolean broadcast = false;
+
+
+    private FakeLircd() throws IOException
+    {
+      super("Fake lircd");
+
+      setDaemon(true);
+
+      server = new ServerSocket(0);
+    }
+
+
+    private int getPort()
+    {
+      return server.getLocalPort();
+    }
+
+    private List<String> getDirectives()
+    {
+      synchronized (directives)
+      {
+        return new ArrayList<String>(directives);
+      }
+    }
+
+    private void shutdown() throws IOException
+    {
+      server.close();
+    }
+
+    @Override public void run()
+    {
+      try
+      {
+        while (true)
+        {
+          final Socket socket = server.accept();
+
+          connections.incrementAndGet();
+
+          new Thread()
+          {
+            @Override public void run()
+            {
+              serve(socket);
+            }
+          }.start();
+        }
+      }
+
+      catch (IOException e)
+      {
+        // server closed...
+      }
+    }
+
+    private void serve(Socket socket)
+    {
+      try
+      {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+        List<String> unanswered = new ArrayList<String>();
+        int count = 0;
+        String line;
+
+        while ((line = in.readLine()) != null)
+        {
+          directives.add(line);
+          unanswered.add(line);
+          count++;
+
+          if (unanswered.size() < replyAfter)
+          {
+            continue;
+          }
+
+          for (String directive : unanswered)
+          {
+            if (broadcast)
+            {
+              out.write("0000000000f40bf0 00 power tv\n");
+              out.write("BEGIN\nSIGHUP\nEND\n");
+            }
+
+            if (directive.endsWith(" unknown"))
+            {
+              out.write("BEGIN\n" + directive + "\nERROR\nDATA\n1\nunknown command: \"unknown\"\nEND\n");
+            }
+
+            else
+            {
+              out.write("BEGIN\n" + directive + "\nSUCCESS\nEND\n");
+            }
+          }
+
+          out.flush();
+          unanswered.clear();
+
+          if (closeAfter > 0 && count >= closeAfter)
+          {
+            closeAfter = 0;
+
+            break;
+          }
+        }
+
+        socket.close();
+      }
+
+      catch (IOException e)
+      {
+        // client went away...
+      }
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.rest;
+
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openremote.controller.rest.support.json.JSONTranslator;
+
+/**
+ * Compares the cost of JSON status responses written directly with
+ * {@link org.openremote.controller.utils.JSONWriter} against composing the XML status document
+ * and translating it with {@link JSONTranslator}. Not part of the test suites, run with
+ * <tt>java org.openremote.controller.rest.JSONResponseBenchmark [sensorCount]</tt>.
+ */
+public class JSONResponseBenchmark
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  private final static int WARMUP_ITERATIONS = 20000;
+
+  private final static int MEASURED_ITERATIONS = 100000;
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  public static void main(String[] args) throws Exception
+  {
+    int sensorCount = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+    Map<Integer, String> statuses = new LinkedHashMap<Integer, String>();
+
+    for (int id = 1; id <= sensorCount; ++id)
+    {
+      statuses.put(id, id % 2 == 0 ? "on" : Integer.toString(id * 10));
+    }
+
+    HttpServletRequest request = JSONResponseTest.request(
+        "/controller/rest/polling/panel/1", RESTAPI.ResponseType.APPLICATION_JSON
+    );
+
+    RESTAPI api = new RESTAPI()
+    {
+      @Override protected void handleRequest(HttpServletRequest request, HttpServletResponse response)
+      {
+
+      }
+    };
+
+    System.out.println("Status JSON response, " + sensorCount + " sensors:");
+
+    for (int round = 0; round < 2; ++round)
+    {
+      long legacy = runLegacy(request, statuses, round == 0 ? WARMUP_ITERATIONS : MEASURED_ITERATIONS);
+      long direct = runDirect(api, request, statuses, round == 0 ? WARMUP_ITERATIONS : MEASURED_ITERATIONS);
+
+      if (round > 0)
+      {
+        System.out.println("  XML + JSONTranslator : " + legacy / MEASURED_ITERATIONS + " ns/op");
+        System.out.println("  JSONWriter           : " + direct / MEASURED_ITERATIONS + " ns/op");
+      }
+    }
+  }
+
+  private static long runLegacy(HttpServletRequest request, Map<Integer, String> statuses, int iterations)
+  {
+    long length = 0;
+    long start = System.nanoTime();
+
+    for (int i = 0; i < iterations; ++i)
+    {
+      length += JSONTranslator.translateXMLToJSON(
+          request, null, RESTAPI.composeStatusXMLDocument(statuses)
+      ).length();
+    }
+
+    long elapsed = System.nanoTime() - start;
+
+    return length == 0 ? 0 : elapsed;
+  }
+
+  private static long runDirect(RESTAPI api, HttpServletRequest request,
+                                Map<Integer, String> statuses, int iterations)
+  {
+    long length = 0;
+    long start = System.nanoTime();
+
+    for (int i = 0; i < iterations; ++i)
+    {
+      StringWriter out = new StringWriter();
+
+      api.sendStatusResponse(request, new JSONResponseTest.StubResponse(out).proxy(), statuses);
+
+      length += out.getBuffer().length();
+    }
+
+    long elapsed = System.nanoTime() - start;
+
+    return length == 0 ? 0 : elapsed;
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.rest;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openremote.controller.rest.support.json.JSONTranslator;
+
+/**
+ * Tests that the JSON status and error documents written directly by {@link RESTAPI} match
+ * the documents previously produced by translating the XML responses with
+ * {@link JSONTranslator}.
+ */
+public class JSONResponseTest
+{
+
+  /**
+   * Tests sensor status JSON against the translated XML status document.
+   */
+  @Test public void testStatusParity() throws Exception
+  {
+    Map<Integer, String> statuses = new LinkedHashMap<Integer, String>();
+    statuses.put(1, "on");
+    statuses.put(2, "42");
+    statuses.put(3, "some text");
+
+    assertStatusParity("/controller/rest/status/1,2,3", statuses);
+    assertStatusParity("/controller/rest/polling/panel/1,2,3", statuses);
+  }
+
+  /**
+   * Tests a single sensor status, the legacy formatter forces it into an array.
+   */
+  @Test public void testSingleStatusParity() throws Exception
+  {
+    Map<Integer, String> statuses = new LinkedHashMap<Integer, String>();
+    statuses.put(7, "off");
+
+    assertStatusParity("/controller/rest/status/7", statuses);
+  }
+
+  /**
+   * Tests JSON error documents against the translated XML error document.
+   */
+  @Test public void testErrorParity() throws Exception
+  {
+    StringWriter out = new StringWriter();
+    StubResponse response = new StubResponse(out);
+
+    new TestAPI().sendResponse(
+        request("/controller/rest/status/1", RESTAPI.ResponseType.APPLICATION_JSON),
+        response.proxy(), 418, "Sensor 'x' not found"
+    );
+
+    String legacy = JSONTranslator.translateXMLToJSON(
+        "application/json", null, 418, RESTAPI.composeXMLErrorDocument(418, "Sensor 'x' not found")
+    );
+
+    Assert.assertEquals(HttpServletResponse.SC_OK, response.status);
+    assertJSONEquals(new JSONObject(legacy), new JSONObject(out.toString()));
+  }
+
+
+  /**
+   * Tests that status values with markup characters are written as is. The translated XML
+   * documents did not escape these and failed to parse.
+   */
+  @Test public void testStatusEscaping() throws Exception
+  {
+    Map<Integer, String> statuses = new LinkedHashMap<Integer, String>();
+    statuses.put(1, "a \"quoted\" <value> & more");
+
+    StringWriter out = new StringWriter();
+
+    new TestAPI().sendStatusResponse(
+        request("/controller/rest/status/1", RESTAPI.ResponseType.APPLICATION_JSON),
+        new StubResponse(out).proxy(), statuses
+    );
+
+    JSONObject status = new JSONObject(out.toString()).getJSONArray("status").getJSONObject(0);
+
+    Assert.assertEquals(1, status.getInt("id"));
+    Assert.assertEquals("a \"quoted\" <value> & more", status.getString("content"));
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private void assertStatusParity(String uri, Map<Integer, String> statuses) throws Exception
+  {
+    HttpServletRequest request = request(uri, RESTAPI.ResponseType.APPLICATION_JSON);
+    StringWriter out = new StringWriter();
+
+    new TestAPI().sendStatusResponse(request, new StubResponse(out).proxy(), statuses);
+
+    String legacy = JSONTranslator.translateXMLToJSON(
+        request, null, RESTAPI.composeStatusXMLDocument(statuses)
+    );
+
+    assertJSONEquals(new JSONObject(legacy), new JSONObject(out.toString()));
+  }
+
+  private void assertJSONEquals(Object expected, Object actual) throws Exception
+  {
+    if (expected instanceof JSONObject)
+    {
+      Assert.assertTrue("Expected object, got " + actual, actual instanceof JSONObject);
+
+      JSONObject expectedObject = (JSONObject)expected;
+      JSONObject actualObject = (JSONObject)actual;
+
+      Assert.assertEquals(expectedObject.length(), actualObject.length());
+
+      for (String name : JSONObject.getNames(expectedObject))
+      {
+        assertJSONEquals(expectedObject.get(name), actualObject.get(name));
+      }
+    }
+
+    else if (expected instanceof JSONArray)
+    {
+      Assert.assertTrue("Expected array, got " + actual, actual instanceof JSONArray);
+
+      JSONArray expectedArray = (JSONArray)expected;
+      JSONArray actualArray = (JSONArray)actual;
+
+      Assert.assertEquals(expectedArray.length(), actualArray.length());
+
+      for (int index = 0; index < expectedArray.length(); ++index)
+      {
+        assertJSONEquals(expectedArray.get(index), actualArray.get(index));
+      }
+    }
+
+    else
+    {
+      Assert.assertEquals(expected.toString(), actual.toString());
+    }
+  }
+
+  static HttpServletRequest request(final String uri, final RESTAPI.ResponseType responseType)
+  {
+    return (HttpServletRequest)Proxy.newProxyInstance(
+        JSONResponseTest.class.getClassLoader(),
+        new Class<?>[] { HttpServletRequest.class },
+        new InvocationHandler()
+        {
+          public Object invoke(Object proxy, Method method, Object[] args)
+          {
+            if (method.getName().equals("getRequestURL"))
+            {
+              return new StringBuffer("http://localhost:8080" + uri);
+            }
+
+            if (method.getName().equals("getAttribute") && "responseType".equals(args[0]))
+            {
+              return responseType;
+            }
+
+            return null;
+          }
+        }
+    );
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private static class TestAPI extends RESTAPI
+  {
+    @Override protected void handleRequest(HttpServletRequest request, HttpServletResponse response)
+    {
+
+    }
+  }
+
+  static class StubResponse implements InvocationHandler
+  {
+    private PrintWriter writer;
+
+    private int status = HttpServletResponse.SC_OK;
+
+    StubResponse(StringWriter out)
+    {
+      writer = new PrintWriter(out);
+    }
+
+    HttpServletResponse proxy()
+    {
+      return (HttpServletResponse)Proxy.newProxyInstance(
+          JSONResponseTest.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class }, this
+      );
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+      if (method.getName().equals("getWriter"))
+      {
+        return writer;
+      }
+
+      if (method.getName().equals("setStatus"))
+      {
+        status = (Integer)args[0];
+      }
+
+      return null;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.service;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openremote.controller.Constants;
+import org.openremote.controller.ControllerConfiguration;
+import org.openremote.controller.exception.NoSuchPanelException;
+import org.openremote.controller.service.impl.ProfileServiceImpl;
+import org.openremote.controller.suite.AllTests;
+
+/**
+ * Tests the panel definition cache of {@link ProfileServiceImpl}.
+ */
+public class ProfileServiceCacheTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private File resourceDir;
+
+  private File panelXML;
+
+  private ProfileServiceImpl service;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @Before public void setUp() throws Exception
+  {
+    resourceDir = File.createTempFile("profile", "test");
+    resourceDir.delete();
+    resourceDir.mkdirs();
+
+    panelXML = new File(resourceDir, Constants.PANEL_XML);
+
+    FileUtils.copyFile(
+        new File(getClass().getClassLoader().getResource(AllTests.FIXTURE_DIR + "panel.xml").toURI()),
+        panelXML
+    );
+
+    ControllerConfiguration config = new ControllerConfiguration();
+    config.setResourcePath(resourceDir.getAbsolutePath());
+
+    service = new ProfileServiceImpl();
+    service.setConfiguration(config);
+  }
+
+  @After public void tearDown() throws Exception
+  {
+    FileUtils.deleteDirectory(resourceDir);
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that repeated requests are served from the same cached definition.
+   */
+  @Test public void testDefinitionIsCached()
+  {
+    PanelDefinition father = service.getPanelDefinitionByName("father");
+
+    Assert.assertSame(father, service.getPanelDefinitionByName("father"));
+    Assert.assertSame(service.getAllPanelsDefinition(), service.getAllPanelsDefinition());
+
+    Assert.assertEquals(father.getXML(), service.getProfileByPanelName("father"));
+    Assert.assertEquals(father.getXML(), service.getProfileByPanelID("MyIphone"));
+    Assert.assertEquals(panelXML.lastModified(), father.getLastModified());
+
+    Assert.assertTrue(father.getXML().contains("basement"));
+    Assert.assertTrue(service.getAllPanels().contains("MyAndroid"));
+  }
+
+  /**
+   * Tests that panel definitions are rebuilt when panel.xml changes.
+   */
+  @Test public void testInvalidateOnChange() throws Exception
+  {
+    PanelDefinition mother = service.getPanelDefinitionByName("mother");
+    PanelDefinition panels = service.getAllPanelsDefinition();
+
+    String xml = FileUtils.readFileToString(panelXML, "UTF-8");
+    FileUtils.writeStringToFile(panelXML, xml.replace("name = \"mother\"", "name = \"mom\""), "UTF-8");
+    panelXML.setLastModified(mother.getLastModified() + 2000);
+
+    PanelDefinition mom = service.getPanelDefinitionByName("mom");
+
+    Assert.assertEquals(mother.getXML(), mom.getXML());
+    Assert.assertEquals(mother.getETag(), mom.getETag());
+    Assert.assertEquals(panelXML.lastModified(), mom.getLastModified());
+
+    PanelDefinition newPanels = service.getAllPanelsDefinition();
+
+    Assert.assertNotSame(panels, newPanels);
+    Assert.assertFalse(panels.getETag().equals(newPanels.getETag()));
+
+    try
+    {
+      service.getPanelDefinitionByName("mother");
+
+      Assert.fail("Should not get here...");
+    }
+
+    catch (NoSuchPanelException e)
+    {
+      // expected...
+    }
+  }
+
+  /**
+   * Tests the entity tags and encoded forms of a definition.
+   */
+  @Test public void testEntityTag() throws Exception
+  {
+    PanelDefinition father = service.getPanelDefinitionByName("father");
+    PanelDefinition me = service.getPanelDefinitionByName("me");
+
+    Assert.assertTrue(father.getETag().matches("\"[0-9a-f]{32}\""));
+    Assert.assertFalse(father.getETag().equals(me.getETag()));
+
+    Assert.assertEquals(father.getXML(), new String(father.getXMLBytes(), "UTF-8"));
+
+    Assert.assertNull(father.getJSONBytes());
+
+    father.setJSON("{\"screens\":{}}");
+
+    Assert.assertEquals("{\"screens\":{}}", new String(father.getJSONBytes(), "UTF-8"));
+  }
+
+  /**
+   * Tests loading panel definitions at deployment.
+   */
+  @Test public void testLoadPanelDefinitions()
+  {
+    service.loadPanelDefinitions();
+
+    PanelDefinition father = service.getPanelDefinitionByName("father");
+
+    service.loadPanelDefinitions();
+
+    Assert.assertSame(father, service.getPanelDefinitionByName("father"));
+
+    panelXML.delete();
+
+    // no panel.xml deployed, must not fail...
+
+    service.loadPanelDefinitions();
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.service;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openremote.controller.Constants;
+import org.openremote.controller.ControllerConfiguration;
+import org.openremote.controller.deployer.ModelBuilder;
+import org.openremote.controller.exception.ControllerException;
+import org.openremote.controller.service.impl.StatusPollingServiceImpl;
+import org.openremote.controller.statuscache.ChangedStatusTable;
+import org.openremote.controller.statuscache.EventProcessorChain;
+import org.openremote.controller.statuscache.StatusCache;
+
+/**
+ * Tests for the asynchronous polling mode of {@link StatusPollingServiceImpl}.
+ */
+public class StatusPollingServiceTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private ChangedStatusTable changedStatusTable;
+
+  private StatusPollingServiceImpl service;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @Before public void setUp() throws Exception
+  {
+    changedStatusTable = new ChangedStatusTable();
+
+    StatusCache cache = new StatusCache(changedStatusTable, new EventProcessorChain());
+    ControllerConfiguration config = new ControllerConfiguration();
+
+    Deployer deployer = new Deployer(
+        "Deployer for " + StatusPollingServiceTest.class.getSimpleName(), cache, config,
+        new BeehiveCommandCheckService(config), new HashMap<String, ModelBuilder>()
+    );
+
+    service = new StatusPollingServiceImpl();
+    service.setChangedStatusTable(changedStatusTable);
+    service.setStatusCache(cache);
+    service.setDeployer(deployer);
+  }
+
+  @After public void tearDown()
+  {
+    service.shutdown();
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that a parked polling request returns without blocking the caller and is completed
+   * by the thread recording the status change.
+   */
+  @Test public void testParkedRequestCompletedOnChange() throws Exception
+  {
+    Callback callback = new Callback();
+
+    service.queryChangedState("panel", "1,2", callback);
+
+    Assert.assertEquals(1, callback.latch.getCount());
+
+    changedStatusTable.updateStatusChangedIDs(3);
+
+    Assert.assertFalse(callback.latch.await(200, TimeUnit.MILLISECONDS));
+
+    changedStatusTable.updateStatusChangedIDs(2);
+
+    Assert.assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(callback.result, callback.result.contains("<status id=\"2\">"));
+    Assert.assertFalse(callback.result, callback.result.contains("<status id=\"1\">"));
+    Assert.assertEquals(1, callback.completions);
+  }
+
+  /**
+   * Tests that changes recorded between two polls are returned immediately by the next poll.
+   */
+  @Test public void testSkippedChangesReturnedImmediately() throws Exception
+  {
+    Callback first = new Callback();
+
+    service.queryChangedState("panel", "5", first);
+    changedStatusTable.updateStatusChangedIDs(5);
+
+    Assert.assertTrue(first.latch.await(5, TimeUnit.SECONDS));
+
+    // change arrives while the panel is not polling...
+
+    changedStatusTable.updateStatusChangedIDs(5);
+
+    Callback second = new Callback();
+
+    service.queryChangedState("panel", "5", second);
+
+    Assert.assertEquals(0, second.latch.getCount());
+    Assert.assertTrue(second.result, second.result.contains("<status id=\"5\">"));
+  }
+
+  /**
+   * Tests that requests of two panels polling the same sensor are both completed.
+   */
+  @Test public void testMultiplePanels() throws Exception
+  {
+    Callback panel1 = new Callback();
+    Callback panel2 = new Callback();
+
+    service.queryChangedState("panel1", "7", panel1);
+    service.queryChangedState("panel2", "7,8", panel2);
+
+    changedStatusTable.updateStatusChangedIDs(7);
+
+    Assert.assertTrue(panel1.latch.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(panel2.latch.await(5, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Tests that a request cancelled because the panel's connection ended before a change
+   * arrived does not consume the change, so the panel's next poll returns it.
+   */
+  @Test public void testCancelledRequestLeavesChanges() throws Exception
+  {
+    Callback disconnected = new Callback();
+
+    StatusPollingService.PollingRequest request = service.queryChangedState("panel", "9", disconnected);
+
+    Assert.assertTrue(request.cancel());
+
+    changedStatusTable.updateStatusChangedIDs(9);
+
+    Assert.assertFalse(disconnected.latch.await(200, TimeUnit.MILLISECONDS));
+    Assert.assertFalse(request.cancel());
+
+    Callback next = new Callback();
+
+    service.queryChangedState("panel", "9", next);
+
+    Assert.assertEquals(0, next.latch.getCount());
+    Assert.assertTrue(next.result, next.result.contains("<status id=\"9\">"));
+    Assert.assertEquals(0, disconnected.completions);
+  }
+
+  /**
+   * Tests that a completed request can no longer be cancelled.
+   */
+  @Test public void testCancelCompletedRequest() throws Exception
+  {
+    Callback callback = new Callback();
+
+    StatusPollingService.PollingRequest request = service.queryChangedState("panel", "4", callback);
+
+    changedStatusTable.updateStatusChangedIDs(4);
+
+    Assert.assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+    Assert.assertFalse(request.cancel());
+    Assert.assertEquals(1, callback.completions);
+  }
+
+
+  /**
+   * Tests that shutting the service down cancels parked requests, leaving recorded changes for
+   * the panel, and that requests arriving afterwards are answered as timed out.
+   */
+  @Test public void testShutdown() throws Exception
+  {
+    Callback parked = new Callback();
+
+    StatusPollingService.PollingRequest request = service.queryChangedState("panel", "6", parked);
+
+    service.shutdown();
+
+    Assert.assertFalse(request.cancel());
+
+    changedStatusTable.updateStatusChangedIDs(6);
+
+    Assert.assertFalse(parked.latch.await(200, TimeUnit.MILLISECONDS));
+
+    Callback late = new Callback();
+
+    service.queryChangedState("other", "3", late);
+
+    Assert.assertEquals(0, late.latch.getCount());
+    Assert.assertEquals(Constants.SERVER_RESPONSE_TIME_OUT, late.result);
+  }
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private static class Callback implements StatusPollingService.PollingCallback
+  {
+    private CountDownLatch latch = new CountDownLatch(1);
+    private volatile String result;
+    private volatile int completions = 0;
+
+    @Override public void completed(String pollingResults)
+    {
+      result = pollingResults;
+      completions++;
+
+      latch.countDown();
+    }
+
+    @Override public void failed(ControllerException exception)
+    {
+      result = exception.toString();
+      completions++;
+
+      latch.countDown();
+    }
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openremote.controller.ControllerConfiguration;
+import org.openremote.controller.deployer.ModelBuilder;
+import org.openremote.controller.model.event.CustomState;
+import org.openremote.controller.service.impl.StatusStreamServiceImpl;
+import org.openremote.controller.statuscache.ChangedStatusTable;
+import org.openremote.controller.statuscache.EventProcessorChain;
+import org.openremote.controller.statuscache.StatusCache;
+
+/**
+ * Tests for {@link StatusStreamServiceImpl}.
+ */
+public class StatusStreamServiceTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private ChangedStatusTable changedStatusTable;
+
+  private StatusCache cache;
+
+  private StatusStreamServiceImpl service;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @Before public void setUp() throws Exception
+  {
+    changedStatusTable = new ChangedStatusTable();
+    cache = new StatusCache(changedStatusTable, new EventProcessorChain());
+
+    ControllerConfiguration config = new ControllerConfiguration();
+
+    Deployer deployer = new Deployer(
+        "Deployer for " + StatusStreamServiceTest.class.getSimpleName(), cache, config,
+        new BeehiveCommandCheckService(config), new HashMap<String, ModelBuilder>()
+    );
+
+    service = new StatusStreamServiceImpl();
+    service.setChangedStatusTable(changedStatusTable);
+    service.setStatusCache(cache);
+    service.setDeployer(deployer);
+  }
+
+  @After public void tearDown()
+  {
+    service.shutdown();
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that a subscriber first receives all current statuses and then only the changes of
+   * its sensors.
+   */
+  @Test public void testInitialStatusAndChanges() throws Exception
+  {
+    cache.update(new CustomState(1, "sensor1", "on"));
+    cache.update(new CustomState(2, "sensor2", "10"));
+
+    Listener listener = new Listener();
+
+    service.subscribe("1,2", listener);
+
+    Map<Integer, String> initial = listener.next();
+
+    Assert.assertEquals(2, initial.size());
+    Assert.assertEquals("on", initial.get(1));
+    Assert.assertEquals("10", initial.get(2));
+
+    cache.update(new CustomState(3, "sensor3", "ignored"));
+    cache.update(new CustomState(2, "sensor2", "20"));
+
+    Map<Integer, String> delta = listener.next();
+
+    Assert.assertEquals(1, delta.size());
+    Assert.assertEquals("20", delta.get(2));
+
+    cache.update(new CustomState(1, "sensor1", "off"));
+
+    delta = listener.next();
+
+    Assert.assertEquals(1, delta.size());
+    Assert.assertEquals("off", delta.get(1));
+    Assert.assertTrue(listener.statuses.isEmpty());
+  }
+
+  /**
+   * Tests that a burst of changes is delivered with the latest values.
+   */
+  @Test public void testLatestValueDelivered() throws Exception
+  {
+    Listener listener = new Listener();
+
+    service.subscribe("5", listener);
+    listener.next();
+
+    for (int i = 0; i <= 100; ++i)
+    {
+      cache.update(new CustomState(5, "sensor5", "" + i));
+    }
+
+    String last = null;
+
+    while (!"100".equals(last))
+    {
+      Map<Integer, String> delta = listener.next();
+
+      Assert.assertNotNull("Expected value 100, last was " + last, delta);
+
+      last = delta.get(5);
+    }
+  }
+
+  /**
+   * Tests that a cancelled subscription no longer receives changes and its record is removed.
+   */
+  @Test public void testCancel() throws Exception
+  {
+    Listener listener = new Listener();
+
+    StatusStreamService.Subscription subscription = service.subscribe("7", listener);
+    listener.next();
+
+    Assert.assertEquals(1, service.getActiveSubscriptionCount());
+    Assert.assertEquals(1, changedStatusTable.size());
+
+    subscription.cancel();
+    subscription.cancel();
+
+    cache.update(new CustomState(7, "sensor7", "x"));
+
+    Assert.assertNull(listener.statuses.poll(200, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(0, service.getActiveSubscriptionCount());
+    Assert.assertEquals(0, changedStatusTable.size());
+  }
+
+  /**
+   * Tests that idle subscribers receive heartbeats and a failing subscriber is cancelled.
+   */
+  @Test public void testHeartbeat() throws Exception
+  {
+    service.setHeartbeatInterval(50);
+
+    Listener listener = new Listener();
+
+    service.subscribe("9", listener);
+    listener.next();
+
+    Thread.sleep(300);
+
+    Assert.assertTrue(listener.heartbeats.get() >= 2);
+
+    listener.failing = true;
+
+    Thread.sleep(200);
+
+    Assert.assertEquals(0, service.getActiveSubscriptionCount());
+  }
+
+
+  /**
+   * Tests that shutting the service down closes open subscriptions and removes their records.
+   */
+  @Test public void testShutdown() throws Exception
+  {
+    Listener listener = new Listener();
+
+    service.subscribe("4", listener);
+    listener.next();
+
+    service.shutdown();
+
+    Assert.assertEquals(1, listener.closed.get());
+    Assert.assertEquals(0, service.getActiveSubscriptionCount());
+    Assert.assertEquals(0, changedStatusTable.size());
+
+    cache.update(new CustomState(4, "sensor4", "x"));
+
+    Assert.assertNull(listener.statuses.poll(200, TimeUnit.MILLISECONDS));
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private static class Listener implements StatusStreamService.StatusStreamListener
+  {
+    private BlockingQueue<Map<Integer, String>> statuses = new LinkedBlockingQueue<Map<Integer, String>>();
+    private AtomicInteger heartbeats = new AtomicInteger(0);
+    private AtomicInteger closed = new AtomicInteger(0);
+    private volatile boolean failing = false;
+
+    private Map<Integer, String> next() throws InterruptedException
+    {
+      return statuses.poll(5, TimeUnit.SECONDS);
+    }
+
+    @Override public void statusChanged(Map<Integer, String> changed)
+    {
+      statuses.add(changed);
+    }
+
+    @Override public void heartbeat() throws IOException
+    {
+      if (failing)
+      {
+        throw new IOException("Gone");
+      }
+
+      heartbeats.incrementAndGet();
+    }
+
+    @Override public void streamClosed()
+    {
+      closed.incrementAndGet();
+    }
+  }
+}
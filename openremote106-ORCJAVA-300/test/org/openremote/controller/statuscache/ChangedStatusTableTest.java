@@ -0,0 +1,190 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.statuscache;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ChangedStatusTable} class.
+ */
+public class ChangedStatusTableTest
+{
+
+  /**
+   * Tests that a sensor change is only recorded in the records polling that sensor.
+   */
+  @Test public void testUpdateOnlyInterestedRecords()
+  {
+    ChangedStatusTable table = new ChangedStatusTable();
+
+    ChangedStatusRecord panel1 = new ChangedStatusRecord("panel1-[1, 2]", ids(1, 2));
+    ChangedStatusRecord panel2 = new ChangedStatusRecord("panel2-[2, 3]", ids(2, 3));
+
+    table.insert(panel1);
+    table.insert(panel2);
+
+    table.updateStatusChangedIDs(1);
+
+    Assert.assertEquals(ids(1), panel1.getStatusChangedSensorIDs());
+    Assert.assertTrue(panel2.getStatusChangedSensorIDs().isEmpty());
+
+    table.updateStatusChangedIDs(2);
+
+    Assert.assertEquals(ids(1, 2), panel1.getStatusChangedSensorIDs());
+    Assert.assertEquals(ids(2), panel2.getStatusChangedSensorIDs());
+
+    table.updateStatusChangedIDs(4);
+
+    Assert.assertEquals(ids(1, 2), panel1.getStatusChangedSensorIDs());
+    Assert.assertEquals(ids(2), panel2.getStatusChangedSensorIDs());
+  }
+
+  /**
+   * Tests that a waiting polling request is woken up by a change of its sensors.
+   */
+  @Test public void testWakeUpWaitingRecord() throws Exception
+  {
+    final ChangedStatusTable table = new ChangedStatusTable();
+    final ChangedStatusRecord record = new ChangedStatusRecord("panel-[5]", ids(5));
+
+    table.insert(record);
+
+    Thread updater = new Thread()
+    {
+      @Override public void run()
+      {
+        try
+        {
+          Thread.sleep(100);
+        }
+
+        catch (InterruptedException e)
+        {
+          return;
+        }
+
+        table.updateStatusChangedIDs(5);
+      }
+    };
+
+    long start = System.currentTimeMillis();
+
+    synchronized (record)
+    {
+      updater.start();
+
+      while (record.getStatusChangedSensorIDs().isEmpty() && System.currentTimeMillis() - start < 5000)
+      {
+        record.wait(5000);
+      }
+    }
+
+    Assert.assertEquals(ids(5), record.getStatusChangedSensorIDs());
+  }
+
+  /**
+   * Tests that replacing a record with the same key removes the old record from the index.
+   */
+  @Test public void testReplaceRecord()
+  {
+    ChangedStatusTable table = new ChangedStatusTable();
+
+    ChangedStatusRecord old = new ChangedStatusRecord("panel-[1]", ids(1));
+    ChangedStatusRecord replacement = new ChangedStatusRecord("panel-[1]", ids(1));
+
+    table.insert(old);
+    table.insert(replacement);
+
+    table.updateStatusChangedIDs(1);
+
+    Assert.assertEquals(1, table.size());
+    Assert.assertSame(replacement, table.query("panel-[1]"));
+    Assert.assertTrue(old.getStatusChangedSensorIDs().isEmpty());
+    Assert.assertEquals(ids(1), replacement.getStatusChangedSensorIDs());
+  }
+
+  /**
+   * Tests that records no longer used by polling requests are evicted.
+   */
+  @Test public void testEviction() throws Exception
+  {
+    ChangedStatusTable table = new ChangedStatusTable(200);
+
+    ChangedStatusRecord abandoned = new ChangedStatusRecord("gone-[1]", ids(1));
+    ChangedStatusRecord active = new ChangedStatusRecord("active-[1]", ids(1));
+
+    table.insert(abandoned);
+    table.insert(active);
+
+    Thread.sleep(150);
+
+    table.query("active-[1]");
+
+    Thread.sleep(100);
+
+    table.insert(new ChangedStatusRecord("new-[2]", ids(2)));
+
+    Assert.assertEquals(2, table.size());
+    Assert.assertNull(table.query("gone-[1]"));
+    Assert.assertNotNull(table.query("active-[1]"));
+
+    table.updateStatusChangedIDs(1);
+
+    Assert.assertTrue(abandoned.getStatusChangedSensorIDs().isEmpty());
+    Assert.assertEquals(ids(1), active.getStatusChangedSensorIDs());
+  }
+
+  /**
+   * Tests clearing all records.
+   */
+  @Test public void testClearAllRecords()
+  {
+    ChangedStatusTable table = new ChangedStatusTable();
+    ChangedStatusRecord record = new ChangedStatusRecord("panel-[1]", ids(1));
+
+    table.insert(record);
+    table.clearAllRecords();
+    table.updateStatusChangedIDs(1);
+
+    Assert.assertEquals(0, table.size());
+    Assert.assertTrue(record.getStatusChangedSensorIDs().isEmpty());
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private Set<Integer> ids(Integer... ids)
+  {
+    Set<Integer> set = new TreeSet<Integer>();
+
+    for (Integer id : ids)
+    {
+      set.add(id);
+    }
+
+    return set;
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.statuscache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openremote.controller.model.event.Level;
+
+/**
+ * Unit tests for asynchronous event processing through {@link EventProcessorPipeline}.
+ */
+public class EventProcessorPipelineTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private StatusCache cache;
+
+  private EventProcessorChain chain;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @After public void tearDown()
+  {
+    if (cache != null)
+    {
+      cache.shutdown();
+    }
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that a slow event processor does not delay the cache update or the sensor reporting
+   * the value, and that the processor still sees all events in order.
+   */
+  @Test public void testSlowProcessorDoesNotDelayUpdate() throws Exception
+  {
+    RecordingProcessor slow = new RecordingProcessor(100);
+
+    start(1000, "block", slow);
+
+    long start = System.currentTimeMillis();
+
+    for (int value = 1; value <= 5; ++value)
+    {
+      cache.update(new Level(1, "level", value));
+    }
+
+    long elapsed = System.currentTimeMillis() - start;
+
+    Assert.assertTrue("Updates were delayed by the processor, took " + elapsed + "ms", elapsed < 100);
+    Assert.assertEquals("5", cache.queryStatus(1));
+
+    slow.waitFor(5);
+
+    Assert.assertEquals(values(1, 2, 3, 4, 5), slow.getValues());
+  }
+
+  /**
+   * Tests that events of a sensor are coalesced to the latest value when a processor queue is full.
+   */
+  @Test public void testCoalesceToLatestValue() throws Exception
+  {
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingProcessor processor = new RecordingProcessor(release);
+
+    start(2, "coalesce", processor);
+
+    for (int value = 1; value <= 50; ++value)
+    {
+      cache.update(new Level(1, "level", value));
+    }
+
+    Assert.assertEquals("50", cache.queryStatus(1));
+
+    release.countDown();
+
+    processor.waitForValue(50);
+
+    List<Integer> seen = processor.getValues();
+
+    Assert.assertTrue("Expected events to be coalesced, got " + seen, seen.size() <= 4);
+
+    for (int index = 1; index < seen.size(); ++index)
+    {
+      Assert.assertTrue("Events out of order : " + seen, seen.get(index - 1) < seen.get(index));
+    }
+
+    Assert.assertTrue(pipelineStatistics().getCoalescedEventCount() > 0);
+  }
+
+  /**
+   * Tests that no events are lost with the blocking overflow policy.
+   */
+  @Test public void testBlockOnFullQueue() throws Exception
+  {
+    RecordingProcessor processor = new RecordingProcessor(5);
+
+    start(2, "block", processor);
+
+    List<Integer> expected = new ArrayList<Integer>();
+
+    for (int value = 1; value <= 20; ++value)
+    {
+      cache.update(new Level(1, "level", value));
+
+      expected.add(value);
+    }
+
+    processor.waitFor(20);
+
+    Assert.assertEquals(expected, processor.getValues());
+    Assert.assertTrue(pipelineStatistics().getBlockedEventCount() > 0);
+  }
+
+  /**
+   * Tests that events replaced by a processor are stored in the cache once processing completes,
+   * unless a newer value has been stored already.
+   */
+  @Test public void testReplacedEventIsStored() throws Exception
+  {
+    final CountDownLatch release = new CountDownLatch(1);
+
+    EventProcessor doubler = new EventProcessor()
+    {
+      @Override public void push(EventContext ctx)
+      {
+        Level level = (Level)ctx.getEvent();
+
+        if (level.getValue() == 10)
+        {
+          try
+          {
+            release.await(5, TimeUnit.SECONDS);
+          }
+
+          catch (InterruptedException e)
+          {
+            return;
+          }
+        }
+
+        if (level.getValue() != 30)
+        {
+          ctx.replace(new Level(level.getSourceID(), level.getSource(), level.getValue() * 2));
+        }
+      }
+
+      @Override public String getName()
+      {
+        return "Doubler";
+      }
+    };
+
+    RecordingProcessor recorder = new RecordingProcessor(0);
+
+    start(1000, "coalesce", doubler, recorder);
+
+    cache.update(new Level(1, "level", 20));
+
+    recorder.waitFor(1);
+    waitForStatus(1, "40");
+
+    // Value 30 is stored while 10 is still being processed, the processed value of 10 must
+    // not overwrite it...
+
+    cache.update(new Level(1, "level", 10));
+    cache.update(new Level(1, "level", 30));
+    cache.update(new Level(2, "other", 5));
+
+    Assert.assertEquals("30", cache.queryStatus(1));
+    Assert.assertEquals("5", cache.queryStatus(2));
+
+    release.countDown();
+
+    recorder.waitFor(4);
+    waitForStatus(2, "10");
+
+    Assert.assertEquals(values(40, 20, 30, 10), recorder.getValues());
+    Assert.assertEquals("30", cache.queryStatus(1));
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private void start(int capacity, String policy, EventProcessor... processors)
+  {
+    List<EventProcessor> list = new ArrayList<EventProcessor>();
+
+    Collections.addAll(list, processors);
+
+    chain = new EventProcessorChain();
+    chain.setEventProcessors(list);
+    chain.setAsynchronous(true);
+    chain.setQueueCapacity(capacity);
+    chain.setOverflowPolicy(policy);
+
+    cache = new StatusCache(new ChangedStatusTable(), chain);
+    cache.start();
+
+    Assert.assertTrue(chain.isAsynchronous());
+  }
+
+  private EventProcessorPipelineMBean pipelineStatistics() throws Exception
+  {
+    java.lang.reflect.Field field = EventProcessorChain.class.getDeclaredField("pipeline");
+    field.setAccessible(true);
+
+    return (EventProcessorPipelineMBean)field.get(chain);
+  }
+
+  private void waitForStatus(int sensorID, String value) throws InterruptedException
+  {
+    long start = System.currentTimeMillis();
+
+    while (!cache.queryStatus(sensorID).equals(value) && System.currentTimeMillis() - start < 5000)
+    {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(value, cache.queryStatus(sensorID));
+  }
+
+  private List<Integer> values(Integer... values)
+  {
+    List<Integer> list = new ArrayList<Integer>();
+
+    Collections.addAll(list, values);
+
+    return list;
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private static class RecordingProcessor extends EventProcessor
+  {
+    private List<Integer> values = new ArrayList<Integer>();
+
+    private long delay;
+
+    private CountDownLatch release;
+
+    private RecordingProcessor(long delay)
+    {
+      this.delay = delay;
+    }
+
+    private RecordingProcessor(CountDownLatch release)
+    {
+      this.release = release;
+    }
+
+    @Override public void push(EventContext ctx)
+    {
+      try
+      {
+        if (release != null)
+        {
+          release.await(5, TimeUnit.SECONDS);
+        }
+
+        Thread.sleep(delay);
+      }
+
+      catch (InterruptedException e)
+      {
+        return;
+      }
+
+      synchronized (this)
+      {
+        values.add(((Level)ctx.getEvent()).getValue());
+
+        notifyAll();
+      }
+    }
+
+    @Override public String getName()
+    {
+      return "Recorder";
+    }
+
+    private synchronized List<Integer> getValues()
+    {
+      return new ArrayList<Integer>(values);
+    }
+
+    private synchronized void waitFor(int count) throws InterruptedException
+    {
+      long start = System.currentTimeMillis();
+
+      while (values.size() < count && System.currentTimeMillis() - start < 5000)
+      {
+        wait(100);
+      }
+
+      Assert.assertEquals(values.toString(), count, values.size());
+    }
+
+    private synchronized void waitForValue(int value) throws InterruptedException
+    {
+      long start = System.currentTimeMillis();
+
+      while (!values.contains(value) && System.currentTimeMillis() - start < 5000)
+      {
+        wait(100);
+      }
+
+      Assert.assertTrue(values.toString(), values.contains(value));
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.statuscache.rrd4j;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openremote.controller.ControllerConfiguration;
+import org.openremote.controller.model.event.Level;
+import org.openremote.controller.service.ServiceContext;
+import org.openremote.controller.statuscache.ChangedStatusTable;
+import org.openremote.controller.statuscache.EventProcessor;
+import org.openremote.controller.statuscache.EventProcessorChain;
+import org.openremote.controller.statuscache.StatusCache;
+import org.openremote.controller.suite.AllTests;
+import org.rrd4j.core.RrdBackendFactory;
+import org.rrd4j.core.RrdDb;
+
+/**
+ * Unit tests for {@link Rrd4jDataLogger}.
+ */
+public class Rrd4jDataLoggerTest
+{
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private ControllerConfiguration config;
+
+  private String controllerResourcePath;
+
+  private File resourceDir;
+
+  private StatusCache cache;
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @Before public void setUp() throws Exception
+  {
+    AllTests.initServiceContext();
+
+    config = ServiceContext.getControllerConfiguration();
+    controllerResourcePath = config.getResourcePath();
+
+    resourceDir = File.createTempFile("rrd4jtest", "");
+    resourceDir.delete();
+
+    File rrdDir = new File(resourceDir, "rrd");
+    rrdDir.mkdirs();
+
+    FileWriter writer = new FileWriter(new File(rrdDir, "rrd4j-config.xml"));
+
+    writer.write(
+        "<rrd4j>" +
+        "  <rrdDB fileName = \"test.rrd\" step = \"1\">" +
+        "    <datasource name = \"sensor1\" type = \"GAUGE\" heartbeat = \"10\"/>" +
+        "    <datasource name = \"sensor2\" type = \"GAUGE\" heartbeat = \"10\"/>" +
+        "    <archive function = \"AVERAGE\" xff = \"0.5\" steps = \"1\" rows = \"100\"/>" +
+        "  </rrdDB>" +
+        "</rrd4j>"
+    );
+
+    writer.close();
+
+    config.setResourcePath(resourceDir.toURI().toString());
+  }
+
+  @After public void tearDown()
+  {
+    if (cache != null)
+    {
+      cache.shutdown();
+    }
+
+    config.setResourcePath(controllerResourcePath);
+
+    delete(resourceDir);
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that values are written as they arrive when write-behind is not enabled.
+   */
+  @Test public void testImmediateWrite() throws Exception
+  {
+    Rrd4jDataLogger logger = new Rrd4jDataLogger();
+
+    start(logger);
+
+    cache.update(new Level(1, "sensor1", 42));
+
+    Assert.assertEquals(42.0, lastValue("sensor1"));
+  }
+
+  /**
+   * Tests that write-behind mode buffers values in memory and writes the latest value of each
+   * datasource on the step boundary, carrying over values that did not change.
+   */
+  @Test public void testWriteBehind() throws Exception
+  {
+    Rrd4jDataLogger logger = new Rrd4jDataLogger();
+    logger.setWriteBehind(true);
+    logger.setWriteBehindBackend("FILE");
+
+    start(logger);
+
+    long initialUpdate = lastUpdateTime();
+
+    for (int value = 0; value <= 100; ++value)
+    {
+      cache.update(new Level(1, "sensor1", value));
+    }
+
+    cache.update(new Level(2, "sensor2", 7));
+
+    Assert.assertEquals("Nothing should be written before the step boundary.", initialUpdate, lastUpdateTime());
+
+    long start = System.currentTimeMillis();
+
+    while (lastUpdateTime() == initialUpdate && System.currentTimeMillis() - start < 3000)
+    {
+      Thread.sleep(50);
+    }
+
+    Assert.assertEquals(100.0, lastValue("sensor1"));
+    Assert.assertEquals(7.0, lastValue("sensor2"));
+
+    long firstFlush = lastUpdateTime();
+
+    cache.update(new Level(1, "sensor1", 50));
+
+    start = System.currentTimeMillis();
+
+    while (lastUpdateTime() == firstFlush && System.currentTimeMillis() - start < 3000)
+    {
+      Thread.sleep(50);
+    }
+
+    Assert.assertTrue(lastUpdateTime() > firstFlush);
+    Assert.assertEquals(50.0, lastValue("sensor1"));
+    Assert.assertEquals(7.0, lastValue("sensor2"));
+  }
+
+  /**
+   * Tests that buffered values are written when the data logger is stopped.
+   */
+  @Test public void testFlushOnStop() throws Exception
+  {
+    Rrd4jDataLogger logger = new Rrd4jDataLogger();
+    logger.setWriteBehind(true);
+    logger.setWriteBehindBackend("FILE");
+
+    start(logger);
+
+    // Make sure we are not just about to hit a step boundary...
+
+    Thread.sleep(1000 - System.currentTimeMillis() % 1000 + 50);
+
+    cache.update(new Level(1, "sensor1", 33));
+
+    cache.shutdown();
+    cache = null;
+
+    Assert.assertEquals(33.0, lastValue("sensor1"));
+  }
+
+
+  // Helpers --------------------------------------------------------------------------------------
+
+  private void start(Rrd4jDataLogger logger)
+  {
+    List<EventProcessor> processors = new ArrayList<EventProcessor>();
+    processors.add(logger);
+
+    EventProcessorChain chain = new EventProcessorChain();
+    chain.setEventProcessors(processors);
+
+    cache = new StatusCache(new ChangedStatusTable(), chain);
+    cache.start();
+  }
+
+  private RrdDb openDatabase() throws Exception
+  {
+    return new RrdDb(
+        new File(resourceDir, "rrd/test.rrd").getAbsolutePath(), true, RrdBackendFactory.getFactory("FILE")
+    );
+  }
+
+  private double lastValue(String datasource) throws Exception
+  {
+    RrdDb db = openDatabase();
+
+    try
+    {
+      return db.getLastDatasourceValue(datasource);
+    }
+
+    finally
+    {
+      db.close();
+    }
+  }
+
+  private long lastUpdateTime() throws Exception
+  {
+    RrdDb db = openDatabase();
+
+    try
+    {
+      return db.getLastUpdateTime();
+    }
+
+    finally
+    {
+      db.close();
+    }
+  }
+
+  private void delete(File file)
+  {
+    File[] children = file.listFiles();
+
+    if (children != null)
+    {
+      for (File child : children)
+      {
+        delete(child);
+      }
+    }
+
+    file.delete();
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.statuscache.rrd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdBackendFactory;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+
+/**
+ * Unit tests for {@link RrdGraphRenderer}.
+ */
+public class RrdGraphRendererTest
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  private final static long STEP = 60;
+
+
+  // Instance Fields ------------------------------------------------------------------------------
+
+  private File rrdFile;
+
+  private Map<String, String> graphDefs = new HashMap<String, String>();
+
+
+  // Test Setup and Tear Down ---------------------------------------------------------------------
+
+  @Before public void setUp() throws Exception
+  {
+    rrdFile = File.createTempFile("rrdgraphtest", ".rrd");
+    rrdFile.delete();
+
+    RrdDef rrdDef = new RrdDef(rrdFile.getAbsolutePath(), STEP);
+    rrdDef.addDatasource("sensor1", DsType.GAUGE, STEP * 2, Double.NaN, Double.NaN);
+    rrdDef.addArchive(ConsolFun.AVERAGE, 0.5, 1, 100);
+
+    new RrdDb(rrdDef, RrdBackendFactory.getFactory("FILE")).close();
+
+    graphDefs.put("graph1",
+        "<rrd_graph_def name = \"graph1\">" +
+        "  <span><start>end-1h</start><end>now</end></span>" +
+        "  <filename>-</filename>" +
+        "  <datasources>" +
+        "    <def>" +
+        "      <name>s1</name>" +
+        "      <rrd>" + rrdFile.getAbsolutePath() + "</rrd>" +
+        "      <source>sensor1</source>" +
+        "      <cf>AVERAGE</cf>" +
+        "      <backend>FILE</backend>" +
+        "    </def>" +
+        "  </datasources>" +
+        "  <graph>" +
+        "    <line><datasource>s1</datasource><color>#FF0000</color><legend>Sensor 1</legend></line>" +
+        "  </graph>" +
+        "</rrd_graph_def>"
+    );
+  }
+
+  @After public void tearDown()
+  {
+    rrdFile.delete();
+  }
+
+
+  // Tests ----------------------------------------------------------------------------------------
+
+  /**
+   * Tests that a graph is rendered to a PNG image.
+   */
+  @Test public void testRender() throws Exception
+  {
+    RrdGraphRenderer renderer = new RrdGraphRenderer(graphDefs, STEP, 10, 2);
+
+    long now = System.currentTimeMillis() / 1000;
+
+    byte[] image = renderer.render("graph1", now - 3600, now, 400, 200);
+
+    Assert.assertNotNull(image);
+    Assert.assertTrue(image.length > 8);
+
+    // PNG signature...
+
+    Assert.assertEquals((byte)0x89, image[0]);
+    Assert.assertEquals('P', image[1]);
+    Assert.assertEquals('N', image[2]);
+    Assert.assertEquals('G', image[3]);
+
+    Assert.assertEquals(1, renderer.getRenderCount());
+  }
+
+  /**
+   * Tests that requests for the same graph, size and time window within the same RRD step are
+   * served from the cache while different sizes and windows are rendered separately.
+   */
+  @Test public void testCache() throws Exception
+  {
+    RrdGraphRenderer renderer = new RrdGraphRenderer(graphDefs, STEP, 10, 2);
+
+    long end = (System.currentTimeMillis() / 1000 / STEP) * STEP;
+
+    byte[] first = renderer.render("graph1", end - 3600, end, 400, 200);
+    byte[] second = renderer.render("graph1", end - 3600 + 1, end + STEP - 1, 400, 200);
+
+    Assert.assertSame("Window within the same step should be served from cache.", first, second);
+    Assert.assertEquals(1, renderer.getRenderCount());
+    Assert.assertEquals(1, renderer.getCacheHitCount());
+
+    renderer.render("graph1", end - 3600, end, 800, 400);
+
+    Assert.assertEquals(2, renderer.getRenderCount());
+
+    renderer.render("graph1", end - 7200, end, 400, 200);
+
+    Assert.assertEquals(3, renderer.getRenderCount());
+
+    renderer.clear();
+
+    renderer.render("graph1", end - 3600, end, 400, 200);
+
+    Assert.assertEquals(4, renderer.getRenderCount());
+  }
+
+  /**
+   * Tests that the least recently used images are evicted when the cache is full.
+   */
+  @Test public void testCacheSize() throws Exception
+  {
+    RrdGraphRenderer renderer = new RrdGraphRenderer(graphDefs, STEP, 2, 2);
+
+    long end = (System.currentTimeMillis() / 1000 / STEP) * STEP;
+
+    renderer.render("graph1", end - 3600, end, 100, 100);
+    renderer.render("graph1", end - 3600, end, 200, 100);
+    renderer.render("graph1", end - 3600, end, 100, 100);
+    renderer.render("graph1", end - 3600, end, 300, 100);
+
+    Assert.assertEquals(3, renderer.getRenderCount());
+
+    renderer.render("graph1", end - 3600, end, 100, 100);
+
+    Assert.assertEquals(3, renderer.getRenderCount());
+
+    renderer.render("graph1", end - 3600, end, 200, 100);
+
+    Assert.assertEquals(4, renderer.getRenderCount());
+  }
+
+  /**
+   * Tests concurrent requests for the same image result in a single render.
+   */
+  @Test public void testConcurrentRequests() throws Exception
+  {
+    final RrdGraphRenderer renderer = new RrdGraphRenderer(graphDefs, STEP, 10, 1);
+
+    final long end = (System.currentTimeMillis() / 1000 / STEP) * STEP;
+    final byte[][] images = new byte[8][];
+
+    Thread[] threads = new Thread[images.length];
+
+    for (int i = 0; i < threads.length; ++i)
+    {
+      final int index = i;
+
+      threads[i] = new Thread()
+      {
+        @Override public void run()
+        {
+          try
+          {
+            images[index] = renderer.render("graph1", end - 3600, end, 400, 200);
+          }
+
+          catch (IOException e)
+          {
+            e.printStackTrace();
+          }
+        }
+      };
+
+      threads[i].start();
+    }
+
+    for (Thread thread : threads)
+    {
+      thread.join(10000);
+    }
+
+    Assert.assertEquals(1, renderer.getRenderCount());
+
+    for (byte[] image : images)
+    {
+      Assert.assertSame(images[0], image);
+    }
+  }
+
+  /**
+   * Tests that unknown graphs are not rendered.
+   */
+  @Test public void testUnknownGraph() throws Exception
+  {
+    RrdGraphRenderer renderer = new RrdGraphRenderer(graphDefs, STEP, 10, 2);
+
+    Assert.assertTrue(renderer.hasGraph("graph1"));
+    Assert.assertFalse(renderer.hasGraph("graph2"));
+    Assert.assertNull(renderer.render("graph2", null, null, 400, 200));
+  }
+}
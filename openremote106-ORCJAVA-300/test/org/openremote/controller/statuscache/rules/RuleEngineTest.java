@@ -805,6 +805,53 @@ public class RuleEngineTest
 
 
 
+  /**
+   * Tests that repeated events with an unchanged value are passed on without being inserted
+   * into the rule engine's working memory again.
+   *
+   * @throws Exception  if test fails
+   */
+  @Test public void testUnchangedEventsSkipped() throws Exception
+  {
+    String newResourcePath = AllTests.getAbsoluteFixturePath()
+        .resolve("statuscache/rules/switch/").toString();
+
+    config.setResourcePath(newResourcePath);
+
+    RuleEngine rules = new RuleEngine();
+    EventGrab grab = new EventGrab();
+
+    List<EventProcessor> processors = new ArrayList<EventProcessor>();
+    processors.add(rules);
+    processors.add(grab);
+
+    StatusCache cache = createCache(processors, "commandCounter", new CommandCounter(), "counter");
+
+    try
+    {
+      cache.update(new Switch(555, "switch555", "on", Switch.State.ON));
+      cache.update(new Switch(555, "switch555", "on", Switch.State.ON));
+      cache.update(new Switch(555, "switch555", "on", Switch.State.ON));
+      cache.update(new Switch(555, "switch555", "off", Switch.State.OFF));
+      cache.update(new Switch(556, "switch556", "off", Switch.State.OFF));
+
+      Assert.assertEquals(5, grab.count);
+      Assert.assertEquals(3, rules.getProcessedEventCount());
+      Assert.assertEquals(2, rules.getSkippedEventCount());
+
+      rules.resetStatistics();
+
+      Assert.assertEquals(0, rules.getProcessedEventCount());
+      Assert.assertEquals(0, rules.getRuleStatistics().length);
+    }
+
+    finally
+    {
+      cache.shutdown();
+    }
+  }
+
+
   /**
    * Basic Level event tests to check rule execution based on event equality (which includes
    * event source name and id and event's value. Repeated events from the same source and
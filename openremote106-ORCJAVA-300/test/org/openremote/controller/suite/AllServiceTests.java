@@ -23,15 +23,23 @@ package org.openremote.controller.suite;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.openremote.controller.command.MacroExecutorTest;
 import org.openremote.controller.service.PollingServiceTest;
 import org.openremote.controller.service.ProfileServiceTest;
+import org.openremote.controller.service.ProfileServiceCacheTest;
+import org.openremote.controller.service.StatusPollingServiceTest;
+import org.openremote.controller.service.StatusStreamServiceTest;
 import org.openremote.controller.service.DeployerTest;
 
 @RunWith(Suite.class)
 @SuiteClasses(
 {
    ProfileServiceTest.class,
+   ProfileServiceCacheTest.class,
    PollingServiceTest.class,
+   StatusPollingServiceTest.class,
+   StatusStreamServiceTest.class,
+   MacroExecutorTest.class,
 
    DeployerTest.class
 }
@@ -28,6 +28,7 @@ import org.openremote.controller.component.control.ButtonBuilderTest;
 import org.openremote.controller.component.control.SwitchBuilderTest;
 import org.openremote.controller.component.control.GestureBuilderTest;
 import org.openremote.controller.component.control.SliderBuilderTest;
+import org.openremote.controller.component.control.ControlCommandRegistryTest;
 
 /**
  * Unit tests for component types.
@@ -42,7 +43,8 @@ import org.openremote.controller.component.control.SliderBuilderTest;
     SwitchBuilderTest.class,
     GestureBuilderTest.class,
     SliderBuilderTest.class,
-    LabelBuilderTest.class
+    LabelBuilderTest.class,
+    ControlCommandRegistryTest.class
   }
 )
 public class ComponentTests
@@ -24,6 +24,10 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.openremote.controller.protocol.EventListenerTest;
 import org.openremote.controller.protocol.amx_ni.AMXNICommandBuilderTest;
+import org.openremote.controller.protocol.huebridge.HueBridgeClientTest;
+import org.openremote.controller.protocol.huebridge.HueBridgeStatePollerTest;
+import org.openremote.controller.protocol.huebridge.HueBridgeWriteQueueTest;
+import org.openremote.controller.protocol.infrared.LircClientTest;
 import org.openremote.controller.protocol.lutron.LutronHomeWorksAddressTest;
 import org.openremote.controller.protocol.lutron.LutronHomeWorksCommandBuilderTest;
 
@@ -38,7 +42,11 @@ import org.openremote.controller.protocol.lutron.LutronHomeWorksCommandBuilderTe
        EventListenerTest.class,
        LutronHomeWorksAddressTest.class,
        LutronHomeWorksCommandBuilderTest.class,
-       AMXNICommandBuilderTest.class
+       AMXNICommandBuilderTest.class,
+       LircClientTest.class,
+       HueBridgeClientTest.class,
+       HueBridgeStatePollerTest.class,
+       HueBridgeWriteQueueTest.class
    }
 )
 public class ProtocolTests
@@ -35,6 +35,7 @@ import org.openremote.controller.rest.ControlStatusPollingRESTServletTest;
 import org.openremote.controller.rest.FindPanelByIDTest;
 import org.openremote.controller.rest.SkipStateTrackTest;
 import org.openremote.controller.rest.ListPanelIDsTest;
+import org.openremote.controller.rest.JSONResponseTest;
 import org.openremote.controller.rest.SensorStatusTest;
 import org.openremote.controller.rest.support.json.JSONTranslatorTest;
 import org.openremote.controller.statuscache.StatusAndPollingTest;
@@ -53,6 +54,7 @@ import org.w3c.dom.Node;
    SkipStateTrackTest.class,
    StatusAndPollingTest.class,
    JSONTranslatorTest.class,
+   JSONResponseTest.class,
 
    FindPanelByIDTest.class,
    ListPanelIDsTest.class,
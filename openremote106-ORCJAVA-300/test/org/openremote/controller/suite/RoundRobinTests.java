@@ -22,6 +22,7 @@ package org.openremote.controller.suite;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.openremote.controller.net.NetworkWorkerPoolTest;
 import org.openremote.controller.net.RoundRobinClientTest;
 import org.openremote.controller.net.RoundRobinServerTest;
 
@@ -29,7 +30,8 @@ import org.openremote.controller.net.RoundRobinServerTest;
 @SuiteClasses(
 {
    RoundRobinServerTest.class,
-   RoundRobinClientTest.class
+   RoundRobinClientTest.class,
+   NetworkWorkerPoolTest.class
 }
 )
 public class RoundRobinTests {
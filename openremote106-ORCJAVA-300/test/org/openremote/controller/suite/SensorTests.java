@@ -20,6 +20,7 @@
  */
 package org.openremote.controller.suite;
 
+import org.openremote.controller.PollingSchedulerTest;
 import org.openremote.controller.model.sensor.SensorTest;
 import org.openremote.controller.model.sensor.SwitchSensorTest;
 import org.openremote.controller.model.sensor.StateSensorTest;
@@ -40,7 +41,8 @@ import org.junit.runner.RunWith;
     SwitchSensorTest.class,
     RangeSensorTest.class,
     LevelSensorTest.class,
-    StateSensorTest.class
+    StateSensorTest.class,
+    PollingSchedulerTest.class
   }
 )
 public class SensorTests
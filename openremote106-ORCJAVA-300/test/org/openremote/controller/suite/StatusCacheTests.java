@@ -20,7 +20,11 @@
  */
 package org.openremote.controller.suite;
 
+import org.openremote.controller.statuscache.ChangedStatusTableTest;
+import org.openremote.controller.statuscache.EventProcessorPipelineTest;
 import org.openremote.controller.statuscache.StatusCacheTest;
+import org.openremote.controller.statuscache.rrd4j.Rrd4jDataLoggerTest;
+import org.openremote.controller.statuscache.rrd4j.RrdGraphRendererTest;
 import org.openremote.controller.statuscache.rules.RuleEngineTest;
 import org.junit.runners.Suite;
 import org.junit.runner.RunWith;
@@ -34,7 +38,11 @@ import org.junit.runner.RunWith;
 @Suite.SuiteClasses(
 {
    StatusCacheTest.class,
-   RuleEngineTest.class
+   ChangedStatusTableTest.class,
+   EventProcessorPipelineTest.class,
+   RuleEngineTest.class,
+   Rrd4jDataLoggerTest.class,
+   RrdGraphRendererTest.class
 }
 )
 
@@ -24,6 +24,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import org.openremote.controller.utils.ConfigFactoryTest;
+import org.openremote.controller.utils.JSONWriterTest;
+import org.openremote.controller.utils.LatencyHistogramTest;
 import org.openremote.controller.utils.MacrosIrDelayUtilTest;
 import org.openremote.controller.utils.StringsTest;
 import org.openremote.controller.utils.LoggerTest;
@@ -35,6 +37,8 @@ import org.openremote.controller.utils.LoggerTest;
    MacrosIrDelayUtilTest.class,
    ConfigFactoryTest.class,
    StringsTest.class,
+   LatencyHistogramTest.class,
+   JSONWriterTest.class,
 
    LoggerTest.class
 }
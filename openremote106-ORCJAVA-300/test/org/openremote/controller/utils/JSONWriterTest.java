@@ -0,0 +1,124 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.utils;
+
+import java.io.StringWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link JSONWriter}.
+ */
+public class JSONWriterTest
+{
+
+  /**
+   * Tests comma placement in nested objects and arrays.
+   */
+  @Test public void testNesting() throws Exception
+  {
+    StringWriter out = new StringWriter();
+
+    new JSONWriter(out)
+        .beginObject()
+          .name("a").value(1)
+          .name("b").beginArray()
+            .value(true)
+            .beginObject().endObject()
+            .beginArray().value("x").value("y").endArray()
+          .endArray()
+          .name("c").beginObject().name("d").value(false).endObject()
+        .endObject();
+
+    Assert.assertEquals("{\"a\":1,\"b\":[true,{},[\"x\",\"y\"]],\"c\":{\"d\":false}}", out.toString());
+  }
+
+  /**
+   * Tests nesting deeper than the initial nesting stack.
+   */
+  @Test public void testDeepNesting() throws Exception
+  {
+    StringWriter out = new StringWriter();
+    JSONWriter json = new JSONWriter(out);
+
+    for (int i = 0; i < 20; ++i)
+    {
+      json.beginArray().value(i);
+    }
+
+    for (int i = 0; i < 20; ++i)
+    {
+      json.endArray();
+    }
+
+    JSONArray array = new JSONArray(out.toString());
+
+    Assert.assertEquals(0, array.getInt(0));
+    Assert.assertEquals(1, array.getJSONArray(1).getInt(0));
+  }
+
+  /**
+   * Tests string escaping.
+   */
+  @Test public void testEscaping() throws Exception
+  {
+    String value = "quote \" backslash \\ slash / newline \n tab \t bell \u0007 separator \u2028 \u00e4";
+
+    StringWriter out = new StringWriter();
+
+    new JSONWriter(out).beginObject().name("key \"1\"").value(value).endObject();
+
+    Assert.assertTrue(out.toString().contains("\\\""));
+    Assert.assertTrue(out.toString().contains("\\\\"));
+    Assert.assertTrue(out.toString().contains("\\n"));
+    Assert.assertTrue(out.toString().contains("\\u0007"));
+    Assert.assertTrue(out.toString().contains("\\u2028"));
+    Assert.assertFalse(out.toString().contains("\n"));
+
+    JSONObject parsed = new JSONObject(out.toString());
+
+    Assert.assertEquals(value, parsed.getString("key \"1\""));
+  }
+
+  /**
+   * Tests null, number and boolean values.
+   */
+  @Test public void testValues() throws Exception
+  {
+    StringWriter out = new StringWriter();
+
+    new JSONWriter(out)
+        .beginArray()
+          .value((String)null)
+          .value((Object)null)
+          .value(Integer.valueOf(-5))
+          .value(Double.valueOf(1.5))
+          .value(Double.valueOf(Double.NaN))
+          .value(Boolean.TRUE)
+          .value(Long.MAX_VALUE)
+        .endArray();
+
+    Assert.assertEquals("[null,null,-5,1.5,\"NaN\",true," + Long.MAX_VALUE + "]", out.toString());
+  }
+}
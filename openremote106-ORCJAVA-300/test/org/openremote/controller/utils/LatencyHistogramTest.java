@@ -0,0 +1,105 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest
+{
+
+  /**
+   * Tests count, mean and max of recorded values.
+   */
+  @Test public void testBasicStatistics()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getMean());
+    Assert.assertEquals(0, histogram.getPercentile(50));
+
+    histogram.record(10);
+    histogram.record(20);
+    histogram.record(30);
+
+    Assert.assertEquals(3, histogram.getCount());
+    Assert.assertEquals(20, histogram.getMean());
+    Assert.assertEquals(30, histogram.getMax());
+  }
+
+  /**
+   * Tests that percentiles are approximated by bucket upper bounds.
+   */
+  @Test public void testPercentiles()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    for (int i = 0; i < 90; ++i)
+    {
+      histogram.record(3);
+    }
+
+    for (int i = 0; i < 10; ++i)
+    {
+      histogram.record(400);
+    }
+
+    Assert.assertEquals(5, histogram.getPercentile(50));
+    Assert.assertEquals(5, histogram.getPercentile(90));
+    Assert.assertEquals(500, histogram.getPercentile(95));
+    Assert.assertEquals(500, histogram.getPercentile(100));
+  }
+
+  /**
+   * Tests values beyond the last bucket.
+   */
+  @Test public void testOverflow()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    histogram.record(60000);
+
+    String[] buckets = histogram.getBuckets();
+
+    Assert.assertEquals(LatencyHistogram.BUCKET_BOUNDS.length + 1, buckets.length);
+    Assert.assertEquals("> 10000ms : 1", buckets[buckets.length - 1]);
+    Assert.assertEquals(60000, histogram.getPercentile(99));
+  }
+
+  /**
+   * Tests reset.
+   */
+  @Test public void testReset()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    histogram.record(100);
+    histogram.reset();
+
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getMax());
+    Assert.assertEquals("<= 100ms : 0", histogram.getBuckets()[5]);
+  }
+}
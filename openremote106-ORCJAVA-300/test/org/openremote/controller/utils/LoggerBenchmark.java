@@ -0,0 +1,169 @@
+/*
+ * OpenRemote, the Home of the Digital Home.
+ * Copyright 2008-2013, OpenRemote Inc.
+ *
+ * See the contributors.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.controller.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+
+import org.openremote.controller.Constants;
+
+/**
+ * Measures time and heap allocation per disabled trace log statement for the different ways
+ * of passing dynamic content to {@link Logger}. Not part of the test suites, run with
+ * <tt>java org.openremote.controller.utils.LoggerBenchmark</tt> on a HotSpot JVM (allocation
+ * is measured with <tt>com.sun.management.ThreadMXBean</tt>).
+ */
+public class LoggerBenchmark
+{
+
+  // Constants ------------------------------------------------------------------------------------
+
+  private final static int WARMUP_ITERATIONS = 1000000;
+
+  private final static int MEASURED_ITERATIONS = 10000000;
+
+
+  // Class Members --------------------------------------------------------------------------------
+
+  private final static Logger log = Logger.getLogger(
+      Constants.CONTROLLER_ROOT_LOG_CATEGORY + ".benchmark"
+  );
+
+  private static Object event = new Object()
+  {
+    @Override public String toString()
+    {
+      return "Event (source = 'sensor', value = 'on')";
+    }
+  };
+
+  private static volatile long sink;
+
+
+  public static void main(String[] args) throws Exception
+  {
+    log.setLevel(Level.INFO);
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    Statement[] statements = new Statement[]
+    {
+      new Statement("string concatenation")
+      {
+        @Override void log(int i)
+        {
+          log.trace("Inserted event " + event + " (" + i + ")");
+        }
+      },
+
+      new Statement("three parameters (varargs)")
+      {
+        @Override void log(int i)
+        {
+          log.trace("Inserted event {0} from {1} ({2})", event, event, event);
+        }
+      },
+
+      new Statement("one parameter")
+      {
+        @Override void log(int i)
+        {
+          log.trace("Inserted event {0}", event);
+        }
+      },
+
+      new Statement("two parameters")
+      {
+        @Override void log(int i)
+        {
+          log.trace("Inserted event {0} from {1}", event, event);
+        }
+      },
+
+      new Statement("exception and parameter")
+      {
+        @Override void log(int i)
+        {
+          log.trace("Inserted event {0}", (Throwable)null, event);
+        }
+      },
+
+      new Statement("isTraceEnabled guard")
+      {
+        @Override void log(int i)
+        {
+          if (log.isTraceEnabled())
+          {
+            log.trace("Inserted event {0} ({1})", event, i);
+          }
+        }
+      }
+    };
+
+    System.out.println("Disabled trace statement:");
+
+    for (Statement statement : statements)
+    {
+      statement.run(WARMUP_ITERATIONS);
+
+      long threadID = Thread.currentThread().getId();
+      long allocated = threads.getThreadAllocatedBytes(threadID);
+      long start = System.nanoTime();
+
+      statement.run(MEASURED_ITERATIONS);
+
+      long elapsed = System.nanoTime() - start;
+
+      allocated = threads.getThreadAllocatedBytes(threadID) - allocated;
+
+      System.out.println(
+          "  " + statement.name + " : " + (double)elapsed / MEASURED_ITERATIONS + " ns/op, " +
+          (double)allocated / MEASURED_ITERATIONS + " bytes/op"
+      );
+    }
+  }
+
+
+  // Nested Classes -------------------------------------------------------------------------------
+
+  private abstract static class Statement
+  {
+    private String name;
+
+    private Statement(String name)
+    {
+      this.name = name;
+    }
+
+    private void run(int iterations)
+    {
+      for (int i = 0; i < iterations; ++i)
+      {
+        log(i);
+      }
+
+      sink += iterations;
+    }
+
+    abstract void log(int i);
+  }
+}
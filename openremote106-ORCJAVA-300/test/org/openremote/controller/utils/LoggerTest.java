@@ -300,6 +300,72 @@ public class LoggerTest
   }
 
 
+  /**
+   * Tests that the one and two parameter variants pass their parameters, and exception, in the
+   * log record.
+   */
+  @Test public void testFixedParameterCount()
+  {
+    Logger log = Logger.getLogger(Constants.CONTROLLER_ROOT_LOG_CATEGORY + ".test.fixedparams");
+    TestLogHandler handler = new TestLogHandler();
+
+    log.addHandler(handler);
+    log.setLevel(Level.ALL);
+
+    log.trace("Test trace {0}", "foo");
+
+    handler.assertLastLog(Level.FINER, "Test trace {0}");
+    Assert.assertArrayEquals(new Object[] { "foo" }, handler.lastParams);
+
+    log.debug("Test debug {0}, {1}", "foo", 1);
+
+    handler.assertLastLog(Level.FINE, "Test debug {0}, {1}");
+    Assert.assertArrayEquals(new Object[] { "foo", 1 }, handler.lastParams);
+
+    RuntimeException exception = new RuntimeException("log testing");
+
+    log.warn("Test warn {0}", exception, "foo");
+
+    handler.assertLastLog(Level.WARNING, "Test warn {0}");
+    Assert.assertArrayEquals(new Object[] { "foo" }, handler.lastParams);
+    Assert.assertSame(exception, handler.lastThrown);
+
+    log.info("Test info {0} and {1}", new Object[] { "foo", "bar" });
+
+    Assert.assertArrayEquals(new Object[] { "foo", "bar" }, handler.lastParams);
+  }
+
+  /**
+   * Tests that no log records are created for disabled levels.
+   */
+  @Test public void testDisabledLevels()
+  {
+    Logger log = Logger.getLogger(Constants.CONTROLLER_ROOT_LOG_CATEGORY + ".test.disabled");
+    TestLogHandler handler = new TestLogHandler();
+
+    log.addHandler(handler);
+    log.setLevel(Level.INFO);
+
+    Assert.assertTrue(log.isInfoEnabled());
+    Assert.assertFalse(log.isDebugEnabled());
+    Assert.assertFalse(log.isTraceEnabled());
+
+    log.debug("Test debug {0}", "foo");
+    log.debug("Test debug {0}, {1}", "foo", "bar");
+    log.debug("Test debug {0}", new RuntimeException("log testing"), "foo");
+    log.debug("Test debug {0}, {1}", new RuntimeException("log testing"), "foo", "bar");
+    log.trace("Test trace {0}", "foo");
+    log.trace("Test trace {0}, {1}", "foo", "bar");
+    log.trace("Test trace {0}", new RuntimeException("log testing"), "foo");
+
+    Assert.assertEquals(0, handler.count);
+
+    log.info("Test info {0}", "foo");
+
+    Assert.assertEquals(1, handler.count);
+  }
+
+
 
 
   // Nested Classes -------------------------------------------------------------------------------
@@ -309,11 +375,17 @@ public class LoggerTest
   {
     private Level lastLevel;
     private String lastMessage;
+    private Object[] lastParams;
+    private Throwable lastThrown;
+    private int count = 0;
 
     @Override public void publish(LogRecord record)
     {
       lastLevel = record.getLevel();
       lastMessage = record.getMessage();
+      lastParams = record.getParameters();
+      lastThrown = record.getThrown();
+      count++;
     }
 
     @Override public void flush()